@@ -1,5 +1,6 @@
 package algorithms;
 
+import algorithms.datatypes.WaypointBuffer;
 import algorithms.priorityqueue.IndirectHeap;
 import grid.GridGraph;
 
@@ -227,6 +228,16 @@ public class AStar extends PathFindingAlgorithm {
         
         return path;
     }
+
+    @Override
+    protected void appendWaypoints(WaypointBuffer out) {
+        int current = finish;
+        while (current != -1) {
+            out.add(toTwoDimX(current), toTwoDimY(current));
+            current = parent[current];
+        }
+        out.reverse();
+    }
     
     public float getPathLength() {
         int current = finish;
@@ -1,8 +1,12 @@
 package algorithms;
 
 import grid.GridGraph;
-import algorithms.datatypes.Memory;
-import algorithms.priorityqueue.ReusableIndirectHeap;
+
+import java.util.Arrays;
+
+import algorithms.datatypes.WaypointBuffer;
+import algorithms.priorityqueue.IndirectPriorityQueue;
+import algorithms.priorityqueue.PriorityQueueType;
 
 
 
@@ -12,15 +16,46 @@ public class AStarStaticMemory extends PathFindingAlgorithm {
     protected boolean repeatedPostSmooth = false;
     protected float heuristicWeight = 1f;
 
-    protected ReusableIndirectHeap pq; 
+    protected IndirectPriorityQueue pq; 
+    protected PriorityQueueType queueType = PriorityQueueType.BINARY;
 
     protected int finish;
 
+    // Time-sliced search. See step and runUntil.
+    private static final int SEARCH_NOT_STARTED = 0;
+    private static final int SEARCH_RUNNING = 1;
+    private static final int SEARCH_FINISHED = 2;
+    private static final int SEARCH_CANCELLED = 3;
+    private static final int DEADLINE_CHECK_INTERVAL = 16;
+    private int searchState = SEARCH_NOT_STARTED;
+
+    // Set by computeCost. The search may then skip steps that only change the reported path.
+    protected boolean costOnly = false;
+
+    // Anytime search (ARA*). See setAnytime.
+    protected static final float ANYTIME_INITIAL_WEIGHT = 2.5f;
+    protected static final float ANYTIME_WEIGHT_DECREMENT = 0.5f;
+    private boolean anytime = false;
+    private float initialWeight;
+    private float weightDecrement;
+    private long[] closedThisRound;
+    private long[] inconsistent;
+    private int[] inconsistentNodes;
+    private int nInconsistent;
+    private int[] nextRoundNodes;
+    private int[][] bestPath;
+    private float suboptimalityBound;
+
     
     public AStarStaticMemory(GridGraph graph, int sx, int sy, int ex, int ey) {
         super(graph, graph.sizeX, graph.sizeY, sx, sy, ex, ey);
     }
 
+    @Override
+    public void setPriorityQueue(PriorityQueueType type) {
+        queueType = type;
+    }
+
     public static AStarStaticMemory postSmooth(GridGraph graph, int sx, int sy, int ex, int ey) {
         AStarStaticMemory aStar = new AStarStaticMemory(graph, sx, sy, ex, ey);
         aStar.postSmoothingOn = true;
@@ -41,51 +76,311 @@ public class AStarStaticMemory extends PathFindingAlgorithm {
         return aStar;
     }
     
+    /**
+     * Turns this search into an anytime search (ARA*, Likhachev, Gordon and Thrun 2003).
+     * The first round is a weighted search with heuristic weight initialWeight. Each time the goal is reached,
+     * the path is kept, the weight is lowered by weightDecrement (down to 1), and the search continues from
+     * its open list. Nodes improved after being expanded in a round are expanded again in the next round.
+     * The search is complete after the round with weight 1.
+     *
+     * Use with step or runUntil: getPath returns the best path found so far, and suboptimalityBound how far
+     * it can be from the best path. computePath runs all the rounds. Post-smoothing is not applied.
+     *
+     * Supported by searches that relax nodes through tryRelaxNeighbour or addToOpen and isSettled
+     * (AStarStaticMemory, BasicThetaStar, LazyThetaStar, JumpPointSearch).
+     */
+    protected final void setAnytime(float initialWeight, float weightDecrement) {
+        if (initialWeight < 1f || weightDecrement <= 0f) {
+            throw new IllegalArgumentException("Anytime search needs initialWeight >= 1 and weightDecrement > 0.");
+        }
+        this.anytime = true;
+        this.initialWeight = initialWeight;
+        this.weightDecrement = weightDecrement;
+        this.postSmoothingOn = false;
+    }
+
+    /**
+     * The memory and open list are in the search context anyway, so only the search state needs resetting.
+     */
+    @Override
+    public boolean reuseFor(int sx, int sy, int ex, int ey) {
+        setQuery(sx, sy, ex, ey);
+        searchState = SEARCH_NOT_STARTED;
+        costOnly = false;
+        return true;
+    }
+
+    @Override
+    public float computeCost() {
+        costOnly = true;
+        computePath();
+        if (searchCancelled()) return Float.POSITIVE_INFINITY;
+        if (sx == ex && sy == ey) return 0f;
+        return pathCost();
+    }
+
+    /**
+     * @return the length of the path found, or Float.POSITIVE_INFINITY. Called by computeCost after the search.
+     */
+    protected float pathCost() {
+        if (anytime) return bestPath == null ? Float.POSITIVE_INFINITY : getPathLength();
+        float cost = distance(finish);
+        if (cost == Float.POSITIVE_INFINITY || !postSmoothingOn) return cost;
+        if (repeatedPostSmooth) return getPathLength(); // endSearch has smoothed the path.
+        return smoothedPathLength();
+    }
+
     @Override
     public void computePath() {
+        if (beginSearch()) {
+            while (expandNext() || (anytime && nextAnytimeRound()));
+            endSearch();
+        }
+    }
+
+    /**
+     * Sets up the memory and the open list, and inserts the start.
+     * computePath, step and runUntil all run a search as beginSearch, expandNext until it returns false, then endSearch.
+     * @return false if there is nothing to search (e.g. the start can see the goal). endSearch is then not called.
+     */
+    protected boolean beginSearch() {
         int totalSize = (graph.sizeX+1) * (graph.sizeY+1);
 
         int start = toOneDimIndex(sx, sy);
         finish = toOneDimIndex(ex, ey);
 
-        pq = new ReusableIndirectHeap(totalSize);
+        pq = initialiseQueue(queueType, totalSize);
         this.initialiseMemory(totalSize, Float.POSITIVE_INFINITY, -1, false);
         
         initialise(start);
+        if (anytime) {
+            heuristicWeight = initialWeight;
+            int nWords = (totalSize >> 6) + 1;
+            if (closedThisRound == null || closedThisRound.length != nWords) {
+                closedThisRound = new long[nWords];
+                inconsistent = new long[nWords];
+            } else {
+                Arrays.fill(closedThisRound, 0L);
+                Arrays.fill(inconsistent, 0L);
+            }
+            if (inconsistentNodes == null) inconsistentNodes = new int[16];
+            nInconsistent = 0;
+            bestPath = null;
+            suboptimalityBound = Float.POSITIVE_INFINITY;
+        }
+        return true;
+    }
+
+    /**
+     * Pops and expands one node.
+     * @return false once the search is over (goal reached or open list exhausted).
+     */
+    protected boolean expandNext() {
+        if (pq.isEmpty()) return false;
+        int current = pq.popMinIndex();
         
-        float lastDist = -1;
-        while (!pq.isEmpty()) {
-            float dist = pq.getMinValue();
-            
-            int current = pq.popMinIndex();
-            
-            //if (Math.abs(dist - lastDist) > 0.01f) { maybeSaveSearchSnapshot(); lastDist = dist;}
+        //if (Math.abs(dist - lastDist) > 0.01f) { maybeSaveSearchSnapshot(); lastDist = dist;}
+        maybeSaveSearchSnapshot();
+        
+        if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
             maybeSaveSearchSnapshot();
-            
-            if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
-                maybeSaveSearchSnapshot();
-                break;
+            return false;
+        }
+        setVisited(current, true);
+
+        int x = toTwoDimX(current);
+        int y = toTwoDimY(current);
+
+        tryRelaxNeighbour(current, x, y, x-1, y-1);
+        tryRelaxNeighbour(current, x, y, x, y-1);
+        tryRelaxNeighbour(current, x, y, x+1, y-1);
+        
+        tryRelaxNeighbour(current, x, y, x-1, y);
+        tryRelaxNeighbour(current, x, y, x+1, y);
+        
+        tryRelaxNeighbour(current, x, y, x-1, y+1);
+        tryRelaxNeighbour(current, x, y, x, y+1);
+        tryRelaxNeighbour(current, x, y, x+1, y+1);
+
+        //maybeSaveSearchSnapshot();
+        return true;
+    }
+
+    /**
+     * Called once after the last expansion.
+     */
+    protected void endSearch() {
+        // A single smoothing pass is measured by smoothedPathLength instead.
+        if (costOnly && !repeatedPostSmooth) return;
+        maybePostSmooth();
+    }
+
+    /**
+     * A sliced search keeps its open list and memory in its search context between slices. By default that is the
+     * calling thread's context, which the next search on the thread takes over. So on one thread, finish (or cancel)
+     * a sliced search before starting another search, or give each interleaved search its own context with
+     * setSearchContext. Searches on a visibility graph also keep the query on the graph per thread, so interleave
+     * those on separate threads. Resuming a search whose state was taken over throws IllegalStateException.
+     */
+    @Override
+    public final boolean step(int maxExpansions) {
+        if (!resumeSearch()) return true;
+        for (int i=0;i<maxExpansions;++i) {
+            if (!expandNext() && !(anytime && nextAnytimeRound())) {
+                completeSearch();
+                return true;
             }
-            setVisited(current, true);
+        }
+        return false;
+    }
 
-            int x = toTwoDimX(current);
-            int y = toTwoDimY(current);
+    /**
+     * See step for the restriction on interleaving sliced searches on one thread.
+     */
+    @Override
+    public final boolean runUntil(long deadlineNanos) {
+        if (!resumeSearch()) return true;
+        do {
+            for (int i=0;i<DEADLINE_CHECK_INTERVAL;++i) {
+                if (!expandNext() && !(anytime && nextAnytimeRound())) {
+                    completeSearch();
+                    return true;
+                }
+            }
+        } while (System.nanoTime() - deadlineNanos < 0);
+        return false;
+    }
 
-            tryRelaxNeighbour(current, x, y, x-1, y-1);
-            tryRelaxNeighbour(current, x, y, x, y-1);
-            tryRelaxNeighbour(current, x, y, x+1, y-1);
-            
-            tryRelaxNeighbour(current, x, y, x-1, y);
-            tryRelaxNeighbour(current, x, y, x+1, y);
-            
-            tryRelaxNeighbour(current, x, y, x-1, y+1);
-            tryRelaxNeighbour(current, x, y, x, y+1);
-            tryRelaxNeighbour(current, x, y, x+1, y+1);
+    /**
+     * The open list and memory are left in the search context, to be reused by the next search.
+     * Release them with SearchContext.clearCurrentThread (or clearMemory on a context given with setSearchContext).
+     */
+    @Override
+    public void cancel() {
+        searchState = SEARCH_CANCELLED;
+    }
 
-            //maybeSaveSearchSnapshot();
+    /**
+     * @return true if cancel was called. getPath then returns an empty path.
+     */
+    protected final boolean searchCancelled() {
+        return searchState == SEARCH_CANCELLED;
+    }
+
+    /**
+     * Starts the search on the first call.
+     * @return true if the search is running and can expand more nodes.
+     */
+    private final boolean resumeSearch() {
+        if (searchState == SEARCH_NOT_STARTED) {
+            searchState = beginSearch() ? SEARCH_RUNNING : SEARCH_FINISHED;
+        } else if (searchState == SEARCH_RUNNING && !ownsSearchState()) {
+            // Between slices, the search context must not be used by other searches. Use setSearchContext to give it its own.
+            throw new IllegalStateException("Search state was reused by another search between slices.");
+        }
+        return searchState == SEARCH_RUNNING;
+    }
+
+    /**
+     * @return true if no other search has taken over this search's state since it started.
+     * Checked when a sliced search resumes. Searches that keep per-query state outside the search context check it too.
+     */
+    protected boolean ownsSearchState() {
+        return ownsMemory();
+    }
+
+    private final void completeSearch() {
+        endSearch();
+        searchState = SEARCH_FINISHED;
+    }
+
+    /**
+     * Called when a round of an anytime search reaches the goal (or runs out of nodes).
+     * Keeps the path, then starts the next round with a lower weight.
+     * @return false if there is no next round.
+     */
+    private final boolean nextAnytimeRound() {
+        float goalDistance = distance(finish);
+        if (goalDistance == Float.POSITIVE_INFINITY) return false; // No path.
+        bestPath = extractPath();
+        if (heuristicWeight <= 1f || goalDistance == 0f) {
+            suboptimalityBound = 1f;
+            return false;
+        }
+
+        // The open list of the next round is the open list of this round, the inconsistent nodes, and the goal.
+        int nNodes = pq.size() + nInconsistent + 1;
+        if (nextRoundNodes == null || nextRoundNodes.length < nNodes) {
+            nextRoundNodes = new int[nNodes*3/2];
+        }
+        int[] nodes = nextRoundNodes;
+        int nOpen = pq.size();
+        for (int i=0;i<nOpen;++i) {
+            nodes[i] = pq.popMinIndex();
+        }
+        System.arraycopy(inconsistentNodes, 0, nodes, nOpen, nInconsistent);
+        nodes[nNodes-1] = finish;
+
+        // ARA* bound: the path is at most the current weight, and at most the goal distance over the
+        // smallest unweighted f-value among the nodes that may still lead to a shorter path.
+        float previousWeight = heuristicWeight;
+        heuristicWeight = 1f;
+        float lowerBound = Float.POSITIVE_INFINITY;
+        for (int i=0;i<nNodes;++i) {
+            int node = nodes[i];
+            float f = distance(node) + heuristic(toTwoDimX(node), toTwoDimY(node));
+            if (f < lowerBound) lowerBound = f;
+        }
+        suboptimalityBound = Math.min(previousWeight, goalDistance / lowerBound);
+
+        heuristicWeight = Math.max(1f, previousWeight - weightDecrement);
+        pq = initialiseQueue(queueType, (graph.sizeX+1) * (graph.sizeY+1));
+        for (int i=0;i<nNodes;++i) {
+            int node = nodes[i];
+            if (distance(node) == Float.POSITIVE_INFINITY) continue;
+            pq.decreaseKey(node, distance(node) + heuristic(toTwoDimX(node), toTwoDimY(node)));
+        }
+        Arrays.fill(closedThisRound, 0L);
+        Arrays.fill(inconsistent, 0L);
+        nInconsistent = 0;
+        return true;
+    }
+
+    /**
+     * @return the ARA* bound on how much longer than necessary the best path found so far is (see setAnytime).
+     * Float.POSITIVE_INFINITY before the first path is found, and 1 once the search is complete.
+     * For JumpPointSearch, this is relative to the shortest 8-neighbour path. The Theta* variants are not optimal
+     * to begin with, so for them this is relative to the paths still reachable through the open list, and is an
+     * estimate rather than a guarantee against the shortest any-angle path.
+     */
+    public final float suboptimalityBound() {
+        return suboptimalityBound;
+    }
+
+    /**
+     * @return true if the node's distance is final and it need not be relaxed again.
+     * In an anytime search, no node is settled, as a later round may still lower its distance.
+     */
+    protected final boolean isSettled(int index) {
+        return !anytime && visited(index);
+    }
+
+    /**
+     * Puts a node whose distance was just lowered into the open list.
+     * In an anytime search, a node already expanded in this round is kept for the next round instead.
+     */
+    protected final void addToOpen(int index, int x, int y) {
+        if (anytime && (closedThisRound[index >> 6] & (1L << index)) != 0) {
+            if ((inconsistent[index >> 6] & (1L << index)) == 0) {
+                inconsistent[index >> 6] |= 1L << index;
+                if (nInconsistent == inconsistentNodes.length) {
+                    inconsistentNodes = Arrays.copyOf(inconsistentNodes, nInconsistent*2);
+                }
+                inconsistentNodes[nInconsistent++] = index;
+            }
+        } else {
+            pq.decreaseKey(index, distance(index) + heuristic(x, y));
         }
-        
-        maybePostSmooth();
     }
     
     protected void tryRelaxNeighbour(int current, int currentX, int currentY, int x, int y) {
@@ -93,14 +388,14 @@ public class AStarStaticMemory extends PathFindingAlgorithm {
             return;
         
         int destination = toOneDimIndex(x,y);
-        if (visited(destination))
+        if (isSettled(destination))
             return;
         if (!graph.neighbourLineOfSight(currentX, currentY, x, y))
             return;
         
         if (relax(current, destination, weight(currentX, currentY, x, y))) {
             // If relaxation is done.
-            pq.decreaseKey(destination, distance(destination) + heuristic(x,y));
+            addToOpen(destination, x, y);
         }
     }
 
@@ -130,7 +425,7 @@ public class AStarStaticMemory extends PathFindingAlgorithm {
     
     protected final void initialise(int s) {
         pq.decreaseKey(s, 0f);
-        Memory.setDistance(s, 0f);
+        memory.setDistance(s, 0f);
     }
     
     
@@ -176,6 +471,26 @@ public class AStarStaticMemory extends PathFindingAlgorithm {
         }
     }
     
+    /**
+     * @return the length of the path after one postSmooth pass, without rewriting any parents.
+     */
+    private float smoothedPathLength() {
+        float length = 0;
+        int current = finish;
+        int next = parent(current);
+        while (next != -1) {
+            int candidate = parent(next);
+            while (candidate != -1 && lineOfSight(current, candidate)) {
+                next = candidate;
+                candidate = parent(candidate);
+            }
+            length += physicalDistance(current, next);
+            current = next;
+            next = parent(current);
+        }
+        return length;
+    }
+
     private boolean postSmooth() {
         boolean didSomething = false;
 
@@ -203,7 +518,48 @@ public class AStarStaticMemory extends PathFindingAlgorithm {
     }
     
 
+    /**
+     * In an anytime search, this is the best path found so far.
+     */
     public int[][] getPath() {
+        if (searchCancelled()) return new int[0][];
+        if (anytime) {
+            if (bestPath == null) return new int[0][];
+            int[][] path = new int[bestPath.length][];
+            for (int i=0;i<path.length;++i) path[i] = bestPath[i].clone();
+            return path;
+        }
+        return extractPath();
+    }
+
+    @Override
+    protected void appendWaypoints(WaypointBuffer out) {
+        if (searchCancelled()) return;
+        if (anytime) {
+            if (bestPath == null) return;
+            for (int i=0;i<bestPath.length;++i) out.add(bestPath[i][0], bestPath[i][1]);
+            return;
+        }
+        int current = finish;
+        while (current != -1) {
+            out.add(nodeX(current), nodeY(current));
+            current = parent(current);
+        }
+        out.reverse();
+    }
+
+    /**
+     * @return the x coordinate of a node of the search. The grid searches number the grid points.
+     */
+    protected int nodeX(int index) {
+        return toTwoDimX(index);
+    }
+
+    protected int nodeY(int index) {
+        return toTwoDimY(index);
+    }
+
+    private int[][] extractPath() {
         int length = pathLength();
         int[][] path = new int[length][];
         int current = finish;
@@ -225,6 +581,15 @@ public class AStarStaticMemory extends PathFindingAlgorithm {
     }
 
     public float getPathLength() {
+        if (searchCancelled()) return -1;
+        if (anytime) {
+            if (bestPath == null) return -1;
+            float pathLength = 0;
+            for (int i=1;i<bestPath.length;++i) {
+                pathLength += graph.distance(bestPath[i-1][0], bestPath[i-1][1], bestPath[i][0], bestPath[i][1]);
+            }
+            return pathLength;
+        }
         int current = finish;
         if (current == -1) return -1;
         
@@ -255,26 +620,27 @@ public class AStarStaticMemory extends PathFindingAlgorithm {
 
     
     protected final int parent(int index) {
-        return Memory.parent(index);
+        return memory.parent(index);
     }
     
     protected final void setParent(int index, int value) {
-        Memory.setParent(index, value);
+        memory.setParent(index, value);
     }
     
     protected final float distance(int index) {
-        return Memory.distance(index);
+        return memory.distance(index);
     }
     
     protected final void setDistance(int index, float value) {
-        Memory.setDistance(index, value);
+        memory.setDistance(index, value);
     }
     
     protected final boolean visited(int index) {
-        return Memory.visited(index);
+        return memory.visited(index);
     }
     
     protected final void setVisited(int index, boolean value) {
-        Memory.setVisited(index, value);
+        memory.setVisited(index, value);
+        if (anytime && value) closedThisRound[index >> 6] |= 1L << index;
     }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package algorithms;
+
+import grid.GridGraph;
+import algorithms.datatypes.PreprocessingCache;
+
+/**
+ * AcceleratedAStar on the search context's memory and open list: float keys, no boxed distances, and no arrays
+ * allocated per query. The closed list is kept in the context's node list, and the max-range table is computed
+ * once per grid (see maxRanges). Finds the same paths as AcceleratedAStar, up to ties.
+ */
+public class AcceleratedAStarStaticMemory extends AStarStaticMemory {
+
+    /**
+     * GridGraph.computeMaxDownLeftRanges, and the version of the grid it was computed for.
+     */
+    private static final class MaxRanges {
+        final int version;
+        final int[][] ranges;
+
+        MaxRanges(int version, int[][] ranges) {
+            this.version = version;
+            this.ranges = ranges;
+        }
+
+        long memoryUsage() {
+            long bytes = 16L*ranges.length;
+            for (int[] row : ranges) bytes += 4L*row.length;
+            return bytes;
+        }
+    }
+
+    private int[][] maxRanges;
+    private int[] closed;
+    private int nClosed;
+
+    public AcceleratedAStarStaticMemory(GridGraph graph, int sx, int sy, int ex, int ey) {
+        super(graph, sx, sy, ex, ey);
+        postSmoothingOn = false;
+    }
+
+    /**
+     * @return the max-range table of the grid, computed if there is none or if the grid has changed since.
+     * Does not lock when the stored table is current.
+     */
+    public static final int[][] maxRanges(GridGraph graph) {
+        MaxRanges stored = PreprocessingCache.getOrBuild(graph, MaxRanges.class, 0,
+                maxRanges -> maxRanges.version == graph.version(),
+                () -> new MaxRanges(graph.version(), graph.computeMaxDownLeftRanges()), // O(size of gridGraph) computation.
+                MaxRanges::memoryUsage);
+        return stored.ranges;
+    }
+
+    /**
+     * Drops the stored max-range tables of all grids.
+     */
+    public static void clearMemory() {
+        PreprocessingCache.clear(MaxRanges.class);
+    }
+
+    @Override
+    protected boolean beginSearch() {
+        maxRanges = maxRanges(graph);
+        closed = searchContext().nodeList(64);
+        nClosed = 0;
+        return super.beginSearch();
+    }
+
+    @Override
+    protected boolean expandNext() {
+        if (pq.isEmpty()) return false;
+        int current = pq.popMinIndex();
+        if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
+            maybeSaveSearchSnapshot();
+            return false;
+        }
+        setVisited(current, true);
+        if (nClosed == closed.length) closed = searchContext().nodeList(nClosed + 1);
+        closed[nClosed++] = current;
+
+        int x = toTwoDimX(current);
+        int y = toTwoDimY(current);
+
+        int maxSquare = detectMaxSquare(x, y);
+        if (maxSquare == 0) {
+            relaxSuccessorsSizeZero(x, y);
+        } else {
+            relaxSuccessors(x, y, maxSquare);
+        }
+
+        maybeSaveSearchSnapshot();
+        return true;
+    }
+
+    private void relaxSuccessorsSizeZero(int x, int y) {
+        boolean bottomLeft = !graph.isBlocked(x-1, y-1);
+        boolean bottomRight = !graph.isBlocked(x, y-1);
+        boolean topLeft = !graph.isBlocked(x-1, y);
+        boolean topRight = !graph.isBlocked(x, y);
+        if (topLeft || topRight)
+            generateVertex(x, y+1);
+        if (bottomLeft || bottomRight)
+            generateVertex(x, y-1);
+        if (bottomLeft || topLeft)
+            generateVertex(x-1, y);
+        if (bottomRight || topRight)
+            generateVertex(x+1, y);
+    }
+
+    private void relaxSuccessors(int x, int y, int squareSize) {
+        generateVertex(x, y+squareSize);
+        generateVertex(x, y-squareSize);
+        generateVertex(x+squareSize, y);
+        generateVertex(x-squareSize, y);
+    }
+
+    private void generateVertex(int x, int y) {
+        int destination = toOneDimIndex(x,y);
+        if (visited(destination))
+            return;
+
+        if (processNode(destination, x, y)) {
+            pq.decreaseKey(destination, distance(destination) + heuristic(x,y));
+        }
+    }
+
+    /**
+     * Relaxes destination from every closed node that has line of sight to it.
+     */
+    private boolean processNode(int destination, int destX, int destY) {
+        boolean changed = false;
+        for (int i=0;i<nClosed;++i) {
+            int fromNode = closed[i];
+            int fromX = toTwoDimX(fromNode);
+            int fromY = toTwoDimY(fromNode);
+            float newFValue = distance(fromNode) + weight(fromX, fromY, destX, destY);
+            if (newFValue < distance(destination)) {
+                if (graph.lineOfSight(fromX, fromY, destX, destY)) {
+                    setDistance(destination, newFValue);
+                    setParent(destination, fromNode);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the size of the max square at (x,y). Can be 0. See AcceleratedAStar.detectMaxSquare.
+     */
+    private int detectMaxSquare(int x, int y) {
+        int lower = 0;
+        int upper = Math.max(Math.abs(x-ex), Math.abs(y-ey));
+        int newUpper;
+        int i = x-y+sizeY;
+        int j = Math.min(x, y);
+        if (upper <= lower) return 0;
+
+        while (true) {
+            newUpper = maxRanges[i][j + lower] - lower;
+            if (newUpper < upper) upper = newUpper;
+            if (upper <= lower) break;
+
+            newUpper = maxRanges[i][j - 1 - lower] + 1 + lower;
+            if (newUpper < upper) upper = newUpper;
+            if (upper <= lower) break;
+
+            lower++;
+            if (upper <= lower) break;
+        }
+        return lower;
+    }
+}
@@ -1,6 +1,7 @@
 package algorithms;
 
 import grid.GridGraph;
+import main.AlgoFunction;
 
 
 public class BasicThetaStar extends AStarStaticMemory {
@@ -15,6 +16,23 @@ public class BasicThetaStar extends AStarStaticMemory {
         return bts;
     }
     
+    /**
+     * Anytime search. See AStarStaticMemory.setAnytime.
+     */
+    public static BasicThetaStar anytime(GridGraph graph, int sx, int sy, int ex, int ey) {
+        BasicThetaStar bts = new BasicThetaStar(graph, sx, sy, ex, ey);
+        bts.setAnytime(ANYTIME_INITIAL_WEIGHT, ANYTIME_WEIGHT_DECREMENT);
+        return bts;
+    }
+
+    public static AlgoFunction anytime(float initialWeight, float weightDecrement) {
+        return (GridGraph graph, int sx, int sy, int ex, int ey) -> {
+            BasicThetaStar bts = new BasicThetaStar(graph, sx, sy, ex, ey);
+            bts.setAnytime(initialWeight, weightDecrement);
+            return bts;
+        };
+    }
+    
     public static BasicThetaStar noHeuristic(GridGraph graph, int sx, int sy, int ex, int ey) {
         BasicThetaStar bts = new BasicThetaStar(graph, sx, sy, ex, ey);
         bts.heuristicWeight = 0;
@@ -27,7 +45,7 @@ public class BasicThetaStar extends AStarStaticMemory {
             return;
         
         int destination = toOneDimIndex(x,y);
-        if (visited(destination))
+        if (isSettled(destination))
             return;
         if (parent(current) != -1 && parent(current) == parent(destination)) // OPTIMISATION: [TI]
             return; // Idea: don't bother trying to relax if parents are equal. using triangle inequality.
@@ -36,7 +54,7 @@ public class BasicThetaStar extends AStarStaticMemory {
         
         if (relax(current, destination, 0)) {
             // If relaxation is done.
-            pq.decreaseKey(destination, distance(destination) + heuristic(x,y));
+            addToOpen(destination, x, y);
         }
     }
 
@@ -0,0 +1,245 @@
+package algorithms;
+
+import algorithms.datatypes.PreprocessingCache;
+import grid.GridGraph;
+
+/**
+ * JPS+ preprocessing for JumpPointSearch: for every grid point and each of the 8 directions, how far the jump
+ * from that point goes, ignoring the goal. A positive distance d means the jump stops at a jump point d steps away.
+ * A negative distance -d means it runs into a wall: the step d is blocked, so the last point reached is d-1 steps away.
+ *
+ * The goal is handled at query time (see jump), so searches find exactly the jump points of JumpPointSearch
+ * without walking the grid. The tables take 32 bytes per grid point, and are stored per GridGraph in the
+ * PreprocessingCache, and rebuilt once the grid has changed.
+ */
+public final class JumpDistances {
+
+    static final int LEFT = 0;
+    static final int RIGHT = 1;
+    static final int DOWN = 2;
+    static final int UP = 3;
+    static final int DOWN_LEFT = 4;
+    static final int DOWN_RIGHT = 5;
+    static final int UP_LEFT = 6;
+    static final int UP_RIGHT = 7;
+
+    private final GridGraph graph;
+    private final int version;
+    private final int sizeXplusOne;
+    // The distance from point (x,y) in direction dir is at distances[8*(y*(sizeX+1) + x) + dir].
+    private final int[] distances;
+
+    private JumpDistances(GridGraph graph) {
+        this.graph = graph;
+        this.version = graph.version();
+        this.sizeXplusOne = graph.sizeX + 1;
+        this.distances = new int[8*sizeXplusOne*(graph.sizeY+1)];
+    }
+
+    /**
+     * @return the tables stored for this grid, built if there are none or if the grid has changed since.
+     * Does not lock when the stored tables are current. Only searches on the same grid wait for a rebuild.
+     */
+    public static final JumpDistances getStored(GridGraph graph) {
+        return PreprocessingCache.getOrBuild(graph, JumpDistances.class, 0,
+                stored -> stored.version == graph.version(), () -> build(graph), JumpDistances::memoryUsage);
+    }
+
+    private static final JumpDistances build(GridGraph graph) {
+        JumpDistances jumpDistances = new JumpDistances(graph);
+        jumpDistances.computeStraight();
+        jumpDistances.computeDiagonal();
+        return jumpDistances;
+    }
+
+    /**
+     * Drops the stored tables of all grids.
+     */
+    public static void clearMemory() {
+        PreprocessingCache.clear(JumpDistances.class);
+    }
+
+    public final long memoryUsage() {
+        return 4L*distances.length;
+    }
+
+    /**
+     * The same as JumpPointSearch's jump from (x,y) in direction (dx,dy) towards the goal (ex,ey), in O(1).
+     * @return the index of the jump point (or the goal) reached, or -1 if the jump runs into a wall.
+     */
+    final int jump(int x, int y, int dx, int dy, int ex, int ey) {
+        if (dx < 0) {
+            if (dy < 0) return jumpDiagonal(x, y, -1, -1, DOWN_LEFT, LEFT, DOWN, ex, ey);
+            if (dy > 0) return jumpDiagonal(x, y, -1, 1, UP_LEFT, LEFT, UP, ex, ey);
+            return jumpStraight(x, y, -1, 0, LEFT, ex, ey);
+        } else if (dx > 0) {
+            if (dy < 0) return jumpDiagonal(x, y, 1, -1, DOWN_RIGHT, RIGHT, DOWN, ex, ey);
+            if (dy > 0) return jumpDiagonal(x, y, 1, 1, UP_RIGHT, RIGHT, UP, ex, ey);
+            return jumpStraight(x, y, 1, 0, RIGHT, ex, ey);
+        } else {
+            if (dy < 0) return jumpStraight(x, y, 0, -1, DOWN, ex, ey);
+            return jumpStraight(x, y, 0, 1, UP, ex, ey);
+        }
+    }
+
+    private final int jumpStraight(int x, int y, int dx, int dy, int dir, int ex, int ey) {
+        int distance = distances[8*(y*sizeXplusOne + x) + dir];
+        int goalSteps = stepsTo(x, y, dx, dy, ex, ey);
+        if (goalSteps > 0 && goalSteps <= reach(distance)) return graph.toOneDimIndex(ex, ey);
+        if (distance < 0) return -1;
+        return graph.toOneDimIndex(x + distance*dx, y + distance*dy);
+    }
+
+    /**
+     * The diagonal jump stops at the first point whose straight jumps (horizontal, then vertical) reach a jump point
+     * or the goal. The table covers the jump points. The goal can only be reached from the points in the
+     * goal's row or column, so only those two are checked.
+     */
+    private final int jumpDiagonal(int x, int y, int dx, int dy, int dir, int horizontal, int vertical, int ex, int ey) {
+        int distance = distances[8*(y*sizeXplusOne + x) + dir];
+        int maxSteps = reach(distance);
+
+        int best = Integer.MAX_VALUE;
+        // The goal is on the horizontal jump from the point in its row.
+        int k = (ey - y)*dy;
+        if (k > 0 && k <= maxSteps) {
+            int px = x + k*dx;
+            int goalSteps = (ex - px)*dx;
+            if (goalSteps == 0 || goalSteps > 0 && goalSteps <= reach(distances[8*(ey*sizeXplusOne + px) + horizontal])) {
+                best = k;
+            }
+        }
+        // The goal is on the vertical jump from the point in its column.
+        k = (ex - x)*dx;
+        if (k > 0 && k < best && k <= maxSteps) {
+            int py = y + k*dy;
+            int goalSteps = (ey - py)*dy;
+            if (goalSteps == 0 || goalSteps > 0 && goalSteps <= reach(distances[8*(py*sizeXplusOne + ex) + vertical])) {
+                best = k;
+            }
+        }
+        if (best != Integer.MAX_VALUE) return graph.toOneDimIndex(x + best*dx, y + best*dy);
+        if (distance < 0) return -1;
+        return graph.toOneDimIndex(x + distance*dx, y + distance*dy);
+    }
+
+    /**
+     * @return how many steps in direction (dx,dy) (one of them 0) lead from (x,y) to (ex,ey), or 0 if none do.
+     */
+    private static final int stepsTo(int x, int y, int dx, int dy, int ex, int ey) {
+        if (dx == 0) {
+            if (ex != x) return 0;
+            return Math.max(0, (ey - y)*dy);
+        } else {
+            if (ey != y) return 0;
+            return Math.max(0, (ex - x)*dx);
+        }
+    }
+
+    /**
+     * @return the number of steps of a jump with the given table distance that reach a point.
+     */
+    private static final int reach(int distance) {
+        return distance > 0 ? distance : -distance - 1;
+    }
+
+    /**
+     * Each point's distance is one more than the next point's, unless the step to the next point
+     * is blocked (-1) or ends at a jump point (1). Each direction is swept from the far end.
+     */
+    private final void computeStraight() {
+        int sizeX = graph.sizeX;
+        int sizeY = graph.sizeY;
+        for (int y=0;y<=sizeY;++y) {
+            set(0, y, LEFT, -1);
+            for (int x=1;x<=sizeX;++x) {
+                int nx = x-1;
+                boolean above = graph.isBlocked(nx, y);
+                boolean below = graph.isBlocked(nx, y-1);
+                if (above && below) set(x, y, LEFT, -1);
+                else if (above && !graph.isBlocked(nx-1, y) || below && !graph.isBlocked(nx-1, y-1)) set(x, y, LEFT, 1);
+                else set(x, y, LEFT, extend(get(nx, y, LEFT)));
+            }
+            set(sizeX, y, RIGHT, -1);
+            for (int x=sizeX-1;x>=0;--x) {
+                int nx = x+1;
+                boolean above = graph.isBlocked(nx-1, y);
+                boolean below = graph.isBlocked(nx-1, y-1);
+                if (above && below) set(x, y, RIGHT, -1);
+                else if (above && !graph.isBlocked(nx, y) || below && !graph.isBlocked(nx, y-1)) set(x, y, RIGHT, 1);
+                else set(x, y, RIGHT, extend(get(nx, y, RIGHT)));
+            }
+        }
+        for (int x=0;x<=sizeX;++x) {
+            set(x, 0, DOWN, -1);
+            for (int y=1;y<=sizeY;++y) {
+                int ny = y-1;
+                boolean right = graph.isBlocked(x, ny);
+                boolean left = graph.isBlocked(x-1, ny);
+                if (right && left) set(x, y, DOWN, -1);
+                else if (right && !graph.isBlocked(x, ny-1) || left && !graph.isBlocked(x-1, ny-1)) set(x, y, DOWN, 1);
+                else set(x, y, DOWN, extend(get(x, ny, DOWN)));
+            }
+            set(x, sizeY, UP, -1);
+            for (int y=sizeY-1;y>=0;--y) {
+                int ny = y+1;
+                boolean right = graph.isBlocked(x, ny-1);
+                boolean left = graph.isBlocked(x-1, ny-1);
+                if (right && left) set(x, y, UP, -1);
+                else if (right && !graph.isBlocked(x, ny) || left && !graph.isBlocked(x-1, ny)) set(x, y, UP, 1);
+                else set(x, y, UP, extend(get(x, ny, UP)));
+            }
+        }
+    }
+
+    /**
+     * A diagonal step is blocked if the tile it crosses is. It ends at a jump point if either straight jump
+     * from the next point (goal aside) does.
+     */
+    private final void computeDiagonal() {
+        int sizeX = graph.sizeX;
+        int sizeY = graph.sizeY;
+        for (int y=0;y<=sizeY;++y) {
+            for (int x=0;x<=sizeX;++x) {
+                computeDiagonal(x, y, -1, -1, DOWN_LEFT, graph.isBlocked(x-1, y-1), LEFT, DOWN);
+            }
+            for (int x=sizeX;x>=0;--x) {
+                computeDiagonal(x, y, 1, -1, DOWN_RIGHT, graph.isBlocked(x, y-1), RIGHT, DOWN);
+            }
+        }
+        for (int y=sizeY;y>=0;--y) {
+            for (int x=0;x<=sizeX;++x) {
+                computeDiagonal(x, y, -1, 1, UP_LEFT, graph.isBlocked(x-1, y), LEFT, UP);
+            }
+            for (int x=sizeX;x>=0;--x) {
+                computeDiagonal(x, y, 1, 1, UP_RIGHT, graph.isBlocked(x, y), RIGHT, UP);
+            }
+        }
+    }
+
+    private final void computeDiagonal(int x, int y, int dx, int dy, int dir, boolean blocked, int horizontal, int vertical) {
+        if (blocked) {
+            set(x, y, dir, -1);
+            return;
+        }
+        int nx = x+dx;
+        int ny = y+dy;
+        if (get(nx, ny, horizontal) > 0 || get(nx, ny, vertical) > 0) {
+            set(x, y, dir, 1);
+        } else {
+            set(x, y, dir, extend(get(nx, ny, dir)));
+        }
+    }
+
+    private static final int extend(int distance) {
+        return distance > 0 ? distance+1 : distance-1;
+    }
+
+    private final int get(int x, int y, int dir) {
+        return distances[8*(y*sizeXplusOne + x) + dir];
+    }
+
+    private final void set(int x, int y, int dir, int distance) {
+        distances[8*(y*sizeXplusOne + x) + dir] = distance;
+    }
+}
@@ -1,11 +1,13 @@
 package algorithms;
 import grid.GridGraph;
-import algorithms.priorityqueue.ReusableIndirectHeap;
+import main.AlgoFunction;
 
 public final class JumpPointSearch extends AStarStaticMemory {
     private final int[] neighboursdX;
     private final int[] neighboursdY;
     private int neighbourCount;
+    private boolean usePrecomputedJumps = false;
+    private JumpDistances jumpDistances;
 
     public JumpPointSearch(GridGraph graph, int sx, int sy, int ex, int ey) {
         super(graph, sx, sy, ex, ey);
@@ -27,47 +29,79 @@ public final class JumpPointSearch extends AStarStaticMemory {
         return algo;
     }
 
+    /**
+     * JPS+: jumps are looked up in the grid's JumpDistances tables instead of walking the grid.
+     * Finds the same paths as JumpPointSearch.
+     */
+    public static final JumpPointSearch plus(GridGraph graph, int sx, int sy, int ex, int ey) {
+        JumpPointSearch algo = new JumpPointSearch(graph, sx, sy, ex, ey);
+        algo.usePrecomputedJumps = true;
+        return algo;
+    }
+
+    public static final JumpPointSearch plusPostSmooth(GridGraph graph, int sx, int sy, int ex, int ey) {
+        JumpPointSearch algo = postSmooth(graph, sx, sy, ex, ey);
+        algo.usePrecomputedJumps = true;
+        return algo;
+    }
+
+    public static final JumpPointSearch plusRepeatedPostSmooth(GridGraph graph, int sx, int sy, int ex, int ey) {
+        JumpPointSearch algo = repeatedPostSmooth(graph, sx, sy, ex, ey);
+        algo.usePrecomputedJumps = true;
+        return algo;
+    }
+
+    /**
+     * Anytime search. See AStarStaticMemory.setAnytime.
+     */
+    public static final JumpPointSearch anytime(GridGraph graph, int sx, int sy, int ex, int ey) {
+        JumpPointSearch algo = new JumpPointSearch(graph, sx, sy, ex, ey);
+        algo.setAnytime(ANYTIME_INITIAL_WEIGHT, ANYTIME_WEIGHT_DECREMENT);
+        return algo;
+    }
+
+    public static final AlgoFunction anytime(float initialWeight, float weightDecrement) {
+        return (GridGraph graph, int sx, int sy, int ex, int ey) -> {
+            JumpPointSearch algo = new JumpPointSearch(graph, sx, sy, ex, ey);
+            algo.setAnytime(initialWeight, weightDecrement);
+            return algo;
+        };
+    }
+
     @Override
-    public final void computePath() {
+    protected boolean beginSearch() {
         neighbourCount = 0;
-        
-        int totalSize = (graph.sizeX+1) * (graph.sizeY+1);
+        if (usePrecomputedJumps) jumpDistances = JumpDistances.getStored(graph);
+        return super.beginSearch();
+    }
 
-        int start = graph.toOneDimIndex(sx, sy);
-        finish = graph.toOneDimIndex(ex, ey);
-        
-        pq = new ReusableIndirectHeap(totalSize);
-        this.initialiseMemory(totalSize, Float.POSITIVE_INFINITY, -1, false);
-        
-        initialise(start);
-        
-        while (!pq.isEmpty()) {
-            int current = pq.popMinIndex();
-            if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
-                maybeSaveSearchSnapshot();
-                break;
-            }
-            setVisited(current, true);
+    @Override
+    protected boolean expandNext() {
+        if (pq.isEmpty()) return false;
+        int current = pq.popMinIndex();
+        if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
+            maybeSaveSearchSnapshot();
+            return false;
+        }
+        setVisited(current, true);
 
-            int x = graph.toTwoDimX(current);
-            int y = graph.toTwoDimY(current);
-            
-            computeNeighbours(current, x, y); // stores neighbours in attribute.
+        int x = graph.toTwoDimX(current);
+        int y = graph.toTwoDimY(current);
+        
+        computeNeighbours(current, x, y); // stores neighbours in attribute.
 
-            for (int i=0;i<neighbourCount;++i) {
-                int dx = neighboursdX[i];
-                int dy = neighboursdY[i];
+        for (int i=0;i<neighbourCount;++i) {
+            int dx = neighboursdX[i];
+            int dy = neighboursdY[i];
 
-                int successor = jump(x, y, dx, dy);
-                if (successor != -1) {
-                    tryRelax(current, x, y, successor);
-                }
+            int successor = jumpDistances != null ? jumpDistances.jump(x, y, dx, dy, ex, ey) : jump(x, y, dx, dy);
+            if (successor != -1) {
+                tryRelax(current, x, y, successor);
             }
-            
-            maybeSaveSearchSnapshot();
         }
-
-        maybePostSmooth();
+        
+        maybeSaveSearchSnapshot();
+        return true;
     }
     
     private final int jump(int x, int y, int dx, int dy) {
@@ -347,14 +381,19 @@ public final class JumpPointSearch extends AStarStaticMemory {
     }
 
     private final void tryRelax(int current, int currX, int currY, int destination) {
-        if (visited(destination)) return;
+        if (isSettled(destination)) return;
 
         int destX = graph.toTwoDimX(destination);
         int destY = graph.toTwoDimY(destination);
         
         if (relax(current, destination, graph.octileDistance(currX, currY, destX, destY))) {
             // If relaxation is done.
-            pq.decreaseKey(destination, distance(destination) + graph.octileDistance(destX, destY, ex, ey));
+            addToOpen(destination, destX, destY);
         }
     }
+
+    @Override
+    protected float heuristic(int x, int y) {
+        return heuristicWeight*graph.octileDistance(x, y, ex, ey);
+    }
 }
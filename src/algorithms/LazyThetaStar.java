@@ -1,7 +1,7 @@
 package algorithms;
 
 import grid.GridGraph;
-import algorithms.priorityqueue.ReusableIndirectHeap;
+import main.AlgoFunction;
 
 public class LazyThetaStar extends BasicThetaStar {
 
@@ -9,54 +9,59 @@ public class LazyThetaStar extends BasicThetaStar {
         super(graph, sx, sy, ex, ey);
     }
 
-    @Override
-    public void computePath() {
-        int totalSize = (graph.sizeX+1) * (graph.sizeY+1);
+    /**
+     * Anytime search. See AStarStaticMemory.setAnytime.
+     */
+    public static LazyThetaStar anytime(GridGraph graph, int sx, int sy, int ex, int ey) {
+        LazyThetaStar algo = new LazyThetaStar(graph, sx, sy, ex, ey);
+        algo.setAnytime(ANYTIME_INITIAL_WEIGHT, ANYTIME_WEIGHT_DECREMENT);
+        return algo;
+    }
 
-        int start = toOneDimIndex(sx, sy);
-        finish = toOneDimIndex(ex, ey);
+    public static AlgoFunction anytime(float initialWeight, float weightDecrement) {
+        return (GridGraph graph, int sx, int sy, int ex, int ey) -> {
+            LazyThetaStar algo = new LazyThetaStar(graph, sx, sy, ex, ey);
+            algo.setAnytime(initialWeight, weightDecrement);
+            return algo;
+        };
+    }
 
-        pq = new ReusableIndirectHeap(totalSize);
-        this.initialiseMemory(totalSize, Float.POSITIVE_INFINITY, -1, false);
-        
-        initialise(start);
+    @Override
+    protected boolean expandNext() {
+        if (pq.isEmpty()) return false;
+        int current = pq.popMinIndex();
+        int x = toTwoDimX(current);
+        int y = toTwoDimY(current);
         
-        while (!pq.isEmpty()) {
-            int current = pq.popMinIndex();
-            int x = toTwoDimX(current);
-            int y = toTwoDimY(current);
-            
-            int parentIndex = parent(current);
-            if (parentIndex != -1) {
-                int parX = toTwoDimX(parentIndex);
-                int parY = toTwoDimY(parentIndex);
-
-                if (!graph.lineOfSight(x,y,parX,parY)) {
-                    findPath1Parent(current, x, y);
-                }
-            }
+        int parentIndex = parent(current);
+        if (parentIndex != -1) {
+            int parX = toTwoDimX(parentIndex);
+            int parY = toTwoDimY(parentIndex);
 
-            if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
-                maybeSaveSearchSnapshot();
-                break;
+            if (!graph.lineOfSight(x,y,parX,parY)) {
+                findPath1Parent(current, x, y);
             }
-            setVisited(current, true);
+        }
 
-            tryRelaxNeighbour(current, x, y, x-1, y-1);
-            tryRelaxNeighbour(current, x, y, x, y-1);
-            tryRelaxNeighbour(current, x, y, x+1, y-1);
+        if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
+            maybeSaveSearchSnapshot();
+            return false;
+        }
+        setVisited(current, true);
 
-            tryRelaxNeighbour(current, x, y, x-1, y);
-            tryRelaxNeighbour(current, x, y, x+1, y);
+        tryRelaxNeighbour(current, x, y, x-1, y-1);
+        tryRelaxNeighbour(current, x, y, x, y-1);
+        tryRelaxNeighbour(current, x, y, x+1, y-1);
 
-            tryRelaxNeighbour(current, x, y, x-1, y+1);
-            tryRelaxNeighbour(current, x, y, x, y+1);
-            tryRelaxNeighbour(current, x, y, x+1, y+1);
+        tryRelaxNeighbour(current, x, y, x-1, y);
+        tryRelaxNeighbour(current, x, y, x+1, y);
 
-            maybeSaveSearchSnapshot();
-        }
+        tryRelaxNeighbour(current, x, y, x-1, y+1);
+        tryRelaxNeighbour(current, x, y, x, y+1);
+        tryRelaxNeighbour(current, x, y, x+1, y+1);
 
-        maybePostSmooth();
+        maybeSaveSearchSnapshot();
+        return true;
     }
 
     private void findPath1Parent(int current, int x, int y) {
@@ -84,7 +89,10 @@ public class LazyThetaStar extends BasicThetaStar {
     protected boolean relax(int u, int v, float weightUV) {
         // return true iff relaxation is done.
         if (parent(u) != -1) {
-            u = parent(u);
+            // An expanded node keeps a parent it can see. v can only have been expanded in an anytime search.
+            if (!visited(v) || lineOfSight(parent(u), v)) {
+                u = parent(u);
+            }
         }
 
         float newWeight = distance(u) + physicalDistance(u, v);
@@ -3,13 +3,20 @@ package algorithms;
 import grid.GridGraph;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import algorithms.datatypes.Memory;
+import algorithms.datatypes.SearchContext;
 import algorithms.datatypes.SnapshotItem;
+import algorithms.datatypes.WaypointBuffer;
+import algorithms.priorityqueue.IndirectPriorityQueue;
+import algorithms.priorityqueue.PriorityQueueType;
+import algorithms.priorityqueue.ReusableIndirectHeap;
 
 /**
  * ABSTRACT<br>
@@ -27,15 +34,18 @@ public abstract class PathFindingAlgorithm {
     protected final int sizeXplusOne;
     protected final int sizeY;
 
-    protected final int sx;
-    protected final int sy;
-    protected final int ex;
-    protected final int ey;
+    // Not final, as reuseFor points the algorithm at another query.
+    protected int sx;
+    protected int sy;
+    protected int ex;
+    protected int ey;
     
     private int ticketNumber = -1;
     
     private boolean recordingMode;
     private boolean usingStaticMemory = false;
+    private SearchContext searchContext;
+    protected Memory memory;
 
     public PathFindingAlgorithm(GridGraph graph, int sizeX, int sizeY,
             int sx, int sy, int ex, int ey) {
@@ -47,18 +57,79 @@ public abstract class PathFindingAlgorithm {
         this.sy = sy;
         this.ex = ex;
         this.ey = ey;
-        snapshotList = new ArrayList<>();
+    }
+
+    /**
+     * Points this algorithm at another query on the same graph, keeping its scratch state (and its settings,
+     * such as post-smoothing), so that one object can answer many queries. See main.QueryEngine.
+     * The result of the previous query is lost. Not for use while a time-sliced search is running.
+     * @return false if this algorithm cannot be reused. Construct a new one instead.
+     */
+    public boolean reuseFor(int sx, int sy, int ex, int ey) {
+        return false;
+    }
+
+    /**
+     * Sets the start and goal for reuseFor. Snapshots recorded for the previous query are kept by whoever retrieved them.
+     */
+    protected final void setQuery(int sx, int sy, int ex, int ey) {
+        this.sx = sx;
+        this.sy = sy;
+        this.ex = ex;
+        this.ey = ey;
+        snapshotList = null;
+        snapshotCountdown = 0;
+    }
+    
+    /**
+     * Runs this search in the given context instead of the calling thread's own.
+     * Must be called before computePath.
+     */
+    public void setSearchContext(SearchContext searchContext) {
+        this.searchContext = searchContext;
+    }
+    
+    protected final SearchContext searchContext() {
+        if (searchContext == null) searchContext = SearchContext.forCurrentThread();
+        return searchContext;
     }
     
     protected void initialiseMemory(int size, float defaultDistance, int defaultParent, boolean defaultVisited) {
         usingStaticMemory = true;
-        ticketNumber = Memory.initialise(size, defaultDistance, defaultParent, defaultVisited);
+        memory = searchContext().memory;
+        ticketNumber = memory.initialise(size, defaultDistance, defaultParent, defaultVisited);
+    }
+    
+    /**
+     * @return true if no other search has initialised this search's memory since it did.
+     */
+    protected final boolean ownsMemory() {
+        return usingStaticMemory && memory.currentTicket() == ticketNumber;
+    }
+    
+    /**
+     * @return the context's indirect heap, emptied for a search over memorySize items.
+     */
+    protected final ReusableIndirectHeap initialiseHeap(int memorySize) {
+        ReusableIndirectHeap heap = searchContext().heap;
+        heap.reset(memorySize);
+        return heap;
+    }
+
+    /**
+     * Like initialiseHeap, for algorithms that let their priority queue be chosen.
+     */
+    protected final IndirectPriorityQueue initialiseQueue(PriorityQueueType type, int memorySize) {
+        IndirectPriorityQueue queue = searchContext().queue(type);
+        queue.reset(memorySize);
+        return queue;
     }
     
     /**
      * Call to start tracing the algorithm's operation.
      */
     public void startRecording() {
+        snapshots();
         recordingMode = true;
     }
     
@@ -73,6 +144,12 @@ public abstract class PathFindingAlgorithm {
      * @return retrieve the trace of the algorithm that has been recorded.
      */
     public ArrayList<List<SnapshotItem>> retrieveSnapshotList() {
+        return snapshots();
+    }
+
+    // Only recorded searches need a snapshot list.
+    private ArrayList<List<SnapshotItem>> snapshots() {
+        if (snapshotList == null) snapshotList = new ArrayList<>();
         return snapshotList;
     }
     
@@ -81,10 +158,116 @@ public abstract class PathFindingAlgorithm {
      */
     public abstract void computePath();
 
+    /**
+     * Chooses the priority queue for the open list. RADIX is only exact for searches whose popped keys never decrease.
+     * Call before the search starts.
+     */
+    public void setPriorityQueue(PriorityQueueType type) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support choosing its priority queue.");
+    }
+
+    /**
+     * Time-sliced search: runs at most maxExpansions more expansions of the search, which keeps its state between calls.
+     * The first call starts the search. Do not mix with computePath.
+     * The search's working memory may be shared with other searches on the same thread (see SearchContext).
+     * Then interleaving it with another search throws IllegalStateException on the next slice.
+     * @return true once the search has finished (or was cancelled). getPath can then be called.
+     */
+    public boolean step(int maxExpansions) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support time-sliced search.");
+    }
+
+    /**
+     * Time-sliced search: expands nodes until the search finishes or System.nanoTime() passes deadlineNanos.
+     * The deadline is checked every few expansions, so a slice may overrun it by a few expansions.
+     * @return true once the search has finished (or was cancelled).
+     */
+    public boolean runUntil(long deadlineNanos) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support time-sliced search.");
+    }
+
+    /**
+     * Stops a time-sliced search for good. step and runUntil return true from then on, and no path is reported.
+     */
+    public void cancel() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support time-sliced search.");
+    }
+
+    /**
+     * Cost-only query: runs the search and returns the length of the path it finds, skipping the work that is
+     * only needed to report the path itself where the algorithm can. Call instead of computePath.
+     * getPath may not return the full path afterwards.
+     * @return the path length, 0 if the start is the goal, or Float.POSITIVE_INFINITY if there is no path.
+     */
+    public float computeCost() {
+        computePath();
+        int[][] path = getPath();
+        if (path.length <= 1) {
+            return (sx == ex && sy == ey) ? 0f : Float.POSITIVE_INFINITY;
+        }
+        float cost = 0;
+        for (int i=1;i<path.length;++i) {
+            cost += graph.distance(path[i-1][0], path[i-1][1], path[i][0], path[i][1]);
+        }
+        return cost;
+    }
+
     /**
      * @return retrieve the path computed by the algorithm
      */
     public abstract int[][] getPath();
+
+    /**
+     * Writes the path into buffer from offset, as x0, y0, x1, y1, ..., without the int[][] of getPath.
+     * Repeated waypoints, and waypoints in the middle of a straight segment, are left out.
+     * Does not allocate for the algorithms that override appendWaypoints, once the context's buffer is large enough.
+     * @return the number of waypoints written. Fewer than 2 if there is no path.
+     * @throws IndexOutOfBoundsException if the buffer is too small. Nothing is written then.
+     */
+    public final int writePath(int[] buffer, int offset) {
+        WaypointBuffer waypoints = collectWaypoints();
+        waypoints.copyTo(buffer, offset);
+        return waypoints.size();
+    }
+
+    /**
+     * Same as writePath(int[], int), at the buffer's position, which is advanced.
+     * @throws java.nio.BufferOverflowException if the buffer is too small. Nothing is written then.
+     */
+    public final int writePath(IntBuffer buffer) {
+        WaypointBuffer waypoints = collectWaypoints();
+        waypoints.copyTo(buffer);
+        return waypoints.size();
+    }
+
+    /**
+     * Same as writePath(int[], int), as ints in the buffer's byte order at its position, which is advanced.
+     * For direct buffers shared with native code.
+     * @throws java.nio.BufferOverflowException if the buffer is too small. Nothing is written then.
+     */
+    public final int writePath(ByteBuffer buffer) {
+        WaypointBuffer waypoints = collectWaypoints();
+        waypoints.copyTo(buffer);
+        return waypoints.size();
+    }
+
+    private WaypointBuffer collectWaypoints() {
+        WaypointBuffer waypoints = searchContext().waypoints;
+        waypoints.clear();
+        appendWaypoints(waypoints);
+        return waypoints;
+    }
+
+    /**
+     * Adds the waypoints of the path to out, from either end (reverse out if added from the goal).
+     * The default goes through getPath. Override to walk the search's own structures instead.
+     */
+    protected void appendWaypoints(WaypointBuffer out) {
+        int[][] path = getPath();
+        for (int i=0;i<path.length;++i) {
+            out.add(path[i][0], path[i][1]);
+        }
+    }
     
     /**
      * @return directly get path length without computing path.
@@ -112,7 +295,7 @@ public abstract class PathFindingAlgorithm {
     
     protected final void maybeSaveSearchSnapshot() {
         if (recordingMode) {
-            if (usingStaticMemory && ticketNumber != Memory.currentTicket())
+            if (usingStaticMemory && ticketNumber != memory.currentTicket())
                 throw new UnsupportedOperationException("Ticket does not match!");
             
             saveSearchSnapshot();
@@ -135,11 +318,11 @@ public abstract class PathFindingAlgorithm {
         }
         snapshotCountdown = SNAPSHOT_INTERVAL;
         
-        snapshotList.add(computeSearchSnapshot());
+        snapshots().add(computeSearchSnapshot());
     }
 
     protected final void addSnapshot(List<SnapshotItem> snapshotItemList) {
-        snapshotList.add(snapshotItemList);
+        snapshots().add(snapshotItemList);
     }
     
     protected int goalParentIndex() {
@@ -147,17 +330,17 @@ public abstract class PathFindingAlgorithm {
     }
     
     private int getParent(int index) {
-        if (usingStaticMemory) return Memory.parent(index);
+        if (usingStaticMemory) return memory.parent(index);
         else return parent[index];
     }
     
     private void setParent(int index, int value) {
-        if (usingStaticMemory) Memory.setParent(index, value);
+        if (usingStaticMemory) memory.setParent(index, value);
         else parent[index] = value;
     }
     
     protected int getSize() {
-        if (usingStaticMemory) return Memory.size();
+        if (usingStaticMemory) return memory.size();
         else return parent.length;
     }
     
@@ -222,6 +405,6 @@ public abstract class PathFindingAlgorithm {
     }
     
     protected void inheritSnapshotListFrom(PathFindingAlgorithm algo) {
-        this.snapshotList = algo.snapshotList;
+        this.snapshotList = algo.snapshots();
     }
 }
@@ -9,6 +9,7 @@ import java.util.List;
 
 import algorithms.datatypes.Point;
 import algorithms.datatypes.SnapshotItem;
+import algorithms.datatypes.WaypointBuffer;
 import algorithms.priorityqueue.IndirectHeap;
 import algorithms.visibilitygraph.Edge;
 import algorithms.visibilitygraph.VisibilityGraph;
@@ -199,6 +200,17 @@ public class VisibilityGraphAlgorithm extends AStar {
         return path;
     }
 
+    @Override
+    protected void appendWaypoints(WaypointBuffer out) {
+        int current = visibilityGraph.endNode();
+        while (current != -1) {
+            Point point = visibilityGraph.coordinateOf(current);
+            out.add(point.x, point.y);
+            current = parent[current];
+        }
+        out.reverse();
+    }
+
     @Override
     protected int goalParentIndex() {
         return visibilityGraph.endNode();
@@ -4,39 +4,80 @@ import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
 
-import java.awt.geom.Point2D;
-
 import grid.GridGraph;
+import algorithms.datatypes.PreprocessingCache;
 import algorithms.datatypes.SnapshotItem;
+import algorithms.datatypes.WaypointBuffer;
 import algorithms.PathFindingAlgorithm;
+import algorithms.priorityqueue.PriorityQueueType;
+import main.AlgoFunction;
 
 public class Anya16 extends PathFindingAlgorithm {
 
     private static final int RES = 10000;
     public ArrayList<SnapshotItem> currSnapshot = new ArrayList<>();
     
-    private static AnyaSearch anya = null;
-    private static GridGraph storedGraph = null;
+    private final AnyaSearch anya;
+    // The open list. See AnyaSearch.set_queue.
+    private PriorityQueueType queueType = PriorityQueueType.FIBONACCI;
+
+    // The path as x0, y0, x1, y1, ... Copied out of the search, whose nodes are reused by the thread's next query.
+    private int[] pathCoordinates = new int[16];
+    private int pathSize = 0;
 
-    private Path<AnyaNode> pathStartNode = null;
+    // Time-sliced search. See step and runUntil.
+    private static final int SEARCH_NOT_STARTED = 0;
+    private static final int SEARCH_RUNNING = 1;
+    private static final int SEARCH_FINISHED = 2;
+    private static final int SEARCH_CANCELLED = 3;
+    private static final int DEADLINE_CHECK_INTERVAL = 16;
+    private int searchState = SEARCH_NOT_STARTED;
+    private final BitpackedGrid bitpackedGrid;
+    private final AnyaNode startNode;
+    private final AnyaNode targetNode;
+    // The thread's search may be used by other Anya16 objects between slices, so a sliced search has its own.
+    private AnyaSearch slicedSearch;
+
+    // Each thread has its own search over the shared grid, rebuilt when the thread moves to another grid.
+    private static final class ThreadSearch {
+        BitpackedGrid grid;
+        AnyaSearch search;
+    }
+    private static final ThreadLocal<ThreadSearch> threadSearch = ThreadLocal.withInitial(ThreadSearch::new);
 
-    private static void initialise(GridGraph graph) {
-        if (graph == storedGraph) return;
+    // The bitpacked grid is built once per grid and kept in the PreprocessingCache.
+    // An Anya16 must be constructed and run on the same thread.
+    private static ThreadSearch initialise(GridGraph graph) {
+        ThreadSearch current = threadSearch.get();
         try {
-            BitpackedGrid grid = new BitpackedGrid(graph);
-            Anya16.anya = new AnyaSearch(new AnyaExpansionPolicy(grid));
-            Anya16.storedGraph = graph;
-            
+            BitpackedGrid grid = PreprocessingCache.get(graph, Anya16.class);
+            if (grid == null) {
+                grid = new BitpackedGrid(graph);
+                PreprocessingCache.put(graph, Anya16.class, grid, estimateMemoryUsage(graph));
+            }
+            if (current.grid != grid) {
+                current.search = new AnyaSearch(new AnyaExpansionPolicy(grid));
+                current.grid = grid;
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        anya.isRecording = false;
+        current.search.isRecording = false;
+        return current;
+    }
+
+    // The four bit arrays of the BitpackedGrid.
+    private static long estimateMemoryUsage(GridGraph graph) {
+        long widthInWords = (graph.sizeX >> 5) + 1;
+        return 4 * (16 + (graph.sizeY+4)*widthInWords*4);
     }
 
     public Anya16(GridGraph graph, int sx, int sy, int ex, int ey) {
         super(graph, graph.sizeX, graph.sizeY, sx, sy, ex, ey);
-        initialise(graph);
+        ThreadSearch current = initialise(graph);
+        anya = current.search;
+        bitpackedGrid = current.grid;
 
         anya.snapshotExpand = (a) -> snapshotExpand(a);
         anya.snapshotInsert = (a) -> snapshotInsert(a);
@@ -51,40 +92,165 @@ public class Anya16 extends PathFindingAlgorithm {
         start.interval.init(sx, sx, sy);
         target.root.setLocation(ex, ey);
         target.interval.init(ex, ex, ey);
+        startNode = start;
+        targetNode = target;
+    }
+
+    /**
+     * Anya16 with another priority queue instead of the Fibonacci heap.
+     */
+    public static AlgoFunction withQueue(PriorityQueueType queueType) {
+        return (GridGraph graph, int sx, int sy, int ex, int ey) -> {
+            Anya16 algo = new Anya16(graph, sx, sy, ex, ey);
+            algo.queueType = queueType;
+            return algo;
+        };
+    }
+
+    @Override
+    public void setPriorityQueue(PriorityQueueType type) {
+        queueType = type;
+    }
+
+    /**
+     * Reuses the start and target nodes, and the thread's search.
+     * Not possible once the thread's search was rebuilt for another grid (or after the grid was changed).
+     */
+    @Override
+    public boolean reuseFor(int sx, int sy, int ex, int ey) {
+        if (initialise(graph).search != anya) return false;
+        setQuery(sx, sy, ex, ey);
+        startNode.root.setLocation(sx, sy);
+        startNode.interval.init(sx, sx, sy);
+        targetNode.root.setLocation(ex, ey);
+        targetNode.interval.init(ex, ex, ey);
+        anya.mb_start_ = startNode;
+        anya.mb_target_ = targetNode;
+        pathSize = 0;
+        slicedSearch = null;
+        searchState = SEARCH_NOT_STARTED;
+        return true;
     }
 
     /**
      * Call this to compute the path.
      */
     public void computePath() {
-        pathStartNode = anya.search(anya.mb_start_, anya.mb_target_);
+        anya.set_queue(queueType);
+        anya.search_costonly(startNode, targetNode);
+        copyPath(anya);
         //pathLength = anya.mb_cost_;
     }
 
     /**
-     * @return retrieve the path computed by the algorithm
+     * Runs the search without building the Path chain.
      */
-    public int[][] getPath() {
-        int length = 0;
-        Path<AnyaNode> current = pathStartNode;
-        while (current != null) {
-            current = current.getNext();
-            ++length;
+    @Override
+    public float computeCost() {
+        pathSize = 0;
+        anya.set_queue(queueType);
+        double cost = anya.search_costonly(startNode, targetNode);
+        return cost == -1 ? Float.POSITIVE_INFINITY : (float)cost;
+    }
+
+    @Override
+    public boolean step(int maxExpansions) {
+        if (!resumeSearch()) return true;
+        for (int i=0;i<maxExpansions;++i) {
+            if (!slicedSearch.expand_next()) {
+                completeSearch();
+                return true;
+            }
         }
-        int[][] path = new int[length][];
-
-        current = pathStartNode;
-        int i = 0; 
-        while (current != null) {
-            Point2D.Double p = current.getVertex().root;
-            path[i] = new int[]{(int)p.getX(), (int)p.getY()};
-            current = current.getNext();
-            ++i;
+        return false;
+    }
+
+    @Override
+    public boolean runUntil(long deadlineNanos) {
+        if (!resumeSearch()) return true;
+        do {
+            for (int i=0;i<DEADLINE_CHECK_INTERVAL;++i) {
+                if (!slicedSearch.expand_next()) {
+                    completeSearch();
+                    return true;
+                }
+            }
+        } while (System.nanoTime() - deadlineNanos < 0);
+        return false;
+    }
+
+    /**
+     * Drops the open list and root table of the sliced search. No path is returned afterwards.
+     */
+    @Override
+    public void cancel() {
+        if (slicedSearch != null) {
+            slicedSearch.cancel_search();
+            slicedSearch = null;
+        }
+        pathSize = 0;
+        searchState = SEARCH_CANCELLED;
+    }
+
+    /**
+     * Starts the search on the first call.
+     * @return true if the search is running and can expand more nodes.
+     */
+    private boolean resumeSearch() {
+        if (searchState == SEARCH_NOT_STARTED) {
+            try {
+                slicedSearch = new AnyaSearch(new AnyaExpansionPolicy(bitpackedGrid));
+            } catch (Exception e) {
+                e.printStackTrace();
+                searchState = SEARCH_FINISHED;
+                return false;
+            }
+            slicedSearch.snapshotExpand = anya.snapshotExpand;
+            slicedSearch.snapshotInsert = anya.snapshotInsert;
+            slicedSearch.isRecording = anya.isRecording;
+            slicedSearch.set_queue(queueType);
+            if (slicedSearch.begin_search(startNode, targetNode)) {
+                searchState = SEARCH_RUNNING;
+            } else {
+                slicedSearch = null;
+                searchState = SEARCH_FINISHED;
+            }
         }
+        return searchState == SEARCH_RUNNING;
+    }
 
+    private void completeSearch() {
+        copyPath(slicedSearch);
+        slicedSearch = null;
+        searchState = SEARCH_FINISHED;
+    }
+
+    private void copyPath(AnyaSearch search) {
+        pathSize = search.path_size();
+        if (2*pathSize > pathCoordinates.length) {
+            pathCoordinates = new int[Math.max(2*pathSize, 2*pathCoordinates.length)];
+        }
+        search.write_path(pathCoordinates);
+    }
+
+    /**
+     * @return retrieve the path computed by the algorithm
+     */
+    public int[][] getPath() {
+        int[][] path = new int[pathSize][];
+        for (int i=0;i<pathSize;++i) {
+            path[i] = new int[]{pathCoordinates[2*i], pathCoordinates[2*i+1]};
+        }
         return path;
     }
     
+    @Override
+    protected void appendWaypoints(WaypointBuffer out) {
+        for (int i=0;i<pathSize;++i) {
+            out.add(pathCoordinates[2*i], pathCoordinates[2*i+1]);
+        }
+    }
+
     /**
      * @return directly get path length without computing path.
      * Has to run fast, unlike getPath.
@@ -141,9 +307,12 @@ public class Anya16 extends PathFindingAlgorithm {
         return new ArrayList<>(currSnapshot);
     }
 
+    /**
+     * Drops the cached grids, and the calling thread's search.
+     */
     public static void clearMemory() {
-        anya = null;
-        storedGraph = null;
+        PreprocessingCache.clear(Anya16.class);
+        threadSearch.remove();
         System.gc();
     }
 }
\ No newline at end of file
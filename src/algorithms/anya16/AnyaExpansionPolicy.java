@@ -15,6 +15,16 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
 	private AnyaNode cnode_;
 	private AnyaNode csucc_;
 	private ArrayList<AnyaNode> successors_;
+	
+	// Successor nodes are reused between searches: every node handed out
+	// by allocate stays valid until release_nodes is called.
+	private final ArrayList<AnyaNode> node_pool_;
+	private int nodes_in_use_;
+	
+	// Scratch projections, reused for every expansion.
+	private final IntervalProjection projection_ = new IntervalProjection();
+	private final IntervalProjection flat_projection_ = new IntervalProjection();
+	private final IntervalProjection split_projection_ = new IntervalProjection();
 				
 	// reduces branching by eliminating nodes that cannot have successors
 	private boolean prune_ = true;
@@ -33,6 +43,7 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
 		
 		this.prune_ = prune;
 		successors_ = new ArrayList<AnyaNode>(32);
+		node_pool_ = new ArrayList<AnyaNode>(1024);
 		heuristic_ = new AnyaHeuristic();
 		euclidean_ = new EuclideanDistanceHeuristic();
 	}
@@ -56,6 +67,27 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
 		}
     }
 
+	// Returns all nodes handed out by allocate to the pool.
+	// Called when a search starts; nodes of earlier searches must not be used afterwards.
+	public void release_nodes()
+	{
+		nodes_in_use_ = 0;
+	}
+	
+	private AnyaNode allocate(AnyaNode parent, double left, double right, 
+			int row, int rootx, int rooty)
+	{
+		if(nodes_in_use_ == node_pool_.size())
+		{
+			node_pool_.add(new AnyaNode(parent, 
+					new AnyaInterval(left, right, row), rootx, rooty));
+			return node_pool_.get(nodes_in_use_++);
+		}
+		AnyaNode node = node_pool_.get(nodes_in_use_++);
+		node.init(parent, left, right, row, rootx, rooty);
+		return node;
+	}
+
 	@Override
 	public AnyaNode next() 
 	{
@@ -142,7 +174,7 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
     protected void generate_successors(
     		AnyaNode node, ArrayList<AnyaNode> retval)
     {
-    	IntervalProjection projection = new IntervalProjection();
+    	IntervalProjection projection = projection_;
     	
     	if(node.root.y == node.interval.getRow())
     	{
@@ -181,7 +213,7 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
     		
     	// generate flat observable successors left of the start point
     	// NB: hacky implementation; we use a fake root for the projection
-    	IntervalProjection projection = new IntervalProjection();
+    	IntervalProjection projection = projection_;
     	if(!start_dc)
     	{
 	    	projection.project(rootx, rootx, rooty, 
@@ -248,8 +280,7 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
     		if(forced_succ || 
     		   !sterile(succ_left, succ_right, sterile_check_row))
     		{
-    			successor = new AnyaNode(parent, 
-    					new AnyaInterval(succ_left, succ_right, irow), 
+    			successor = allocate(parent, succ_left, succ_right, irow, 
     					rootx, rooty);
     			successor.interval.setLeft(
     					succ_left < max_left ? max_left : succ_left);
@@ -264,8 +295,9 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
     			intermediate(successor.interval, rootx, rooty))
     	{
     		retval.remove(retval.size()-1);
-    		// TODO: optimise this new call out?
-    		IntervalProjection proj = new IntervalProjection();
+    		// the recursive call below takes the projection by value, 
+    		// so one scratch projection serves every level.
+    		IntervalProjection proj = split_projection_;
     		proj.project_cone(
     				successor.interval.getLeft(), 
     				successor.interval.getRight(), 
@@ -438,7 +470,7 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
 		}
 		
 		// non-observable successors type (i) and (ii)
-    	IntervalProjection flatprj = new IntervalProjection();    	
+    	IntervalProjection flatprj = flat_projection_;    	
     	int corner_row = irow - (((int)node.root.y - irow) >>> 31);
 		
 		// non-observable successors to the left of the current interval
@@ -510,9 +542,8 @@ public class AnyaExpansionPolicy implements ExpansionPolicy<AnyaNode> {
 		if(!projection.deadend || !prune_ || goal_interval)
 		{
 			retval.add(
-				new AnyaNode(parent,
-					new AnyaInterval(projection.left, projection.right, 
-							projection.row), rootx, rooty));
+				allocate(parent, projection.left, projection.right, 
+						projection.row, rootx, rooty));
 		}
     }
     
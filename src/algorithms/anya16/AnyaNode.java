@@ -30,7 +30,22 @@ public class AnyaNode {
         this.parentNode = parent;
         this.interval = interval;
         this.root = root;
+        setG(parent);
+    }
+
+    // Reuses this node, its interval and its root for another successor.
+    // See AnyaExpansionPolicy.allocate.
+    void init(AnyaNode parent, double left, double right, int row, int rootx, int rooty)
+    {
+        this.parentNode = parent;
+        this.interval.init(left, right, row);
+        this.root.setLocation(rootx, rooty);
+        this.f = 0;
+        setG(parent);
+    }
 
+    private void setG(AnyaNode parent)
+    {
         if (parent==null)
         {
             g = 0;
@@ -1,10 +1,12 @@
 package algorithms.anya16;
 
-import java.util.Hashtable;
+import java.util.ArrayList;
 import java.util.function.Consumer;
 
 import algorithms.jgrapht.FibonacciHeap;
 import algorithms.jgrapht.FibonacciHeapNode;
+import algorithms.priorityqueue.IndirectPriorityQueue;
+import algorithms.priorityqueue.PriorityQueueType;
 
 import java.awt.geom.Point2D;
 
@@ -16,13 +18,18 @@ import java.awt.geom.Point2D;
 
 public class AnyaSearch implements MBRunnable {
 
-	private static int search_id_counter = 0;
+	private int search_id_counter = 0; // Per instance, so searches on different threads do not interfere.
 	private AnyaExpansionPolicy expander;
 	private Heuristic<AnyaNode> heuristic;
 //	private Object[] pool;
 //	private double[] roots;
-	Hashtable<Integer, SearchNode> roots_;
+	RootTable<SearchNode> roots_;
+	// Search nodes are reused between searches, like the expander's AnyaNodes.
+	private final ArrayList<SearchNode> search_node_pool_ = new ArrayList<SearchNode>(1024);
+	private int search_nodes_in_use_;
 	private SearchNode lastNodeParent;
+	private AnyaNode search_target_;
+	private double search_cost_ = -1;
 	
 	public boolean verbose = false;
 	public boolean isRecording = false;
@@ -33,6 +40,14 @@ public class AnyaSearch implements MBRunnable {
 	public int heap_ops;
 	FibonacciHeap<AnyaNode> open;
 	
+	// The open list is the FibonacciHeap above, unless another queue was
+	// chosen with set_queue. The other queues hold search node ids, keyed by
+	// f rounded to float, and do not break ties in favour of larger g.
+	private IndirectPriorityQueue queue_;
+	private final IndirectPriorityQueue[] queues_ = 
+			new IndirectPriorityQueue[PriorityQueueType.values().length];
+	private int queue_capacity_;
+	
 	// these can be set apriori; only used in conjunction with the
 	// run method.
 	public AnyaNode mb_start_;
@@ -48,6 +63,13 @@ public class AnyaSearch implements MBRunnable {
     {
     	// parent node
     	private SearchNode parent;
+    	
+    	// position in search_node_pool_
+    	final int id;
+    	
+    	// f- and g-values, whichever queue holds the node
+    	double f;
+    	double g;
 
     	// tracks if the node has been added to open
         public int search_id;
@@ -55,9 +77,16 @@ public class AnyaSearch implements MBRunnable {
         // tracks if the node has been expanded
         public boolean closed;
                 
-        SearchNode(AnyaNode vertex) 
+        SearchNode(AnyaNode vertex, int id) 
         { 
         	super(vertex);
+        	this.id = id;
+        	search_id = -1;
+        }
+        
+        void reuse(AnyaNode vertex)
+        {
+        	setData(vertex);
         	search_id = -1;
         }
         
@@ -79,7 +108,7 @@ public class AnyaSearch implements MBRunnable {
 	{
 //		this.pool = new Object[search_space_size];
 //		this.roots = new double[search_space_size];
-		this.roots_ = new Hashtable<Integer, SearchNode>(65535);
+		this.roots_ = new RootTable<SearchNode>();
 		this.open = new FibonacciHeap<AnyaNode>();
 		this.heuristic = expander.heuristic();
 		this.expander = expander;
@@ -93,7 +122,64 @@ public class AnyaSearch implements MBRunnable {
 		generated = 0;
 		heap_ops = 0;
 		open.clear();
+		if(queue_ != null) { queue_.reset(queue_capacity_); }
 		roots_.clear();
+		search_nodes_in_use_ = 0;
+		expander.release_nodes();
+	}
+	
+	// Chooses the open list of the following searches. 
+	// FIBONACCI is the original FibonacciHeap.
+	public void set_queue(PriorityQueueType type)
+	{
+		if(type == PriorityQueueType.FIBONACCI)
+		{
+			queue_ = null;
+			return;
+		}
+		IndirectPriorityQueue queue = queues_[type.ordinal()];
+		if(queue == null)
+		{
+			queue = type.create();
+			queues_[type.ordinal()] = queue;
+		}
+		if(queue != queue_)
+		{
+			queue_capacity_ = Math.max(1024, search_node_pool_.size());
+			queue.reset(queue_capacity_);
+			queue_ = queue;
+		}
+	}
+	
+	private void push(SearchNode node, double f, double g)
+	{
+		node.f = f;
+		node.g = g;
+		if(queue_ == null)
+		{
+			open.insert(node, f, g);
+			return;
+		}
+		if(node.id >= queue_capacity_)
+		{
+			queue_capacity_ = Math.max(2*queue_capacity_, node.id+1);
+			queue_.grow(queue_capacity_);
+		}
+		queue_.decreaseKey(node.id, (float)f);
+	}
+	
+	private SearchNode pop()
+	{
+		if(queue_ == null)
+		{
+			return (SearchNode)open.removeMin();
+		}
+		return search_node_pool_.get(queue_.popMinIndex());
+	}
+	
+	private boolean open_is_empty()
+	{
+		return queue_ == null ? open.isEmpty() : queue_.isEmpty();
 	}
 	
     private void print_path(SearchNode current, java.io.PrintStream stream)
@@ -104,7 +190,7 @@ public class AnyaSearch implements MBRunnable {
     	}
     	stream.println(current.getData().hashCode() + "; " 
     			+ current.getData().root.toString() 
-    			+ "; g=" + current.getSecondaryKey());
+    			+ "; g=" + current.g);
     }
 
     private boolean pointsEqual(Point2D.Double p1, Point2D.Double p2) {
@@ -113,141 +199,238 @@ public class AnyaSearch implements MBRunnable {
 		
 	public Path<AnyaNode> search(AnyaNode start, AnyaNode target)
 	{
-		double cost = this.search_costonly(start, target);
-		// generate the path
-		Path<AnyaNode> path = null; 
-		if(cost != -1)
-		{
-			//SearchNode node = generate(target);
-			path = new Path<AnyaNode>(target, path, 0);
-			SearchNode node = lastNodeParent;
+		this.search_costonly(start, target);
+		return build_path();
+	}
 
-			while (node != null)
-			{
-				if (!pointsEqual(path.getVertex().root, node.getData().root)) {
-					path = new Path<AnyaNode>(node.getData(), path, node.getSecondaryKey());
-				}
-				node = node.parent;
-				
-			}//while(!(node.parent == null));
+	public double search_costonly(AnyaNode start, AnyaNode target)
+	{
+		if(begin_search(start, target))
+		{
+			while(expand_next());
 		}
-		return path;
+		if(verbose)
+		{
+			System.out.println("finishing search;");			
+		}
+		return search_cost_;
 	}
 
-	public double search_costonly(AnyaNode start, AnyaNode target)
+	// Starts a search that is run one expansion at a time by expand_next.
+	// The open list and root table are kept between calls.
+	// Returns false if the instance is invalid (the cost is then -1).
+	public boolean begin_search(AnyaNode start, AnyaNode target)
 	{
 		init();
-		double cost = -1;
+		search_target_ = target;
+		search_cost_ = -1;
+		lastNodeParent = null;
 		if(!expander.validate_instance(start, target))
 		{
-			return cost;
+			return false;
 		}
 
+		generated++;
 		SearchNode startNode = generate(start);
 		startNode.reset();
-		open.insert(startNode, heuristic.getValue(start, target), 0);
+		push(startNode, heuristic.getValue(start, target), 0);
+		return true;
+	}
+
+	// Expands the node at the top of the open list.
+	// Returns false once the search is over: the target was reached
+	// (search_cost() is then its cost) or the open list is empty.
+	public boolean expand_next()
+	{
+		if(open_is_empty())
+		{
+			return false;
+		}
+
+		SearchNode current = pop();
+		//if(verbose) { System.out.println("expanding (f="+current.f+") "+current.toString()); }
+		if (isRecording) snapshotExpand.accept(current.getData());
+
+		expander.expand(current.getData());
+		expanded++;
+		heap_ops++;
+		if(current.getData().interval.contains(search_target_.root))
+		{
+			// found the goal
+			search_cost_ = current.f;
+			lastNodeParent = current;
+			
+			if(verbose)
+			{
+				print_path(current, System.err);
+				System.err.println(search_target_.toString() + "; f=" + current.f);
+			}
+			return false;
+		}
+
+		// unique id for the root of the parent node
+		int p_hash = expander.hash(current.getData());
 		
-		while(!open.isEmpty())
+		// iterate over all neighbours			
+		while(expander.hasNext())
 		{
-			SearchNode current = (SearchNode)open.removeMin();
-			//if(verbose) { System.out.println("expanding (f="+current.getKey()+") "+current.toString()); }
-			if (isRecording) snapshotExpand.accept(current.getData());
-
-			expander.expand(current.getData());
-			expanded++;
-			heap_ops++;
-			if(current.getData().interval.contains(target.root))
+			AnyaNode succ = expander.next();
+			generated++;
+
+			boolean insert = true;
+			int root_hash = expander.hash(succ);
+			SearchNode root_rep = roots_.get(root_hash);
+			double new_g_value = current.g + 
+					expander.step_cost();
+
+
+			// Root level pruning:
+			// We prune a node if its g-value is larger than the best 
+			// distance to its root point. In the case that the g-value
+			// is equal to the best known distance, we prune only if the
+			// node isn't a sibling of the node with the best distance or
+			// if the node with the best distance isn't the immediate parent
+			if(root_rep != null)
 			{
-				// found the goal
-				cost = current.getKey();
-				lastNodeParent = current;
-				
-				if(verbose)
+				double root_best_g = root_rep.g;
+				insert = (new_g_value - root_best_g) 
+				   			<= BitpackedGrid.epsilon;
+				boolean eq = (new_g_value - root_best_g) 
+						>= -BitpackedGrid.epsilon;
+				if(insert && eq)
 				{
-					print_path(current, System.err);
-					System.err.println(target.toString() + "; f=" + current.getKey());
+					int p_rep_hash = expander.hash(root_rep.parent.getData());
+					insert = (root_hash == p_hash) || (p_rep_hash == p_hash);
 				}
-				break;
 			}
-
-			// unique id for the root of the parent node
-			int p_hash = expander.hash(current.getData());
-			
-			// iterate over all neighbours			
-			while(expander.hasNext())
+				
+			if(insert)
 			{
-				AnyaNode succ = expander.next();
 				SearchNode neighbour = generate(succ);
+				neighbour.reset();
+				neighbour.parent = current;
 
-				boolean insert = true;
-				int root_hash = expander.hash(succ);
-				SearchNode root_rep = roots_.get(root_hash);
-				double new_g_value = current.getSecondaryKey() + 
-						expander.step_cost();
-
+		
+				push(neighbour, 
+						new_g_value +
+						heuristic.getValue(neighbour.getData(), search_target_),
+						new_g_value);
+				roots_.put(root_hash, neighbour);
 
-				// Root level pruning:
-				// We prune a node if its g-value is larger than the best 
-				// distance to its root point. In the case that the g-value
-				// is equal to the best known distance, we prune only if the
-				// node isn't a sibling of the node with the best distance or
-				// if the node with the best distance isn't the immediate parent
-				if(root_rep != null)
+				//if(verbose) {System.out.println("\tinserting with f=" + neighbour.f +" (g= "+new_g_value+");" + neighbour.toString());}
+				if (isRecording) snapshotInsert.accept(neighbour.getData());
+						
+				heap_ops++;
+				insertions++;
+			}
+			else
+			{
+				if(verbose)
 				{
-					double root_best_g = root_rep.getSecondaryKey();
-					insert = (new_g_value - root_best_g) 
-					   			<= BitpackedGrid.epsilon;
-					boolean eq = (new_g_value - root_best_g) 
-							>= -BitpackedGrid.epsilon;
-					if(insert && eq)
-					{
-						int p_rep_hash = expander.hash(root_rep.parent.getData());
-						insert = (root_hash == p_hash) || (p_rep_hash == p_hash);
-					}
+					System.out.println("\told rootg: "+root_rep.g);
+					System.out.println("\tNOT inserting (g= "+new_g_value+");" + succ.toString());
 				}
-					
-				if(insert)
-				{
-					neighbour.reset();
-					neighbour.parent = current;
+				
+			}
+		}
+		return true;
+	}
 
-			
-					open.insert(neighbour, 
-							new_g_value +
-							heuristic.getValue(neighbour.getData(), target),
-							new_g_value);
-					roots_.put(root_hash, neighbour);
-
-					//if(verbose) {System.out.println("\tinserting with f=" + neighbour.getKey() +" (g= "+new_g_value+");" + neighbour.toString());}
-					if (isRecording) snapshotInsert.accept(neighbour.getData());
-							
-					heap_ops++;
-					insertions++;
-				}
-				else
-				{
-					if(verbose)
-					{
-						System.out.println("\told rootg: "+root_rep.getSecondaryKey());
-						System.out.println("\tNOT inserting with f=" + neighbour.getKey() +" (g= "+new_g_value+");" + neighbour.toString());
-					}
-					
-				}
+	// The cost of the last search, or -1 if no path was found.
+	public double search_cost()
+	{
+		return search_cost_;
+	}
+
+	// The number of points on the path found by the last search, 
+	// or 0 if there is none.
+	public int path_size()
+	{
+		if(search_cost_ == -1) { return 0; }
+		int size = 1;
+		Point2D.Double head = search_target_.root;
+		for(SearchNode node = lastNodeParent; node != null; node = node.parent)
+		{
+			if (!pointsEqual(head, node.getData().root)) {
+				head = node.getData().root;
+				size++;
 			}
 		}
-		if(verbose)
+		return size;
+	}
+
+	// Writes the points of the path found by the last search into xy, 
+	// as x0, y0, x1, y1, ... Unlike build_path, does not allocate.
+	// xy must have room for 2*path_size() ints.
+	public void write_path(int[] xy)
+	{
+		int i = path_size();
+		if(i == 0) { return; }
+		Point2D.Double head = search_target_.root;
+		--i;
+		xy[2*i] = (int)head.getX();
+		xy[2*i+1] = (int)head.getY();
+		for(SearchNode node = lastNodeParent; node != null; node = node.parent)
 		{
-			System.out.println("finishing search;");			
+			if (!pointsEqual(head, node.getData().root)) {
+				head = node.getData().root;
+				--i;
+				xy[2*i] = (int)head.getX();
+				xy[2*i+1] = (int)head.getY();
+			}
 		}
-		return cost;
+	}
+
+	// The path found by the last search, or null if there is none.
+	// Its nodes are reused by the next search.
+	public Path<AnyaNode> build_path()
+	{
+		Path<AnyaNode> path = null; 
+		if(search_cost_ != -1)
+		{
+			//SearchNode node = generate(target);
+			path = new Path<AnyaNode>(search_target_, path, 0);
+			SearchNode node = lastNodeParent;
 
+			while (node != null)
+			{
+				if (!pointsEqual(path.getVertex().root, node.getData().root)) {
+					path = new Path<AnyaNode>(node.getData(), path, node.g);
+				}
+				node = node.parent;
+				
+			}//while(!(node.parent == null));
+		}
+		return path;
+	}
+
+	// Drops the open list and root table of the current search.
+	public void cancel_search()
+	{
+		open.clear();
+		if(queue_ != null) { queue_.reset(queue_capacity_); }
+		roots_.clear();
+		search_nodes_in_use_ = 0;
+		expander.release_nodes();
+		lastNodeParent = null;
+		search_cost_ = -1;
 	}
 	
 	private SearchNode 
 	generate(AnyaNode v)
 	{
-		SearchNode retval = new SearchNode(v);
-		generated++;
+		SearchNode retval;
+		if(search_nodes_in_use_ == search_node_pool_.size())
+		{
+			retval = new SearchNode(v, search_nodes_in_use_);
+			search_node_pool_.add(retval);
+		}
+		else
+		{
+			retval = search_node_pool_.get(search_nodes_in_use_);
+			retval.reuse(v);
+		}
+		search_nodes_in_use_++;
 		return retval;
 	}
 		
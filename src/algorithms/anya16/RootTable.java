@@ -0,0 +1,104 @@
+package algorithms.anya16;
+
+import java.util.Arrays;
+
+// RootTable.java
+//
+// Maps root hashes (AnyaExpansionPolicy.hash) to the search node with the
+// best known g-value for that root. Open addressing with linear probing over
+// primitive int keys, so lookups neither box keys nor allocate entries.
+// Each slot is stamped with the id of the search that wrote it, so clearing
+// the table for a new search only increments the id.
+//
+
+final class RootTable<V>
+{
+	private static final int MIN_CAPACITY = 1 << 16;
+
+	private int[] keys_;
+	private int[] stamps_;
+	private Object[] values_;
+	private int mask_;
+	private int size_;
+	private int search_id_ = 1;
+
+	RootTable()
+	{
+		allocate(MIN_CAPACITY);
+	}
+
+	private void allocate(int capacity)
+	{
+		keys_ = new int[capacity];
+		stamps_ = new int[capacity];
+		values_ = new Object[capacity];
+		mask_ = capacity - 1;
+		size_ = 0;
+	}
+
+	// Removes all entries.
+	void clear()
+	{
+		if (size_ == 0) return;
+		size_ = 0;
+		if (++search_id_ == 0)
+		{
+			// The ids wrapped around: old stamps could be mistaken for current ones.
+			Arrays.fill(stamps_, 0);
+			search_id_ = 1;
+		}
+		// Values of older searches are only overwritten as slots are reused.
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(int key)
+	{
+		for (int slot = slot(key);; slot = (slot + 1) & mask_)
+		{
+			if (stamps_[slot] != search_id_) return null;
+			if (keys_[slot] == key) return (V)values_[slot];
+		}
+	}
+
+	void put(int key, V value)
+	{
+		int slot = slot(key);
+		for (; stamps_[slot] == search_id_; slot = (slot + 1) & mask_)
+		{
+			if (keys_[slot] == key)
+			{
+				values_[slot] = value;
+				return;
+			}
+		}
+		keys_[slot] = key;
+		stamps_[slot] = search_id_;
+		values_[slot] = value;
+		if (++size_ > (mask_ >>> 1)) grow();
+	}
+
+	int size()
+	{
+		return size_;
+	}
+
+	private int slot(int key)
+	{
+		// Fibonacci hashing: neighbouring roots land far apart.
+		return (key * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(mask_));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void grow()
+	{
+		int[] keys = keys_;
+		int[] stamps = stamps_;
+		Object[] values = values_;
+		int search_id = search_id_;
+		allocate(keys.length * 2);
+		for (int i = 0; i < keys.length; ++i)
+		{
+			if (stamps[i] == search_id) put(keys[i], (V)values[i]);
+		}
+	}
+}
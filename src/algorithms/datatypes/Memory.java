@@ -1,62 +1,28 @@
 package algorithms.datatypes;
 
+/**
+ * Ticketed distance / parent / visited arrays for one search at a time.
+ * Each thread gets its own instance through {@link SearchContext}.
+ */
 public final class Memory {
-    private static float[] distance;
-    private static int[] parent;
-    private static boolean[] visited;
+    private float[] distance;
+    private int[] parent;
+    private boolean[] visited;
 
-    private static float defaultDistance = 0;
-    private static int defaultParent = -1;
-    private static boolean defaultVisited = false;
+    private float defaultDistance = 0;
+    private int defaultParent = -1;
+    private boolean defaultVisited = false;
     
-    private static int[] ticketCheck;
-    private static int ticketNumber = 0;
+    private int[] ticketCheck;
+    private int ticketNumber = 0;
     
-    private static int size = 0;
+    private int size = 0;
     
-    public static final class Context {
-        private float[] distance;
-        private int[] parent;
-        private boolean[] visited;
-        private float defaultDistance;
-        private int defaultParent;
-        private boolean defaultVisited;
-        private int[] ticketCheck;
-        private int ticketNumber;
-        private int size;
-
-        public Context(){};
-    }
-    
-    public static final void loadContext(Context context) {
-        Memory.distance = context.distance;
-        Memory.parent = context.parent;
-        Memory.visited = context.visited;
-        Memory.defaultDistance = context.defaultDistance;
-        Memory.defaultParent = context.defaultParent;
-        Memory.defaultVisited = context.defaultVisited;
-        Memory.ticketCheck = context.ticketCheck;
-        Memory.ticketNumber = context.ticketNumber;
-        Memory.size = context.size;
-    }
-    
-    public static final void saveContext(Context context) {
-        context.distance = Memory.distance;
-        context.parent = Memory.parent;
-        context.visited = Memory.visited;
-        context.defaultDistance = Memory.defaultDistance;
-        context.defaultParent = Memory.defaultParent;
-        context.defaultVisited = Memory.defaultVisited;
-        context.ticketCheck = Memory.ticketCheck;
-        context.ticketNumber = Memory.ticketNumber;
-        context.size = Memory.size;
-    }
-    
-    public static final int initialise(int size, float defaultDistance, int defaultParent, boolean defaultVisited) {
-        Memory.defaultDistance = defaultDistance;
-        Memory.defaultParent = defaultParent;
-        Memory.defaultVisited= defaultVisited;
-        Memory.size = size;
+    public final int initialise(int size, float defaultDistance, int defaultParent, boolean defaultVisited) {
+        this.defaultDistance = defaultDistance;
+        this.defaultParent = defaultParent;
+        this.defaultVisited= defaultVisited;
+        this.size = size;
         
         if (ticketCheck == null || ticketCheck.length != size) {
             //System.out.println("REINITIALISE MEMORY " + size);
@@ -75,30 +41,30 @@ public final class Memory {
         return ticketNumber;
     }
     
-    public static final int currentTicket() {
+    public final int currentTicket() {
         return ticketNumber;
     }
     
-    public static final int size() {
+    public final int size() {
         return size;
     }
     
-    public static final float distance(int index) {
+    public final float distance(int index) {
         if (ticketCheck[index] != ticketNumber) return defaultDistance;
         return distance[index];
     }
     
-    public static final int parent(int index) {
+    public final int parent(int index) {
         if (ticketCheck[index] != ticketNumber) return defaultParent;
         return parent[index];
     }
     
-    public static final boolean visited(int index) {
+    public final boolean visited(int index) {
         if (ticketCheck[index] != ticketNumber) return defaultVisited;
         return visited[index];
     }
     
-    public static final void setDistance(int index, float value) {
+    public final void setDistance(int index, float value) {
         if (ticketCheck[index] != ticketNumber) {
             distance[index] = value;
             parent[index] = defaultParent;
@@ -109,7 +75,7 @@ public final class Memory {
         }
     }
     
-    public static final void setParent(int index, int value) {
+    public final void setParent(int index, int value) {
         if (ticketCheck[index] != ticketNumber) {
             distance[index] = defaultDistance;
             parent[index] = value;
@@ -120,7 +86,7 @@ public final class Memory {
         }
     }
     
-    public static final void setVisited(int index, boolean value) {
+    public final void setVisited(int index, boolean value) {
         if (ticketCheck[index] != ticketNumber) {
             distance[index] = defaultDistance;
             parent[index] = defaultParent;
@@ -131,11 +97,10 @@ public final class Memory {
         }
     }
 
-    public static void clearMemory() {
+    public void clearMemory() {
         distance = null;
         parent = null;
         visited = null;
         ticketCheck = null;
-        System.gc();
     }
 }
@@ -0,0 +1,261 @@
+package algorithms.datatypes;
+
+import grid.GridGraph;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Holds the preprocessed structures (visibility graphs, Anya's bitpacked grid, ...) of any number of maps.
+ * An entry is keyed by the identity of its GridGraph, the class that owns the structure, and an optional
+ * parameter (e.g. the level limit of an ENLSVG), so switching between maps does not rebuild anything.
+ *
+ * Each entry records an estimate of its size in bytes. When the total exceeds the memory budget,
+ * the least recently used entries are evicted. The newest entry is always kept, even if it alone exceeds the budget.
+ * The budget only covers what is stored here, including per-thread parts that a structure counts in its own size
+ * (e.g. the ENLSVG overlays). It does not cover the SearchContexts, which hold each thread's search memory and open
+ * lists (about 30 bytes per grid point per thread for the grid searches), until released with SearchContext.clearCurrentThread.
+ *
+ * Lookups do not lock, so queries on any number of threads can read the cache at once. Changes are synchronized.
+ * Building a structure is done by the caller, outside the lock. getOrBuild builds one structure per key,
+ * while builds for other keys, and lookups, go on in parallel.
+ */
+public final class PreprocessingCache {
+
+    private static final class Key {
+        final GridGraph graph;
+        final Class<?> owner;
+        final int parameter;
+
+        Key(GridGraph graph, Class<?> owner, int parameter) {
+            this.graph = graph;
+            this.owner = owner;
+            this.parameter = parameter;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(graph)*31 + owner.hashCode())*31 + parameter;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key)obj;
+            return graph == other.graph && owner == other.owner && parameter == other.parameter;
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long bytes;
+        volatile long lastUsed; // System.nanoTime() of the last lookup, for the LRU eviction.
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+            this.lastUsed = System.nanoTime();
+        }
+    }
+
+    private static final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    // Builds in progress in getOrBuild. Callers asking for the same key wait for the same task.
+    private static final ConcurrentHashMap<Key, FutureTask<?>> builds = new ConcurrentHashMap<>();
+    private static long memoryBudget = Runtime.getRuntime().maxMemory()/2;
+    private static long usedBytes = 0;
+
+    /**
+     * @return the structure stored for (graph, owner), or null if there is none.
+     */
+    public static <T> T get(GridGraph graph, Class<?> owner) {
+        return get(graph, owner, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T get(GridGraph graph, Class<?> owner, int parameter) {
+        Entry entry = entries.get(new Key(graph, owner, parameter));
+        if (entry == null) return null;
+        entry.lastUsed = System.nanoTime();
+        return (T)entry.value;
+    }
+
+    /**
+     * @return the structure stored for (graph, owner, parameter), built with build and stored if there is none.
+     * If several threads ask for the same missing structure, one builds it and the others wait for it.
+     * @param bytes estimates the memory used by the built structure.
+     */
+    public static <T> T getOrBuild(GridGraph graph, Class<?> owner, int parameter, Supplier<T> build, ToLongFunction<? super T> bytes) {
+        return getOrBuild(graph, owner, parameter, value -> true, build, bytes);
+    }
+
+    /**
+     * As getOrBuild, but a stored structure for which isCurrent is false (e.g. one built for an older version of
+     * the grid) is rebuilt and replaced.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getOrBuild(GridGraph graph, Class<?> owner, int parameter, Predicate<? super T> isCurrent,
+            Supplier<T> build, ToLongFunction<? super T> bytes) {
+        T stored = get(graph, owner, parameter);
+        if (stored != null && isCurrent.test(stored)) return stored;
+
+        Key key = new Key(graph, owner, parameter);
+        FutureTask<T> task = new FutureTask<>(() -> {
+            // Another build of this key may have finished since the lookup above.
+            T value = get(graph, owner, parameter);
+            if (value != null && isCurrent.test(value)) return value;
+            value = build.get();
+            put(graph, owner, parameter, value, bytes.applyAsLong(value));
+            return value;
+        });
+        FutureTask<?> running = builds.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                builds.remove(key, task);
+            }
+            running = task;
+        }
+
+        try {
+            return (T)running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for another thread's build.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Stores value for (graph, owner), replacing any previous value, and evicts entries if over budget.
+     * @param bytes estimated memory used by value.
+     */
+    public static void put(GridGraph graph, Class<?> owner, Object value, long bytes) {
+        put(graph, owner, 0, value, bytes);
+    }
+
+    public static synchronized void put(GridGraph graph, Class<?> owner, int parameter, Object value, long bytes) {
+        Key key = new Key(graph, owner, parameter);
+        Entry previous = entries.put(key, new Entry(value, bytes));
+        if (previous != null) usedBytes -= previous.bytes;
+        usedBytes += bytes;
+        evictToBudget(key);
+    }
+
+    /**
+     * Records a new size for value, if it is still the structure stored for (graph, owner).
+     * For structures that are stored before they are built, or that grow afterwards.
+     */
+    public static void updateSize(GridGraph graph, Class<?> owner, Object value, long bytes) {
+        updateSize(graph, owner, 0, value, bytes);
+    }
+
+    public static synchronized void updateSize(GridGraph graph, Class<?> owner, int parameter, Object value, long bytes) {
+        Key key = new Key(graph, owner, parameter);
+        Entry previous = entries.get(key);
+        if (previous == null || previous.value != value) return;
+        entries.put(key, new Entry(value, bytes));
+        usedBytes += bytes - previous.bytes;
+        evictToBudget(key);
+    }
+
+    /**
+     * Stores value for (graph, owner) in place of the current one, keeping the recorded size.
+     * For structures that are rewrapped for each query, like the repurposed visibility graphs.
+     */
+    public static synchronized void replace(GridGraph graph, Class<?> owner, Object value) {
+        Key key = new Key(graph, owner, 0);
+        Entry previous = entries.get(key);
+        entries.put(key, new Entry(value, previous == null ? 0 : previous.bytes));
+    }
+
+    /**
+     * Removes the structure stored for (graph, owner, parameter), if any.
+     */
+    public static synchronized void remove(GridGraph graph, Class<?> owner, int parameter) {
+        Entry previous = entries.remove(new Key(graph, owner, parameter));
+        if (previous != null) usedBytes -= previous.bytes;
+    }
+
+    /**
+     * Removes every structure built for the given grid. Call this when the grid is no longer used.
+     */
+    public static synchronized void remove(GridGraph graph) {
+        Iterator<Map.Entry<Key, Entry>> itr = entries.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Key, Entry> next = itr.next();
+            if (next.getKey().graph != graph) continue;
+            usedBytes -= next.getValue().bytes;
+            itr.remove();
+        }
+    }
+
+    /**
+     * Removes every structure owned by the given class, for all grids.
+     */
+    public static synchronized void clear(Class<?> owner) {
+        Iterator<Map.Entry<Key, Entry>> itr = entries.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Key, Entry> next = itr.next();
+            if (next.getKey().owner != owner) continue;
+            usedBytes -= next.getValue().bytes;
+            itr.remove();
+        }
+    }
+
+    public static synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Sets the total size, in bytes, that the cached structures may use before old entries are evicted.
+     * Leave room for the SearchContexts of the searching threads, which are not counted.
+     */
+    public static synchronized void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+        evictToBudget(null);
+    }
+
+    public static synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public static synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    public static int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evicts the least recently used entries other than keep until the total is within the budget.
+     * With keep null, the most recently used entry is kept.
+     */
+    private static void evictToBudget(Key keep) {
+        while (usedBytes > memoryBudget && entries.size() > 1) {
+            Key oldest = null;
+            long oldestUse = Long.MAX_VALUE;
+            for (Map.Entry<Key, Entry> next : entries.entrySet()) {
+                if (next.getKey().equals(keep)) continue;
+                long lastUsed = next.getValue().lastUsed;
+                if (lastUsed < oldestUse) {
+                    oldest = next.getKey();
+                    oldestUse = lastUsed;
+                }
+            }
+            usedBytes -= entries.remove(oldest).bytes;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package algorithms.datatypes;
+
+import java.util.Arrays;
+
+import algorithms.priorityqueue.IndirectPriorityQueue;
+import algorithms.priorityqueue.PriorityQueueType;
+import algorithms.priorityqueue.ReusableIndirectHeap;
+
+/**
+ * Per-search working memory: the ticketed node arrays, the indirect heap, a buffer for writing out paths,
+ * and a list of nodes for searches that keep one (e.g. a closed list).
+ * A context must only be used by one search at a time. By default each thread
+ * gets its own context, so searches on different threads do not interfere.
+ * A context can also be passed explicitly to an algorithm, e.g. from a pool.
+ */
+public final class SearchContext {
+    private static final ThreadLocal<SearchContext> threadContext =
+            ThreadLocal.withInitial(SearchContext::new);
+
+    public final Memory memory = new Memory();
+    public final ReusableIndirectHeap heap = new ReusableIndirectHeap();
+    public final WaypointBuffer waypoints = new WaypointBuffer();
+    private final IndirectPriorityQueue[] queues = new IndirectPriorityQueue[PriorityQueueType.values().length];
+    private int[] nodes = new int[0];
+    private SearchContext reverse;
+
+    /**
+     * @return the context owned by the calling thread.
+     */
+    public static SearchContext forCurrentThread() {
+        return threadContext.get();
+    }
+
+    /**
+     * Releases the calling thread's arrays. Other threads are unaffected.
+     */
+    public static void clearCurrentThread() {
+        threadContext.get().clearMemory();
+    }
+
+    /**
+     * @return this context's queue of the given type, created on first use. The binary heap is heap.
+     */
+    public IndirectPriorityQueue queue(PriorityQueueType type) {
+        if (type == PriorityQueueType.BINARY) return heap;
+        IndirectPriorityQueue queue = queues[type.ordinal()];
+        if (queue == null) {
+            queue = type.create();
+            queues[type.ordinal()] = queue;
+        }
+        return queue;
+    }
+
+    /**
+     * @return an array of at least minLength ints, kept for the next search. Its contents are left as they were.
+     */
+    public int[] nodeList(int minLength) {
+        if (nodes.length < minLength) {
+            nodes = Arrays.copyOf(nodes, Math.max(minLength, nodes.length*2));
+        }
+        return nodes;
+    }
+
+    /**
+     * @return a second context that belongs with this one, for the backward half of a bidirectional search.
+     */
+    public SearchContext reverse() {
+        if (reverse == null) reverse = new SearchContext();
+        return reverse;
+    }
+
+    public void clearMemory() {
+        memory.clearMemory();
+        heap.clearMemory();
+        nodes = new int[0];
+        for (IndirectPriorityQueue queue : queues) {
+            if (queue != null) queue.clearMemory();
+        }
+        if (reverse != null) reverse.clearMemory();
+    }
+}
@@ -0,0 +1,105 @@
+package algorithms.datatypes;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Reusable list of path waypoints, kept in a SearchContext so that writing out a path does not allocate.
+ * Repeated waypoints, and waypoints in the middle of a straight segment, are dropped as they are added.
+ * As both tests are symmetric, a path may be added from either end, then reversed.
+ */
+public final class WaypointBuffer {
+    private int[] coordinates = new int[64];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the number of waypoints.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int x(int index) {
+        return coordinates[2*index];
+    }
+
+    public int y(int index) {
+        return coordinates[2*index+1];
+    }
+
+    public void add(int x, int y) {
+        if (size > 0) {
+            int lastX = coordinates[2*size-2];
+            int lastY = coordinates[2*size-1];
+            if (x == lastX && y == lastY) return;
+            if (size > 1) {
+                long dx1 = lastX - coordinates[2*size-4];
+                long dy1 = lastY - coordinates[2*size-3];
+                long dx2 = x - lastX;
+                long dy2 = y - lastY;
+                if (dx1*dy2 == dx2*dy1 && dx1*dx2 + dy1*dy2 > 0) {
+                    // Same direction: the last waypoint is on the segment to (x, y).
+                    coordinates[2*size-2] = x;
+                    coordinates[2*size-1] = y;
+                    return;
+                }
+            }
+        }
+        if (2*size == coordinates.length) {
+            int[] newCoordinates = new int[coordinates.length*2];
+            System.arraycopy(coordinates, 0, newCoordinates, 0, coordinates.length);
+            coordinates = newCoordinates;
+        }
+        coordinates[2*size] = x;
+        coordinates[2*size+1] = y;
+        ++size;
+    }
+
+    public void reverse() {
+        for (int i=0, j=size-1; i<j; ++i, --j) {
+            int x = coordinates[2*i];
+            int y = coordinates[2*i+1];
+            coordinates[2*i] = coordinates[2*j];
+            coordinates[2*i+1] = coordinates[2*j+1];
+            coordinates[2*j] = x;
+            coordinates[2*j+1] = y;
+        }
+    }
+
+    /**
+     * Writes x0, y0, x1, y1, ... into buffer from offset.
+     * @throws IndexOutOfBoundsException if the buffer is too small. Nothing is written then.
+     */
+    public void copyTo(int[] buffer, int offset) {
+        if (offset < 0 || buffer.length - offset < 2*size) {
+            throw new IndexOutOfBoundsException("Path needs " + 2*size + " ints from offset " + offset +
+                    ", buffer has " + buffer.length + ".");
+        }
+        System.arraycopy(coordinates, 0, buffer, offset, 2*size);
+    }
+
+    /**
+     * Writes x0, y0, x1, y1, ... at the buffer's position, and advances it.
+     * @throws BufferOverflowException if fewer than 2*size() ints remain. Nothing is written then.
+     */
+    public void copyTo(IntBuffer buffer) {
+        if (buffer.remaining() < 2*size) throw new BufferOverflowException();
+        buffer.put(coordinates, 0, 2*size);
+    }
+
+    /**
+     * Writes x0, y0, x1, y1, ... as ints in the buffer's byte order at its position, and advances it.
+     * @throws BufferOverflowException if fewer than 8*size() bytes remain. Nothing is written then.
+     */
+    public void copyTo(ByteBuffer buffer) {
+        if (buffer.remaining() < 8*size) throw new BufferOverflowException();
+        for (int i=0; i<2*size; ++i) {
+            buffer.putInt(coordinates[i]);
+        }
+    }
+}
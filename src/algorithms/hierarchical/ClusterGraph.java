@@ -0,0 +1,342 @@
+package algorithms.hierarchical;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import algorithms.datatypes.PreprocessingCache;
+import grid.GridGraph;
+
+/**
+ * Abstract graph for hierarchical any-angle search (see HierarchicalAlgorithm).
+ *
+ * The grid is split into square clusters of clusterSize x clusterSize tiles. Neighbouring clusters share the grid points
+ * on their common border. Along each border, the points where a path can pass from one cluster to the other form runs,
+ * and the ends of each run (plus a point every entranceSpacing within long runs) are the entrances.
+ * Inside a run, the border can be followed in both clusters, so any path crossing the border can be rerouted through an entrance.
+ * An entrance belongs to every cluster it touches an unblocked tile of (up to four at cluster corners).
+ *
+ * For each cluster, the distances between its entrances inside the cluster are computed with a ClusterSearch.
+ * The clusters are independent, so they are processed in parallel, each worker thread holding one ClusterSearch.
+ * Besides these per-worker searches, the memory used is the entrances and one triangular distance table per cluster.
+ */
+public final class ClusterGraph {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 64;
+    private static ForkJoinPool constructionPool = ForkJoinPool.commonPool();
+
+    final GridGraph graph;
+    final int clusterSize;
+    final int entranceSpacing;
+    final int nClustersX;
+    final int nClustersY;
+    private final int version;
+
+    int nEntrances;
+    int[] entranceXs;
+    int[] entranceYs;
+    // The clusters of entrance e are entranceClusters[4e .. 4e+3], padded with -1.
+    // entranceLocalIndexes holds the entrance's index among the entrances of each of those clusters.
+    int[] entranceClusters;
+    int[] entranceLocalIndexes;
+
+    // The entrances of cluster c are clusterEntrances[clusterEntranceStarts[c] .. clusterEntranceStarts[c+1]).
+    int[] clusterEntranceStarts;
+    int[] clusterEntrances;
+
+    // Distances between the entrances i < j of cluster c, inside c, at distances[distanceStarts[c] + j*(j-1)/2 + i].
+    private int[] distanceStarts;
+    private float[] distances;
+
+    private ClusterGraph(GridGraph graph, int clusterSize) {
+        this.graph = graph;
+        this.clusterSize = clusterSize;
+        this.entranceSpacing = Math.max(1, clusterSize/2);
+        this.nClustersX = Math.max(1, (graph.sizeX + clusterSize - 1) / clusterSize);
+        this.nClustersY = Math.max(1, (graph.sizeY + clusterSize - 1) / clusterSize);
+        this.version = graph.version();
+    }
+
+    /**
+     * Builds new graphs on the given pool, or on the calling thread if pool is null. Both modes produce identical graphs.
+     * The common pool is used by default.
+     */
+    public static final synchronized void setConstructionPool(ForkJoinPool pool) {
+        constructionPool = pool;
+    }
+
+    /**
+     * @return the graph stored for this grid and cluster size, built if there is none or if the grid has changed since.
+     */
+    public static final synchronized ClusterGraph getStoredGraph(GridGraph graph, int clusterSize) {
+        ClusterGraph storedGraph = PreprocessingCache.get(graph, ClusterGraph.class, clusterSize);
+        if (storedGraph != null && storedGraph.version == graph.version()) return storedGraph;
+        long _st = System.nanoTime();
+
+        ClusterGraph clusterGraph = new ClusterGraph(graph, clusterSize);
+        clusterGraph.constructGraph();
+        PreprocessingCache.put(graph, ClusterGraph.class, clusterSize, clusterGraph, clusterGraph.memoryUsage());
+
+        long _ed = System.nanoTime();
+        System.out.println("Construction Time: " + (_ed-_st)/1000000.);
+        return clusterGraph;
+    }
+
+    /**
+     * Drops the stored graphs of all grids.
+     */
+    public static void clearMemory() {
+        PreprocessingCache.clear(ClusterGraph.class);
+    }
+
+    private final void constructGraph() {
+        addEntrances();
+        assignEntrancesToClusters();
+        computeDistances();
+    }
+
+    /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
+    ///            ENTRANCES               ///
+    /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+    private final void addEntrances() {
+        entranceXs = new int[16];
+        entranceYs = new int[16];
+        nEntrances = 0;
+        HashMap<Integer, Integer> entranceIndex = new HashMap<>();
+
+        // Vertical borders: x = cx*clusterSize, between clusters (cx-1, cy) and (cx, cy).
+        for (int cx=1;cx<nClustersX;++cx) {
+            int x = cx*clusterSize;
+            for (int cy=0;cy<nClustersY;++cy) {
+                int minY = cy*clusterSize;
+                int maxY = Math.min(minY + clusterSize, graph.sizeY);
+                int runStart = -1;
+                for (int y=minY;y<=maxY;++y) {
+                    boolean crossing = isUnblockedIn(cx-1, cy, x, y) && isUnblockedIn(cx, cy, x, y);
+                    if (crossing && runStart == -1) runStart = y;
+                    // The run continues only if the border segment to the next point can be followed in both clusters.
+                    boolean continues = crossing && y < maxY && !graph.isBlocked(x-1, y) && !graph.isBlocked(x, y);
+                    if (runStart != -1 && !continues) {
+                        for (int ry : runPoints(runStart, y)) addEntrance(entranceIndex, x, ry);
+                        runStart = -1;
+                    }
+                }
+            }
+        }
+
+        // Horizontal borders: y = cy*clusterSize, between clusters (cx, cy-1) and (cx, cy).
+        for (int cy=1;cy<nClustersY;++cy) {
+            int y = cy*clusterSize;
+            for (int cx=0;cx<nClustersX;++cx) {
+                int minX = cx*clusterSize;
+                int maxX = Math.min(minX + clusterSize, graph.sizeX);
+                int runStart = -1;
+                for (int x=minX;x<=maxX;++x) {
+                    boolean crossing = isUnblockedIn(cx, cy-1, x, y) && isUnblockedIn(cx, cy, x, y);
+                    if (crossing && runStart == -1) runStart = x;
+                    boolean continues = crossing && x < maxX && !graph.isBlocked(x, y-1) && !graph.isBlocked(x, y);
+                    if (runStart != -1 && !continues) {
+                        for (int rx : runPoints(runStart, x)) addEntrance(entranceIndex, rx, y);
+                        runStart = -1;
+                    }
+                }
+            }
+        }
+
+        entranceXs = Arrays.copyOf(entranceXs, nEntrances);
+        entranceYs = Arrays.copyOf(entranceYs, nEntrances);
+    }
+
+    /**
+     * @return the entrances of the run [from, to]: both ends, and points every entranceSpacing in between.
+     */
+    private final int[] runPoints(int from, int to) {
+        if (from == to) return new int[] {from};
+        int nInner = (to - from - 1) / entranceSpacing;
+        int[] points = new int[nInner + 2];
+        points[0] = from;
+        for (int i=1;i<=nInner;++i) points[i] = from + i*(to - from)/(nInner+1);
+        points[nInner+1] = to;
+        return points;
+    }
+
+    private final void addEntrance(HashMap<Integer, Integer> entranceIndex, int x, int y) {
+        int point = graph.toOneDimIndex(x, y);
+        if (entranceIndex.containsKey(point)) return;
+        if (nEntrances == entranceXs.length) {
+            entranceXs = Arrays.copyOf(entranceXs, nEntrances*2);
+            entranceYs = Arrays.copyOf(entranceYs, nEntrances*2);
+        }
+        entranceIndex.put(point, nEntrances);
+        entranceXs[nEntrances] = x;
+        entranceYs[nEntrances] = y;
+        ++nEntrances;
+    }
+
+    private final void assignEntrancesToClusters() {
+        int nClusters = nClustersX*nClustersY;
+        entranceClusters = new int[4*nEntrances];
+        entranceLocalIndexes = new int[4*nEntrances];
+        Arrays.fill(entranceClusters, -1);
+        int[] nClusterEntrances = new int[nClusters];
+        int[] clustersOfPoint = new int[4];
+        for (int e=0;e<nEntrances;++e) {
+            int n = clustersContaining(entranceXs[e], entranceYs[e], clustersOfPoint);
+            for (int i=0;i<n;++i) {
+                int cluster = clustersOfPoint[i];
+                entranceClusters[4*e + i] = cluster;
+                entranceLocalIndexes[4*e + i] = nClusterEntrances[cluster]++;
+            }
+        }
+
+        clusterEntranceStarts = new int[nClusters+1];
+        for (int c=0;c<nClusters;++c) {
+            clusterEntranceStarts[c+1] = clusterEntranceStarts[c] + nClusterEntrances[c];
+        }
+        clusterEntrances = new int[clusterEntranceStarts[nClusters]];
+        for (int e=0;e<nEntrances;++e) {
+            for (int i=0;i<4 && entranceClusters[4*e + i] != -1;++i) {
+                int cluster = entranceClusters[4*e + i];
+                clusterEntrances[clusterEntranceStarts[cluster] + entranceLocalIndexes[4*e + i]] = e;
+            }
+        }
+    }
+
+    /**
+     * Writes the clusters that contain the grid point (x, y) and that have an unblocked tile touching it into clusters.
+     * @return the number of clusters written (at most 4).
+     */
+    final int clustersContaining(int x, int y, int[] clusters) {
+        int maxCx = Math.min(x/clusterSize, nClustersX-1);
+        int minCx = (x % clusterSize == 0 && x > 0) ? x/clusterSize - 1 : maxCx;
+        int maxCy = Math.min(y/clusterSize, nClustersY-1);
+        int minCy = (y % clusterSize == 0 && y > 0) ? y/clusterSize - 1 : maxCy;
+        int n = 0;
+        for (int cy=minCy;cy<=maxCy;++cy) {
+            for (int cx=minCx;cx<=maxCx;++cx) {
+                if (isUnblockedIn(cx, cy, x, y)) clusters[n++] = cy*nClustersX + cx;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return true if one of the tiles touching the grid point (x, y) is unblocked and in cluster (cx, cy).
+     */
+    private final boolean isUnblockedIn(int cx, int cy, int x, int y) {
+        int minX = cx*clusterSize;
+        int maxX = Math.min(minX + clusterSize, graph.sizeX);
+        int minY = cy*clusterSize;
+        int maxY = Math.min(minY + clusterSize, graph.sizeY);
+        for (int ty=y-1;ty<=y;++ty) {
+            if (ty < minY || ty >= maxY) continue;
+            for (int tx=x-1;tx<=x;++tx) {
+                if (tx < minX || tx >= maxX) continue;
+                if (!graph.isBlocked(tx, ty)) return true;
+            }
+        }
+        return false;
+    }
+
+    final int originX(int cluster) {
+        return (cluster % nClustersX)*clusterSize;
+    }
+
+    final int originY(int cluster) {
+        return (cluster / nClustersX)*clusterSize;
+    }
+
+    /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
+    ///         ENTRANCE DISTANCES          ///
+    /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+    private final void computeDistances() {
+        int nClusters = nClustersX*nClustersY;
+        distanceStarts = new int[nClusters+1];
+        for (int c=0;c<nClusters;++c) {
+            int k = clusterEntranceStarts[c+1] - clusterEntranceStarts[c];
+            distanceStarts[c+1] = distanceStarts[c] + k*(k-1)/2;
+        }
+        distances = new float[distanceStarts[nClusters]];
+
+        // Each cluster writes only its own part of distances.
+        if (constructionPool == null) {
+            computeDistances(0, nClusters);
+        } else {
+            constructionPool.invoke(new ClusterRangeTask(0, nClusters));
+        }
+    }
+
+    private final void computeDistances(int fromCluster, int toCluster) {
+        ClusterSearch search = new ClusterSearch(clusterSize);
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        for (int c=fromCluster;c<toCluster;++c) {
+            int start = clusterEntranceStarts[c];
+            int k = clusterEntranceStarts[c+1] - start;
+            if (k < 2) continue;
+            if (xs.length < k) {
+                xs = new int[k];
+                ys = new int[k];
+            }
+            for (int i=0;i<k;++i) {
+                xs[i] = entranceXs[clusterEntrances[start + i]];
+                ys[i] = entranceYs[clusterEntrances[start + i]];
+            }
+            search.load(graph, originX(c), originY(c));
+            // The distances from entrance j to entrances 0..j-1 make row j of the triangle.
+            for (int j=1;j<k;++j) {
+                search.computeDistances(xs[j], ys[j], xs, ys, 0, j, distances, distanceStarts[c] + j*(j-1)/2);
+            }
+        }
+    }
+
+    private final class ClusterRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 16;
+        private final int from;
+        private final int to;
+
+        ClusterRangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                computeDistances(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ClusterRangeTask(from, mid), new ClusterRangeTask(mid, to));
+        }
+    }
+
+    /**
+     * @return the distance inside cluster between its i-th and j-th entrances, or Float.POSITIVE_INFINITY.
+     */
+    final float distance(int cluster, int i, int j) {
+        if (i == j) return 0f;
+        if (i > j) {
+            int t = i; i = j; j = t;
+        }
+        return distances[distanceStarts[cluster] + j*(j-1)/2 + i];
+    }
+
+    final int nClusters() {
+        return nClustersX*nClustersY;
+    }
+
+    public final int nEntrances() {
+        return nEntrances;
+    }
+
+    public final long memoryUsage() {
+        long nInts = entranceXs.length + entranceYs.length + entranceClusters.length + entranceLocalIndexes.length
+                + clusterEntranceStarts.length + clusterEntrances.length + distanceStarts.length + distances.length;
+        return nInts*4;
+    }
+}
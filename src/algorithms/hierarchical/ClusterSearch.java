@@ -0,0 +1,220 @@
+package algorithms.hierarchical;
+
+import java.util.Arrays;
+
+import algorithms.datatypes.Memory;
+import algorithms.datatypes.SearchContext;
+import algorithms.datatypes.WaypointBuffer;
+import algorithms.priorityqueue.ReusableIndirectHeap;
+import algorithms.sparsevgs.LineOfSightScannerDouble;
+import grid.GridGraph;
+
+/**
+ * Any-angle searches restricted to one cluster of a grid.
+ *
+ * load copies the cluster's tiles into a small grid of clusterSize x clusterSize tiles (tiles outside the map are blocked),
+ * so every path found here is also a path on the full grid. The searches are visibility graph searches on that grid:
+ * the successors of a point are the corners a LineOfSightScanner finds visible and taut from it, plus the targets
+ * it has line of sight to. The visibility graph is built lazily: each point is scanned at most once per load,
+ * so several searches in the same cluster share the scans.
+ *
+ * An instance has its own SearchContext, and must only be used by one thread at a time.
+ */
+final class ClusterSearch {
+    final int clusterSize;
+    private final int sizePlusOne;
+    private final int nPoints;
+
+    private GridGraph clusterGraph;
+    private LineOfSightScannerDouble scanner;
+    private int originX;
+    private int originY;
+
+    // Lazily built visibility graph, by point index (y*sizePlusOne + x in cluster coordinates).
+    // The successors of a scanned point p are successors[successorStarts[p] .. successorStarts[p]+nSuccessors[p]).
+    private final int[] successorStarts;
+    private final int[] nSuccessors;
+    private int[] successors = new int[256];
+    private int nStoredSuccessors;
+
+    private final SearchContext searchContext = new SearchContext();
+    private Memory memory;
+    private ReusableIndirectHeap pq;
+
+    // Targets of the current search. targetSlot is -1 for points that are not targets.
+    private final int[] targetSlot;
+    private int[] targets = new int[16];
+    private int nTargets;
+    private int nSettledTargets;
+    private int[] reversedPath = new int[16];
+
+    ClusterSearch(int clusterSize) {
+        this.clusterSize = clusterSize;
+        this.sizePlusOne = clusterSize+1;
+        this.nPoints = sizePlusOne*sizePlusOne;
+        successorStarts = new int[nPoints];
+        nSuccessors = new int[nPoints];
+        targetSlot = new int[nPoints];
+        Arrays.fill(targetSlot, -1);
+    }
+
+    /**
+     * Restricts the searches to the tiles [originX, originX+clusterSize) x [originY, originY+clusterSize) of graph.
+     */
+    void load(GridGraph graph, int originX, int originY) {
+        this.originX = originX;
+        this.originY = originY;
+        clusterGraph = new GridGraph(clusterSize, clusterSize);
+        int maxX = Math.min(clusterSize, graph.sizeX - originX);
+        int maxY = Math.min(clusterSize, graph.sizeY - originY);
+        for (int y=0;y<clusterSize;++y) {
+            for (int x=0;x<clusterSize;++x) {
+                boolean blocked = x >= maxX || y >= maxY || graph.isBlocked(originX+x, originY+y);
+                if (blocked) clusterGraph.setBlocked(x, y, true);
+            }
+        }
+        scanner = new LineOfSightScannerDouble(clusterGraph);
+        Arrays.fill(successorStarts, -1);
+        nStoredSuccessors = 0;
+    }
+
+    /**
+     * @return true if some tile of the loaded cluster touching the grid point (x, y) is unblocked.
+     */
+    boolean isUnblockedCoordinate(int x, int y) {
+        return clusterGraph.isUnblockedCoordinate(x-originX, y-originY);
+    }
+
+    /**
+     * Computes the distances inside the cluster from (sx, sy) to targets [from, to) of targetXs, targetYs, into out from outOffset.
+     * All points are in grid coordinates and must lie in the loaded cluster.
+     * Float.POSITIVE_INFINITY for targets that cannot be reached inside the cluster.
+     */
+    void computeDistances(int sx, int sy, int[] targetXs, int[] targetYs, int from, int to, float[] out, int outOffset) {
+        nTargets = 0;
+        for (int i=from;i<to;++i) {
+            addTarget(toPoint(targetXs[i], targetYs[i]));
+        }
+        search(toPoint(sx, sy), -1);
+        for (int i=from;i<to;++i) {
+            out[outOffset + i - from] = memory.distance(toPoint(targetXs[i], targetYs[i]));
+        }
+        clearTargets();
+    }
+
+    /**
+     * Finds the shortest path inside the cluster from (sx, sy) to (ex, ey), and adds it to path, without the start.
+     * @return the length of the path, or Float.POSITIVE_INFINITY (nothing is added then).
+     */
+    float appendPath(int sx, int sy, int ex, int ey, WaypointBuffer path) {
+        nTargets = 0;
+        int goal = toPoint(ex, ey);
+        addTarget(goal);
+        search(toPoint(sx, sy), goal);
+        clearTargets();
+
+        float length = memory.distance(goal);
+        if (length == Float.POSITIVE_INFINITY) return length;
+        int n = 0;
+        for (int current = goal; memory.parent(current) != -1; current = memory.parent(current)) {
+            if (n == reversedPath.length) reversedPath = Arrays.copyOf(reversedPath, n*2);
+            reversedPath[n++] = current;
+        }
+        // path drops collinear points as they are added, so they must be added in order.
+        for (int i=n-1;i>=0;--i) {
+            path.add(originX + reversedPath[i]%sizePlusOne, originY + reversedPath[i]/sizePlusOne);
+        }
+        return length;
+    }
+
+    private int toPoint(int x, int y) {
+        return (y-originY)*sizePlusOne + (x-originX);
+    }
+
+    private void addTarget(int point) {
+        if (targetSlot[point] != -1) return;
+        if (nTargets == targets.length) targets = Arrays.copyOf(targets, nTargets*2);
+        targetSlot[point] = nTargets;
+        targets[nTargets++] = point;
+    }
+
+    private void clearTargets() {
+        for (int i=0;i<nTargets;++i) targetSlot[targets[i]] = -1;
+    }
+
+    /**
+     * Dijkstra from start until every target is settled, or A* if there is a single goal.
+     */
+    private void search(int start, int goal) {
+        memory = searchContext.memory;
+        memory.initialise(nPoints, Float.POSITIVE_INFINITY, -1, false);
+        pq = searchContext.heap;
+        pq.reset(nPoints);
+        nSettledTargets = 0;
+        if (nTargets == 0) return;
+
+        int goalX = goal == -1 ? 0 : goal%sizePlusOne;
+        int goalY = goal == -1 ? 0 : goal/sizePlusOne;
+        memory.setDistance(start, 0f);
+        pq.decreaseKey(start, goal == -1 ? 0f : clusterGraph.distance(start%sizePlusOne, start/sizePlusOne, goalX, goalY));
+
+        while (!pq.isEmpty()) {
+            int current = pq.popMinIndex();
+            memory.setVisited(current, true);
+            if (targetSlot[current] != -1 && ++nSettledTargets == nTargets) return;
+
+            int x = current%sizePlusOne;
+            int y = current/sizePlusOne;
+            float currentDistance = memory.distance(current);
+
+            // Targets are only reached directly. A shortest path does not turn at a target unless it is also a corner.
+            for (int i=0;i<nTargets;++i) {
+                int target = targets[i];
+                if (memory.visited(target)) continue;
+                int tx = target%sizePlusOne;
+                int ty = target/sizePlusOne;
+                float newDistance = currentDistance + clusterGraph.distance(x, y, tx, ty);
+                if (newDistance >= memory.distance(target)) continue;
+                if (!clusterGraph.lineOfSight(x, y, tx, ty)) continue;
+                relax(current, target, newDistance, goal == -1 ? 0f : clusterGraph.distance(tx, ty, goalX, goalY));
+            }
+
+            int begin = scan(current, x, y);
+            int end = begin + nSuccessors[current];
+            for (int i=begin;i<end;++i) {
+                int next = successors[i];
+                if (memory.visited(next)) continue;
+                int nx = next%sizePlusOne;
+                int ny = next/sizePlusOne;
+                float newDistance = currentDistance + clusterGraph.distance(x, y, nx, ny);
+                if (newDistance >= memory.distance(next)) continue;
+                relax(current, next, newDistance, goal == -1 ? 0f : clusterGraph.distance(nx, ny, goalX, goalY));
+            }
+        }
+    }
+
+    private void relax(int from, int to, float newDistance, float heuristic) {
+        memory.setDistance(to, newDistance);
+        memory.setParent(to, from);
+        pq.decreaseKey(to, newDistance + heuristic);
+    }
+
+    /**
+     * @return the position of the point's successors in successors, scanning it if it has not been scanned since load.
+     */
+    private int scan(int point, int x, int y) {
+        if (successorStarts[point] != -1) return successorStarts[point];
+        scanner.computeAllVisibleTautSuccessors(x, y);
+        int n = scanner.nSuccessors;
+        if (nStoredSuccessors + n > successors.length) {
+            successors = Arrays.copyOf(successors, Math.max(successors.length*2, nStoredSuccessors + n));
+        }
+        for (int i=0;i<n;++i) {
+            successors[nStoredSuccessors + i] = scanner.successorsY[i]*sizePlusOne + scanner.successorsX[i];
+        }
+        successorStarts[point] = nStoredSuccessors;
+        nSuccessors[point] = n;
+        nStoredSuccessors += n;
+        return successorStarts[point];
+    }
+}
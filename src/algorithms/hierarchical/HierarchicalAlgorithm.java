@@ -0,0 +1,316 @@
+package algorithms.hierarchical;
+
+import algorithms.PathFindingAlgorithm;
+import algorithms.datatypes.WaypointBuffer;
+import algorithms.priorityqueue.ReusableIndirectHeap;
+import grid.GridGraph;
+
+/**
+ * Hierarchical any-angle search for maps too large to preprocess as a whole (in the manner of HPA*, Botea, Mueller and Schaeffer 2004).
+ *
+ * The map is split into clusters (see ClusterGraph). A query:
+ * 1. computes the distances from the start to the entrances of its cluster, and from the goal to those of its cluster,
+ *    with searches restricted to these clusters,
+ * 2. runs A* on the abstract graph of entrances, whose edges are the precomputed distances inside each cluster,
+ * 3. refines each edge of the abstract path with a search restricted to its cluster, so only the clusters
+ *    along the chosen corridor are searched,
+ * 4. smooths the path with line of sight checks on the whole map, which removes the detours through the entrances.
+ *
+ * Paths are valid, but not optimal: they cross cluster borders at entrances only, and are only partly straightened by smoothing.
+ */
+public class HierarchicalAlgorithm extends PathFindingAlgorithm {
+
+    // Each thread keeps one ClusterSearch for the cluster size it last used.
+    private static final ThreadLocal<ClusterSearch> threadClusterSearch = new ThreadLocal<>();
+
+    private final int clusterSize;
+    private ClusterGraph clusterGraph;
+    private ClusterSearch clusterSearch;
+    private int[][] path = new int[0][];
+
+    public HierarchicalAlgorithm(GridGraph graph, int sx, int sy, int ex, int ey) {
+        this(graph, sx, sy, ex, ey, ClusterGraph.DEFAULT_CLUSTER_SIZE);
+    }
+
+    private HierarchicalAlgorithm(GridGraph graph, int sx, int sy, int ex, int ey, int clusterSize) {
+        super(graph, graph.sizeX, graph.sizeY, sx, sy, ex, ey);
+        if (clusterSize < 2) throw new IllegalArgumentException("Cluster size must be at least 2.");
+        this.clusterSize = clusterSize;
+    }
+
+    public static HierarchicalAlgorithm withClusterSize(GridGraph graph, int sx, int sy, int ex, int ey, int clusterSize) {
+        return new HierarchicalAlgorithm(graph, sx, sy, ex, ey, clusterSize);
+    }
+
+    @Override
+    public boolean reuseFor(int sx, int sy, int ex, int ey) {
+        setQuery(sx, sy, ex, ey);
+        path = new int[0][];
+        return true;
+    }
+
+    @Override
+    public void computePath() {
+        path = new int[0][];
+        if (!graph.isUnblockedCoordinate(sx, sy) || !graph.isUnblockedCoordinate(ex, ey)) return;
+        if (sx == ex && sy == ey) {
+            path = new int[][] {{sx, sy}};
+            return;
+        }
+        if (graph.lineOfSight(sx, sy, ex, ey)) {
+            path = new int[][] {{sx, sy}, {ex, ey}};
+            return;
+        }
+
+        clusterGraph = ClusterGraph.getStoredGraph(graph, clusterSize);
+        clusterSearch = threadClusterSearch.get();
+        if (clusterSearch == null || clusterSearch.clusterSize != clusterSize) {
+            clusterSearch = new ClusterSearch(clusterSize);
+            threadClusterSearch.set(clusterSearch);
+        }
+
+        int[] abstractPath = searchAbstractGraph();
+        if (abstractPath == null) return;
+        WaypointBuffer refined = searchContext().waypoints;
+        refined.clear();
+        if (!refine(abstractPath, refined)) return;
+        path = smooth(refined);
+    }
+
+    /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
+    ///          ABSTRACT SEARCH            ///
+    /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+    // Distances from the start to the entrances of each start cluster, and from those of each goal cluster to the goal.
+    private final int[] startClusters = new int[4];
+    private final int[] goalClusters = new int[4];
+    private int nStartClusters;
+    private int nGoalClusters;
+    private float[][] startDistances = new float[4][];
+    private float[][] goalDistances = new float[4][];
+    private int directCluster; // The cluster of the direct edge from the start to the goal, if any.
+
+    /**
+     * @return the abstract path as a sequence of nodes (entrances, then start = nEntrances and goal = nEntrances+1),
+     *         from start to goal, or null if there is no path.
+     */
+    private int[] searchAbstractGraph() {
+        ClusterGraph cg = clusterGraph;
+        int nEntrances = cg.nEntrances;
+        int startNode = nEntrances;
+        int goalNode = nEntrances+1;
+
+        nStartClusters = cg.clustersContaining(sx, sy, startClusters);
+        nGoalClusters = cg.clustersContaining(ex, ey, goalClusters);
+        for (int i=0;i<nStartClusters;++i) startDistances[i] = entranceDistances(startClusters[i], sx, sy, startDistances[i]);
+        for (int i=0;i<nGoalClusters;++i) goalDistances[i] = entranceDistances(goalClusters[i], ex, ey, goalDistances[i]);
+
+        int size = nEntrances+2;
+        initialiseMemory(size, Float.POSITIVE_INFINITY, -1, false);
+        ReusableIndirectHeap pq = initialiseHeap(size);
+
+        directCluster = -1;
+        // Start: to the entrances of its clusters, and directly to the goal if they share a cluster.
+        memory.setDistance(startNode, 0f);
+        memory.setVisited(startNode, true);
+        for (int i=0;i<nStartClusters;++i) {
+            int cluster = startClusters[i];
+            int begin = cg.clusterEntranceStarts[cluster];
+            int end = cg.clusterEntranceStarts[cluster+1];
+            for (int j=begin;j<end;++j) {
+                relax(pq, startNode, cg.clusterEntrances[j], startDistances[i][j-begin]);
+            }
+            if (indexOf(goalClusters, nGoalClusters, cluster) != -1) {
+                clusterSearch.load(graph, cg.originX(cluster), cg.originY(cluster));
+                WaypointBuffer scratch = searchContext().waypoints;
+                scratch.clear();
+                float directDistance = clusterSearch.appendPath(sx, sy, ex, ey, scratch);
+                if (directDistance < memory.distance(goalNode)) directCluster = cluster;
+                relax(pq, startNode, goalNode, directDistance);
+            }
+        }
+
+        while (!pq.isEmpty()) {
+            int current = pq.popMinIndex();
+            memory.setVisited(current, true);
+            if (current == goalNode) break;
+            float currentDistance = memory.distance(current);
+
+            for (int c=0;c<4;++c) {
+                int cluster = cg.entranceClusters[4*current + c];
+                if (cluster == -1) break;
+                int local = cg.entranceLocalIndexes[4*current + c];
+                int begin = cg.clusterEntranceStarts[cluster];
+                int end = cg.clusterEntranceStarts[cluster+1];
+                for (int j=begin;j<end;++j) {
+                    int next = cg.clusterEntrances[j];
+                    if (next == current || memory.visited(next)) continue;
+                    float weight = cg.distance(cluster, local, j-begin);
+                    if (weight == Float.POSITIVE_INFINITY) continue;
+                    relax(pq, current, next, currentDistance + weight);
+                }
+                int g = indexOf(goalClusters, nGoalClusters, cluster);
+                if (g != -1) relax(pq, current, goalNode, currentDistance + goalDistances[g][local]);
+            }
+        }
+        if (!memory.visited(goalNode)) return null;
+
+        int length = 0;
+        for (int current = goalNode; current != -1; current = memory.parent(current)) ++length;
+        int[] abstractPath = new int[length];
+        for (int current = goalNode; current != -1; current = memory.parent(current)) abstractPath[--length] = current;
+        return abstractPath;
+    }
+
+    private void relax(ReusableIndirectHeap pq, int from, int to, float newDistance) {
+        if (newDistance >= memory.distance(to)) return;
+        memory.setDistance(to, newDistance);
+        memory.setParent(to, from);
+        pq.decreaseKey(to, newDistance + heuristic(to));
+    }
+
+    private float heuristic(int node) {
+        return graph.distance(nodeX(node), nodeY(node), ex, ey);
+    }
+
+    /**
+     * @return the distances inside cluster from (x, y) to each of the cluster's entrances, in distances if it is large enough.
+     */
+    private float[] entranceDistances(int cluster, int x, int y, float[] distances) {
+        ClusterGraph cg = clusterGraph;
+        int begin = cg.clusterEntranceStarts[cluster];
+        int end = cg.clusterEntranceStarts[cluster+1];
+        if (distances == null || distances.length < end-begin) distances = new float[end-begin];
+        if (end == begin) return distances;
+        clusterSearch.load(graph, cg.originX(cluster), cg.originY(cluster));
+        int[] xs = new int[end-begin];
+        int[] ys = new int[end-begin];
+        for (int j=begin;j<end;++j) {
+            xs[j-begin] = cg.entranceXs[cg.clusterEntrances[j]];
+            ys[j-begin] = cg.entranceYs[cg.clusterEntrances[j]];
+        }
+        clusterSearch.computeDistances(x, y, xs, ys, 0, end-begin, distances, 0);
+        return distances;
+    }
+
+    private static int indexOf(int[] array, int n, int value) {
+        for (int i=0;i<n;++i) if (array[i] == value) return i;
+        return -1;
+    }
+
+    private int nodeX(int node) {
+        if (node == clusterGraph.nEntrances) return sx;
+        if (node == clusterGraph.nEntrances+1) return ex;
+        return clusterGraph.entranceXs[node];
+    }
+
+    private int nodeY(int node) {
+        if (node == clusterGraph.nEntrances) return sy;
+        if (node == clusterGraph.nEntrances+1) return ey;
+        return clusterGraph.entranceYs[node];
+    }
+
+    /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
+    ///       REFINEMENT AND SMOOTHING      ///
+    /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+    /**
+     * Replaces each edge of the abstract path by the shortest path inside a cluster containing both ends.
+     * @return false if some edge could not be refined (which does not happen, as every edge was found inside a cluster).
+     */
+    private boolean refine(int[] abstractPath, WaypointBuffer refined) {
+        int[] clustersA = new int[4];
+        int[] clustersB = new int[4];
+        int loadedCluster = -1;
+        refined.add(sx, sy);
+        for (int i=0;i+1<abstractPath.length;++i) {
+            int a = abstractPath[i];
+            int b = abstractPath[i+1];
+            int ax = nodeX(a), ay = nodeY(a);
+            int bx = nodeX(b), by = nodeY(b);
+
+            // Of the clusters containing both ends, the one with the shortest path between them.
+            int nA = clusterGraph.clustersContaining(ax, ay, clustersA);
+            int nB = clusterGraph.clustersContaining(bx, by, clustersB);
+            int cluster = -1;
+            float best = Float.POSITIVE_INFINITY;
+            for (int j=0;j<nA;++j) {
+                if (indexOf(clustersB, nB, clustersA[j]) == -1) continue;
+                float length = edgeLength(clustersA[j], a, b);
+                if (cluster == -1 || length < best) {
+                    cluster = clustersA[j];
+                    best = length;
+                }
+            }
+            if (cluster == -1) return false;
+
+            if (cluster != loadedCluster) {
+                clusterSearch.load(graph, clusterGraph.originX(cluster), clusterGraph.originY(cluster));
+                loadedCluster = cluster;
+            }
+            if (clusterSearch.appendPath(ax, ay, bx, by, refined) == Float.POSITIVE_INFINITY) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the length of the edge (a, b) inside cluster, as known without a search. Start and goal edges are looked up
+     *         in the distances computed for the abstract search.
+     */
+    private float edgeLength(int cluster, int a, int b) {
+        int nEntrances = clusterGraph.nEntrances;
+        if (a >= nEntrances && b >= nEntrances) return cluster == directCluster ? 0f : Float.POSITIVE_INFINITY;
+        if (a >= nEntrances || b >= nEntrances) {
+            boolean fromStart = a == nEntrances;
+            int entrance = fromStart ? b : a;
+            int[] clusters = fromStart ? startClusters : goalClusters;
+            int i = indexOf(clusters, fromStart ? nStartClusters : nGoalClusters, cluster);
+            if (i == -1) return Float.POSITIVE_INFINITY;
+            float[] distances = fromStart ? startDistances[i] : goalDistances[i];
+            return distances[localIndex(entrance, cluster)];
+        }
+        return clusterGraph.distance(cluster, localIndex(a, cluster), localIndex(b, cluster));
+    }
+
+    private int localIndex(int entrance, int cluster) {
+        for (int c=0;c<4;++c) {
+            if (clusterGraph.entranceClusters[4*entrance + c] == cluster) return clusterGraph.entranceLocalIndexes[4*entrance + c];
+        }
+        return -1;
+    }
+
+    /**
+     * Keeps a waypoint only if the previous kept waypoint cannot see the one after it.
+     */
+    private int[][] smooth(WaypointBuffer refined) {
+        int n = refined.size();
+        int[] kept = new int[n];
+        int nKept = 0;
+        kept[nKept++] = 0;
+        for (int i=1;i<n-1;++i) {
+            int anchor = kept[nKept-1];
+            if (!graph.lineOfSight(refined.x(anchor), refined.y(anchor), refined.x(i+1), refined.y(i+1))) {
+                kept[nKept++] = i;
+            }
+        }
+        if (n > 1) kept[nKept++] = n-1;
+
+        int[][] smoothed = new int[nKept][];
+        for (int i=0;i<nKept;++i) smoothed[i] = new int[] {refined.x(kept[i]), refined.y(kept[i])};
+        return smoothed;
+    }
+
+    @Override
+    public int[][] getPath() {
+        return path;
+    }
+
+    @Override
+    public float getPathLength() {
+        float length = 0;
+        for (int i=1;i<path.length;++i) {
+            length += graph.distance(path[i-1][0], path[i-1][1], path[i][0], path[i][1]);
+        }
+        return length;
+    }
+}
@@ -45,6 +45,11 @@ public class FibonacciHeap<T>
      */
     private int nNodes;
 
+    /**
+     * Scratch array of consolidate, indexed by degree.
+     */
+    private FibonacciHeapNode<T>[] degreeArray = newDegreeArray(16);
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -409,13 +414,11 @@ public class FibonacciHeap<T>
         int arraySize =
             ((int) Math.floor(Math.log(nNodes) * oneOverLogPhi)) + 1;
 
-        List<FibonacciHeapNode<T>> array =
-            new ArrayList<FibonacciHeapNode<T>>(arraySize);
-
-        // Initialize degree array
-        for (int i = 0; i < arraySize; i++) {
-            array.add(null);
+        // The degree array is kept between calls, all null, so that removeMin does not allocate.
+        if (degreeArray.length < arraySize) {
+            degreeArray = newDegreeArray(arraySize);
         }
+        FibonacciHeapNode<T>[] array = degreeArray;
 
         // Find the number of root nodes.
         int numRoots = 0;
@@ -439,7 +442,7 @@ public class FibonacciHeap<T>
 
             // ..and see if there's another of the same degree.
             for (;;) {
-                FibonacciHeapNode<T> y = array.get(d);
+                FibonacciHeapNode<T> y = array[d];
                 if (y == null) {
                     // Nope.
                     break;
@@ -457,13 +460,13 @@ public class FibonacciHeap<T>
                 link(y, x);
 
                 // We've handled this degree, go to next one.
-                array.set(d, null);
+                array[d] = null;
                 d++;
             }
 
             // Save this node for later when we might encounter another
             // of the same degree.
-            array.set(d, x);
+            array[d] = x;
 
             // Move forward through list.
             x = next;
@@ -475,10 +478,11 @@ public class FibonacciHeap<T>
         minNode = null;
 
         for (int i = 0; i < arraySize; i++) {
-            FibonacciHeapNode<T> y = array.get(i);
+            FibonacciHeapNode<T> y = array[i];
             if (y == null) {
                 continue;
             }
+            array[i] = null;
 
             // We've got a live one, add it to root list.
             if (minNode != null) {
@@ -505,6 +509,12 @@ public class FibonacciHeap<T>
 
     // consolidate
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> FibonacciHeapNode<T>[] newDegreeArray(int size)
+    {
+        return (FibonacciHeapNode<T>[]) new FibonacciHeapNode[size];
+    }
+
     /**
      * The reverse of the link operation: removes x from the child list of y.
      * This method assumes that min is non-null.
@@ -106,6 +106,12 @@ public class FibonacciHeapNode<T>
         return data;
     }
 
+    // For subclasses that reuse nodes; only valid while the node is not in a heap.
+    protected final void setData(T data)
+    {
+        this.data = data;
+    }
+
     /**
      * Return the string representation of this object.
      *
@@ -0,0 +1,106 @@
+package algorithms.priorityqueue;
+
+import java.util.Arrays;
+
+import algorithms.jgrapht.FibonacciHeap;
+import algorithms.jgrapht.FibonacciHeapNode;
+
+/**
+ * algorithms.jgrapht.FibonacciHeap behind the indirect queue interface. O(1) insert and decreaseKey,
+ * O(lgn) amortised deleteMin. Pops in the same order as using the FibonacciHeap directly.
+ * The heap nodes are kept by item and reused, so only the first search over a given memory size allocates them.
+ */
+public class FibonacciIndirectHeap implements IndirectPriorityQueue {
+
+    private static final class Node extends FibonacciHeapNode<Integer> {
+        Node(int index) {
+            super(index);
+        }
+
+        void clear() {
+            reset();
+        }
+    }
+
+    private final FibonacciHeap<Integer> heap = new FibonacciHeap<>();
+    private Node[] nodes;
+    private int[] tickets;    // The current ticket iff the item is in the heap.
+    private int ticketNumber;
+
+    /**
+     * Creates an empty heap with no memory allocated. Call reset before use.
+     */
+    public FibonacciIndirectHeap() {
+    }
+
+    @Override
+    public final void reset(int memorySize) {
+        heap.clear();
+        if (tickets == null || tickets.length != memorySize) {
+            nodes = new Node[memorySize];
+            tickets = new int[memorySize];
+            ticketNumber = 1;
+        } else if (ticketNumber == Integer.MAX_VALUE) {
+            Arrays.fill(tickets, 0);
+            ticketNumber = 1;
+        } else {
+            ticketNumber++;
+        }
+    }
+
+    @Override
+    public final void grow(int memorySize) {
+        if (memorySize <= tickets.length) return;
+        nodes = Arrays.copyOf(nodes, memorySize);
+        tickets = Arrays.copyOf(tickets, memorySize);
+    }
+
+    @Override
+    public final void decreaseKey(int index, float newKey) {
+        if (tickets[index] == ticketNumber) {
+            heap.decreaseKey(nodes[index], newKey);
+            return;
+        }
+        tickets[index] = ticketNumber;
+        Node node = nodes[index];
+        if (node == null) {
+            node = new Node(index);
+            nodes[index] = node;
+        } else {
+            node.clear();
+        }
+        heap.insert(node, newKey);
+    }
+
+    @Override
+    public final int popMinIndex() {
+        if (heap.isEmpty())
+            throw new NullPointerException("Indirect Heap is empty!");
+
+        int min = heap.removeMin().getData();
+        tickets[min] = 0;
+        return min;
+    }
+
+    @Override
+    public final float getMinValue() {
+        return heap.isEmpty() ? Float.POSITIVE_INFINITY : (float)heap.min().getKey();
+    }
+
+    @Override
+    public final int size() {
+        return heap.size();
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    @Override
+    public void clearMemory() {
+        heap.clear();
+        nodes = null;
+        tickets = null;
+    }
+}
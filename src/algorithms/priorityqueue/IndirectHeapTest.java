@@ -2,6 +2,8 @@ package algorithms.priorityqueue;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 public class IndirectHeapTest {
@@ -84,6 +86,98 @@ public class IndirectHeapTest {
         assertEquals(0, pq.size());
     }
     
+    @Test
+    public void testIndirectPriorityQueues() {
+        for (PriorityQueueType type : PriorityQueueType.values()) {
+            IndirectPriorityQueue pq = type.create();
+            pq.reset(200);
+
+            // Twice, to check that reset empties the queue.
+            for (int round=0;round<2;++round) {
+                for (int i=0;i<200;++i) {
+                    pq.decreaseKey(i, (i*73)%239);
+                }
+                // Items 200 to 238 only fit after growing.
+                pq.grow(239);
+                for (int i=200;i<239;++i) {
+                    pq.decreaseKey(i, (i*73)%239);
+                }
+                assertEquals(type.toString(), 239, pq.size());
+
+                for (int i=0;i<100;++i) {
+                    assertEquals(type.toString(), i, (int)pq.getMinValue());
+                    assertEquals(type.toString(), i, (pq.popMinIndex()*73)%239);
+                }
+                assertEquals(type.toString(), 139, pq.size());
+
+                if (type == PriorityQueueType.RADIX) {
+                    // Keys may not go below the last popped key. See testRadixHeap.
+                    int previousKey = 99;
+                    while (!pq.isEmpty()) {
+                        int key = (pq.popMinIndex()*73)%239;
+                        assertTrue(key > previousKey);
+                        previousKey = key;
+                    }
+                    pq.reset(239);
+                    continue;
+                }
+
+                // Give the remaining items keys in the reverse order of their indexes.
+                for (int i=0;i<239;++i) {
+                    if ((i*73)%239 >= 100) pq.decreaseKey(i, -i);
+                }
+                int previous = Integer.MAX_VALUE;
+                while (!pq.isEmpty()) {
+                    int index = pq.popMinIndex();
+                    assertTrue(type.toString(), index < previous);
+                    assertTrue(type.toString(), (index*73)%239 >= 100);
+                    previous = index;
+                }
+                pq.reset(239);
+            }
+        }
+    }
+
+    @Test
+    public void testRadixHeap() {
+        RadixIndirectHeap pq = new RadixIndirectHeap();
+        Random rand = new Random(5);
+        float[] keys = new float[1000];
+        for (int round=0;round<3;++round) {
+            pq.reset(1000);
+            // Negative keys, and keys spread over many exponents, as long as no key goes below the last popped key.
+            float last = -50f;
+            boolean[] popped = new boolean[1000];
+            for (int i=0;i<1000;++i) {
+                keys[i] = last + rand.nextFloat()*(1 << rand.nextInt(12));
+                pq.decreaseKey(i, keys[i]);
+            }
+            int nPopped = 0;
+            while (!pq.isEmpty()) {
+                float min = pq.getMinValue();
+                int index = pq.popMinIndex();
+                assertFalse(popped[index]);
+                assertTrue(keys[index] == min);
+                assertTrue(min >= last);
+                popped[index] = true;
+                last = min;
+                ++nPopped;
+
+                // Decrease some keys, but not below the last popped key.
+                for (int j=0;j<3;++j) {
+                    int item = rand.nextInt(1000);
+                    if (popped[item]) continue;
+                    keys[item] = last + (keys[item]-last)*rand.nextFloat();
+                    pq.decreaseKey(item, keys[item]);
+                }
+                for (int i=0;i<1000;++i) {
+                    if (!popped[i]) assertTrue(keys[i] >= last);
+                }
+            }
+            assertEquals(1000, nPopped);
+        }
+    }
+
     public static void assertFloatEquals(float expected, float actual) {
         assertTrue(Math.abs(expected-actual) < 0.001f);
     }
@@ -0,0 +1,46 @@
+package algorithms.priorityqueue;
+
+/**
+ * Min-priority queue over the items 0 .. memorySize-1, keyed by float.
+ * The backing arrays are ticketed: reset empties the queue in O(1) and keeps the memory for the next search.
+ * decreaseKey inserts items that are not in the queue. Keys must not be Float.POSITIVE_INFINITY.
+ * Instances are not shared between threads. See PriorityQueueType for the implementations.
+ */
+public interface IndirectPriorityQueue {
+
+    /**
+     * Empties the queue so it can be reused for a new search over memorySize items.
+     * Runtime: O(1), unless memorySize differs from the previous call.
+     */
+    public void reset(int memorySize);
+
+    /**
+     * Makes room for the items memorySize-1 and below, keeping the queue's contents.
+     */
+    public void grow(int memorySize);
+
+    /**
+     * Inserts index with key newKey, or lowers its key to newKey (which must not be larger than its current key).
+     */
+    public void decreaseKey(int index, float newKey);
+
+    /**
+     * Removes the item with the smallest key.
+     * @return index of min element
+     */
+    public int popMinIndex();
+
+    /**
+     * @return the smallest key, without removing it.
+     */
+    public float getMinValue();
+
+    public int size();
+
+    public boolean isEmpty();
+
+    /**
+     * Releases the backing arrays. Call reset before the next use.
+     */
+    public void clearMemory();
+}
@@ -0,0 +1,186 @@
+package algorithms.priorityqueue;
+
+import java.util.Arrays;
+
+/**
+ * Indirect pairing heap. O(1) insert and decreaseKey, O(lgn) amortised deleteMin.
+ * The nodes are a pool of parallel arrays indexed by item (child, next sibling, and previous sibling or parent),
+ * so the heap does not allocate after the first search over a given memory size.
+ */
+public class PairingIndirectHeap implements IndirectPriorityQueue {
+
+    private float[] keys;
+    private int[] child;
+    private int[] sibling;
+    private int[] previous;   // The previous sibling, or the parent for a first child. -1 for the root.
+    private int[] tickets;    // The current ticket iff the item is in the heap.
+    private int ticketNumber;
+    private int root = -1;
+    private int heapSize;
+
+    // Subtrees waiting to be melded in the second pass of popMinIndex.
+    private int[] pairs;
+
+    /**
+     * Creates an empty heap with no memory allocated. Call reset before use.
+     */
+    public PairingIndirectHeap() {
+    }
+
+    @Override
+    public final void reset(int memorySize) {
+        if (tickets == null || tickets.length != memorySize) {
+            allocate(memorySize);
+            ticketNumber = 1;
+        } else if (ticketNumber == Integer.MAX_VALUE) {
+            Arrays.fill(tickets, 0);
+            ticketNumber = 1;
+        } else {
+            ticketNumber++;
+        }
+        root = -1;
+        heapSize = 0;
+    }
+
+    private final void allocate(int memorySize) {
+        keys = new float[memorySize];
+        child = new int[memorySize];
+        sibling = new int[memorySize];
+        previous = new int[memorySize];
+        tickets = new int[memorySize];
+        pairs = new int[memorySize/2 + 1];
+    }
+
+    @Override
+    public final void grow(int memorySize) {
+        if (memorySize <= tickets.length) return;
+        keys = Arrays.copyOf(keys, memorySize);
+        child = Arrays.copyOf(child, memorySize);
+        sibling = Arrays.copyOf(sibling, memorySize);
+        previous = Arrays.copyOf(previous, memorySize);
+        tickets = Arrays.copyOf(tickets, memorySize);
+        pairs = new int[memorySize/2 + 1];
+    }
+
+    /**
+     * Runtime: O(1)
+     */
+    @Override
+    public final void decreaseKey(int index, float newKey) {
+        keys[index] = newKey;
+        if (tickets[index] != ticketNumber) {
+            tickets[index] = ticketNumber;
+            child[index] = -1;
+            sibling[index] = -1;
+            previous[index] = -1;
+            ++heapSize;
+            root = meld(root, index);
+            return;
+        }
+        if (index == root) return;
+
+        // Cut the subtree out of its sibling list, and meld it with the root.
+        int prev = previous[index];
+        int next = sibling[index];
+        if (child[prev] == index) {
+            child[prev] = next;
+        } else {
+            sibling[prev] = next;
+        }
+        if (next != -1) previous[next] = prev;
+        sibling[index] = -1;
+        previous[index] = -1;
+        root = meld(root, index);
+    }
+
+    /**
+     * Runtime: O(lgn) amortised
+     * @return index of min element
+     */
+    @Override
+    public final int popMinIndex() {
+        if (heapSize == 0)
+            throw new NullPointerException("Indirect Heap is empty!");
+
+        int min = root;
+        tickets[min] = 0;
+        --heapSize;
+        root = mergePairs(child[min]);
+        return min;
+    }
+
+    @Override
+    public final float getMinValue() {
+        return heapSize == 0 ? Float.POSITIVE_INFINITY : keys[root];
+    }
+
+    /**
+     * Two-pass merge of a sibling list: meld pairs left to right, then meld the results right to left.
+     */
+    private final int mergePairs(int first) {
+        if (first == -1) return -1;
+        int nPairs = 0;
+        int current = first;
+        while (current != -1) {
+            int a = current;
+            int b = sibling[a];
+            current = b == -1 ? -1 : sibling[b];
+            sibling[a] = -1;
+            previous[a] = -1;
+            if (b != -1) {
+                sibling[b] = -1;
+                previous[b] = -1;
+                a = meld(a, b);
+            }
+            pairs[nPairs++] = a;
+        }
+
+        int result = pairs[--nPairs];
+        while (nPairs > 0) {
+            result = meld(pairs[--nPairs], result);
+        }
+        return result;
+    }
+
+    /**
+     * Melds two roots (either may be -1), making the one with the larger key the first child of the other.
+     * @return the new root
+     */
+    private final int meld(int a, int b) {
+        if (a == -1) return b;
+        if (b == -1) return a;
+        if (keys[b] < keys[a]) {
+            int temp = a;
+            a = b;
+            b = temp;
+        }
+        int oldChild = child[a];
+        sibling[b] = oldChild;
+        if (oldChild != -1) previous[oldChild] = b;
+        previous[b] = a;
+        child[a] = b;
+        return a;
+    }
+
+    @Override
+    public final int size() {
+        return heapSize;
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        return heapSize <= 0;
+    }
+
+    @Override
+    public void clearMemory() {
+        keys = null;
+        child = null;
+        sibling = null;
+        previous = null;
+        tickets = null;
+        pairs = null;
+        root = -1;
+        heapSize = 0;
+    }
+}
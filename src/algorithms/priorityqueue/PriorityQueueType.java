@@ -0,0 +1,25 @@
+package algorithms.priorityqueue;
+
+/**
+ * The indirect priority queues, for algorithms that let their queue be chosen.
+ * See SearchContext.queue for the calling thread's instance of each.
+ */
+public enum PriorityQueueType {
+    FIBONACCI,
+    BINARY,
+    QUATERNARY,
+    PAIRING,
+    /** Only for monotone keys. See RadixIndirectHeap. */
+    RADIX;
+
+    public IndirectPriorityQueue create() {
+        switch (this) {
+            case FIBONACCI: return new FibonacciIndirectHeap();
+            case BINARY: return new ReusableIndirectHeap();
+            case QUATERNARY: return new QuaternaryIndirectHeap();
+            case PAIRING: return new PairingIndirectHeap();
+            case RADIX: return new RadixIndirectHeap();
+        }
+        throw new UnsupportedOperationException("Invalid priority queue type: " + this);
+    }
+}
@@ -0,0 +1,150 @@
+package algorithms.priorityqueue;
+
+import java.util.Arrays;
+
+/**
+ * Indirect 4-ary heap. Shallower than a binary heap, and the four children of a node are adjacent in memory,
+ * so deleteMin touches fewer cache lines. O(lgn) deleteMin and O(lgn) decreaseKey.
+ * Keys and items are stored by heap position; only the position of each item is ticketed.
+ */
+public class QuaternaryIndirectHeap implements IndirectPriorityQueue {
+
+    private float[] keys;     // by heap position
+    private int[] items;      // by heap position
+    private int[] positions;  // by item. Only valid if the item's ticket is current.
+    private int[] tickets;    // by item. The current ticket iff the item is in the heap.
+    private int ticketNumber;
+    private int heapSize;
+
+    /**
+     * Creates an empty heap with no memory allocated. Call reset before use.
+     */
+    public QuaternaryIndirectHeap() {
+    }
+
+    @Override
+    public final void reset(int memorySize) {
+        if (tickets == null || tickets.length != memorySize) {
+            keys = new float[memorySize];
+            items = new int[memorySize];
+            positions = new int[memorySize];
+            tickets = new int[memorySize];
+            ticketNumber = 1;
+        } else if (ticketNumber == Integer.MAX_VALUE) {
+            Arrays.fill(tickets, 0);
+            ticketNumber = 1;
+        } else {
+            ticketNumber++;
+        }
+        heapSize = 0;
+    }
+
+    @Override
+    public final void grow(int memorySize) {
+        if (memorySize <= tickets.length) return;
+        keys = Arrays.copyOf(keys, memorySize);
+        items = Arrays.copyOf(items, memorySize);
+        positions = Arrays.copyOf(positions, memorySize);
+        tickets = Arrays.copyOf(tickets, memorySize);
+    }
+
+    /**
+     * Runtime: O(lgn)
+     */
+    @Override
+    public final void decreaseKey(int index, float newKey) {
+        int position;
+        if (tickets[index] == ticketNumber) {
+            position = positions[index];
+        } else {
+            tickets[index] = ticketNumber;
+            position = heapSize++;
+        }
+        bubbleUp(position, index, newKey);
+    }
+
+    /**
+     * Runtime: O(lgn)
+     * @return index of min element
+     */
+    @Override
+    public final int popMinIndex() {
+        if (heapSize == 0)
+            throw new NullPointerException("Indirect Heap is empty!");
+
+        int min = items[0];
+        tickets[min] = 0;
+        --heapSize;
+        if (heapSize > 0) {
+            bubbleDown(0, items[heapSize], keys[heapSize]);
+        }
+        return min;
+    }
+
+    @Override
+    public final float getMinValue() {
+        return heapSize == 0 ? Float.POSITIVE_INFINITY : keys[0];
+    }
+
+    /**
+     * Moves the hole at position up until item fits, then puts item there.
+     */
+    private final void bubbleUp(int position, int item, float key) {
+        while (position > 0) {
+            int parent = (position-1) >> 2;
+            if (!(key < keys[parent])) break;
+            place(position, items[parent], keys[parent]);
+            position = parent;
+        }
+        place(position, item, key);
+    }
+
+    /**
+     * Moves the hole at position down until item fits, then puts item there.
+     */
+    private final void bubbleDown(int position, int item, float key) {
+        while (true) {
+            int firstChild = 4*position + 1;
+            if (firstChild >= heapSize) break;
+            int lastChild = Math.min(firstChild + 4, heapSize);
+
+            int smallerChild = firstChild;
+            float smallerKey = keys[firstChild];
+            for (int child = firstChild+1; child < lastChild; ++child) {
+                if (keys[child] < smallerKey) {
+                    smallerChild = child;
+                    smallerKey = keys[child];
+                }
+            }
+            if (!(smallerKey < key)) break;
+            place(position, items[smallerChild], smallerKey);
+            position = smallerChild;
+        }
+        place(position, item, key);
+    }
+
+    private final void place(int position, int item, float key) {
+        keys[position] = key;
+        items[position] = item;
+        positions[item] = position;
+    }
+
+    @Override
+    public final int size() {
+        return heapSize;
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        return heapSize <= 0;
+    }
+
+    @Override
+    public void clearMemory() {
+        keys = null;
+        items = null;
+        positions = null;
+        tickets = null;
+        heapSize = 0;
+    }
+}
@@ -0,0 +1,182 @@
+package algorithms.priorityqueue;
+
+import java.util.Arrays;
+
+/**
+ * Indirect radix heap for monotone keys: once a key has been popped, no smaller key is inserted.
+ * This holds for A* with a consistent heuristic, and for Dijkstra.
+ * O(1) insert and decreaseKey, and O(log C) amortised deleteMin, where log C is the 32 bits of a float key.
+ *
+ * Keys are compared by their bits (mapped so that the integer order is the float order).
+ * Bucket i > 0 holds the items whose key first differs from the last popped key at bit i-1, and bucket 0 those equal to it.
+ * popMinIndex empties the lowest non-empty bucket into lower ones, so each item moves down at most 32 times.
+ *
+ * Keys below the last popped key (e.g. from Theta*'s parent updates, a weighted heuristic or rounding) are
+ * filed with it, so they are popped next, but not in order among themselves.
+ */
+public class RadixIndirectHeap implements IndirectPriorityQueue {
+
+    private static final int N_BUCKETS = 33;
+
+    private float[] keys;
+    private int[] bucketOf;
+    private int[] next;       // Next item in the same bucket, or -1.
+    private int[] previous;   // Previous item in the same bucket, or -1 for the first.
+    private int[] tickets;    // The current ticket iff the item is in the heap.
+    private int ticketNumber;
+    private final int[] bucketHeads = new int[N_BUCKETS];
+    private int last;         // Ordered bits of the last popped key.
+    private int heapSize;
+
+    /**
+     * Creates an empty heap with no memory allocated. Call reset before use.
+     */
+    public RadixIndirectHeap() {
+    }
+
+    @Override
+    public final void reset(int memorySize) {
+        if (tickets == null || tickets.length != memorySize) {
+            keys = new float[memorySize];
+            bucketOf = new int[memorySize];
+            next = new int[memorySize];
+            previous = new int[memorySize];
+            tickets = new int[memorySize];
+            ticketNumber = 1;
+        } else if (ticketNumber == Integer.MAX_VALUE) {
+            Arrays.fill(tickets, 0);
+            ticketNumber = 1;
+        } else {
+            ticketNumber++;
+        }
+        Arrays.fill(bucketHeads, -1);
+        last = Integer.MIN_VALUE;
+        heapSize = 0;
+    }
+
+    @Override
+    public final void grow(int memorySize) {
+        if (memorySize <= tickets.length) return;
+        keys = Arrays.copyOf(keys, memorySize);
+        bucketOf = Arrays.copyOf(bucketOf, memorySize);
+        next = Arrays.copyOf(next, memorySize);
+        previous = Arrays.copyOf(previous, memorySize);
+        tickets = Arrays.copyOf(tickets, memorySize);
+    }
+
+    /**
+     * Runtime: O(1)
+     */
+    @Override
+    public final void decreaseKey(int index, float newKey) {
+        if (tickets[index] == ticketNumber) {
+            unlink(index);
+        } else {
+            tickets[index] = ticketNumber;
+            ++heapSize;
+        }
+        keys[index] = newKey;
+        link(index, bucket(orderedBits(newKey)));
+    }
+
+    /**
+     * Runtime: O(32) amortised
+     * @return index of min element
+     */
+    @Override
+    public final int popMinIndex() {
+        if (heapSize == 0)
+            throw new NullPointerException("Indirect Heap is empty!");
+
+        fillBucketZero();
+        int min = bucketHeads[0];
+        unlink(min);
+        tickets[min] = 0;
+        --heapSize;
+        return min;
+    }
+
+    @Override
+    public final float getMinValue() {
+        if (heapSize == 0) return Float.POSITIVE_INFINITY;
+        fillBucketZero();
+        return keys[bucketHeads[0]];
+    }
+
+    /**
+     * If bucket 0 is empty, makes the smallest key in the lowest non-empty bucket the last key,
+     * and redistributes that bucket. Its items all go to lower buckets, at least one of them to bucket 0.
+     */
+    private final void fillBucketZero() {
+        if (bucketHeads[0] != -1) return;
+        int b = 1;
+        while (bucketHeads[b] == -1) ++b;
+
+        int min = Integer.MAX_VALUE;
+        for (int item = bucketHeads[b]; item != -1; item = next[item]) {
+            min = Math.min(min, orderedBits(keys[item]));
+        }
+        last = min;
+
+        int item = bucketHeads[b];
+        bucketHeads[b] = -1;
+        while (item != -1) {
+            int nextItem = next[item];
+            link(item, bucket(orderedBits(keys[item])));
+            item = nextItem;
+        }
+    }
+
+    /**
+     * Maps a float to an int with the same order (negative floats have their magnitude bits flipped).
+     */
+    private static final int orderedBits(float key) {
+        int bits = Float.floatToRawIntBits(key);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    private final int bucket(int bits) {
+        if (bits <= last) return 0;
+        return 32 - Integer.numberOfLeadingZeros(bits ^ last);
+    }
+
+    private final void link(int item, int b) {
+        int head = bucketHeads[b];
+        next[item] = head;
+        previous[item] = -1;
+        if (head != -1) previous[head] = item;
+        bucketHeads[b] = item;
+        bucketOf[item] = b;
+    }
+
+    private final void unlink(int item) {
+        int prev = previous[item];
+        int nextItem = next[item];
+        if (prev == -1) {
+            bucketHeads[bucketOf[item]] = nextItem;
+        } else {
+            next[prev] = nextItem;
+        }
+        if (nextItem != -1) previous[nextItem] = prev;
+    }
+
+    @Override
+    public final int size() {
+        return heapSize;
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        return heapSize <= 0;
+    }
+
+    @Override
+    public void clearMemory() {
+        keys = null;
+        bucketOf = null;
+        next = null;
+        previous = null;
+        tickets = null;
+        heapSize = 0;
+    }
+}
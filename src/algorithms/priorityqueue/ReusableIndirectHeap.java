@@ -1,49 +1,26 @@
 package algorithms.priorityqueue;
 
+import java.util.Arrays;
 
 /**
  * Indirect binary heap. Used for O(lgn) deleteMin and O(lgn) decreaseKey.
+ * The backing arrays are ticketed, so one instance can be reset and reused
+ * across searches in O(1). Instances are not shared between threads.
  */
-public class ReusableIndirectHeap {
+public class ReusableIndirectHeap implements IndirectPriorityQueue {
 
-    private static float[] keyList;
-    private static int[] inList;
-    private static int[] outList;
+    private float[] keyList;
+    private int[] inList;
+    private int[] outList;
     private int heapSize;
         
-    private static float defaultKey = Float.POSITIVE_INFINITY;
+    private float defaultKey = Float.POSITIVE_INFINITY;
 
-    private static int[] ticketCheck;
-    private static int ticketNumber = 0;
+    private int[] ticketCheck;
+    private int ticketNumber = 0;
     
-    public static final class Context {
-        private float[] keyList;
-        private int[] inList;
-        private int[] outList;
-        private int[] ticketCheck;
-        private int ticketNumber;
-        
-        public Context(){};
-    }
-    
-    public static final void loadContext(Context context) {
-        ReusableIndirectHeap.keyList = context.keyList;
-        ReusableIndirectHeap.inList = context.inList;
-        ReusableIndirectHeap.outList = context.outList;
-        ReusableIndirectHeap.ticketCheck = context.ticketCheck;
-        ReusableIndirectHeap.ticketNumber = context.ticketNumber;
-    }
-    
-    public static final void saveContext(Context context) {
-        context.keyList = ReusableIndirectHeap.keyList;
-        context.inList = ReusableIndirectHeap.inList;
-        context.outList = ReusableIndirectHeap.outList;
-        context.ticketCheck = ReusableIndirectHeap.ticketCheck;
-        context.ticketNumber = ReusableIndirectHeap.ticketNumber;
-    }
-
-    public static void initialise(int size, float defaultKey) {
-        ReusableIndirectHeap.defaultKey = defaultKey;
+    private final void initialise(int size, float defaultKey) {
+        this.defaultKey = defaultKey;
         
         if (ticketCheck == null || ticketCheck.length != size) {
             //System.out.println("REINITIALISE HEAP " + size);
@@ -60,19 +37,19 @@ public class ReusableIndirectHeap {
         }
     }
     
-    public static final float getKey(int index) {
+    private final float getKey(int index) {
         return ticketCheck[index] == ticketNumber ? keyList[index] : defaultKey;
     }
     
-    public static final int getIn(int index) {
+    private final int getIn(int index) {
         return ticketCheck[index] == ticketNumber ? inList[index] : index;
     }
     
-    public static final int getOut(int index) {
+    private final int getOut(int index) {
         return ticketCheck[index] == ticketNumber ? outList[index] : index;
     }
     
-    public static final void setKey(int index, float value) {
+    private final void setKey(int index, float value) {
         if (ticketCheck[index] != ticketNumber) {
             keyList[index] = value;
             inList[index] = index;
@@ -83,7 +60,7 @@ public class ReusableIndirectHeap {
         }
     }
     
-    public static final void setIn(int index, int value) {
+    private final void setIn(int index, int value) {
         if (ticketCheck[index] != ticketNumber) {
             keyList[index] = defaultKey;
             inList[index] = value;
@@ -94,7 +71,7 @@ public class ReusableIndirectHeap {
         }
     }
     
-    public static final void setOut(int index, int value) {
+    private final void setOut(int index, int value) {
         if (ticketCheck[index] != ticketNumber) {
             keyList[index] = defaultKey;
             inList[index] = index;
@@ -106,6 +83,12 @@ public class ReusableIndirectHeap {
     }
 
     
+    /**
+     * Creates an empty heap with no memory allocated. Call reset before use.
+     */
+    public ReusableIndirectHeap() {
+    }
+
     /**
      * Runtime: O(1)
      */
@@ -122,6 +105,28 @@ public class ReusableIndirectHeap {
         heapSize = 0;
     }
 
+    /**
+     * Empties the heap so it can be reused for a new search over memorySize items.
+     * Runtime: O(1), unless memorySize differs from the previous call.
+     */
+    @Override
+    public final void reset(int memorySize) {
+        initialise(memorySize, Float.POSITIVE_INFINITY);
+        heapSize = 0;
+    }
+
+    /**
+     * Runtime: O(memorySize) if the arrays have to grow.
+     */
+    @Override
+    public final void grow(int memorySize) {
+        if (memorySize <= ticketCheck.length) return;
+        keyList = Arrays.copyOf(keyList, memorySize);
+        inList = Arrays.copyOf(inList, memorySize);
+        outList = Arrays.copyOf(outList, memorySize);
+        ticketCheck = Arrays.copyOf(ticketCheck, memorySize);
+    }
+
     /**
      * Runtime: O(n)
      */
@@ -217,6 +222,7 @@ public class ReusableIndirectHeap {
     /**
      * Runtime: O(lgn)
      */
+    @Override
     public final void decreaseKey(int outIndex, float newKey) {
         // Assume newKey < old key
         int inIndex = getIn(outIndex);
@@ -234,6 +240,7 @@ public class ReusableIndirectHeap {
         bubbleUp(inIndex);
     }
     
+    @Override
     public final float getMinValue() {
         return getKey(0);
     }
@@ -242,6 +249,7 @@ public class ReusableIndirectHeap {
      * Runtime: O(lgn)
      * @return index of min element
      */
+    @Override
     public final int popMinIndex() {
         if (heapSize == 0)
             throw new NullPointerException("Indirect Heap is empty!");
@@ -284,32 +292,35 @@ public class ReusableIndirectHeap {
     }
     
     /*
-    private static final int parent(int index) {
+    private final int parent(int index) {
         return (index-1)/2;
     }
     
-    private static final int leftChild(int index) {
+    private final int leftChild(int index) {
         return 2*index+1;
     }
     
-    private static final int rightChild(int index) {
+    private final int rightChild(int index) {
         return 2*index+2;
     }
     */
     
+    @Override
     public final int size() {
         return heapSize;
     }
     
+    @Override
     public final boolean isEmpty() {
         return heapSize <= 0;
     }
 
-    public static void clearMemory() {
+    @Override
+    public void clearMemory() {
         keyList = null;
         inList = null;
         outList = null;
         ticketCheck = null;
-        System.gc();
+        heapSize = 0;
     }
 }
\ No newline at end of file
@@ -7,7 +7,6 @@ import java.util.List;
 import grid.GridGraph;
 
 import algorithms.PathFindingAlgorithm;
-import algorithms.datatypes.Memory;
 import algorithms.rotationalplanesweep.ConvexHullRPSScanner;
 import algorithms.priorityqueue.ReusableIndirectHeap;
 
@@ -39,7 +38,7 @@ public class SG16Algorithm extends PathFindingAlgorithm {
         start = size;
         finish = size+1;
 
-        pq = new ReusableIndirectHeap(size, memorySize);
+        pq = initialiseHeap(memorySize);
         this.initialiseMemory(memorySize, Float.POSITIVE_INFINITY, -1, false);
         
         // 2. Search
@@ -180,27 +179,27 @@ public class SG16Algorithm extends PathFindingAlgorithm {
     }
 
     private final int parent(int index) {
-        return Memory.parent(index);
+        return memory.parent(index);
     }
     
     private final void setParent(int index, int value) {
-        Memory.setParent(index, value);
+        memory.setParent(index, value);
     }
     
     private final float distance(int index) {
-        return Memory.distance(index);
+        return memory.distance(index);
     }
     
     private final void setDistance(int index, float value) {
-        Memory.setDistance(index, value);
+        memory.setDistance(index, value);
     }
     
     private final boolean visited(int index) {
-        return Memory.visited(index);
+        return memory.visited(index);
     }
     
     private final void setVisited(int index, boolean value) {
-        Memory.setVisited(index, value);
+        memory.setVisited(index, value);
     }
 
     private final void generateConvexHullSnapshot() {
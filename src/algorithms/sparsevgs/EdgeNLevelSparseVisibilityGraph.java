@@ -2,100 +2,176 @@ package algorithms.sparsevgs;
 
 import grid.GridGraph;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import algorithms.datatypes.Memory;
+import algorithms.datatypes.PreprocessingCache;
+import algorithms.datatypes.SearchContext;
 
 public class EdgeNLevelSparseVisibilityGraph {
 
     public static int LEVEL_W = Integer.MAX_VALUE;
 
-    private static EdgeNLevelSparseVisibilityGraph storedVisibilityGraph;
-    private static GridGraph storedGridGraph;
-    private static int storedLevelLimit;
+    private static volatile ForkJoinPool constructionPool;
+    private static volatile File cacheDirectory;
     
-    private final GridGraph graph;
+    final GridGraph graph;
     private LineOfSightScannerDouble losScanner;
+    LineOfSightExtents losExtents; // Shared with the scanners of the overlays.
     private final int sizeXPlusOne;
     private final int sizeYPlusOne;
 
-    private int[] nodeIndex; // Flattened 2D Array
-    private int startIndex = -1;
-    private int endIndex = -1;
+    int[] nodeIndex; // Flattened 2D Array
     
     private Runnable saveSnapshot;
 
-    private int originalSize;
-    private int maxSize;
-    private int nNodes;
+    int maxSize;
+    int nNodes; // Includes the slots of nodes removed by updateTiles, which have negative positions.
 
-    private int startOriginalSize;
-    private int endOriginalSize;
-
-    private int[] queue;
-    private int queueSize;
+    public int levelLimit;
 
-    private int originalNEdges;
+    // Incremented by updateTiles. Overlays built for an older version are replaced.
+    int version;
+    private EdgeNLevelSparseVisibilityGraphUpdater updater;
 
-    public int levelLimit;
+    // Start, goal and marked edges live in a per-thread overlay, so the graph itself is read-only between updates.
+    private final ThreadLocal<EdgeNLevelSparseVisibilityGraphOverlay> overlays =
+            ThreadLocal.withInitial(() -> new EdgeNLevelSparseVisibilityGraphOverlay(this));
+    // Memory held by the overlays of the threads that have queried this graph. Counted in memoryUsage.
+    private final AtomicLong overlayBytes = new AtomicLong();
     
     // Nodes: Indexed by node Index.
     public int[] xPositions;
     public int[] yPositions;
-    public int[] nOutgoingEdgess;          // value: number of outgoingEdges.
-    public int[][] outgoingEdgess;         // value: nodeIndex of destination
-    public int[][] outgoingEdgeIndexess;   // value: edgeIndex of edge to destination.
-    public int[][] outgoingEdgeOppositeIndexess;   // value: index within outgoingEdgess of the opposite edge.
-    public boolean[] hasEdgeToGoal;
-    private boolean[][] outgoingEdgeIsMarkeds;
+
+    // Adjacency in compressed sparse row form. Built by freeze() at the end of construction and only replaced by updateTiles.
+    // The edges of node v are at positions outgoingEdgeStarts[v] to outgoingEdgeStarts[v+1]-1 of the edge arrays.
+    public int[] outgoingEdgeStarts;       // length maxSize+1
+    public int[] outgoingEdges;            // value: nodeIndex of destination
+    public int[] outgoingEdgeIndexes;      // value: edgeIndex of edge to destination.
+
+    // The skip-edges of node v are at positions skipEdgeStarts[v] to skipEdgeStarts[v+1]-1. Empty for non-skip vertices.
+    public int[] skipEdgeStarts;           // length maxSize+1
+    public int[] outgoingSkipEdges;        // value: nodeIndex of destination
+    public int[] outgoingSkipEdgeNextNodes;// value: nodeIndex of the next node in the actual path if the skip edge were to be followed.
+    public float[] outgoingSkipEdgeWeights;// value: weight of edge to destination.
+
+    // Construction only: growable adjacency lists, discarded by freeze().
+    private int[] nOutgoingEdgess;          // value: number of outgoingEdges.
+    private int[][] outgoingEdgess;         // value: nodeIndex of destination
+    private int[][] outgoingEdgeIndexess;   // value: edgeIndex of edge to destination.
+    private int[][] outgoingEdgeOppositeIndexess;   // value: index within outgoingEdgess of the opposite edge.
     
     // Used to iterate through the Level-W edges quickly
-    public int[] nLevelWNeighbourss;
-    public int[][] levelWEdgeOutgoingIndexess;    // value: index of edge in outgoingEdges array.
+    private int[] nLevelWNeighbourss;
+    private int[][] levelWEdgeOutgoingIndexess;    // value: index of edge in outgoingEdges array.
     
-    // Used to iterate through the marked edges quickly
-    public int[] nMarkedEdgess;
-    public int[][] outgoingMarkedEdgeIndexess;   // value: index of edge in outgoingEdges array.
-
-    public int[] nSkipEdgess;                            // value: number of outgoing skip-edges.
-    public int[][] outgoingSkipEdgess;                   // value: nodeIndex of destination
-    public int[][] outgoingSkipEdgeNextNodess;           // value: nodeIndex of the next node in the actual path if the skip edge were to be followed.
-    public int[][] outgoingSkipEdgeNextNodeEdgeIndexess; // value: edgeIndex of edge to next node in the actual path.
-    public float[][] outgoingSkipEdgeWeightss;           // value: weight of edge to destination.
+    private int[] nSkipEdgess;                            // value: number of outgoing skip-edges.
+    private int[][] outgoingSkipEdgess;                   // value: nodeIndex of destination
+    private int[][] outgoingSkipEdgeNextNodess;           // value: nodeIndex of the next node in the actual path if the skip edge were to be followed.
+    private int[][] outgoingSkipEdgeNextNodeEdgeIndexess; // value: edgeIndex of edge to next node in the actual path.
+    private float[][] outgoingSkipEdgeWeightss;           // value: weight of edge to destination.
     
     
     // Edges: Indexed by edge Index (only for non-skip-edges)
     public int nEdges;
     public int[] edgeLevels;
     public float[] edgeWeights;
-    public boolean[] isMarked;
     
-    private EdgeNLevelSparseVisibilityGraph(GridGraph graph) {
+    EdgeNLevelSparseVisibilityGraph(GridGraph graph) {
         this.graph = graph;
         this.sizeXPlusOne = graph.sizeX+1;
         this.sizeYPlusOne = graph.sizeY+1;
     }
 
+    /**
+     * Builds new graphs on the given pool, or on the calling thread if pool is null.
+     * Both modes produce identical graphs.
+     */
+    public static final void setConstructionPool(ForkJoinPool pool) {
+        constructionPool = pool;
+    }
+
+    /**
+     * Saves newly built graphs to the given directory and loads them from it on later runs,
+     * keyed by the grid's size and checksum. A null directory disables the file cache.
+     */
+    public static final void setCacheDirectory(String directory) {
+        cacheDirectory = directory == null ? null : new File(directory);
+    }
+
     public final void setSaveSnapshotFunction(Runnable saveSnapshot) {
         this.saveSnapshot = saveSnapshot;
     }
 
+    /**
+     * @return the graph stored for this grid and level limit, loaded or built if there is none.
+     * Does not lock when the graph is stored. Only queries waiting for the same graph wait for its build.
+     */
     public static final EdgeNLevelSparseVisibilityGraph initialiseNew(GridGraph graph, int levelLimit) {
-        if (EdgeNLevelSparseVisibilityGraph.storedGridGraph == graph && levelLimit == storedLevelLimit) {
-            storedVisibilityGraph.restoreOriginalGraph();
-            return storedVisibilityGraph;
-        }
+        return PreprocessingCache.getOrBuild(graph, EdgeNLevelSparseVisibilityGraph.class, levelLimit,
+                () -> loadOrConstruct(graph, levelLimit), EdgeNLevelSparseVisibilityGraph::memoryUsage);
+    }
+
+    /**
+     * @return a graph for this grid and level limit that only the caller uses, loaded or built without touching the stored graphs.
+     */
+    public static final EdgeNLevelSparseVisibilityGraph initialiseUncached(GridGraph graph, int levelLimit) {
+        return loadOrConstruct(graph, levelLimit);
+    }
+
+    private static final EdgeNLevelSparseVisibilityGraph loadOrConstruct(GridGraph graph, int levelLimit) {
         long _st = System.nanoTime();
+
+        File directory = cacheDirectory;
+        File cacheFile = null;
+        if (directory != null) {
+            cacheFile = EdgeNLevelSparseVisibilityGraphFile.cacheFile(directory, graph, levelLimit);
+            EdgeNLevelSparseVisibilityGraph vGraph = EdgeNLevelSparseVisibilityGraphFile.load(graph, levelLimit, cacheFile);
+            if (vGraph != null) {
+                long _ed = System.nanoTime();
+                System.out.println("Load Time: " + (_ed-_st)/1000000.);
+                return vGraph;
+            }
+        }
         
-        EdgeNLevelSparseVisibilityGraph.storedGridGraph = graph;
-        EdgeNLevelSparseVisibilityGraph vGraph = EdgeNLevelSparseVisibilityGraph.storedVisibilityGraph = new EdgeNLevelSparseVisibilityGraph(graph);
-        EdgeNLevelSparseVisibilityGraph.storedLevelLimit = levelLimit;
+        EdgeNLevelSparseVisibilityGraph vGraph = new EdgeNLevelSparseVisibilityGraph(graph);
         vGraph.levelLimit = levelLimit;
         vGraph.constructGraph();
         
         long _ed = System.nanoTime();
         System.out.println("Construction Time: " + (_ed-_st)/1000000.);
+
+        if (cacheFile != null) {
+            try {
+                directory.mkdirs();
+                EdgeNLevelSparseVisibilityGraphFile.save(vGraph, cacheFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         return vGraph;
     }
+
+    /**
+     * Called by EdgeNLevelSparseVisibilityGraphFile once the arrays have been read.
+     * Rebuilds the data that is derived from the grid rather than stored.
+     */
+    final void initialiseLoaded(int nNodes, int maxSize) {
+        this.nNodes = nNodes;
+        this.maxSize = maxSize;
+        nodeIndex = new int[sizeYPlusOne*sizeXPlusOne];
+        Arrays.fill(nodeIndex, -1);
+        for (int i=0;i<nNodes;++i) {
+            if (xPositions[i] < 0) continue;
+            nodeIndex[yPositions[i]*sizeXPlusOne + xPositions[i]] = i;
+        }
+        losExtents = new LineOfSightExtents(graph);
+    }
     
 
     /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
@@ -103,10 +179,8 @@ public class EdgeNLevelSparseVisibilityGraph {
     /// \\\ /// \\\ /// \\\ /// \\\ /// \\\ ///
 
     private final void constructGraph() {
-        losScanner = new LineOfSightScannerDouble(graph);
-        queue = new int[11];
-
-        queueSize = 0;
+        losExtents = new LineOfSightExtents(graph);
+        losScanner = new LineOfSightScannerDouble(graph, losExtents);
 
         // STEP 1: Construct SVG (Strict Visibility Graph)
         
@@ -118,22 +192,18 @@ public class EdgeNLevelSparseVisibilityGraph {
         
         // Now xPositions and yPositions should be correctly initialised.
         //  We then initialise the rest of the node data.
-        originalSize = nNodes;
         maxSize = nNodes + 2;
         xPositions = Arrays.copyOf(xPositions, maxSize);
         yPositions = Arrays.copyOf(yPositions, maxSize);
-        hasEdgeToGoal = new boolean[maxSize];
         nOutgoingEdgess = new int[maxSize];
         outgoingEdgess = new int[maxSize][];
         outgoingEdgeIndexess = new int[maxSize][];
         outgoingEdgeOppositeIndexess = new int[maxSize][];
-        outgoingEdgeIsMarkeds = new boolean[maxSize][];
         for (int i=0;i<maxSize;++i) {
             nOutgoingEdgess[i] = 0;
             outgoingEdgess[i] = new int[11];
             outgoingEdgeIndexess[i] = new int[11];
             outgoingEdgeOppositeIndexess[i] = new int[11];
-            outgoingEdgeIsMarkeds[i] = new boolean[11];
         }
 
         // Initialise SVG Edges + edgeWeights
@@ -144,27 +214,19 @@ public class EdgeNLevelSparseVisibilityGraph {
         
         // Now all the edges, indexes and weights should be correctly initialise.
         //  Now we initialise the rest of the edge data.
-        originalNEdges = nEdges;
-        int maxPossibleNEdges = nEdges + nNodes*2;
-        edgeWeights = Arrays.copyOf(edgeWeights, maxPossibleNEdges);
-        edgeLevels = new int[maxPossibleNEdges];
+        edgeWeights = Arrays.copyOf(edgeWeights, nEdges);
+        edgeLevels = new int[nEdges];
         Arrays.fill(edgeLevels, LEVEL_W);
-        isMarked = new boolean[maxPossibleNEdges];
-        //Arrays.fill(isMarked, false); // default initialises to false anyway.
         
         
-        // Reserve space in level w edge and marked edge arrays.
+        // Reserve space in level w edge array.
         nLevelWNeighbourss = new int[maxSize];
         levelWEdgeOutgoingIndexess = new int[maxSize][];
-        nMarkedEdgess = new int[maxSize];
-        outgoingMarkedEdgeIndexess = new int[maxSize][];
         for (int i=0;i<nNodes;++i) {
             levelWEdgeOutgoingIndexess[i] = new int[nOutgoingEdgess[i]];
-            outgoingMarkedEdgeIndexess[i] = new int[nOutgoingEdgess[i]];
         }
         for (int i=nNodes;i<maxSize;++i) {
-            levelWEdgeOutgoingIndexess[i] = new int[11];
-            outgoingMarkedEdgeIndexess[i] = new int[11];
+            levelWEdgeOutgoingIndexess[i] = new int[0];
         }
 
         
@@ -182,8 +244,56 @@ public class EdgeNLevelSparseVisibilityGraph {
         setupSkipEdges();
         
         pruneParallelSkipEdges();
+        
+        // Only needed during construction. Queries use the scanners in their overlays.
+        losScanner = null;
+
+        freeze();
    }
 
+    /**
+     * Packs the adjacency lists into the compressed sparse row arrays and drops the construction-only data.
+     * Level-W lists, opposite indexes and skip-edge next-node edge indexes are not needed by queries.
+     */
+    private final void freeze() {
+        outgoingEdgeStarts = new int[maxSize+1];
+        for (int i=0;i<maxSize;++i) {
+            outgoingEdgeStarts[i+1] = outgoingEdgeStarts[i] + nOutgoingEdgess[i];
+        }
+        outgoingEdges = new int[outgoingEdgeStarts[maxSize]];
+        outgoingEdgeIndexes = new int[outgoingEdgeStarts[maxSize]];
+        for (int i=0;i<maxSize;++i) {
+            System.arraycopy(outgoingEdgess[i], 0, outgoingEdges, outgoingEdgeStarts[i], nOutgoingEdgess[i]);
+            System.arraycopy(outgoingEdgeIndexess[i], 0, outgoingEdgeIndexes, outgoingEdgeStarts[i], nOutgoingEdgess[i]);
+        }
+
+        skipEdgeStarts = new int[maxSize+1];
+        for (int i=0;i<maxSize;++i) {
+            skipEdgeStarts[i+1] = skipEdgeStarts[i] + nSkipEdgess[i];
+        }
+        outgoingSkipEdges = new int[skipEdgeStarts[maxSize]];
+        outgoingSkipEdgeNextNodes = new int[skipEdgeStarts[maxSize]];
+        outgoingSkipEdgeWeights = new float[skipEdgeStarts[maxSize]];
+        for (int i=0;i<maxSize;++i) {
+            if (nSkipEdgess[i] == 0) continue;
+            System.arraycopy(outgoingSkipEdgess[i], 0, outgoingSkipEdges, skipEdgeStarts[i], nSkipEdgess[i]);
+            System.arraycopy(outgoingSkipEdgeNextNodess[i], 0, outgoingSkipEdgeNextNodes, skipEdgeStarts[i], nSkipEdgess[i]);
+            System.arraycopy(outgoingSkipEdgeWeightss[i], 0, outgoingSkipEdgeWeights, skipEdgeStarts[i], nSkipEdgess[i]);
+        }
+
+        nOutgoingEdgess = null;
+        outgoingEdgess = null;
+        outgoingEdgeIndexess = null;
+        outgoingEdgeOppositeIndexess = null;
+        nLevelWNeighbourss = null;
+        levelWEdgeOutgoingIndexess = null;
+        nSkipEdgess = null;
+        outgoingSkipEdgess = null;
+        outgoingSkipEdgeNextNodess = null;
+        outgoingSkipEdgeNextNodeEdgeIndexess = null;
+        outgoingSkipEdgeWeightss = null;
+    }
+
     private final void addNodes() {
         nodeIndex = new int[sizeYPlusOne*sizeXPlusOne];
         for (int y=0; y<sizeYPlusOne; y++) {
@@ -212,6 +322,12 @@ public class EdgeNLevelSparseVisibilityGraph {
 
 
     private final void addAllEdges() {
+        ForkJoinPool pool = constructionPool;
+        if (pool != null) {
+            addAllEdgesParallel(pool);
+            return;
+        }
+        
         int fromX, fromY, toX, toY;
         for (int i=0;i<nNodes;++i) {
             fromX = xPositions[i];
@@ -233,6 +349,47 @@ public class EdgeNLevelSparseVisibilityGraph {
         }
     }
     
+    private final void addAllEdgesParallel(ForkJoinPool pool) {
+        int[][] successorss = new int[nNodes][];
+        float[][] successorWeightss = new float[nNodes][];
+        
+        // Each leaf scans its range of nodes with its own scanner, keeping only the successors j > i.
+        pool.invoke(new NodeRangeTask(0, nNodes, (from, to) -> {
+            LineOfSightScannerDouble scanner = new LineOfSightScannerDouble(graph, losExtents);
+            for (int i=from;i<to;++i) {
+                int fromX = xPositions[i];
+                int fromY = yPositions[i];
+                
+                scanner.computeAllVisibleTwoWayTautSuccessors(fromX, fromY);
+                int nSuccessors = scanner.nSuccessors;
+                int[] successors = new int[nSuccessors];
+                float[] weights = new float[nSuccessors];
+                int nKept = 0;
+                for (int succ=0;succ<nSuccessors;++succ) {
+                    int toX = scanner.successorsX[succ];
+                    int toY = scanner.successorsY[succ];
+                    int j = nodeIndex[toY*sizeXPlusOne + toX];
+                    if (i >= j) continue;
+                    
+                    successors[nKept] = j;
+                    weights[nKept] = graph.distance(fromX, fromY, toX, toY);
+                    ++nKept;
+                }
+                successorss[i] = Arrays.copyOf(successors, nKept);
+                successorWeightss[i] = Arrays.copyOf(weights, nKept);
+            }
+        }));
+        
+        // Merge in node order, so edge indexes are the same as in the serial build.
+        for (int i=0;i<nNodes;++i) {
+            int[] successors = successorss[i];
+            float[] weights = successorWeightss[i];
+            for (int k=0;k<successors.length;++k) {
+                addEdge(i, successors[k], weights[k]);
+            }
+        }
+    }
+    
     // Adds an edge from node v1 to node v2, and from node v2 to node v1
     private final void addEdge(int v1, int v2, float weight) {
         if (nEdges >= edgeWeights.length) {
@@ -248,7 +405,6 @@ public class EdgeNLevelSparseVisibilityGraph {
                 int newLength = outgoingEdgess[v1].length*2;
                 outgoingEdgess[v1] = Arrays.copyOf(outgoingEdgess[v1], newLength);
                 outgoingEdgeIndexess[v1] = Arrays.copyOf(outgoingEdgeIndexess[v1], newLength);
-                outgoingEdgeIsMarkeds[v1] = Arrays.copyOf(outgoingEdgeIsMarkeds[v1], newLength);
                 outgoingEdgeOppositeIndexess[v1] = Arrays.copyOf(outgoingEdgeOppositeIndexess[v1], newLength);
             }
             outgoingEdgess[v1][v1Index] = v2;
@@ -264,7 +420,6 @@ public class EdgeNLevelSparseVisibilityGraph {
                 int newLength = outgoingEdgess[v2].length*2;
                 outgoingEdgess[v2] = Arrays.copyOf(outgoingEdgess[v2], newLength);
                 outgoingEdgeIndexess[v2] = Arrays.copyOf(outgoingEdgeIndexess[v2], newLength);
-                outgoingEdgeIsMarkeds[v2] = Arrays.copyOf(outgoingEdgeIsMarkeds[v2], newLength);
                 outgoingEdgeOppositeIndexess[v2] = Arrays.copyOf(outgoingEdgeOppositeIndexess[v2], newLength);
             }
             outgoingEdgess[v2][v2Index] = v1;
@@ -342,40 +497,23 @@ public class EdgeNLevelSparseVisibilityGraph {
 
 
         int[][] nNeighbours = new int[nNodes][];
+        ForkJoinPool pool = constructionPool;
+        if (pool != null) {
+            pool.invoke(new NodeRangeTask(0, nNodes, (from, to) -> countTautNeighbours(nNeighbours, from, to)));
+        } else {
+            countTautNeighbours(nNeighbours, 0, nNodes);
+        }
+        
+        // Collected in (vi, ei) order afterwards, so the level-1 list does not depend on how the counting was split.
         for (int vi=0; vi<nNodes; ++vi) {
-            int currX = xPositions[vi];
-            int currY = yPositions[vi];
-
-            int nOutgoingEdges = nOutgoingEdgess[vi];
-            int[] outgoingEdges = outgoingEdgess[vi];
-            
-            int[] currNodeNNeighbours = new int[nOutgoingEdges];
-            for (int ei=0; ei<nOutgoingEdges; ++ei) {
-                // For each directed edge
-                int ni = outgoingEdges[ei];
-                int nextX = xPositions[ni];
-                int nextY = yPositions[ni];
-
-                // Count taut outgoing edges
-                int count = 0;
-
-                int nNextOutgoingEdges = nOutgoingEdgess[vi];
-                int[] nextOutgoingEdges = outgoingEdgess[vi];
-                for (int j=0; j<nNextOutgoingEdges; ++j) {
-                    int di = nextOutgoingEdges[j];
-                    if (graph.isTaut(nextX, nextY, currX, currY, xPositions[di], yPositions[di])) {
-                        ++count;
-                    }
-                }
-
-                currNodeNNeighbours[ei] = count;
-                if (count == 0) {
+            int[] currNodeNNeighbours = nNeighbours[vi];
+            for (int ei=0; ei<currNodeNNeighbours.length; ++ei) {
+                if (currNodeNNeighbours[ei] == 0) {
                     currentLevelEdgeNodes[nextLevelEnd] = vi;
                     currentLevelEdgeIndexes[nextLevelEnd] = ei;
                     ++nextLevelEnd;
                 }
             }
-            nNeighbours[vi] = currNodeNNeighbours;
         }
 
         
@@ -442,6 +580,40 @@ public class EdgeNLevelSparseVisibilityGraph {
         }
     }
 
+    // Only reads the graph, so disjoint ranges can be counted in parallel.
+    private final void countTautNeighbours(int[][] nNeighbours, int from, int to) {
+        for (int vi=from; vi<to; ++vi) {
+            int currX = xPositions[vi];
+            int currY = yPositions[vi];
+
+            int nOutgoingEdges = nOutgoingEdgess[vi];
+            int[] outgoingEdges = outgoingEdgess[vi];
+            
+            int[] currNodeNNeighbours = new int[nOutgoingEdges];
+            for (int ei=0; ei<nOutgoingEdges; ++ei) {
+                // For each directed edge
+                int ni = outgoingEdges[ei];
+                int nextX = xPositions[ni];
+                int nextY = yPositions[ni];
+
+                // Count taut outgoing edges
+                int count = 0;
+
+                int nNextOutgoingEdges = nOutgoingEdgess[vi];
+                int[] nextOutgoingEdges = outgoingEdgess[vi];
+                for (int j=0; j<nNextOutgoingEdges; ++j) {
+                    int di = nextOutgoingEdges[j];
+                    if (graph.isTaut(nextX, nextY, currX, currY, xPositions[di], yPositions[di])) {
+                        ++count;
+                    }
+                }
+
+                currNodeNNeighbours[ei] = count;
+            }
+            nNeighbours[vi] = currNodeNNeighbours;
+        }
+    }
+
     // Checks whether there is a taut exist in the graph, considering only unmarked edges.
     // Note: unmarked edges are edges whose level >= currentLevel.
     private final boolean hasTautExit(int vFrom, int vTo, int currentLevel) {
@@ -594,14 +766,15 @@ public class EdgeNLevelSparseVisibilityGraph {
      *  Then we can prune e2 from the skip graph.
      *   '-> Note: this also prevents some bookkeeping bugs in the original version.
      *   
-     * Uses Memory.
+     * Uses the calling thread's search Memory.
      */
     private final void pruneParallelSkipEdges() {
         // TODO: IF THERE ARE MULTIPLE EDGES WITH THE SAME EDGE WEIGHT, WE ARBITRARILY PICK THE FIRST EDGE TO KEEP
         //       THE ORDERING MAY BE DIFFERENT FROM BOTH SIDES OF THE EDGE, WHICH CAN LEAD TO A NONSYMMETRIC GRAPH
         //       However, no issues have cropped up yet. Perhaps the ordering happens to be the same for both sides,
         //         due to how the graph is constructed. This is not good to rely upon, however.
-        Memory.initialise(maxSize, Float.POSITIVE_INFINITY, -1, false);
+        Memory memory = SearchContext.forCurrentThread().memory;
+        memory.initialise(maxSize, Float.POSITIVE_INFINITY, -1, false);
         
         int maxDegree = 0;
         for (int i=0;i<nNodes;++i) {
@@ -623,14 +796,14 @@ public class EdgeNLevelSparseVisibilityGraph {
                 int dest = sEdges[j];
                 float weight = sWeights[j];
                 
-                int p = Memory.parent(dest);
+                int p = memory.parent(dest);
                 int index = -1;
                 
                 if (p == -1) {
                     index = nUsed;
                     ++nUsed;
                     
-                    Memory.setParent(dest, index);
+                    memory.setParent(dest, index);
                     neighbourIndexes[index] = dest;
                     
                     lowestCostEdgeIndex[index] = j;
@@ -675,7 +848,7 @@ public class EdgeNLevelSparseVisibilityGraph {
             
             // Cleanup
             for (int j=0;j<nUsed;++j) {
-                Memory.setParent(neighbourIndexes[j], -1); 
+                memory.setParent(neighbourIndexes[j], -1); 
             }
         }
     }
@@ -713,237 +886,67 @@ public class EdgeNLevelSparseVisibilityGraph {
     ///  REPURPOSING PHASE - START  ///
     /// \\\ /// \\\ /// \\\ /// \\\ ///
 
-    private final void restoreOriginalGraph() {
-        // Safeguard against multiple restores
-        if (startIndex == -1) return;
-        
-        markEdgesFrom(startIndex, false);
-        markEdgesFrom(endIndex, false);
-        markHasEdgeToGoal(false);
-        nOutgoingEdgess[endIndex] = endOriginalSize;
-        nOutgoingEdgess[startIndex] = startOriginalSize;
-        nEdges = originalNEdges;
-
-        nNodes = originalSize;
-        startIndex = -1;
-        endIndex = -1;
-    }
-
-    // Assumption: No edge between start and end.
-    // Uses Memory
-    public final void addStartAndEnd(int sx, int sy, int ex, int ey) {
-        // START:
-        if (nodeIndex[sy*sizeXPlusOne + sx] == -1) {
-            startIndex = nNodes;
-            nOutgoingEdgess[startIndex] = 0;
-            xPositions[startIndex] = sx;
-            yPositions[startIndex] = sy;
-            //nodeIndex[sy*sizeXPlusOne + sx] = startIndex;
-            ++nNodes;
-        } else {
-            startIndex = nodeIndex[sy*sizeXPlusOne + sx];
-        }
-        startOriginalSize = nOutgoingEdgess[startIndex];
-        addTempEdgesToVisibleNeighbours(startIndex, sx, sy);
-
-        // END:
-        if (nodeIndex[ey*sizeXPlusOne + ex] == -1) {
-            endIndex = nNodes;
-            nOutgoingEdgess[endIndex] = 0;
-            xPositions[endIndex] = ex;
-            yPositions[endIndex] = ey;
-            //nodeIndex[ey*sizeXPlusOne + ex] = endIndex;
-            ++nNodes;
-        } else {
-            endIndex = nodeIndex[ey*sizeXPlusOne + ex];
-        }
-        endOriginalSize = nOutgoingEdgess[endIndex];
-        addTempEdgesToVisibleNeighbours(endIndex, ex, ey);
-        
-        markHasEdgeToGoal(true);
-        
-        markEdgesFrom(startIndex, true);
-        markEdgesFrom(endIndex, true);
+    /**
+     * Adds the start and goal to the calling thread's overlay and returns it.
+     * The shared graph is not modified, so queries on different threads do not interfere.
+     */
+    public final EdgeNLevelSparseVisibilityGraphOverlay addStartAndEnd(int sx, int sy, int ex, int ey) {
+        EdgeNLevelSparseVisibilityGraphOverlay overlay = threadOverlay();
+        overlay.addStartAndEnd(sx, sy, ex, ey);
+        return overlay;
     }
 
-    // Uses Memory
-    private final int addTempEdgesToVisibleNeighbours(int index, int x, int y) {
-        Memory.initialise(maxSize, Float.POSITIVE_INFINITY, -1, false);
-        {
-            int nOutgoingEdges = nOutgoingEdgess[index];
-            int[] outgoingEdges = outgoingEdgess[index];
-            for (int i=0;i<nOutgoingEdges;++i) {
-                Memory.setVisited(outgoingEdges[i], true);
-            }
-        }
-
-
-        losScanner.computeAllVisibleTautSuccessors(x, y);
-        int nSuccessors = losScanner.nSuccessors;
-        for (int i=0;i<nSuccessors;++i) {
-            int toX = losScanner.successorsX[i];
-            int toY = losScanner.successorsY[i];
-            int targetIndex = nodeIndex[toY*sizeXPlusOne + toX];
-            if (Memory.visited(targetIndex)) continue;
-
-            float weight = graph.distance(x, y, toX, toY);
-            addTemporaryEdge(index, targetIndex, weight);
-        }
-        
-        
-        if (nSuccessors > outgoingMarkedEdgeIndexess[index].length) {
-            int newLength = Math.max(outgoingMarkedEdgeIndexess[index].length, 11);
-            while (newLength < nSuccessors) newLength *= 2;
-            outgoingMarkedEdgeIndexess[index] = Arrays.copyOf(outgoingMarkedEdgeIndexess[index], newLength);
-        }
-        
-        return index;
+    /**
+     * Computes the goal edges and marked edges of the targets of one-to-many queries, using the calling thread's overlay.
+     * The result can be shared by queries on any thread, until the graph is updated.
+     */
+    public final EdgeNLevelSparseVisibilityGraphTargetSet prepareTargets(int[] targetXs, int[] targetYs) {
+        return threadOverlay().prepareTargets(targetXs, targetYs);
     }
 
-
-    // Adds an edge from node v1 to node v2
-    private final void addTemporaryEdge(int v1, int v2, float weight) {
-        // We assume that expansion is never needed.
-        /*if (nEdges >= edgeWeights.length) {
-            edgeWeights = Arrays.copyOf(edgeWeights, edgeWeights.length*2);
-            edgeLevels = Arrays.copyOf(edgeLevels, edgeLevels.length*2);
-            isMarkedIndex = Arrays.copyOf(isMarkedIndex, isMarkedIndex.length*2);
-        }*/
-        int edgeIndex = nEdges;
-
-        // add edge to v1
-        {
-            int index = nOutgoingEdgess[v1];
-            if (index >= outgoingEdgess[v1].length) {
-                int newLength = outgoingEdgess[v1].length*2;
-                outgoingEdgess[v1] = Arrays.copyOf(outgoingEdgess[v1], newLength);
-                outgoingEdgeIndexess[v1] = Arrays.copyOf(outgoingEdgeIndexess[v1], newLength);
-                outgoingEdgeIsMarkeds[v1] = Arrays.copyOf(outgoingEdgeIsMarkeds[v1], newLength);
-            }
-            outgoingEdgess[v1][index] = v2;
-            outgoingEdgeIndexess[v1][index] = edgeIndex;
-            nOutgoingEdgess[v1]++;
-        }
-
-        edgeWeights[edgeIndex] = weight;
-        edgeLevels[edgeIndex] = 0;
-        isMarked[edgeIndex] = false;
-        ++nEdges;
+    /**
+     * Adds the start and the prepared targets to the calling thread's overlay and returns it.
+     * Used by one-to-many queries. See EdgeNLevelSparseVisibilityGraphOneToMany.
+     */
+    public final EdgeNLevelSparseVisibilityGraphOverlay addStartAndTargets(int sx, int sy, EdgeNLevelSparseVisibilityGraphTargetSet targets) {
+        EdgeNLevelSparseVisibilityGraphOverlay overlay = threadOverlay();
+        overlay.addStartAndTargets(sx, sy, targets);
+        return overlay;
     }
 
-    private final void markHasEdgeToGoal(boolean value) {
-        int[] outgoingEdges = outgoingEdgess[endIndex];
-        int nOutgoingEdges = nOutgoingEdgess[endIndex];
-        for (int i=0;i<nOutgoingEdges;++i) {
-            hasEdgeToGoal[outgoingEdges[i]] = value;
+    private final EdgeNLevelSparseVisibilityGraphOverlay threadOverlay() {
+        EdgeNLevelSparseVisibilityGraphOverlay overlay = overlays.get();
+        if (overlay.version != version) {
+            addOverlayBytes(-overlay.reportedBytes);
+            overlay = new EdgeNLevelSparseVisibilityGraphOverlay(this);
+            overlays.set(overlay);
         }
+        return overlay;
     }
 
     /**
-     * Mark all edges reachable with a path of edges of increasing level from the source.
+     * Called by the overlays when they grow, so that the cache budget sees the memory of every thread's overlay.
      */
-    private final void markEdgesFrom(int source, boolean value) {
-        queueSize = 0;
-        {
-            int nOutgoingEdges = nOutgoingEdgess[source];
-            int[] outgoingEdgeIndexes = outgoingEdgeIndexess[source];
-            boolean[] outgoingEdgeIsMarked = outgoingEdgeIsMarkeds[source];
-            //int[] outgoingEdgeOppositeIndexes = outgoingEdgeOppositeIndexess[source];
-            //int[] outgoingEdges = outgoingEdgess[source];
-            
-            for (int i=0;i<nOutgoingEdges;++i) {
-                if (outgoingEdgeIsMarked[i] == value) continue;
-                outgoingEdgeIsMarked[i] = value;
-                
-                int edgeIndex = outgoingEdgeIndexes[i];
-                if (isMarked[edgeIndex] != value) {
-                    isMarked[edgeIndex] = value;
-                    if (value) {
-                        addToMarkedEdges(source, i);
-                        //addToMarkedEdges(outgoingEdges[i], outgoingEdgeOppositeIndexes[i]);
-                    }
-                    else {
-                        clearMarkedEdges(source);
-                        //clearMarkedEdges(outgoingEdges[i]);
-                    }
-                }
-                isMarked[outgoingEdgeIndexes[i]] = value;
-                addPairToQueue(source, i);
-            }
-        }
-        
-        
-        int currIndex = 0;
-        while (currIndex < queueSize) {
-            int parent = queue[currIndex];
-            ++currIndex;
-            int parentOutgoingIndex = queue[currIndex];
-            ++currIndex;
-
-            int curr = outgoingEdgess[parent][parentOutgoingIndex];
-            int currLevel = edgeLevels[outgoingEdgeIndexess[parent][parentOutgoingIndex]];
-            
-            int parX = xPositions[parent];
-            int parY = yPositions[parent];
-            int currX = xPositions[curr];
-            int currY = yPositions[curr];
-            int nOutgoingEdges = nOutgoingEdgess[curr];
-            int[] outgoingEdges = outgoingEdgess[curr];
-            int[] outgoingEdgeIndexes = outgoingEdgeIndexess[curr];
-            boolean[] outgoingEdgeIsMarked = outgoingEdgeIsMarkeds[curr];
-            int[] outgoingEdgeOppositeIndexes = outgoingEdgeOppositeIndexess[curr];
-            
-            for (int i=0;i<nOutgoingEdges;++i) {
-                int nextLevel = edgeLevels[outgoingEdgeIndexes[i]];
-                if ((outgoingEdgeIsMarked[i] == value) || (nextLevel != LEVEL_W && nextLevel <= currLevel)) continue;
-                int next = outgoingEdges[i];
-                if (!graph.isTaut(parX, parY, currX, currY, xPositions[next], yPositions[next])) continue;
-                outgoingEdgeIsMarked[i] = value;
-             
-                int edgeIndex = outgoingEdgeIndexes[i];
-                if (isMarked[edgeIndex] != value) {
-                    isMarked[edgeIndex] = value;
-                    if (value) {
-                        addToMarkedEdges(curr, i);
-                        addToMarkedEdges(next, outgoingEdgeOppositeIndexes[i]);
-                    }
-                    else {
-                        clearMarkedEdges(curr);
-                        clearMarkedEdges(next);
-                    }
-                }
-                isMarked[outgoingEdgeIndexes[i]] = value;
-                
-                // Only continue marking forward if not a skip vertex.
-                if (nextLevel != LEVEL_W || nSkipEdgess[next] == 0) {
-                    addPairToQueue(curr, i);
-                }
-            }
-        }
-    }
-
-    private final void addToMarkedEdges(int current, int outgoingIndex) {
-        outgoingMarkedEdgeIndexess[current][nMarkedEdgess[current]] = outgoingIndex;
-        ++nMarkedEdgess[current];
-    }
-    
-    private final void clearMarkedEdges(int current) {
-        nMarkedEdgess[current] = 0;
-    }
-    
-    private final void addPairToQueue(int parent, int parentOutgoingIndex) {
-        if (queueSize+1 >= queue.length) {
-            queue = Arrays.copyOf(queue, queue.length*2);
-        }
-        queue[queueSize] = parent;
-        ++queueSize;
-        queue[queueSize] = parentOutgoingIndex;
-        ++queueSize;
+    final void addOverlayBytes(long bytes) {
+        overlayBytes.addAndGet(bytes);
+        PreprocessingCache.updateSize(graph, EdgeNLevelSparseVisibilityGraph.class, levelLimit, this, memoryUsage());
     }
 
     /// \\\ /// \\\ /// \\\ /// \\\ ///
     ///   REPURPOSING PHASE - END   ///
     /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+
+    /**
+     * Sets tile (tiles[i][0], tiles[i][1]) of the grid to blocked[i], and updates the graph to match.
+     * Only the parts of the graph that can see the changed tiles are recomputed. See EdgeNLevelSparseVisibilityGraphUpdater.
+     * Must not be called while queries are running on this graph. Queries started afterwards see the new graph.
+     */
+    public final synchronized void updateTiles(int[][] tiles, boolean[] blocked) {
+        if (updater == null) updater = new EdgeNLevelSparseVisibilityGraphUpdater(this);
+        updater.update(tiles, blocked);
+        PreprocessingCache.updateSize(graph, EdgeNLevelSparseVisibilityGraph.class, levelLimit, this, memoryUsage());
+    }
     
     public final int size() {
         return nNodes;
@@ -953,33 +956,73 @@ public class EdgeNLevelSparseVisibilityGraph {
         return maxSize;
     }
     
-    public final int startNode() {
-        return startIndex;
+    public final int computeNumSkipEdges() {
+        return skipEdgeStarts[nNodes]/2;
     }
 
-    public final int endNode() {
-        return endIndex;
+    public final int nOutgoingEdges(int index) {
+        return outgoingEdgeStarts[index+1] - outgoingEdgeStarts[index];
     }
-    
-    public final int computeNumSkipEdges() {
-        int sumdegrees = 0;
-        for (int i=0;i<nNodes;++i) {
-            sumdegrees += nSkipEdgess[i];
-        }
-        return sumdegrees/2;
+
+    public final boolean isSkipVertex(int index) {
+        return skipEdgeStarts[index+1] != skipEdgeStarts[index];
     }
     
     private final void maybeSaveSnapshot() {
         if (saveSnapshot != null) saveSnapshot.run();
     }
     
+    /**
+     * @return an estimate of the memory used by the graph and by the overlays of the threads that have queried it, in bytes.
+     */
+    public final long memoryUsage() {
+        long nInts = xPositions.length + yPositions.length + nodeIndex.length
+                + outgoingEdgeStarts.length + outgoingEdges.length + outgoingEdgeIndexes.length
+                + skipEdgeStarts.length + outgoingSkipEdges.length + outgoingSkipEdgeNextNodes.length + outgoingSkipEdgeWeights.length
+                + edgeLevels.length + edgeWeights.length;
+        return nInts*4 + losExtents.memoryUsage() + overlayBytes.get();
+    }
+
+    /**
+     * Drops the cached graphs of all grids.
+     */
     public static void clearMemory() {
-        storedVisibilityGraph = null;
-        storedGridGraph = null;
+        PreprocessingCache.clear(EdgeNLevelSparseVisibilityGraph.class);
         System.gc();
     }
     
     private String vertexToStr(int index) {
         return xPositions[index] + ", " + yPositions[index];
     }
-}
\ No newline at end of file
+
+    private interface NodeRange {
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits the node range [from, to) in halves until it is small enough to run directly.
+     */
+    private static final class NodeRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 64;
+        private final int from;
+        private final int to;
+        private final NodeRange body;
+
+        NodeRangeTask(int from, int to, NodeRange body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                body.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new NodeRangeTask(from, mid, body), new NodeRangeTask(mid, to, body));
+        }
+    }
+}
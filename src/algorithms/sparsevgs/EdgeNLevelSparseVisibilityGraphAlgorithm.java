@@ -8,17 +8,19 @@ import java.util.TreeMap;
 import algorithms.AStarStaticMemory;
 import algorithms.datatypes.Memory;
 import algorithms.datatypes.SnapshotItem;
-import algorithms.priorityqueue.ReusableIndirectHeap;
 import grid.GridGraph;
 import main.AlgoFunction;
 
 
 public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory {
-    private EdgeNLevelSparseVisibilityGraph visibilityGraph;
-    private boolean reuseGraph = false;
-    private int levelLimit = Integer.MAX_VALUE;
+    protected EdgeNLevelSparseVisibilityGraph visibilityGraph;
+    protected EdgeNLevelSparseVisibilityGraphOverlay overlay;
+    protected boolean reuseGraph = false;
+    protected int levelLimit = Integer.MAX_VALUE;
+    protected int nExpanded;
+    private int overlayQuery; // The overlay's queryNumber when this search set it up.
     
-    private EdgeNLevelSparseVisibilityGraphAlgorithm(GridGraph graph, int sx, int sy, int ex, int ey) {
+    protected EdgeNLevelSparseVisibilityGraphAlgorithm(GridGraph graph, int sx, int sy, int ex, int ey) {
         super(graph, sx, sy, ex, ey);
     }
     
@@ -42,105 +44,122 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
     }
     
     @Override
-    public void computePath() {
+    protected boolean beginSearch() {
         setupVisibilityGraph();
 
-        int size = visibilityGraph.size();
         int memorySize = visibilityGraph.maxSize();
-        pq = new ReusableIndirectHeap(size, memorySize);
+        pq = initialiseQueue(queueType, memorySize);
         this.initialiseMemory(memorySize, Float.POSITIVE_INFINITY, -1, false);
         
-        initialise(visibilityGraph.startNode());
-        int finish = visibilityGraph.endNode();
+        initialise(overlay.startNode());
+        finish = overlay.endNode();
+        nExpanded = 0;
 
         if (graph.lineOfSight(sx, sy, ex, ey)) {
             // There is a direct path from (sx, sy) to (ex, ey).
             if (sx != ex || sy != ey) {
-                setParent(finish, visibilityGraph.startNode());
+                setParent(finish, overlay.startNode());
+                setDistance(finish, graph.distance(sx, sy, ex, ey));
             }
-            return;
+            return false;
         }
+        return true;
+    }
 
-        while (!pq.isEmpty()) {
-            int current = pq.popMinIndex();
-            setVisited(current, true);
-            resolveSkipEdgeNextNode(current);
-            
-            if (current == finish) {
-                break;
+    @Override
+    protected boolean expandNext() {
+        if (pq.isEmpty()) return false;
+        int current = pq.popMinIndex();
+        setVisited(current, true);
+        resolveSkipEdgeNextNode(memory, current);
+        ++nExpanded;
+        
+        if (current == finish) {
+            return false;
+        }
+        
+        // Scan through marked edges to neighbours
+        for (int e=overlay.firstMarkedEdge(current);e!=-1;e=overlay.nextMarkedEdge(e)) {
+            int dest = overlay.markedEdgeDest(e);
+            float weight = overlay.markedEdgeWeight(e);
+            if (!memory.visited(dest) && relax(current, dest, weight)) {
+                int destX = overlay.getX(dest);
+                int destY = overlay.getY(dest);
+                
+                pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
             }
-            
-            int[] outgoingEdges = visibilityGraph.outgoingEdgess[current];
-            int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexess[current];
+        }
 
-            // Scan through marked edges to neighbours
-            int nMarkedEdges = visibilityGraph.nMarkedEdgess[current];
-            int[] outgoingMarkedEdgeIndexes = visibilityGraph.outgoingMarkedEdgeIndexess[current];
+        // Scan through skip edges to neighbours
+        int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+        float[] outgoingSkipEdgeWeights = visibilityGraph.outgoingSkipEdgeWeights;
+        int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodes;
+        int skipEnd = visibilityGraph.skipEdgeStarts[current+1];
+        
+        for (int i=visibilityGraph.skipEdgeStarts[current];i<skipEnd;++i) {
+            int dest = outgoingSkipEdges[i];
+            int nextNode = outgoingSkipEdgeNextNodes[i];
+            float edgeWeight = outgoingSkipEdgeWeights[i];
             
-            for (int i=0;i<nMarkedEdges;++i) {
-                int index = outgoingMarkedEdgeIndexes[i];
-                int dest = outgoingEdges[index];
-                int edgeIndex = outgoingEdgeIndexes[index];
-                float weight = visibilityGraph.edgeWeights[edgeIndex];
-                if (!Memory.visited(dest) && relax(current, dest, weight)) {
-                    int destX = visibilityGraph.xPositions[dest];
-                    int destY = visibilityGraph.yPositions[dest];
-                    
-                    pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));;
-                }
+            if (!memory.visited(dest) && relaxViaSkipEdge(current, dest, nextNode, edgeWeight)) {
+                int destX = overlay.getX(dest);
+                int destY = overlay.getY(dest);
+                pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
             }
+        }
 
-            // Scan through skip edges to neighbours
-            int nSkipEdges = visibilityGraph.nSkipEdgess[current];
-            int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdgess[current];
-            float[] outgoingSkipEdgeWeights = visibilityGraph.outgoingSkipEdgeWeightss[current];
-            int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodess[current];
+        if (overlay.hasEdgeToGoal(current)) {
+            int currX = overlay.getX(current);
+            int currY = overlay.getY(current);
             
-            for (int i=0;i<nSkipEdges;++i) {
-                int dest = outgoingSkipEdges[i];
-                int nextNode = outgoingSkipEdgeNextNodes[i];
-                float edgeWeight = outgoingSkipEdgeWeights[i];
-                
-                if (!Memory.visited(dest) && relaxViaSkipEdge(current, dest, nextNode, edgeWeight)) {
-                    int destX = visibilityGraph.xPositions[dest];
-                    int destY = visibilityGraph.yPositions[dest];
-                    pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
-                }
-            }
-
-            if (visibilityGraph.hasEdgeToGoal[current]) {
-                int currX = visibilityGraph.xPositions[current];
-                int currY = visibilityGraph.yPositions[current];
-                
-                float weight = graph.distance(currX, currY, ex, ey);
-                if (relax(current, finish, weight)) {
-                    pq.decreaseKey(finish, distance(finish));
-                }
+            float weight = graph.distance(currX, currY, ex, ey);
+            if (relax(current, finish, weight)) {
+                pq.decreaseKey(finish, distance(finish));
             }
-            
-            maybeSaveSearchSnapshot();
         }
+        
+        maybeSaveSearchSnapshot();
+        return true;
+    }
 
-        resolveFinalPath();
+    @Override
+    protected void endSearch() {
+        // The skip edges only need to be replaced with the nodes they pass through to report the path.
+        if (!costOnly) resolveFinalPath(memory, overlay.endNode());
+    }
+
+    /**
+     * @return the number of nodes expanded by the last call to computePath.
+     */
+    public int nExpanded() {
+        return nExpanded;
     }
 
     protected void setupVisibilityGraph() {
         if (reuseGraph) {
             visibilityGraph = EdgeNLevelSparseVisibilityGraph.initialiseNew(graph, levelLimit);
         } else {
-            EdgeNLevelSparseVisibilityGraph.clearMemory();
-            visibilityGraph = EdgeNLevelSparseVisibilityGraph.initialiseNew(graph, levelLimit);
+            visibilityGraph = EdgeNLevelSparseVisibilityGraph.initialiseUncached(graph, levelLimit);
         }
         
         if (isRecording()) {
             visibilityGraph.setSaveSnapshotFunction(()->saveVisibilityGraphSnapshot(false));
             saveVisibilityGraphSnapshot(false);
-            visibilityGraph.addStartAndEnd(sx, sy, ex, ey);
+            overlay = visibilityGraph.addStartAndEnd(sx, sy, ex, ey);
             saveVisibilityGraphSnapshot(false);
             saveVisibilityGraphSnapshot(true);
         } else {
-            visibilityGraph.addStartAndEnd(sx, sy, ex, ey);
+            overlay = visibilityGraph.addStartAndEnd(sx, sy, ex, ey);
         }
+        overlayQuery = overlay.queryNumber();
+    }
+
+    /**
+     * The overlay belongs to the thread, so a search set up on the same thread also takes it over.
+     */
+    @Override
+    protected boolean ownsSearchState() {
+        return super.ownsSearchState() && overlay.queryNumber() == overlayQuery;
     }
 
     protected final boolean relax(int u, int v, float weightUV) {
@@ -150,15 +169,13 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
         if (newWeight < distance(v)) {
             int p = parent(u);
             if (p != -1) {
-                int[] xPositions = visibilityGraph.xPositions;
-                int[] yPositions = visibilityGraph.yPositions;
                 p = getNextNodeIndex(p);
-                int x1 = xPositions[p];
-                int y1 = yPositions[p];
-                int x2 = xPositions[u];
-                int y2 = yPositions[u];
-                int x3 = xPositions[v];
-                int y3 = yPositions[v];
+                int x1 = overlay.getX(p);
+                int y1 = overlay.getY(p);
+                int x2 = overlay.getX(u);
+                int y2 = overlay.getY(u);
+                int x3 = overlay.getX(v);
+                int y3 = overlay.getY(v);
                 
                 if (!graph.isTaut(x1,y1,x2,y2,x3,y3)) return false;
             }
@@ -198,12 +215,12 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
             int p = parent(u);
             if (p != -1) {
                 p = getNextNodeIndex(p);
-                int x1 = visibilityGraph.xPositions[p];
-                int y1 = visibilityGraph.yPositions[p];
-                int x2 = visibilityGraph.xPositions[u];
-                int y2 = visibilityGraph.yPositions[u];
-                int x3 = visibilityGraph.xPositions[nextNode];
-                int y3 = visibilityGraph.yPositions[nextNode];
+                int x1 = overlay.getX(p);
+                int y1 = overlay.getY(p);
+                int x2 = overlay.getX(u);
+                int y2 = overlay.getY(u);
+                int x3 = overlay.getX(nextNode);
+                int y3 = overlay.getY(nextNode);
                 
                 if (!graph.isTaut(x1,y1,x2,y2,x3,y3)) return false;
             }
@@ -214,67 +231,70 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
         return false;
     }
     
-    private final void resolveSkipEdgeNextNode(int v) {
-        int parent = Memory.parent(v);
+    protected final void resolveSkipEdgeNextNode(Memory memory, int v) {
+        int parent = memory.parent(v);
         if (parent >= -1) return;
         parent -= Integer.MIN_VALUE;
-        int nSkipEdges = visibilityGraph.nSkipEdgess[v];
-        int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdgess[v];
+        int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+        int skipEnd = visibilityGraph.skipEdgeStarts[v+1];
 
-        for (int i=0;i<nSkipEdges;++i) {
+        for (int i=visibilityGraph.skipEdgeStarts[v];i<skipEnd;++i) {
             if (outgoingSkipEdges[i] == parent) {
-                Memory.setParent(v, visibilityGraph.outgoingSkipEdgeNextNodess[v][i] + Integer.MIN_VALUE);
+                memory.setParent(v, visibilityGraph.outgoingSkipEdgeNextNodes[i] + Integer.MIN_VALUE);
                 return;
             }
         }
         throw new UnsupportedOperationException("SHOULD NOT REACH HERE!");
     }
     
-    private final int getNextNodeIndex(int p) {
+    protected static final int getNextNodeIndex(int p) {
         return (p >= -1) ? p : (p - Integer.MIN_VALUE);
     }
     
-    private void resolveFinalPath() {
-        int current = visibilityGraph.endNode();
+    /**
+     * Replaces the skip edge parents on the path from the given node with the nodes the skip edges pass through.
+     */
+    protected final void resolveFinalPath(Memory memory, int from) {
+        int current = from;
         int previous = -1;
         int[] edgeLevels = visibilityGraph.edgeLevels;
         
         while (current != -1) {
             if (current < -1) {
                 current -= Integer.MIN_VALUE;
-                Memory.setParent(previous, current);
+                memory.setParent(previous, current);
                 
-                if (visibilityGraph.nSkipEdgess[current] != 0) {
+                if (visibilityGraph.isSkipVertex(current)) {
                     previous = current;
-                    current = Memory.parent(current);
+                    current = memory.parent(current);
                     continue;
                 }
                 
-                int nOutgoingEdges = visibilityGraph.nOutgoingEdgess[current];
-                int[] outgoingEdges = visibilityGraph.outgoingEdgess[current];
-                int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexess[current];
+                int[] outgoingEdges = visibilityGraph.outgoingEdges;
+                int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexes;
+                int end = visibilityGraph.outgoingEdgeStarts[current+1];
                 
                 boolean done = false;
-                for (int i=0;i<nOutgoingEdges;++i) {
+                for (int i=visibilityGraph.outgoingEdgeStarts[current];i<end;++i) {
                     if (edgeLevels[outgoingEdgeIndexes[i]] != EdgeNLevelSparseVisibilityGraph.LEVEL_W) continue;
                     if (outgoingEdges[i] == previous) continue;
                     
                     int next = outgoingEdges[i];
-                    Memory.setParent(current, next + Integer.MIN_VALUE);
+                    memory.setParent(current, next + Integer.MIN_VALUE);
                     done = true;
                     break;
                 }
                 if (!done) throw new UnsupportedOperationException("SS");
             }
             previous = current;
-            current = Memory.parent(current);
+            current = memory.parent(current);
         }
     }
     
 
     private int pathLength() {
         int length = 0;
-        int current = visibilityGraph.endNode();
+        int current = overlay.endNode();
         while (current != -1) {
             current = parent(current);
             length++;
@@ -282,16 +302,27 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
         return length;
     }
 
+    @Override
+    protected int nodeX(int index) {
+        return overlay.getX(index);
+    }
+
+    @Override
+    protected int nodeY(int index) {
+        return overlay.getY(index);
+    }
+
     @Override
     public int[][] getPath() {
+        if (searchCancelled()) return new int[0][];
         int length = pathLength();
         int[][] path = new int[length][];
-        int current = visibilityGraph.endNode();
+        int current = overlay.endNode();
         
         int index = length-1;
         while (current != -1) {
-            int x = visibilityGraph.xPositions[current];
-            int y = visibilityGraph.yPositions[current];
+            int x = overlay.getX(current);
+            int y = overlay.getY(current);
             
             path[index] = new int[2];
             path[index][0] = x;
@@ -306,7 +337,7 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
 
     @Override
     protected int goalParentIndex() {
-        return visibilityGraph.endNode();
+        return overlay.endNode();
     }
 
     @Override
@@ -316,20 +347,20 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
         //startIndex = getNextNodeIndex(startIndex);
         if (startIndex < -1) {
             startIndex -= Integer.MIN_VALUE;
-            int nSkipEdges = visibilityGraph.nSkipEdgess[endIndex];
-            int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodess[endIndex];
-            for (int i=0;i<nSkipEdges;++i) {
+            int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodes;
+            int skipEnd = visibilityGraph.skipEdgeStarts[endIndex+1];
+            for (int i=visibilityGraph.skipEdgeStarts[endIndex];i<skipEnd;++i) {
                 if (outgoingSkipEdgeNextNodes[i] == startIndex) {
-                    startIndex = visibilityGraph.outgoingSkipEdgess[endIndex][i];
+                    startIndex = visibilityGraph.outgoingSkipEdges[i];
                     break;
                 }
             }
         }
         
-        edge[0] = visibilityGraph.xPositions[startIndex];
-        edge[1] = visibilityGraph.yPositions[startIndex];
-        edge[2] = visibilityGraph.xPositions[endIndex];
-        edge[3] = visibilityGraph.yPositions[endIndex];
+        edge[0] = overlay.getX(startIndex);
+        edge[1] = overlay.getY(startIndex);
+        edge[2] = overlay.getX(endIndex);
+        edge[3] = overlay.getY(endIndex);
         return edge;
     }
 
@@ -337,8 +368,8 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
     protected Integer[] snapshotVertex(int index) {
         if (selected(index)) {
             Integer[] edge = new Integer[2];
-            edge[0] = visibilityGraph.xPositions[index];
-            edge[1] = visibilityGraph.yPositions[index];
+            edge[0] = overlay.getX(index);
+            edge[1] = overlay.getY(index);
             return edge;
         }
         return null;
@@ -356,11 +387,11 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
             int x1 = xPositions[i];
             int y1 = yPositions[i];
 
-            int nOutgoingEdges = visibilityGraph.nOutgoingEdgess[i];
-            int[] outgoingEdges = visibilityGraph.outgoingEdgess[i];
-            int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexess[i];
+            int[] outgoingEdges = visibilityGraph.outgoingEdges;
+            int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexes;
+            int end = visibilityGraph.outgoingEdgeStarts[i+1];
             
-            for (int j=0;j<nOutgoingEdges;++j) {
+            for (int j=visibilityGraph.outgoingEdgeStarts[i];j<end;++j) {
                 int neighbour = outgoingEdges[j];
                 int edgeIndex = outgoingEdgeIndexes[j];
                 int x2 = xPositions[neighbour];
@@ -375,7 +406,7 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
                 Color color;
                 int colourIndex;
                 
-                if (showMarked && visibilityGraph.isMarked[edgeIndex]) {
+                if (showMarked && overlay != null && overlay.isMarked(edgeIndex)) {
                     colourIndex = 0;
                     color = vertexColours[colourIndex];
                 } else if (visibilityGraph.edgeLevels[edgeIndex] == visibilityGraph.LEVEL_W) {
@@ -400,7 +431,7 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
             vert[1] = y1;
 
             SnapshotItem snapshotItem = null;
-            if (visibilityGraph.nSkipEdgess[i] == 0) {
+            if (!visibilityGraph.isSkipVertex(i)) {
                 // Regular vertex.
                 snapshotItem = SnapshotItem.generate(vert, Color.BLUE);
             }
@@ -410,6 +441,33 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
             snapshotItemList.add(snapshotItem);
         }
         
+        if (overlay != null) {
+            // Temporary start / goal vertices and their level 0 edges, which live in the overlay.
+            for (int i=size;i<overlay.size();i++) {
+                Integer[] vert = new Integer[2];
+                vert[0] = overlay.getX(i);
+                vert[1] = overlay.getY(i);
+                snapshotItemList.add(SnapshotItem.generate(vert, Color.BLUE));
+            }
+            
+            int nTempEdges = overlay.nTempEdges();
+            for (int j=0;j<nTempEdges;++j) {
+                int source = overlay.tempEdgeSource(j);
+                int neighbour = overlay.tempEdgeDest(j);
+                
+                Integer[] path = new Integer[4];
+                path[0] = overlay.getX(source);
+                path[1] = overlay.getY(source);
+                path[2] = xPositions[neighbour];
+                path[3] = yPositions[neighbour];
+                
+                if (!sortedSnapshots.containsKey(0)) {
+                    sortedSnapshots.put(0, new ArrayList<>());
+                }
+                sortedSnapshots.get(0).add(SnapshotItem.generate(path, vertexColours[0]));
+            }
+        }
+        
         {
             ArrayList<SnapshotItem> transfer = sortedSnapshots.remove(0);
             sortedSnapshots.put(vertexColours.length+1, transfer);
@@ -425,10 +483,10 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithm extends AStarStaticMemory
             int x1 = xPositions[i];
             int y1 = yPositions[i];
 
-            int nSkipEdges = visibilityGraph.nSkipEdgess[i];
-            int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdgess[i];
+            int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+            int skipEnd = visibilityGraph.skipEdgeStarts[i+1];
             
-            for (int j=0;j<nSkipEdges;++j) {
+            for (int j=visibilityGraph.skipEdgeStarts[i];j<skipEnd;++j) {
                 int neighbour = outgoingSkipEdges[j];
                 int x2 = xPositions[neighbour];
                 int y2 = yPositions[neighbour];
@@ -0,0 +1,223 @@
+package algorithms.sparsevgs;
+
+import algorithms.datatypes.Memory;
+import algorithms.datatypes.SearchContext;
+import algorithms.priorityqueue.IndirectPriorityQueue;
+import algorithms.priorityqueue.PriorityQueueType;
+import algorithms.priorityqueue.ReusableIndirectHeap;
+import grid.GridGraph;
+
+/**
+ * Edge N-Level Sparse Visibility Graph search from both ends at once. Still optimal.
+ * See SparseVisibilityGraphAlgorithmBidirectional for the stopping criterion.
+ *
+ * The search graph is symmetric: edges marked from the start and from the goal are marked in both directions,
+ * skip edges are stored at both of their ends, and the backward search reaches the start through hasEdgeToStart
+ * like the forward search reaches the goal through hasEdgeToGoal.
+ *
+ * Skip edge parents are handled the same way in both directions (see relaxViaSkipEdge), each in its own memory.
+ * To build the path, the skip edges on both halves are first replaced with the nodes they pass through,
+ * then the backward half is copied into the forward parents.
+ */
+public class EdgeNLevelSparseVisibilityGraphAlgorithmBidirectional extends EdgeNLevelSparseVisibilityGraphAlgorithm {
+    private Memory backward;
+    private ReusableIndirectHeap backwardPq;
+    private float bestLength;
+    private int meetingNode;
+
+    private EdgeNLevelSparseVisibilityGraphAlgorithmBidirectional(GridGraph graph, int sx, int sy, int ex, int ey) {
+        super(graph, sx, sy, ex, ey);
+    }
+
+    public static EdgeNLevelSparseVisibilityGraphAlgorithmBidirectional graphReuse(GridGraph graph, int sx, int sy, int ex, int ey) {
+        EdgeNLevelSparseVisibilityGraphAlgorithmBidirectional algo = new EdgeNLevelSparseVisibilityGraphAlgorithmBidirectional(graph, sx, sy, ex, ey);
+        algo.reuseGraph = true;
+        return algo;
+    }
+
+    /**
+     * Both searches use the binary heap: their keys (distance plus or minus the potential) are not monotone.
+     */
+    @Override
+    public void setPriorityQueue(PriorityQueueType type) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support choosing its priority queue.");
+    }
+
+    @Override
+    protected boolean beginSearch() {
+        setupVisibilityGraph();
+
+        int memorySize = visibilityGraph.maxSize();
+        pq = initialiseHeap(memorySize);
+        this.initialiseMemory(memorySize, Float.POSITIVE_INFINITY, -1, false);
+        SearchContext reverseContext = searchContext().reverse();
+        backward = reverseContext.memory;
+        backward.initialise(memorySize, Float.POSITIVE_INFINITY, -1, false);
+        backwardPq = reverseContext.heap;
+        backwardPq.reset(memorySize);
+
+        int start = overlay.startNode();
+        finish = overlay.endNode();
+        pq.decreaseKey(start, potential(sx, sy));
+        memory.setDistance(start, 0f);
+        backward.setDistance(finish, 0f);
+        backwardPq.decreaseKey(finish, -potential(ex, ey));
+        nExpanded = 0;
+        bestLength = Float.POSITIVE_INFINITY;
+        meetingNode = -1;
+
+        if (graph.lineOfSight(sx, sy, ex, ey)) {
+            // There is a direct path from (sx, sy) to (ex, ey).
+            if (sx != ex || sy != ey) {
+                setParent(finish, start);
+                bestLength = graph.distance(sx, sy, ex, ey);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean expandNext() {
+        if (pq.isEmpty() || backwardPq.isEmpty()) return false;
+        if (bestLength <= pq.getMinValue() + backwardPq.getMinValue()) return false;
+
+        if (pq.size() <= backwardPq.size()) {
+            int current = pq.popMinIndex();
+            memory.setVisited(current, true);
+            resolveSkipEdgeNextNode(memory, current);
+            expand(memory, pq, current, 1f);
+            if (overlay.hasEdgeToGoal(current)) {
+                relaxToEnd(memory, pq, current, finish, 1f);
+            }
+        } else {
+            int current = backwardPq.popMinIndex();
+            backward.setVisited(current, true);
+            resolveSkipEdgeNextNode(backward, current);
+            expand(backward, backwardPq, current, -1f);
+            if (overlay.hasEdgeToStart(current)) {
+                relaxToEnd(backward, backwardPq, current, overlay.startNode(), -1f);
+            }
+        }
+        ++nExpanded;
+        maybeSaveSearchSnapshot();
+        return true;
+    }
+
+    @Override
+    protected void endSearch() {
+        if (!costOnly) joinAtMeetingNode();
+    }
+
+    @Override
+    protected float pathCost() {
+        return bestLength;
+    }
+
+    private final void expand(Memory mem, IndirectPriorityQueue heap, int current, float sign) {
+        // Scan through marked edges to neighbours
+        for (int e=overlay.firstMarkedEdge(current);e!=-1;e=overlay.nextMarkedEdge(e)) {
+            int dest = overlay.markedEdgeDest(e);
+            float weight = overlay.markedEdgeWeight(e);
+            if (!mem.visited(dest) && relax(mem, current, dest, dest, weight)) {
+                heap.decreaseKey(dest, mem.distance(dest) + sign*potential(overlay.getX(dest), overlay.getY(dest)));
+                tryMeetingNode(dest);
+            }
+        }
+
+        // Scan through skip edges to neighbours
+        int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+        float[] outgoingSkipEdgeWeights = visibilityGraph.outgoingSkipEdgeWeights;
+        int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodes;
+        int skipEnd = visibilityGraph.skipEdgeStarts[current+1];
+
+        for (int i=visibilityGraph.skipEdgeStarts[current];i<skipEnd;++i) {
+            int dest = outgoingSkipEdges[i];
+            if (!mem.visited(dest) && relax(mem, current, dest, outgoingSkipEdgeNextNodes[i], outgoingSkipEdgeWeights[i])) {
+                // Skip edge parent. See relaxViaSkipEdge.
+                mem.setParent(dest, current + Integer.MIN_VALUE);
+                heap.decreaseKey(dest, mem.distance(dest) + sign*potential(overlay.getX(dest), overlay.getY(dest)));
+                tryMeetingNode(dest);
+            }
+        }
+    }
+
+    /**
+     * Relaxes the edge from current to the end (start or goal) it can see.
+     */
+    private final void relaxToEnd(Memory mem, IndirectPriorityQueue heap, int current, int end, float sign) {
+        int endX = overlay.getX(end);
+        int endY = overlay.getY(end);
+        float weight = graph.distance(overlay.getX(current), overlay.getY(current), endX, endY);
+        if (relax(mem, current, end, end, weight)) {
+            heap.decreaseKey(end, mem.distance(end) + sign*potential(endX, endY));
+            tryMeetingNode(end);
+        }
+    }
+
+    /**
+     * Forward potential. See SparseVisibilityGraphAlgorithmBidirectional.
+     */
+    private final float potential(int x, int y) {
+        return (graph.distance(x, y, ex, ey) - graph.distance(x, y, sx, sy)) * 0.5f;
+    }
+
+    /**
+     * Relaxes u -> v in the given direction. The taut check is done with the next node on the edge from u,
+     * which is v itself, or the node after u on a skip edge.
+     */
+    private final boolean relax(Memory mem, int u, int v, int nextNode, float weightUV) {
+        // return true iff relaxation is done.
+        float newWeight = mem.distance(u) + weightUV;
+        if (newWeight < mem.distance(v)) {
+            int p = mem.parent(u);
+            if (p != -1) {
+                p = getNextNodeIndex(p);
+                int x1 = overlay.getX(p);
+                int y1 = overlay.getY(p);
+                int x2 = overlay.getX(u);
+                int y2 = overlay.getY(u);
+                int x3 = overlay.getX(nextNode);
+                int y3 = overlay.getY(nextNode);
+
+                if (!graph.isTaut(x1,y1,x2,y2,x3,y3)) return false;
+            }
+            mem.setDistance(v, newWeight);
+            mem.setParent(v, u);
+            return true;
+        }
+        return false;
+    }
+
+    private final void tryMeetingNode(int v) {
+        float length = memory.distance(v) + backward.distance(v);
+        if (length < bestLength) {
+            bestLength = length;
+            meetingNode = v;
+        }
+    }
+
+    /**
+     * Resolves the skip edges on both halves of the path, then points the forward parents of the
+     * backward half (meeting node to goal) towards the start.
+     */
+    private final void joinAtMeetingNode() {
+        if (meetingNode == -1) return;
+
+        // The meeting node may not have been expanded on one side, in which case its skip edge parent still names
+        // the node at the other end of the skip edge.
+        if (!memory.visited(meetingNode)) resolveSkipEdgeNextNode(memory, meetingNode);
+        if (!backward.visited(meetingNode)) resolveSkipEdgeNextNode(backward, meetingNode);
+        resolveFinalPath(memory, meetingNode);
+        resolveFinalPath(backward, meetingNode);
+
+        int previous = meetingNode;
+        int current = backward.parent(meetingNode);
+        while (current != -1) {
+            int next = backward.parent(current);
+            setParent(current, previous);
+            previous = current;
+            current = next;
+        }
+    }
+}
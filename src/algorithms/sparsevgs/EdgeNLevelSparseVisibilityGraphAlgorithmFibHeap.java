@@ -6,23 +6,24 @@ import java.util.List;
 import java.util.TreeMap;
 
 import algorithms.PathFindingAlgorithm;
-import algorithms.datatypes.Memory;
+import algorithms.datatypes.SearchContext;
 import algorithms.datatypes.SnapshotItem;
-import algorithms.priorityqueue.ReusableIndirectHeap;
 import grid.GridGraph;
 import main.AlgoFunction;
 
-import algorithms.jgrapht.FibonacciHeap;
-import algorithms.jgrapht.FibonacciHeapNode;
+import algorithms.priorityqueue.IndirectPriorityQueue;
+import algorithms.priorityqueue.PriorityQueueType;
 
 
 public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm {
     private EdgeNLevelSparseVisibilityGraph visibilityGraph;
+    private EdgeNLevelSparseVisibilityGraphOverlay overlay;
     private boolean reuseGraph = false;
     private int levelLimit = Integer.MAX_VALUE;
 
-    private static FibonacciHeapNode<Integer>[] nodeRefs;
-    private FibonacciHeap<Integer> pq = new FibonacciHeap<>();
+    // Fibonacci heap unless chosen otherwise with withQueue.
+    private PriorityQueueType queueType = PriorityQueueType.FIBONACCI;
+    private IndirectPriorityQueue pq;
     
     private EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap(GridGraph graph, int sx, int sy, int ex, int ey) {
         super(graph, graph.sizeX, graph.sizeY, sx, sy, ex, ey);
@@ -33,6 +34,22 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
         algo.reuseGraph = true;
         return algo;
     }
+
+    /**
+     * Like graphReuse, with another priority queue instead of the Fibonacci heap.
+     */
+    public static AlgoFunction withQueue(PriorityQueueType queueType) {
+        return (GridGraph graph, int sx, int sy, int ex, int ey) -> {
+            EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap algo = graphReuse(graph, sx, sy, ex, ey);
+            algo.queueType = queueType;
+            return algo;
+        };
+    }
+
+    @Override
+    public void setPriorityQueue(PriorityQueueType type) {
+        queueType = type;
+    }
     
     public static AlgoFunction withLevelLimit(int levelLimit) {
         return (GridGraph graph, int sx, int sy, int ex, int ey) -> {
@@ -48,7 +65,7 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
     }
 
     private final void initialise(int s) {
-        decreaseKey(s, 0f, true);
+        pq.decreaseKey(s, 0f);
         setDistance(s, 0f);
     }
     
@@ -56,27 +73,24 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
     public void computePath() {
         setupVisibilityGraph();
 
-        int size = visibilityGraph.size();
         int memorySize = visibilityGraph.maxSize();
-        pq.clear();
+        pq = initialiseQueue(queueType, memorySize);
         this.initialiseMemory(memorySize, Float.POSITIVE_INFINITY, -1, false);
         
-        initialise(visibilityGraph.startNode());
-        int finish = visibilityGraph.endNode();
+        initialise(overlay.startNode());
+        int finish = overlay.endNode();
 
         if (graph.lineOfSight(sx, sy, ex, ey)) {
             // There is a direct path from (sx, sy) to (ex, ey).
             if (sx != ex || sy != ey) {
-                setParent(finish, visibilityGraph.startNode());
+                setParent(finish, overlay.startNode());
             }
             return;
         }
 
         while (!pq.isEmpty()) {
 
-            //int current = pq.popMinIndex();
-            FibonacciHeapNode<Integer> currNode = pq.removeMin();
-            int current = currNode.getData();
+            int current = pq.popMinIndex();
             
             setVisited(current, true);
             resolveSkipEdgeNextNode(current);
@@ -85,55 +99,41 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
                 break;
             }
             
-            int[] outgoingEdges = visibilityGraph.outgoingEdgess[current];
-            int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexess[current];
-
             // Scan through marked edges to neighbours
-            int nMarkedEdges = visibilityGraph.nMarkedEdgess[current];
-            int[] outgoingMarkedEdgeIndexes = visibilityGraph.outgoingMarkedEdgeIndexess[current];
-            
-            for (int i=0;i<nMarkedEdges;++i) {
-                int index = outgoingMarkedEdgeIndexes[i];
-                int dest = outgoingEdges[index];
-                int edgeIndex = outgoingEdgeIndexes[index];
-                float weight = visibilityGraph.edgeWeights[edgeIndex];
-                boolean isNewItem = distance(dest) == Float.POSITIVE_INFINITY;
-
-                if (!Memory.visited(dest) && relax(current, dest, weight)) {
-                    int destX = visibilityGraph.xPositions[dest];
-                    int destY = visibilityGraph.yPositions[dest];
+            for (int e=overlay.firstMarkedEdge(current);e!=-1;e=overlay.nextMarkedEdge(e)) {
+                int dest = overlay.markedEdgeDest(e);
+                float weight = overlay.markedEdgeWeight(e);
+                if (!memory.visited(dest) && relax(current, dest, weight)) {
+                    int destX = overlay.getX(dest);
+                    int destY = overlay.getY(dest);
                     
-                    decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey), isNewItem);
+                    pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
                 }
             }
 
             // Scan through skip edges to neighbours
-            int nSkipEdges = visibilityGraph.nSkipEdgess[current];
-            int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdgess[current];
-            float[] outgoingSkipEdgeWeights = visibilityGraph.outgoingSkipEdgeWeightss[current];
-            int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodess[current];
+            int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+            float[] outgoingSkipEdgeWeights = visibilityGraph.outgoingSkipEdgeWeights;
+            int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodes;
+            int skipEnd = visibilityGraph.skipEdgeStarts[current+1];
             
-            for (int i=0;i<nSkipEdges;++i) {
+            for (int i=visibilityGraph.skipEdgeStarts[current];i<skipEnd;++i) {
                 int dest = outgoingSkipEdges[i];
                 int nextNode = outgoingSkipEdgeNextNodes[i];
                 float edgeWeight = outgoingSkipEdgeWeights[i];
-                boolean isNewItem = distance(dest) == Float.POSITIVE_INFINITY;
-                
-                if (!Memory.visited(dest) && relaxViaSkipEdge(current, dest, nextNode, edgeWeight)) {
-                    int destX = visibilityGraph.xPositions[dest];
-                    int destY = visibilityGraph.yPositions[dest];
-                    decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey), isNewItem);
+                if (!memory.visited(dest) && relaxViaSkipEdge(current, dest, nextNode, edgeWeight)) {
+                    int destX = overlay.getX(dest);
+                    int destY = overlay.getY(dest);
+                    pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
                 }
             }
 
-            if (visibilityGraph.hasEdgeToGoal[current]) {
-                int currX = visibilityGraph.xPositions[current];
-                int currY = visibilityGraph.yPositions[current];
-                boolean isNewItem = distance(finish) == Float.POSITIVE_INFINITY;
-                
+            if (overlay.hasEdgeToGoal(current)) {
+                int currX = overlay.getX(current);
+                int currY = overlay.getY(current);
                 float weight = graph.distance(currX, currY, ex, ey);
                 if (relax(current, finish, weight)) {
-                    decreaseKey(finish, distance(finish), isNewItem);
+                    pq.decreaseKey(finish, distance(finish));
                 }
             }
             
@@ -143,35 +143,21 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
         resolveFinalPath();
     }
 
-    private final void decreaseKey(int index, float newCost, boolean isNewItem) {
-        if (isNewItem) {
-            nodeRefs[index] = new FibonacciHeapNode<>(index);
-            pq.insert(nodeRefs[index], newCost);
-        } else {
-            pq.decreaseKey(nodeRefs[index], newCost);
-        }
-    }
-
     protected void setupVisibilityGraph() {
         if (reuseGraph) {
             visibilityGraph = EdgeNLevelSparseVisibilityGraph.initialiseNew(graph, levelLimit);
         } else {
-            EdgeNLevelSparseVisibilityGraph.clearMemory();
-            visibilityGraph = EdgeNLevelSparseVisibilityGraph.initialiseNew(graph, levelLimit);
+            visibilityGraph = EdgeNLevelSparseVisibilityGraph.initialiseUncached(graph, levelLimit);
         }
         
         if (isRecording()) {
             visibilityGraph.setSaveSnapshotFunction(()->saveVisibilityGraphSnapshot(false));
             saveVisibilityGraphSnapshot(false);
-            visibilityGraph.addStartAndEnd(sx, sy, ex, ey);
+            overlay = visibilityGraph.addStartAndEnd(sx, sy, ex, ey);
             saveVisibilityGraphSnapshot(false);
             saveVisibilityGraphSnapshot(true);
         } else {
-            visibilityGraph.addStartAndEnd(sx, sy, ex, ey);
-        }
-
-        if (nodeRefs == null || visibilityGraph.maxSize() != nodeRefs.length) {
-            nodeRefs = (FibonacciHeapNode<Integer>[])new FibonacciHeapNode[visibilityGraph.maxSize()];
+            overlay = visibilityGraph.addStartAndEnd(sx, sy, ex, ey);
         }
     }
 
@@ -182,15 +168,13 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
         if (newWeight < distance(v)) {
             int p = parent(u);
             if (p != -1) {
-                int[] xPositions = visibilityGraph.xPositions;
-                int[] yPositions = visibilityGraph.yPositions;
                 p = getNextNodeIndex(p);
-                int x1 = xPositions[p];
-                int y1 = yPositions[p];
-                int x2 = xPositions[u];
-                int y2 = yPositions[u];
-                int x3 = xPositions[v];
-                int y3 = yPositions[v];
+                int x1 = overlay.getX(p);
+                int y1 = overlay.getY(p);
+                int x2 = overlay.getX(u);
+                int y2 = overlay.getY(u);
+                int x3 = overlay.getX(v);
+                int y3 = overlay.getY(v);
                 
                 if (!graph.isTaut(x1,y1,x2,y2,x3,y3)) return false;
             }
@@ -230,12 +214,12 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
             int p = parent(u);
             if (p != -1) {
                 p = getNextNodeIndex(p);
-                int x1 = visibilityGraph.xPositions[p];
-                int y1 = visibilityGraph.yPositions[p];
-                int x2 = visibilityGraph.xPositions[u];
-                int y2 = visibilityGraph.yPositions[u];
-                int x3 = visibilityGraph.xPositions[nextNode];
-                int y3 = visibilityGraph.yPositions[nextNode];
+                int x1 = overlay.getX(p);
+                int y1 = overlay.getY(p);
+                int x2 = overlay.getX(u);
+                int y2 = overlay.getY(u);
+                int x3 = overlay.getX(nextNode);
+                int y3 = overlay.getY(nextNode);
                 
                 if (!graph.isTaut(x1,y1,x2,y2,x3,y3)) return false;
             }
@@ -247,15 +231,15 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
     }
     
     private final void resolveSkipEdgeNextNode(int v) {
-        int parent = Memory.parent(v);
+        int parent = memory.parent(v);
         if (parent >= -1) return;
         parent -= Integer.MIN_VALUE;
-        int nSkipEdges = visibilityGraph.nSkipEdgess[v];
-        int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdgess[v];
+        int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+        int skipEnd = visibilityGraph.skipEdgeStarts[v+1];
 
-        for (int i=0;i<nSkipEdges;++i) {
+        for (int i=visibilityGraph.skipEdgeStarts[v];i<skipEnd;++i) {
             if (outgoingSkipEdges[i] == parent) {
-                Memory.setParent(v, visibilityGraph.outgoingSkipEdgeNextNodess[v][i] + Integer.MIN_VALUE);
+                memory.setParent(v, visibilityGraph.outgoingSkipEdgeNextNodes[i] + Integer.MIN_VALUE);
                 return;
             }
         }
@@ -267,46 +251,46 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
     }
     
     private void resolveFinalPath() {
-        int current = visibilityGraph.endNode();
+        int current = overlay.endNode();
         int previous = -1;
         int[] edgeLevels = visibilityGraph.edgeLevels;
         
         while (current != -1) {
             if (current < -1) {
                 current -= Integer.MIN_VALUE;
-                Memory.setParent(previous, current);
+                memory.setParent(previous, current);
                 
-                if (visibilityGraph.nSkipEdgess[current] != 0) {
+                if (visibilityGraph.isSkipVertex(current)) {
                     previous = current;
-                    current = Memory.parent(current);
+                    current = memory.parent(current);
                     continue;
                 }
                 
-                int nOutgoingEdges = visibilityGraph.nOutgoingEdgess[current];
-                int[] outgoingEdges = visibilityGraph.outgoingEdgess[current];
-                int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexess[current];
+                int[] outgoingEdges = visibilityGraph.outgoingEdges;
+                int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexes;
+                int end = visibilityGraph.outgoingEdgeStarts[current+1];
                 
                 boolean done = false;
-                for (int i=0;i<nOutgoingEdges;++i) {
+                for (int i=visibilityGraph.outgoingEdgeStarts[current];i<end;++i) {
                     if (edgeLevels[outgoingEdgeIndexes[i]] != EdgeNLevelSparseVisibilityGraph.LEVEL_W) continue;
                     if (outgoingEdges[i] == previous) continue;
                     
                     int next = outgoingEdges[i];
-                    Memory.setParent(current, next + Integer.MIN_VALUE);
+                    memory.setParent(current, next + Integer.MIN_VALUE);
                     done = true;
                     break;
                 }
                 if (!done) throw new UnsupportedOperationException("SS");
             }
             previous = current;
-            current = Memory.parent(current);
+            current = memory.parent(current);
         }
     }
     
 
     private int pathLength() {
         int length = 0;
-        int current = visibilityGraph.endNode();
+        int current = overlay.endNode();
         while (current != -1) {
             current = parent(current);
             length++;
@@ -318,12 +302,12 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
     public int[][] getPath() {
         int length = pathLength();
         int[][] path = new int[length][];
-        int current = visibilityGraph.endNode();
+        int current = overlay.endNode();
         
         int index = length-1;
         while (current != -1) {
-            int x = visibilityGraph.xPositions[current];
-            int y = visibilityGraph.yPositions[current];
+            int x = overlay.getX(current);
+            int y = overlay.getY(current);
             
             path[index] = new int[2];
             path[index][0] = x;
@@ -343,7 +327,7 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
 
     @Override
     protected int goalParentIndex() {
-        return visibilityGraph.endNode();
+        return overlay.endNode();
     }
 
     @Override
@@ -353,20 +337,20 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
         //startIndex = getNextNodeIndex(startIndex);
         if (startIndex < -1) {
             startIndex -= Integer.MIN_VALUE;
-            int nSkipEdges = visibilityGraph.nSkipEdgess[endIndex];
-            int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodess[endIndex];
-            for (int i=0;i<nSkipEdges;++i) {
+            int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodes;
+            int skipEnd = visibilityGraph.skipEdgeStarts[endIndex+1];
+            for (int i=visibilityGraph.skipEdgeStarts[endIndex];i<skipEnd;++i) {
                 if (outgoingSkipEdgeNextNodes[i] == startIndex) {
-                    startIndex = visibilityGraph.outgoingSkipEdgess[endIndex][i];
+                    startIndex = visibilityGraph.outgoingSkipEdges[i];
                     break;
                 }
             }
         }
         
-        edge[0] = visibilityGraph.xPositions[startIndex];
-        edge[1] = visibilityGraph.yPositions[startIndex];
-        edge[2] = visibilityGraph.xPositions[endIndex];
-        edge[3] = visibilityGraph.yPositions[endIndex];
+        edge[0] = overlay.getX(startIndex);
+        edge[1] = overlay.getY(startIndex);
+        edge[2] = overlay.getX(endIndex);
+        edge[3] = overlay.getY(endIndex);
         return edge;
     }
 
@@ -374,8 +358,8 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
     protected Integer[] snapshotVertex(int index) {
         if (selected(index)) {
             Integer[] edge = new Integer[2];
-            edge[0] = visibilityGraph.xPositions[index];
-            edge[1] = visibilityGraph.yPositions[index];
+            edge[0] = overlay.getX(index);
+            edge[1] = overlay.getY(index);
             return edge;
         }
         return null;
@@ -393,11 +377,11 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
             int x1 = xPositions[i];
             int y1 = yPositions[i];
 
-            int nOutgoingEdges = visibilityGraph.nOutgoingEdgess[i];
-            int[] outgoingEdges = visibilityGraph.outgoingEdgess[i];
-            int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexess[i];
+            int[] outgoingEdges = visibilityGraph.outgoingEdges;
+            int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexes;
+            int end = visibilityGraph.outgoingEdgeStarts[i+1];
             
-            for (int j=0;j<nOutgoingEdges;++j) {
+            for (int j=visibilityGraph.outgoingEdgeStarts[i];j<end;++j) {
                 int neighbour = outgoingEdges[j];
                 int edgeIndex = outgoingEdgeIndexes[j];
                 int x2 = xPositions[neighbour];
@@ -412,7 +396,7 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
                 Color color;
                 int colourIndex;
                 
-                if (showMarked && visibilityGraph.isMarked[edgeIndex]) {
+                if (showMarked && overlay != null && overlay.isMarked(edgeIndex)) {
                     colourIndex = 0;
                     color = vertexColours[colourIndex];
                 } else if (visibilityGraph.edgeLevels[edgeIndex] == visibilityGraph.LEVEL_W) {
@@ -437,7 +421,7 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
             vert[1] = y1;
 
             SnapshotItem snapshotItem = null;
-            if (visibilityGraph.nSkipEdgess[i] == 0) {
+            if (!visibilityGraph.isSkipVertex(i)) {
                 // Regular vertex.
                 snapshotItem = SnapshotItem.generate(vert, Color.BLUE);
             }
@@ -447,6 +431,33 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
             snapshotItemList.add(snapshotItem);
         }
         
+        if (overlay != null) {
+            // Temporary start / goal vertices and their level 0 edges, which live in the overlay.
+            for (int i=size;i<overlay.size();i++) {
+                Integer[] vert = new Integer[2];
+                vert[0] = overlay.getX(i);
+                vert[1] = overlay.getY(i);
+                snapshotItemList.add(SnapshotItem.generate(vert, Color.BLUE));
+            }
+            
+            int nTempEdges = overlay.nTempEdges();
+            for (int j=0;j<nTempEdges;++j) {
+                int source = overlay.tempEdgeSource(j);
+                int neighbour = overlay.tempEdgeDest(j);
+                
+                Integer[] path = new Integer[4];
+                path[0] = overlay.getX(source);
+                path[1] = overlay.getY(source);
+                path[2] = xPositions[neighbour];
+                path[3] = yPositions[neighbour];
+                
+                if (!sortedSnapshots.containsKey(0)) {
+                    sortedSnapshots.put(0, new ArrayList<>());
+                }
+                sortedSnapshots.get(0).add(SnapshotItem.generate(path, vertexColours[0]));
+            }
+        }
+        
         {
             ArrayList<SnapshotItem> transfer = sortedSnapshots.remove(0);
             sortedSnapshots.put(vertexColours.length+1, transfer);
@@ -462,10 +473,10 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
             int x1 = xPositions[i];
             int y1 = yPositions[i];
 
-            int nSkipEdges = visibilityGraph.nSkipEdgess[i];
-            int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdgess[i];
+            int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+            int skipEnd = visibilityGraph.skipEdgeStarts[i+1];
             
-            for (int j=0;j<nSkipEdges;++j) {
+            for (int j=visibilityGraph.skipEdgeStarts[i];j<skipEnd;++j) {
                 int neighbour = outgoingSkipEdges[j];
                 int x2 = xPositions[neighbour];
                 int y2 = yPositions[neighbour];
@@ -563,31 +574,31 @@ public class EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap extends PathFinding
     };
 
     private final int parent(int index) {
-        return Memory.parent(index);
+        return memory.parent(index);
     }
     
     private final void setParent(int index, int value) {
-        Memory.setParent(index, value);
+        memory.setParent(index, value);
     }
     
     private final float distance(int index) {
-        return Memory.distance(index);
+        return memory.distance(index);
     }
     
     private final void setDistance(int index, float value) {
-        Memory.setDistance(index, value);
+        memory.setDistance(index, value);
     }
     
     private final boolean visited(int index) {
-        return Memory.visited(index);
+        return memory.visited(index);
     }
     
     private final void setVisited(int index, boolean value) {
-        Memory.setVisited(index, value);
+        memory.setVisited(index, value);
     }
     
     public static void clearMemory() {
-        nodeRefs = null;
+        SearchContext.clearCurrentThread();
         System.gc();
     }
 }
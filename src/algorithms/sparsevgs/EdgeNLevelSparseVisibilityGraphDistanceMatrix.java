@@ -0,0 +1,133 @@
+package algorithms.sparsevgs;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import grid.GridGraph;
+
+/**
+ * Computes matrices of any-angle distances from N sources to M targets on an EdgeNLevelSparseVisibilityGraph.
+ *
+ * The targets are prepared once (EdgeNLevelSparseVisibilityGraph.prepareTargets) and shared by every row,
+ * so their line of sight scans and edge marking are not repeated per source. Each row is one
+ * EdgeNLevelSparseVisibilityGraphOneToMany search. Rows are computed in parallel on a ForkJoinPool,
+ * each worker with its own search engine. Sources with the same coordinates share one search.
+ *
+ * Rows are passed to a RowConsumer as soon as they are complete, on the worker thread that computed them.
+ */
+public final class EdgeNLevelSparseVisibilityGraphDistanceMatrix {
+
+    public interface RowConsumer {
+        /**
+         * Called once per source, from any worker thread. Must be thread-safe.
+         * @param row the distance from the source to each target. Float.POSITIVE_INFINITY if unreachable or beyond the cost bound.
+         */
+        void accept(int source, float[] row);
+    }
+
+    private final GridGraph graph;
+    private final int levelLimit;
+    private final ThreadLocal<EdgeNLevelSparseVisibilityGraphOneToMany> engines;
+
+    public EdgeNLevelSparseVisibilityGraphDistanceMatrix(GridGraph graph) {
+        this(graph, Integer.MAX_VALUE);
+    }
+
+    public EdgeNLevelSparseVisibilityGraphDistanceMatrix(GridGraph graph, int levelLimit) {
+        this.graph = graph;
+        this.levelLimit = levelLimit;
+        this.engines = ThreadLocal.withInitial(() -> new EdgeNLevelSparseVisibilityGraphOneToMany(graph, levelLimit));
+    }
+
+    /**
+     * @return matrix[i][k] is the distance from source i to target k. Uses the common pool.
+     */
+    public float[][] compute(int[] sourceXs, int[] sourceYs, int[] targetXs, int[] targetYs) {
+        float[][] matrix = new float[sourceXs.length][];
+        compute(ForkJoinPool.commonPool(), sourceXs, sourceYs, targetXs, targetYs, Float.POSITIVE_INFINITY,
+                (source, row) -> matrix[source] = row);
+        return matrix;
+    }
+
+    /**
+     * Computes the distance from every source to every target, passing each row to consumer as it completes.
+     * Returns when all rows have been passed on.
+     * @param costBound distances above this are not searched for, and are reported as Float.POSITIVE_INFINITY.
+     */
+    public void compute(ForkJoinPool pool, int[] sourceXs, int[] sourceYs, int[] targetXs, int[] targetYs,
+            float costBound, RowConsumer consumer) {
+        int nSources = sourceXs.length;
+        if (nSources == 0) return;
+
+        // Built on this thread, before the workers need it.
+        EdgeNLevelSparseVisibilityGraph.initialiseNew(graph, levelLimit);
+        EdgeNLevelSparseVisibilityGraphTargetSet targets = engines.get().prepareTargets(targetXs, targetYs);
+
+        // Sources with the same coordinates as an earlier source copy its row instead of searching again.
+        int sizeXPlusOne = graph.sizeX+1;
+        int[] firstSource = new int[nSources];
+        HashMap<Integer, Integer> firstSourceAt = new HashMap<>();
+        for (int i=0;i<nSources;++i) {
+            Integer previous = firstSourceAt.putIfAbsent(sourceYs[i]*sizeXPlusOne + sourceXs[i], i);
+            firstSource[i] = previous == null ? i : previous;
+        }
+
+        pool.invoke(new SourceRangeTask(this, sourceXs, sourceYs, firstSource, targets, costBound, consumer,
+                0, nSources, Math.max(1, nSources / (pool.getParallelism()*8))));
+    }
+
+    private void computeRow(int[] sourceXs, int[] sourceYs, int[] firstSource, EdgeNLevelSparseVisibilityGraphTargetSet targets,
+            float costBound, RowConsumer consumer, int source) {
+        if (firstSource[source] != source) return;
+        float[] row = engines.get().computeDistances(sourceXs[source], sourceYs[source], targets, costBound);
+        consumer.accept(source, row);
+        for (int i=source+1;i<firstSource.length;++i) {
+            if (firstSource[i] == source) consumer.accept(i, row.clone());
+        }
+    }
+
+    /**
+     * Splits [from, to) in halves until at most leafSize sources remain. Idle workers steal the other halves.
+     */
+    private static final class SourceRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final EdgeNLevelSparseVisibilityGraphDistanceMatrix matrix;
+        private final int[] sourceXs;
+        private final int[] sourceYs;
+        private final int[] firstSource;
+        private final EdgeNLevelSparseVisibilityGraphTargetSet targets;
+        private final float costBound;
+        private final RowConsumer consumer;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        SourceRangeTask(EdgeNLevelSparseVisibilityGraphDistanceMatrix matrix, int[] sourceXs, int[] sourceYs, int[] firstSource,
+                EdgeNLevelSparseVisibilityGraphTargetSet targets, float costBound, RowConsumer consumer, int from, int to, int leafSize) {
+            this.matrix = matrix;
+            this.sourceXs = sourceXs;
+            this.sourceYs = sourceYs;
+            this.firstSource = firstSource;
+            this.targets = targets;
+            this.costBound = costBound;
+            this.consumer = consumer;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                for (int i=from;i<to;++i) {
+                    matrix.computeRow(sourceXs, sourceYs, firstSource, targets, costBound, consumer, i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SourceRangeTask(matrix, sourceXs, sourceYs, firstSource, targets, costBound, consumer, from, mid, leafSize),
+                    new SourceRangeTask(matrix, sourceXs, sourceYs, firstSource, targets, costBound, consumer, mid, to, leafSize));
+        }
+    }
+}
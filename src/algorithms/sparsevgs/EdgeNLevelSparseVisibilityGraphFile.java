@@ -0,0 +1,153 @@
+package algorithms.sparsevgs;
+
+import grid.GridGraph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format for a preprocessed EdgeNLevelSparseVisibilityGraph.
+ * The file is a sequence of big-endian 32-bit words (floats are stored as their int bits),
+ * so loading is a single memory map followed by bulk reads.
+ *
+ * Layout:
+ *  header:  MAGIC, VERSION, sizeX, sizeY, checksum (2 words), levelLimit, nNodes, maxSize, nEdges
+ *  nodes:   xPositions, yPositions  (maxSize each)
+ *  edges:   outgoingEdgeStarts  (maxSize+1), outgoingEdges, outgoingEdgeIndexes  (outgoingEdgeStarts[maxSize] each)
+ *  skips:   skipEdgeStarts  (maxSize+1), outgoingSkipEdges, outgoingSkipEdgeNextNodes,
+ *           outgoingSkipEdgeWeights  (skipEdgeStarts[maxSize] each)
+ *  levels:  edgeLevels, edgeWeights  (nEdges each)
+ *  footer:  MAGIC
+ */
+public final class EdgeNLevelSparseVisibilityGraphFile {
+    private static final int MAGIC = 0x454E4C53; // "ENLS"
+    private static final int VERSION = 2;
+
+    /**
+     * @return the file name used for the given grid and level limit inside a cache directory.
+     */
+    public static File cacheFile(File directory, GridGraph graph, int levelLimit) {
+        String name = "enlsvg_" + graph.sizeX + "x" + graph.sizeY + "_" + Long.toHexString(graph.checksum())
+                + (levelLimit == Integer.MAX_VALUE ? "" : "_L" + levelLimit) + ".bin";
+        return new File(directory, name);
+    }
+
+    public static void save(EdgeNLevelSparseVisibilityGraph vGraph, File file) throws IOException {
+        GridGraph graph = vGraph.graph;
+        int maxSize = vGraph.maxSize();
+        long checksum = graph.checksum();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1<<16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(graph.sizeX);
+            out.writeInt(graph.sizeY);
+            out.writeInt((int)(checksum >>> 32));
+            out.writeInt((int)checksum);
+            out.writeInt(vGraph.levelLimit);
+            out.writeInt(vGraph.size());
+            out.writeInt(maxSize);
+            out.writeInt(vGraph.nEdges);
+
+            writeInts(out, vGraph.xPositions, maxSize);
+            writeInts(out, vGraph.yPositions, maxSize);
+
+            int nOutgoingEdges = vGraph.outgoingEdgeStarts[maxSize];
+            writeInts(out, vGraph.outgoingEdgeStarts, maxSize+1);
+            writeInts(out, vGraph.outgoingEdges, nOutgoingEdges);
+            writeInts(out, vGraph.outgoingEdgeIndexes, nOutgoingEdges);
+
+            int nSkipEdges = vGraph.skipEdgeStarts[maxSize];
+            writeInts(out, vGraph.skipEdgeStarts, maxSize+1);
+            writeInts(out, vGraph.outgoingSkipEdges, nSkipEdges);
+            writeInts(out, vGraph.outgoingSkipEdgeNextNodes, nSkipEdges);
+            writeFloats(out, vGraph.outgoingSkipEdgeWeights, nSkipEdges);
+
+            writeInts(out, vGraph.edgeLevels, vGraph.nEdges);
+            writeFloats(out, vGraph.edgeWeights, vGraph.nEdges);
+            out.writeInt(MAGIC);
+        }
+        // Replace atomically, so a concurrent reader never sees a half-written file.
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the saved graph, or null if the file does not exist, is corrupt,
+     *         or was saved from a different grid, level limit or format version.
+     */
+    public static EdgeNLevelSparseVisibilityGraph load(GridGraph graph, int levelLimit, File file) {
+        if (!file.isFile()) return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer in = buffer.asIntBuffer();
+
+            if (in.get() != MAGIC || in.get() != VERSION) return null;
+            if (in.get() != graph.sizeX || in.get() != graph.sizeY) return null;
+            long checksum = ((long)in.get() << 32) | (in.get() & 0xFFFFFFFFL);
+            if (checksum != graph.checksum()) return null;
+            if (in.get() != levelLimit) return null;
+
+            int nNodes = in.get();
+            int maxSize = in.get();
+            int nEdges = in.get();
+
+            EdgeNLevelSparseVisibilityGraph vGraph = new EdgeNLevelSparseVisibilityGraph(graph);
+            vGraph.levelLimit = levelLimit;
+            vGraph.nEdges = nEdges;
+
+            vGraph.xPositions = readInts(in, maxSize);
+            vGraph.yPositions = readInts(in, maxSize);
+
+            vGraph.outgoingEdgeStarts = readInts(in, maxSize+1);
+            int nOutgoingEdges = vGraph.outgoingEdgeStarts[maxSize];
+            vGraph.outgoingEdges = readInts(in, nOutgoingEdges);
+            vGraph.outgoingEdgeIndexes = readInts(in, nOutgoingEdges);
+
+            vGraph.skipEdgeStarts = readInts(in, maxSize+1);
+            int nSkipEdges = vGraph.skipEdgeStarts[maxSize];
+            vGraph.outgoingSkipEdges = readInts(in, nSkipEdges);
+            vGraph.outgoingSkipEdgeNextNodes = readInts(in, nSkipEdges);
+            vGraph.outgoingSkipEdgeWeights = readFloats(in, nSkipEdges);
+
+            vGraph.edgeLevels = readInts(in, nEdges);
+            vGraph.edgeWeights = readFloats(in, nEdges);
+            if (in.get() != MAGIC) return null;
+
+            vGraph.initialiseLoaded(nNodes, maxSize);
+            return vGraph;
+        } catch (IOException | BufferUnderflowException | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] array, int length) throws IOException {
+        for (int i=0;i<length;++i) out.writeInt(array[i]);
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] array, int length) throws IOException {
+        for (int i=0;i<length;++i) out.writeFloat(array[i]);
+    }
+
+    private static int[] readInts(IntBuffer in, int length) {
+        int[] array = new int[length];
+        in.get(array);
+        return array;
+    }
+
+    private static float[] readFloats(IntBuffer in, int length) {
+        float[] array = new float[length];
+        for (int i=0;i<length;++i) array[i] = Float.intBitsToFloat(in.get());
+        return array;
+    }
+}
@@ -0,0 +1,331 @@
+package algorithms.sparsevgs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import algorithms.datatypes.Memory;
+import algorithms.datatypes.SearchContext;
+import algorithms.priorityqueue.ReusableIndirectHeap;
+import grid.GridGraph;
+
+/**
+ * Distances from one start to many targets on an EdgeNLevelSparseVisibilityGraph, with a single search.
+ *
+ * The start is inserted once. Every target k is a leaf of the search with index targetOffset + k,
+ * reached through its goal edges (see EdgeNLevelSparseVisibilityGraphOverlay.prepareTargets).
+ *
+ * The search is an A* towards one target at a time, nearest first. When the current target is settled
+ * (or found to be further than the cost bound), the open nodes are rekeyed for the next unsettled target
+ * and the search continues. The heuristic is consistent, so expanded nodes have exact distances
+ * whichever target they were expanded for, and are never expanded again.
+ * Targets reached on the way to another target are settled as they are popped.
+ *
+ * Targets are never expanded. This is fine as a target that is not a node cannot be a turning point of a taut path,
+ * and a target that is a node is also searched as that node.
+ *
+ * Each instance has its own SearchContext, sized for the graph plus a target capacity that only grows,
+ * so repeated queries do not reallocate it. An instance must only be used by one thread at a time.
+ * The overlay is the calling thread's, so getPath must be called before the next ENLSVG query on the same thread.
+ */
+public final class EdgeNLevelSparseVisibilityGraphOneToMany {
+    private final GridGraph graph;
+    private final int levelLimit;
+    private final SearchContext searchContext = new SearchContext();
+    private int targetCapacity = 16;
+
+    private EdgeNLevelSparseVisibilityGraph visibilityGraph;
+    private EdgeNLevelSparseVisibilityGraphOverlay overlay;
+    private Memory memory;
+    private ReusableIndirectHeap pq;
+
+    private int[] targetXs;
+    private int[] targetYs;
+    private int targetOffset;
+    private int currentTarget;
+    private int[] generated = new int[16];
+    private int nGenerated;
+    private int nExpanded;
+
+    public EdgeNLevelSparseVisibilityGraphOneToMany(GridGraph graph) {
+        this(graph, Integer.MAX_VALUE);
+    }
+
+    public EdgeNLevelSparseVisibilityGraphOneToMany(GridGraph graph, int levelLimit) {
+        this.graph = graph;
+        this.levelLimit = levelLimit;
+    }
+
+    public float[] computeDistances(int sx, int sy, int[] targetXs, int[] targetYs) {
+        return computeDistances(sx, sy, targetXs, targetYs, Float.POSITIVE_INFINITY);
+    }
+
+    public float[] computeDistances(int sx, int sy, int[] targetXs, int[] targetYs, float costBound) {
+        return computeDistances(sx, sy, prepareTargets(targetXs, targetYs), costBound);
+    }
+
+    /**
+     * Prepares targets to be searched for from several starts, so their insertion is only done once.
+     */
+    public EdgeNLevelSparseVisibilityGraphTargetSet prepareTargets(int[] targetXs, int[] targetYs) {
+        return EdgeNLevelSparseVisibilityGraph.initialiseNew(graph, levelLimit).prepareTargets(targetXs, targetYs);
+    }
+
+    /**
+     * @return the shortest distance from (sx, sy) to each target.
+     *         Float.POSITIVE_INFINITY for targets that are unreachable or further than costBound.
+     */
+    public float[] computeDistances(int sx, int sy, EdgeNLevelSparseVisibilityGraphTargetSet targets, float costBound) {
+        int[] targetXs = targets.targetXs;
+        int[] targetYs = targets.targetYs;
+        this.targetXs = targetXs;
+        this.targetYs = targetYs;
+        int nTargets = targetXs.length;
+
+        visibilityGraph = EdgeNLevelSparseVisibilityGraph.initialiseNew(graph, levelLimit);
+        overlay = visibilityGraph.addStartAndTargets(sx, sy, targets);
+
+        targetOffset = visibilityGraph.maxSize();
+        while (targetCapacity < nTargets) targetCapacity *= 2;
+        int memorySize = targetOffset + targetCapacity;
+        memory = searchContext.memory;
+        memory.initialise(memorySize, Float.POSITIVE_INFINITY, -1, false);
+        pq = searchContext.heap;
+        pq.reset(memorySize);
+        nGenerated = 0;
+        nExpanded = 0;
+
+        // Targets are searched for nearest first.
+        Integer[] order = new Integer[nTargets];
+        for (int k=0;k<nTargets;++k) order[k] = k;
+        Arrays.sort(order, (a, b) -> Float.compare(graph.distance(sx, sy, targetXs[a], targetYs[a]), graph.distance(sx, sy, targetXs[b], targetYs[b])));
+        int nextInOrder = 0;
+        if (nTargets > 0) {
+            currentTarget = order[nextInOrder++];
+        }
+
+        int start = overlay.startNode();
+        addToOpen(start);
+        memory.setDistance(start, 0f);
+        pq.decreaseKey(start, heuristic(sx, sy));
+
+        // The overlay has no edges from the start to the targets it can see directly.
+        for (int k=0;k<nTargets;++k) {
+            if (graph.lineOfSight(sx, sy, targetXs[k], targetYs[k])) {
+                relax(start, targetOffset + k, graph.distance(sx, sy, targetXs[k], targetYs[k]));
+                pq.decreaseKey(targetOffset + k, memory.distance(targetOffset + k) + heuristic(targetXs[k], targetYs[k]));
+            }
+        }
+
+        while (nTargets > 0 && !pq.isEmpty()) {
+            if (pq.getMinValue() > costBound || memory.visited(targetOffset + currentTarget)) {
+                // The current target is settled, or further than costBound. Move on to the next unsettled target.
+                while (nextInOrder < nTargets && memory.visited(targetOffset + order[nextInOrder])) ++nextInOrder;
+                if (nextInOrder == nTargets) break;
+                currentTarget = order[nextInOrder++];
+                rekeyOpenNodes();
+                continue;
+            }
+
+            int current = pq.popMinIndex();
+            memory.setVisited(current, true);
+            if (current >= targetOffset) continue;
+            ++nExpanded;
+            resolveSkipEdgeNextNode(current);
+
+            // Scan through marked edges to neighbours
+            for (int e=overlay.firstMarkedEdge(current);e!=-1;e=overlay.nextMarkedEdge(e)) {
+                int dest = overlay.markedEdgeDest(e);
+                if (!memory.visited(dest) && relax(current, dest, overlay.markedEdgeWeight(e))) {
+                    pq.decreaseKey(dest, memory.distance(dest) + heuristic(overlay.getX(dest), overlay.getY(dest)));
+                }
+            }
+
+            // Scan through skip edges to neighbours
+            int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+            float[] outgoingSkipEdgeWeights = visibilityGraph.outgoingSkipEdgeWeights;
+            int[] outgoingSkipEdgeNextNodes = visibilityGraph.outgoingSkipEdgeNextNodes;
+            int skipEnd = visibilityGraph.skipEdgeStarts[current+1];
+            for (int i=visibilityGraph.skipEdgeStarts[current];i<skipEnd;++i) {
+                int dest = outgoingSkipEdges[i];
+                if (!memory.visited(dest) && relaxViaSkipEdge(current, dest, outgoingSkipEdgeNextNodes[i], outgoingSkipEdgeWeights[i])) {
+                    pq.decreaseKey(dest, memory.distance(dest) + heuristic(overlay.getX(dest), overlay.getY(dest)));
+                }
+            }
+
+            // Scan through goal edges to targets
+            for (int e=overlay.firstGoalEdge(current);e!=-1;e=overlay.nextGoalEdge(e)) {
+                int target = overlay.goalEdgeTarget(e);
+                int dest = targetOffset + target;
+                if (!memory.visited(dest) && relax(current, dest, overlay.goalEdgeWeight(e))) {
+                    pq.decreaseKey(dest, memory.distance(dest) + heuristic(targetXs[target], targetYs[target]));
+                }
+            }
+        }
+
+        float[] distances = new float[nTargets];
+        for (int k=0;k<nTargets;++k) {
+            float distance = memory.distance(targetOffset + k);
+            distances[k] = memory.visited(targetOffset + k) && distance <= costBound ? distance : Float.POSITIVE_INFINITY;
+        }
+        return distances;
+    }
+
+    /**
+     * Records a node the first time it is reached, so it can be rekeyed when the current target changes.
+     */
+    private final void addToOpen(int index) {
+        if (nGenerated >= generated.length) {
+            generated = Arrays.copyOf(generated, generated.length*2);
+        }
+        generated[nGenerated++] = index;
+    }
+
+    /**
+     * Rebuilds the heap from the unexpanded nodes, keyed with the heuristic of the new current target.
+     * The expanded nodes keep their distances, which are exact whichever target was being searched for.
+     */
+    private final void rekeyOpenNodes() {
+        pq.reset(memory.size());
+        int nOpen = 0;
+        for (int i=0;i<nGenerated;++i) {
+            int index = generated[i];
+            if (memory.visited(index)) continue;
+            generated[nOpen++] = index;
+            pq.decreaseKey(index, memory.distance(index) + heuristic(getX(index), getY(index)));
+        }
+        nGenerated = nOpen;
+    }
+
+    /**
+     * @return the number of graph nodes expanded by the last search.
+     */
+    public int nExpanded() {
+        return nExpanded;
+    }
+
+    /**
+     * @return the path found by the last search from the start to the given target, or null if it was not reached.
+     */
+    public int[][] getPath(int target) {
+        int index = targetOffset + target;
+        if (!memory.visited(index)) return null;
+
+        ArrayList<int[]> reversed = new ArrayList<>();
+        int targetX = targetXs[target];
+        int targetY = targetYs[target];
+        int current = memory.parent(index);
+        if (overlay.getX(current) != targetX || overlay.getY(current) != targetY) {
+            reversed.add(new int[] {targetX, targetY});
+        }
+
+        int[] outgoingEdges = visibilityGraph.outgoingEdges;
+        int[] outgoingEdgeIndexes = visibilityGraph.outgoingEdgeIndexes;
+        int[] edgeLevels = visibilityGraph.edgeLevels;
+        while (current != -1) {
+            reversed.add(new int[] {overlay.getX(current), overlay.getY(current)});
+            int parent = memory.parent(current);
+            if (parent >= -1) {
+                current = parent;
+                continue;
+            }
+
+            // Reached via a skip edge. Follow the level W edges back to the skip vertex the skip edge came from.
+            int previous = current;
+            int next = parent - Integer.MIN_VALUE;
+            while (!visibilityGraph.isSkipVertex(next)) {
+                reversed.add(new int[] {overlay.getX(next), overlay.getY(next)});
+                int end = visibilityGraph.outgoingEdgeStarts[next+1];
+                int following = -1;
+                for (int i=visibilityGraph.outgoingEdgeStarts[next];i<end;++i) {
+                    if (edgeLevels[outgoingEdgeIndexes[i]] != EdgeNLevelSparseVisibilityGraph.LEVEL_W) continue;
+                    if (outgoingEdges[i] == previous) continue;
+                    following = outgoingEdges[i];
+                    break;
+                }
+                if (following == -1) throw new UnsupportedOperationException("SS");
+                previous = next;
+                next = following;
+            }
+            current = next;
+        }
+
+        int[][] path = new int[reversed.size()][];
+        for (int i=0;i<path.length;++i) {
+            path[i] = reversed.get(path.length-1-i);
+        }
+        return path;
+    }
+
+    /**
+     * Distance from (x, y) to the current target.
+     */
+    private final float heuristic(int x, int y) {
+        return graph.distance(x, y, targetXs[currentTarget], targetYs[currentTarget]);
+    }
+
+    private final int getX(int index) {
+        return index >= targetOffset ? targetXs[index - targetOffset] : overlay.getX(index);
+    }
+
+    private final int getY(int index) {
+        return index >= targetOffset ? targetYs[index - targetOffset] : overlay.getY(index);
+    }
+
+    private final boolean relax(int u, int v, float weightUV) {
+        // return true iff relaxation is done.
+        float newWeight = memory.distance(u) + weightUV;
+        if (newWeight < memory.distance(v)) {
+            int p = memory.parent(u);
+            if (p != -1) {
+                p = getNextNodeIndex(p);
+                if (!graph.isTaut(getX(p), getY(p), getX(u), getY(u), getX(v), getY(v))) return false;
+            }
+            if (memory.distance(v) == Float.POSITIVE_INFINITY) addToOpen(v);
+            memory.setDistance(v, newWeight);
+            memory.setParent(v, u);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skip edge parents are stored as in EdgeNLevelSparseVisibilityGraphAlgorithm:
+     * u + MIN_VALUE when v is relaxed from u, replaced by (next node) + MIN_VALUE when v is expanded.
+     */
+    private final boolean relaxViaSkipEdge(int u, int v, int nextNode, float weightUV) {
+        // return true iff relaxation is done.
+        float newWeight = memory.distance(u) + weightUV;
+        if (newWeight < memory.distance(v)) {
+            int p = memory.parent(u);
+            if (p != -1) {
+                p = getNextNodeIndex(p);
+                if (!graph.isTaut(getX(p), getY(p), getX(u), getY(u), getX(nextNode), getY(nextNode))) return false;
+            }
+            if (memory.distance(v) == Float.POSITIVE_INFINITY) addToOpen(v);
+            memory.setDistance(v, newWeight);
+            memory.setParent(v, u + Integer.MIN_VALUE);
+            return true;
+        }
+        return false;
+    }
+
+    private final void resolveSkipEdgeNextNode(int v) {
+        int parent = memory.parent(v);
+        if (parent >= -1) return;
+        parent -= Integer.MIN_VALUE;
+        int[] outgoingSkipEdges = visibilityGraph.outgoingSkipEdges;
+        int skipEnd = visibilityGraph.skipEdgeStarts[v+1];
+
+        for (int i=visibilityGraph.skipEdgeStarts[v];i<skipEnd;++i) {
+            if (outgoingSkipEdges[i] == parent) {
+                memory.setParent(v, visibilityGraph.outgoingSkipEdgeNextNodes[i] + Integer.MIN_VALUE);
+                return;
+            }
+        }
+        throw new UnsupportedOperationException("SHOULD NOT REACH HERE!");
+    }
+
+    private final int getNextNodeIndex(int p) {
+        return (p >= -1) ? p : (p - Integer.MIN_VALUE);
+    }
+}
@@ -0,0 +1,601 @@
+package algorithms.sparsevgs;
+
+import grid.GridGraph;
+
+import java.util.Arrays;
+
+/**
+ * The per-query part of an EdgeNLevelSparseVisibilityGraph.
+ * Holds the start and goal nodes, their temporary edges, the marked edges and the hasEdgeToGoal flags.
+ * For one-to-many queries, it holds the start and the goal edges of each target instead (see prepareTargets).
+ * The shared graph is only read, so any number of overlays can search the same graph at once.
+ * An overlay itself must only be used by one thread at a time.
+ *
+ * Per-query flags and per-node lists are kept in SparseIndexMaps rather than in arrays over all nodes or edges,
+ * so an overlay only holds memory in proportion to what its queries touch. They are ticketed, so a new query
+ * does not need to undo the previous one.
+ */
+public final class EdgeNLevelSparseVisibilityGraphOverlay {
+
+    private final EdgeNLevelSparseVisibilityGraph vGraph;
+    private final GridGraph graph;
+    private final LineOfSightScannerDouble losScanner;
+    private final int sizeXPlusOne;
+    private final int originalSize;
+    private final int originalNEdges;
+    final int version; // Version of vGraph this overlay was built for.
+    long reportedBytes; // memoryUsage() as last added to vGraph's count of overlay memory.
+    private int queryNumber; // Incremented by each query set up on this overlay.
+
+    private int nNodes;
+    private int startIndex = -1;
+    private int endIndex = -1;
+
+    // Temporary nodes: Indexed by nodeIndex - originalSize.
+    private final int[] tempXPositions = new int[2];
+    private final int[] tempYPositions = new int[2];
+
+    // Temporary edges: Indexed by edgeIndex - originalNEdges.
+    private int nTempEdges;
+    private int[] tempEdgeSources;
+    private int[] tempEdgeDests;
+    private float[] tempEdgeWeights;
+
+    private final SparseIndexMap goalNeighbours;      // Node indexes with an edge to the goal.
+    private final SparseIndexMap startNeighbours;     // Node indexes with an edge to the start. Used by backward searches.
+    private final SparseIndexMap markedEdgeSet;       // Edge indexes.
+    private final SparseIndexMap directedMarkedEdgeSet; // edgeIndex*2 + (source > destination ? 1 : 0).
+    private final SparseIndexMap visited;             // Node indexes.
+
+    // Marked edges are kept as one linked list per node, in insertion order.
+    private final SparseIndexMap markedEdgeListNodes; // Node index -> list index.
+    private int[] markedEdgeHeads;          // Indexed by list index.
+    private int[] markedEdgeTails;          // Indexed by list index.
+    private int nMarkedEdges;
+    private int[] markedEdgeNexts;
+    private int[] markedEdgeSources;
+    private int[] markedEdgeDests;
+    private float[] markedEdgeWeights;
+
+    // Goal edges of one-to-many queries, kept as one linked list per node: node -> target.
+    private final SparseIndexMap goalEdgeListNodes;   // Node index -> list index.
+    private int[] goalEdgeHeads;            // Indexed by list index.
+    private int nGoalEdges;
+    private int[] goalEdgeNexts;
+    private int[] goalEdgeNodes;
+    private int[] goalEdgeTargets;
+    private float[] goalEdgeWeights;
+
+    // Triples of (parent, current, level of edge from parent to current)
+    private int[] queue;
+    private int queueSize;
+
+    public EdgeNLevelSparseVisibilityGraphOverlay(EdgeNLevelSparseVisibilityGraph vGraph) {
+        this.vGraph = vGraph;
+        this.graph = vGraph.graph;
+        this.losScanner = new LineOfSightScannerDouble(graph, vGraph.losExtents);
+        this.sizeXPlusOne = graph.sizeX+1;
+        this.originalSize = vGraph.size();
+        this.originalNEdges = vGraph.nEdges;
+        this.version = vGraph.version;
+
+        tempEdgeSources = new int[11];
+        tempEdgeDests = new int[11];
+        tempEdgeWeights = new float[11];
+
+        goalNeighbours = new SparseIndexMap(16);
+        startNeighbours = new SparseIndexMap(16);
+        markedEdgeSet = new SparseIndexMap(64);
+        directedMarkedEdgeSet = new SparseIndexMap(64);
+        visited = new SparseIndexMap(16);
+
+        markedEdgeListNodes = new SparseIndexMap(64);
+        markedEdgeHeads = new int[11];
+        markedEdgeTails = new int[11];
+        markedEdgeNexts = new int[11];
+        markedEdgeSources = new int[11];
+        markedEdgeDests = new int[11];
+        markedEdgeWeights = new float[11];
+
+        goalEdgeListNodes = new SparseIndexMap(16);
+        goalEdgeHeads = new int[11];
+        goalEdgeNexts = new int[11];
+        goalEdgeNodes = new int[11];
+        goalEdgeTargets = new int[11];
+        goalEdgeWeights = new float[11];
+
+        queue = new int[12];
+    }
+
+    // Assumption: No edge between start and end.
+    public final void addStartAndEnd(int sx, int sy, int ex, int ey) {
+        clearQuery();
+        nNodes = originalSize;
+        nTempEdges = 0;
+        nMarkedEdges = 0;
+
+        // START:
+        startIndex = addNode(sx, sy);
+        addTempEdgesToVisibleNeighbours(startIndex, sx, sy);
+
+        // END:
+        endIndex = addNode(ex, ey);
+        addTempEdgesToVisibleNeighbours(endIndex, ex, ey);
+
+        markHasEdgeToGoal();
+        markHasEdgeToStart();
+
+        markEdgesFrom(startIndex);
+        markEdgesFrom(endIndex);
+        reportMemoryUsage();
+    }
+
+    /**
+     * Computes the goal edges of every target, and the edges marked from every target, for one-to-many queries.
+     * Each target k is reached through its goal edges, which go from every node that can see target k to k.
+     * The result only depends on the graph and the targets, so it can be shared by queries from any number of starts,
+     * on any thread. See addStartAndTargets.
+     */
+    public final EdgeNLevelSparseVisibilityGraphTargetSet prepareTargets(int[] targetXs, int[] targetYs) {
+        clearQuery();
+        nNodes = originalSize;
+        nTempEdges = 0;
+        nMarkedEdges = 0;
+        nGoalEdges = 0;
+        startIndex = -1;
+        endIndex = -1;
+
+        // A target that is not a node only needs a slot for its position while its edges are marked.
+        // Each target marks with its own directed tickets, so it is not stopped by edges already marked from another target
+        // with a different parent, which would lose taut continuations.
+        int targetSlot = nNodes;
+        int[] outgoingEdges = vGraph.outgoingEdges;
+        for (int k=0;k<targetXs.length;++k) {
+            int x = targetXs[k];
+            int y = targetYs[k];
+            int index = vGraph.nodeIndex[y*sizeXPlusOne + x];
+            directedMarkedEdgeSet.clear();
+            visited.clear();
+            queueSize = 0;
+            if (index != -1) {
+                // The target may also lie on the path to another target, so its edges are marked in both directions.
+                int[] outgoingEdgeIndexes = vGraph.outgoingEdgeIndexes;
+                int end = vGraph.outgoingEdgeStarts[index+1];
+                for (int i=vGraph.outgoingEdgeStarts[index];i<end;++i) {
+                    int neighbour = outgoingEdges[i];
+                    int edgeIndex = outgoingEdgeIndexes[i];
+                    float weight = vGraph.edgeWeights[edgeIndex];
+                    visited.add(neighbour);
+                    addGoalEdge(neighbour, k, weight);
+
+                    directedMarkedEdgeSet.add(edgeIndex*2 + (index > neighbour ? 1 : 0));
+                    if (markedEdgeSet.add(edgeIndex)) {
+                        addToMarkedEdges(index, neighbour, weight);
+                        addToMarkedEdges(neighbour, index, weight);
+                    }
+                    addToQueue(index, neighbour, vGraph.edgeLevels[edgeIndex]);
+                }
+            } else {
+                index = targetSlot;
+                tempXPositions[targetSlot - originalSize] = x;
+                tempYPositions[targetSlot - originalSize] = y;
+            }
+
+            // As in addTempEdgesToVisibleNeighbours, the target also sees taut successors that are not its neighbours in the graph.
+            losScanner.computeAllVisibleTautSuccessors(x, y);
+            int nSuccessors = losScanner.nSuccessors;
+            for (int i=0;i<nSuccessors;++i) {
+                int toX = losScanner.successorsX[i];
+                int toY = losScanner.successorsY[i];
+                int neighbour = vGraph.nodeIndex[toY*sizeXPlusOne + toX];
+                if (visited.contains(neighbour)) continue;
+                addGoalEdge(neighbour, k, graph.distance(x, y, toX, toY));
+                addToQueue(index, neighbour, 0);
+            }
+            markQueuedEdges();
+        }
+        reportMemoryUsage();
+
+        return new EdgeNLevelSparseVisibilityGraphTargetSet(vGraph, version, targetXs.clone(), targetYs.clone(),
+                Arrays.copyOf(goalEdgeNodes, nGoalEdges), Arrays.copyOf(goalEdgeTargets, nGoalEdges), Arrays.copyOf(goalEdgeWeights, nGoalEdges),
+                Arrays.copyOf(markedEdgeSources, nMarkedEdges), Arrays.copyOf(markedEdgeDests, nMarkedEdges), Arrays.copyOf(markedEdgeWeights, nMarkedEdges));
+    }
+
+    /**
+     * Sets up a one-to-many query from (sx, sy) to the prepared targets.
+     * Only the start becomes a node. Edges are marked from the start, and the targets' goal edges and marked edges are added.
+     * There are no edges from the start to the targets, so targets the start can see directly must be handled by the caller.
+     */
+    public final void addStartAndTargets(int sx, int sy, EdgeNLevelSparseVisibilityGraphTargetSet targets) {
+        if (targets.vGraph != vGraph || targets.version != version) {
+            throw new UnsupportedOperationException("Targets were prepared for a different graph or an older version of it.");
+        }
+        clearQuery();
+        nNodes = originalSize;
+        nTempEdges = 0;
+        nMarkedEdges = 0;
+        nGoalEdges = 0;
+
+        startIndex = addNode(sx, sy);
+        addTempEdgesToVisibleNeighbours(startIndex, sx, sy);
+        endIndex = -1;
+
+        markEdgesFrom(startIndex);
+
+        // Edges also marked from the start appear twice in the lists, which only costs an extra relaxation.
+        int nTargetGoalEdges = targets.goalEdgeNodes.length;
+        for (int i=0;i<nTargetGoalEdges;++i) {
+            addGoalEdge(targets.goalEdgeNodes[i], targets.goalEdgeTargets[i], targets.goalEdgeWeights[i]);
+        }
+        int nTargetMarkedEdges = targets.markedEdgeSources.length;
+        for (int i=0;i<nTargetMarkedEdges;++i) {
+            addToMarkedEdges(targets.markedEdgeSources[i], targets.markedEdgeDests[i], targets.markedEdgeWeights[i]);
+        }
+        reportMemoryUsage();
+    }
+
+    private final void clearQuery() {
+        ++queryNumber;
+        goalNeighbours.clear();
+        startNeighbours.clear();
+        markedEdgeSet.clear();
+        directedMarkedEdgeSet.clear();
+        markedEdgeListNodes.clear();
+        goalEdgeListNodes.clear();
+    }
+
+    /**
+     * @return an estimate of the memory held by this overlay, in bytes.
+     */
+    public final long memoryUsage() {
+        return 12L*tempEdgeDests.length
+                + goalNeighbours.memoryUsage() + startNeighbours.memoryUsage() + markedEdgeSet.memoryUsage()
+                + directedMarkedEdgeSet.memoryUsage() + visited.memoryUsage()
+                + markedEdgeListNodes.memoryUsage() + 8L*markedEdgeHeads.length + 16L*markedEdgeDests.length
+                + goalEdgeListNodes.memoryUsage() + 4L*goalEdgeHeads.length + 16L*goalEdgeTargets.length
+                + 4L*queue.length;
+    }
+
+    /**
+     * Adds any growth of this overlay since the last report to the graph's count of overlay memory.
+     */
+    private final void reportMemoryUsage() {
+        long bytes = memoryUsage();
+        if (bytes == reportedBytes) return;
+        vGraph.addOverlayBytes(bytes - reportedBytes);
+        reportedBytes = bytes;
+    }
+
+    private final int addNode(int x, int y) {
+        int index = vGraph.nodeIndex[y*sizeXPlusOne + x];
+        if (index != -1) return index;
+
+        index = nNodes;
+        tempXPositions[index - originalSize] = x;
+        tempYPositions[index - originalSize] = y;
+        ++nNodes;
+        return index;
+    }
+
+    private final void addTempEdgesToVisibleNeighbours(int index, int x, int y) {
+        visited.clear();
+        if (index < originalSize) {
+            int[] outgoingEdges = vGraph.outgoingEdges;
+            int end = vGraph.outgoingEdgeStarts[index+1];
+            for (int i=vGraph.outgoingEdgeStarts[index];i<end;++i) {
+                visited.add(outgoingEdges[i]);
+            }
+        }
+        for (int i=0;i<nTempEdges;++i) {
+            if (tempEdgeSources[i] == index) visited.add(tempEdgeDests[i]);
+        }
+
+        losScanner.computeAllVisibleTautSuccessors(x, y);
+        int nSuccessors = losScanner.nSuccessors;
+        for (int i=0;i<nSuccessors;++i) {
+            int toX = losScanner.successorsX[i];
+            int toY = losScanner.successorsY[i];
+            int targetIndex = vGraph.nodeIndex[toY*sizeXPlusOne + toX];
+            if (visited.contains(targetIndex)) continue;
+
+            float weight = graph.distance(x, y, toX, toY);
+            addTemporaryEdge(index, targetIndex, weight);
+        }
+    }
+
+    // Adds an edge from node v1 to node v2
+    private final void addTemporaryEdge(int v1, int v2, float weight) {
+        if (nTempEdges >= tempEdgeDests.length) {
+            int newLength = tempEdgeDests.length*2;
+            tempEdgeSources = Arrays.copyOf(tempEdgeSources, newLength);
+            tempEdgeDests = Arrays.copyOf(tempEdgeDests, newLength);
+            tempEdgeWeights = Arrays.copyOf(tempEdgeWeights, newLength);
+        }
+        tempEdgeSources[nTempEdges] = v1;
+        tempEdgeDests[nTempEdges] = v2;
+        tempEdgeWeights[nTempEdges] = weight;
+        ++nTempEdges;
+    }
+
+    private final void markHasEdgeToGoal() {
+        if (endIndex < originalSize) {
+            int[] outgoingEdges = vGraph.outgoingEdges;
+            int end = vGraph.outgoingEdgeStarts[endIndex+1];
+            for (int i=vGraph.outgoingEdgeStarts[endIndex];i<end;++i) {
+                goalNeighbours.add(outgoingEdges[i]);
+            }
+        }
+        for (int i=0;i<nTempEdges;++i) {
+            if (tempEdgeSources[i] == endIndex) goalNeighbours.add(tempEdgeDests[i]);
+        }
+    }
+
+    private final void markHasEdgeToStart() {
+        if (startIndex < originalSize) {
+            int[] outgoingEdges = vGraph.outgoingEdges;
+            int end = vGraph.outgoingEdgeStarts[startIndex+1];
+            for (int i=vGraph.outgoingEdgeStarts[startIndex];i<end;++i) {
+                startNeighbours.add(outgoingEdges[i]);
+            }
+        }
+        for (int i=0;i<nTempEdges;++i) {
+            if (tempEdgeSources[i] == startIndex) startNeighbours.add(tempEdgeDests[i]);
+        }
+    }
+
+    /**
+     * Mark all edges reachable with a path of edges of increasing level from the source.
+     */
+    private final void markEdgesFrom(int source) {
+        queueSize = 0;
+        if (source < originalSize) {
+            int[] outgoingEdges = vGraph.outgoingEdges;
+            int[] outgoingEdgeIndexes = vGraph.outgoingEdgeIndexes;
+            int end = vGraph.outgoingEdgeStarts[source+1];
+
+            for (int i=vGraph.outgoingEdgeStarts[source];i<end;++i) {
+                int dest = outgoingEdges[i];
+                int edgeIndex = outgoingEdgeIndexes[i];
+                markSourceEdge(source, dest, edgeIndex, edgeIndex*2 + (source > dest ? 1 : 0),
+                        vGraph.edgeWeights[edgeIndex], vGraph.edgeLevels[edgeIndex]);
+            }
+        }
+        for (int i=0;i<nTempEdges;++i) {
+            if (tempEdgeSources[i] != source) continue;
+            int edgeIndex = originalNEdges + i;
+            markSourceEdge(source, tempEdgeDests[i], edgeIndex, edgeIndex*2, tempEdgeWeights[i], 0);
+        }
+        markQueuedEdges();
+    }
+
+    /**
+     * Marks edges of increasing level onwards from the (parent, current, level) triples in the queue.
+     */
+    private final void markQueuedEdges() {
+
+        int[] xPositions = vGraph.xPositions;
+        int[] yPositions = vGraph.yPositions;
+        int[] edgeLevels = vGraph.edgeLevels;
+        int[] outgoingEdgeStarts = vGraph.outgoingEdgeStarts;
+        int[] outgoingEdges = vGraph.outgoingEdges;
+        int[] outgoingEdgeIndexes = vGraph.outgoingEdgeIndexes;
+        int[] skipEdgeStarts = vGraph.skipEdgeStarts;
+        int LEVEL_W = EdgeNLevelSparseVisibilityGraph.LEVEL_W;
+
+        int currIndex = 0;
+        while (currIndex < queueSize) {
+            int parent = queue[currIndex];
+            int curr = queue[currIndex+1];
+            int currLevel = queue[currIndex+2];
+            currIndex += 3;
+
+            // Temporary edges always lead to original nodes, so only the parent can be a temporary node.
+            // Temporary edges have level 0, so they are never followed here.
+            int parX = getX(parent);
+            int parY = getY(parent);
+            int currX = xPositions[curr];
+            int currY = yPositions[curr];
+            int end = outgoingEdgeStarts[curr+1];
+
+            for (int i=outgoingEdgeStarts[curr];i<end;++i) {
+                int edgeIndex = outgoingEdgeIndexes[i];
+                int nextLevel = edgeLevels[edgeIndex];
+                int next = outgoingEdges[i];
+                int directedIndex = edgeIndex*2 + (curr > next ? 1 : 0);
+                if ((nextLevel != LEVEL_W && nextLevel <= currLevel) || directedMarkedEdgeSet.contains(directedIndex)) continue;
+                if (!graph.isTaut(parX, parY, currX, currY, xPositions[next], yPositions[next])) continue;
+                directedMarkedEdgeSet.add(directedIndex);
+
+                if (markedEdgeSet.add(edgeIndex)) {
+                    float weight = vGraph.edgeWeights[edgeIndex];
+                    addToMarkedEdges(curr, next, weight);
+                    addToMarkedEdges(next, curr, weight);
+                }
+
+                // Only continue marking forward if not a skip vertex.
+                if (nextLevel != LEVEL_W || skipEdgeStarts[next] == skipEdgeStarts[next+1]) {
+                    addToQueue(curr, next, nextLevel);
+                }
+            }
+        }
+    }
+
+    private final void markSourceEdge(int source, int dest, int edgeIndex, int directedIndex, float weight, int level) {
+        if (!directedMarkedEdgeSet.add(directedIndex)) return;
+
+        if (markedEdgeSet.add(edgeIndex)) {
+            addToMarkedEdges(source, dest, weight);
+        }
+        addToQueue(source, dest, level);
+    }
+
+    private final void addToMarkedEdges(int current, int dest, float weight) {
+        if (nMarkedEdges >= markedEdgeDests.length) {
+            int newLength = markedEdgeDests.length*2;
+            markedEdgeNexts = Arrays.copyOf(markedEdgeNexts, newLength);
+            markedEdgeSources = Arrays.copyOf(markedEdgeSources, newLength);
+            markedEdgeDests = Arrays.copyOf(markedEdgeDests, newLength);
+            markedEdgeWeights = Arrays.copyOf(markedEdgeWeights, newLength);
+        }
+        int entry = nMarkedEdges;
+        markedEdgeNexts[entry] = -1;
+        markedEdgeSources[entry] = current;
+        markedEdgeDests[entry] = dest;
+        markedEdgeWeights[entry] = weight;
+        ++nMarkedEdges;
+
+        int nLists = markedEdgeListNodes.size();
+        int list = markedEdgeListNodes.put(current);
+        if (list == nLists) {
+            if (list >= markedEdgeHeads.length) {
+                int newLength = markedEdgeHeads.length*2;
+                markedEdgeHeads = Arrays.copyOf(markedEdgeHeads, newLength);
+                markedEdgeTails = Arrays.copyOf(markedEdgeTails, newLength);
+            }
+            markedEdgeHeads[list] = entry;
+        } else {
+            markedEdgeNexts[markedEdgeTails[list]] = entry;
+        }
+        markedEdgeTails[list] = entry;
+    }
+
+    private final void addGoalEdge(int node, int target, float weight) {
+        if (nGoalEdges >= goalEdgeTargets.length) {
+            int newLength = goalEdgeTargets.length*2;
+            goalEdgeNexts = Arrays.copyOf(goalEdgeNexts, newLength);
+            goalEdgeNodes = Arrays.copyOf(goalEdgeNodes, newLength);
+            goalEdgeTargets = Arrays.copyOf(goalEdgeTargets, newLength);
+            goalEdgeWeights = Arrays.copyOf(goalEdgeWeights, newLength);
+        }
+        int entry = nGoalEdges;
+        goalEdgeNodes[entry] = node;
+        goalEdgeTargets[entry] = target;
+        goalEdgeWeights[entry] = weight;
+        ++nGoalEdges;
+
+        int nLists = goalEdgeListNodes.size();
+        int list = goalEdgeListNodes.put(node);
+        if (list == nLists) {
+            if (list >= goalEdgeHeads.length) goalEdgeHeads = Arrays.copyOf(goalEdgeHeads, goalEdgeHeads.length*2);
+            goalEdgeNexts[entry] = -1;
+        } else {
+            goalEdgeNexts[entry] = goalEdgeHeads[list];
+        }
+        goalEdgeHeads[list] = entry;
+    }
+
+    private final void addToQueue(int parent, int current, int level) {
+        if (queueSize+2 >= queue.length) {
+            queue = Arrays.copyOf(queue, queue.length*2);
+        }
+        queue[queueSize] = parent;
+        queue[queueSize+1] = current;
+        queue[queueSize+2] = level;
+        queueSize += 3;
+    }
+
+    /**
+     * Iterate through the marked edges of a node with
+     * for (int e = firstMarkedEdge(v); e != -1; e = nextMarkedEdge(e))
+     */
+    public final int firstMarkedEdge(int index) {
+        int list = markedEdgeListNodes.indexOf(index);
+        return list == -1 ? -1 : markedEdgeHeads[list];
+    }
+
+    public final int nextMarkedEdge(int markedEdge) {
+        return markedEdgeNexts[markedEdge];
+    }
+
+    public final int markedEdgeDest(int markedEdge) {
+        return markedEdgeDests[markedEdge];
+    }
+
+    public final float markedEdgeWeight(int markedEdge) {
+        return markedEdgeWeights[markedEdge];
+    }
+
+    /**
+     * Iterate through the goal edges of a node in a one-to-many query with
+     * for (int e = firstGoalEdge(v); e != -1; e = nextGoalEdge(e))
+     */
+    public final int firstGoalEdge(int index) {
+        int list = goalEdgeListNodes.indexOf(index);
+        return list == -1 ? -1 : goalEdgeHeads[list];
+    }
+
+    public final int nextGoalEdge(int goalEdge) {
+        return goalEdgeNexts[goalEdge];
+    }
+
+    public final int goalEdgeTarget(int goalEdge) {
+        return goalEdgeTargets[goalEdge];
+    }
+
+    public final float goalEdgeWeight(int goalEdge) {
+        return goalEdgeWeights[goalEdge];
+    }
+
+    public final boolean hasEdgeToGoal(int index) {
+        return goalNeighbours.contains(index);
+    }
+
+    public final boolean hasEdgeToStart(int index) {
+        return startNeighbours.contains(index);
+    }
+
+    public final boolean isMarked(int edgeIndex) {
+        return markedEdgeSet.contains(edgeIndex);
+    }
+
+    public final int getX(int index) {
+        return index < originalSize ? vGraph.xPositions[index] : tempXPositions[index - originalSize];
+    }
+
+    public final int getY(int index) {
+        return index < originalSize ? vGraph.yPositions[index] : tempYPositions[index - originalSize];
+    }
+
+    public final int nTempEdges() {
+        return nTempEdges;
+    }
+
+    public final int tempEdgeSource(int i) {
+        return tempEdgeSources[i];
+    }
+
+    public final int tempEdgeDest(int i) {
+        return tempEdgeDests[i];
+    }
+
+    public final int tempEdgeIndex(int i) {
+        return originalNEdges + i;
+    }
+
+    public final EdgeNLevelSparseVisibilityGraph visibilityGraph() {
+        return vGraph;
+    }
+
+    public final int size() {
+        return nNodes;
+    }
+
+    public final int maxSize() {
+        return vGraph.maxSize();
+    }
+
+    /**
+     * @return a number that changes whenever another query is set up on this overlay.
+     */
+    public final int queryNumber() {
+        return queryNumber;
+    }
+
+    public final int startNode() {
+        return startIndex;
+    }
+
+    public final int endNode() {
+        return endIndex;
+    }
+}
@@ -0,0 +1,51 @@
+package algorithms.sparsevgs;
+
+/**
+ * The targets of one-to-many queries on an EdgeNLevelSparseVisibilityGraph, with their goal edges and the edges
+ * marked from them. Prepared once by EdgeNLevelSparseVisibilityGraph.prepareTargets, then shared by the queries
+ * from every start. Immutable, so it can be used by several threads at once.
+ * Only valid for the version of the graph it was prepared for.
+ */
+public final class EdgeNLevelSparseVisibilityGraphTargetSet {
+    final EdgeNLevelSparseVisibilityGraph vGraph;
+    final int version;
+    final int[] targetXs;
+    final int[] targetYs;
+
+    // Goal edges: node -> target.
+    final int[] goalEdgeNodes;
+    final int[] goalEdgeTargets;
+    final float[] goalEdgeWeights;
+
+    // Directed edges marked from the targets.
+    final int[] markedEdgeSources;
+    final int[] markedEdgeDests;
+    final float[] markedEdgeWeights;
+
+    EdgeNLevelSparseVisibilityGraphTargetSet(EdgeNLevelSparseVisibilityGraph vGraph, int version, int[] targetXs, int[] targetYs,
+            int[] goalEdgeNodes, int[] goalEdgeTargets, float[] goalEdgeWeights,
+            int[] markedEdgeSources, int[] markedEdgeDests, float[] markedEdgeWeights) {
+        this.vGraph = vGraph;
+        this.version = version;
+        this.targetXs = targetXs;
+        this.targetYs = targetYs;
+        this.goalEdgeNodes = goalEdgeNodes;
+        this.goalEdgeTargets = goalEdgeTargets;
+        this.goalEdgeWeights = goalEdgeWeights;
+        this.markedEdgeSources = markedEdgeSources;
+        this.markedEdgeDests = markedEdgeDests;
+        this.markedEdgeWeights = markedEdgeWeights;
+    }
+
+    public final int size() {
+        return targetXs.length;
+    }
+
+    public final int targetX(int target) {
+        return targetXs[target];
+    }
+
+    public final int targetY(int target) {
+        return targetYs[target];
+    }
+}
@@ -0,0 +1,969 @@
+package algorithms.sparsevgs;
+
+import grid.GridGraph;
+
+import java.util.Arrays;
+
+/**
+ * Updates an EdgeNLevelSparseVisibilityGraph in place when tiles of its grid change.
+ *
+ * 1. Nodes: only the corners of the changed tiles can appear or disappear.
+ * 2. Edges: an edge can only change if it crosses a changed tile or ends at a changed corner,
+ *    so only the nodes that can see a changed tile (before or after the change) are rescanned.
+ * 3. Levels: the edge levels are the greatest fixpoint of
+ *      level(u,v) = min over both ends of (1 + max level of the taut exits at that end),
+ *    with LEVEL_W as infinity. Edges whose level may rise are reset to LEVEL_W, then levels are
+ *    lowered again from the changed edges outwards.
+ * 4. Skip edges: only the skip vertices whose level-W chains pass through a changed node are redone.
+ *
+ * Repacking the compressed arrays is a bulk copy, and is the only step linear in the size of the graph.
+ * The scratch arrays are kept between updates, so they are only reallocated when the graph grows.
+ */
+final class EdgeNLevelSparseVisibilityGraphUpdater {
+    private static final int LEVEL_W = EdgeNLevelSparseVisibilityGraph.LEVEL_W;
+
+    private final EdgeNLevelSparseVisibilityGraph vGraph;
+    private final GridGraph graph;
+    private final int sizeXPlusOne;
+    private final LineOfSightScannerDouble scanner;
+
+    // Node sets
+    private final TicketedSet candidates = new TicketedSet();   // Nodes to rescan.
+    private final TicketedSet closureSeen = new TicketedSet();
+    private final TicketedSet scanned = new TicketedSet();
+    private final TicketedSet oldNeighbours = new TicketedSet();
+    private final TicketedSet deadNodes = new TicketedSet();
+    private final TicketedSet touchedNodes = new TicketedSet();  // Nodes whose adjacency or tautness changed.
+    private final TicketedSet wNodes = new TicketedSet();        // Endpoints of edges that became or stopped being level-W.
+    private final TicketedSet affectedSkipVertices = new TicketedSet();
+    // Edge sets
+    private final TicketedSet removedEdges = new TicketedSet();
+    private final TicketedSet addedEdges = new TicketedSet();
+    private final TicketedSet mayIncrease = new TicketedSet();
+    private final TicketedSet savedEdges = new TicketedSet();
+    private int[] oldLevels = new int[0];                        // Valid for the edges in savedEdges.
+
+    // Node and edge indexes freed by earlier updates.
+    private final IntList freeNodes = new IntList();
+    private final IntList freeEdges = new IntList();
+
+    private final IntList candidateList = new IntList();
+    private final IntList deadList = new IntList();
+    private final IntList newNodeList = new IntList();
+    private final IntList touchedList = new IntList();
+    private final IntList wNodeList = new IntList();
+    private final IntList affectedList = new IntList();
+    private final IntList removedList = new IntList();     // (edgeIndex, u, v)
+    private final IntList addedList = new IntList();       // (edgeIndex, u, v)
+    private final IntList savedList = new IntList();       // (edgeIndex, u, v)
+    private final IntList queue = new IntList();           // (u, v, edgeIndex)
+    private final IntList mayIncreaseList = new IntList(); // (u, v, edgeIndex)
+
+    // Old adjacency, kept while the new arrays are built.
+    private int oldMaxSize;
+    private int[] oldOutgoingEdgeStarts;
+    private int[] oldOutgoingEdges;
+    private int[] oldOutgoingEdgeIndexes;
+
+    // Scratch for pruning parallel skip edges.
+    private int[] destSlotTickets = new int[0];
+    private int[] destSlots = new int[0];
+    private int destSlotTicket = 0;
+
+    EdgeNLevelSparseVisibilityGraphUpdater(EdgeNLevelSparseVisibilityGraph vGraph) {
+        this.vGraph = vGraph;
+        this.graph = vGraph.graph;
+        this.sizeXPlusOne = graph.sizeX+1;
+        this.scanner = new LineOfSightScannerDouble(graph, vGraph.losExtents);
+
+        // Dead nodes are stored with negative positions, and unused edge indexes do not appear in any row.
+        for (int i=0;i<vGraph.nNodes;++i) {
+            if (vGraph.xPositions[i] < 0) freeNodes.add(i);
+        }
+        boolean[] isUsed = new boolean[vGraph.nEdges];
+        int[] edgeIndexes = vGraph.outgoingEdgeIndexes;
+        for (int i=0;i<vGraph.outgoingEdgeStarts[vGraph.maxSize];++i) {
+            isUsed[edgeIndexes[i]] = true;
+        }
+        for (int i=0;i<vGraph.nEdges;++i) {
+            if (!isUsed[i]) freeEdges.add(i);
+        }
+    }
+
+    /**
+     * Sets tile (tiles[i][0], tiles[i][1]) to blocked[i]. Later entries override earlier ones.
+     */
+    final void update(int[][] tiles, boolean[] blocked) {
+        if (tiles.length != blocked.length) throw new UnsupportedOperationException("tiles and blocked must have the same length!");
+
+        // Keep only the last entry for each tile, and only tiles whose state changes.
+        int sizeX = graph.sizeX;
+        long[] keys = new long[tiles.length];
+        for (int i=0;i<tiles.length;++i) {
+            int x = tiles[i][0];
+            int y = tiles[i][1];
+            if (!graph.isValidBlock(x, y)) throw new UnsupportedOperationException("Tile (" + x + ", " + y + ") is outside the grid!");
+            keys[i] = ((long)(y*sizeX + x) << 32) | i;
+        }
+        Arrays.sort(keys);
+        IntList blockTiles = new IntList();
+        IntList unblockTiles = new IntList();
+        for (int k=0;k<keys.length;++k) {
+            if (k+1 < keys.length && (keys[k+1] >>> 32) == (keys[k] >>> 32)) continue;
+            int i = (int)keys[k];
+            int x = tiles[i][0];
+            int y = tiles[i][1];
+            if (graph.isBlocked(x, y) == blocked[i]) continue;
+            if (blocked[i]) blockTiles.add2(x, y);
+            else unblockTiles.add2(x, y);
+        }
+        if (blockTiles.size == 0 && unblockTiles.size == 0) return;
+
+        beginUpdate();
+        IntList corners = cornersOf(blockTiles, unblockTiles);
+
+        // Old grid: nodes that can see the tiles about to be blocked, and the nodes at changed corners.
+        addNodesSeeing(blockTiles);
+        for (int i=0;i<corners.size;i+=2) {
+            int index = vGraph.nodeIndex[corners.get(i+1)*sizeXPlusOne + corners.get(i)];
+            if (index != -1) addCandidate(index);
+        }
+
+        applyTiles(blockTiles, true);
+        applyTiles(unblockTiles, false);
+
+        updateNodes(corners);
+        // New grid: nodes that can see the tiles that were unblocked.
+        addNodesSeeing(unblockTiles);
+
+        updateEdges();
+        rebuildOutgoingEdges();
+        updateEdgeLevels();
+        updateSkipEdges();
+        endUpdate();
+    }
+
+    private final void beginUpdate() {
+        oldMaxSize = vGraph.maxSize();
+        oldOutgoingEdgeStarts = vGraph.outgoingEdgeStarts;
+        oldOutgoingEdges = vGraph.outgoingEdges;
+        oldOutgoingEdgeIndexes = vGraph.outgoingEdgeIndexes;
+
+        // Leave room for nodes added by this update.
+        int nodeCapacity = vGraph.maxSize() + 64;
+        candidates.clear(nodeCapacity);
+        closureSeen.clear(nodeCapacity);
+        deadNodes.clear(nodeCapacity);
+        touchedNodes.clear(nodeCapacity);
+        wNodes.clear(nodeCapacity);
+        affectedSkipVertices.clear(nodeCapacity);
+        int edgeCapacity = vGraph.edgeLevels.length;
+        removedEdges.clear(edgeCapacity);
+        addedEdges.clear(edgeCapacity);
+        mayIncrease.clear(edgeCapacity);
+        savedEdges.clear(edgeCapacity);
+        if (oldLevels.length < edgeCapacity) oldLevels = new int[edgeCapacity];
+
+        candidateList.clear();
+        deadList.clear();
+        newNodeList.clear();
+        touchedList.clear();
+        wNodeList.clear();
+        affectedList.clear();
+        removedList.clear();
+        addedList.clear();
+        savedList.clear();
+    }
+
+    private final void endUpdate() {
+        // Freed slots are only reused by later updates, so this update never confuses old and new data.
+        for (int i=0;i<deadList.size;++i) {
+            int v = deadList.get(i);
+            vGraph.xPositions[v] = -1;
+            vGraph.yPositions[v] = -1;
+            freeNodes.add(v);
+        }
+        for (int i=0;i<removedList.size;i+=3) {
+            freeEdges.add(removedList.get(i));
+        }
+        oldOutgoingEdgeStarts = null;
+        oldOutgoingEdges = null;
+        oldOutgoingEdgeIndexes = null;
+        vGraph.version++;
+    }
+
+
+    /// \\\ /// \\\ /// \\\ /// \\\ ///
+    ///     NODES AND EDGES         ///
+    /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+    // The four corners of each changed tile, without duplicates, as (x, y) pairs.
+    private final IntList cornersOf(IntList blockTiles, IntList unblockTiles) {
+        int nTiles = (blockTiles.size + unblockTiles.size)/2;
+        int[] keys = new int[nTiles*4];
+        int n = 0;
+        for (IntList tiles : new IntList[] {blockTiles, unblockTiles}) {
+            for (int i=0;i<tiles.size;i+=2) {
+                int x = tiles.get(i);
+                int y = tiles.get(i+1);
+                keys[n++] = y*sizeXPlusOne + x;
+                keys[n++] = y*sizeXPlusOne + x+1;
+                keys[n++] = (y+1)*sizeXPlusOne + x;
+                keys[n++] = (y+1)*sizeXPlusOne + x+1;
+            }
+        }
+        Arrays.sort(keys);
+        IntList corners = new IntList();
+        for (int i=0;i<n;++i) {
+            if (i > 0 && keys[i] == keys[i-1]) continue;
+            corners.add2(keys[i] % sizeXPlusOne, keys[i] / sizeXPlusOne);
+        }
+        return corners;
+    }
+
+    private final void applyTiles(IntList tiles, boolean blocked) {
+        for (int i=0;i<tiles.size;i+=2) {
+            graph.setBlocked(tiles.get(i), tiles.get(i+1), blocked);
+        }
+        int[] rows = new int[tiles.size/2];
+        for (int i=0;i<rows.length;++i) rows[i] = tiles.get(i*2+1);
+        Arrays.sort(rows);
+        for (int i=0;i<rows.length;++i) {
+            if (i > 0 && rows[i] == rows[i-1]) continue;
+            vGraph.losExtents.updateTileRow(rows[i]);
+        }
+    }
+
+    private final void addCandidate(int index) {
+        if (candidates.add(index)) candidateList.add(index);
+    }
+
+    /**
+     * Adds every node that can see some point of the given tiles to the candidates.
+     * A node sees a tile either through one of the tile's corners, or past an obstacle corner L it can see,
+     * on a ray that continues through L towards the tiles. In the second case L itself sees the tiles,
+     * so the search starts from the tile corners and follows such rays back from each node found.
+     */
+    private final void addNodesSeeing(IntList tiles) {
+        if (tiles.size == 0) return;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i=0;i<tiles.size;i+=2) {
+            minX = Math.min(minX, tiles.get(i));
+            maxX = Math.max(maxX, tiles.get(i)+1);
+            minY = Math.min(minY, tiles.get(i+1));
+            maxY = Math.max(maxY, tiles.get(i+1)+1);
+        }
+
+        closureSeen.clear(vGraph.xPositions.length);
+        IntList found = new IntList();
+        IntList corners = cornersOf(tiles, new IntList());
+        int[] nodeIndex = vGraph.nodeIndex;
+        for (int i=0;i<corners.size;i+=2) {
+            int x = corners.get(i);
+            int y = corners.get(i+1);
+            int index = nodeIndex[y*sizeXPlusOne + x];
+            if (index != -1 && closureSeen.add(index)) found.add(index);
+
+            scanner.computeAllVisibleSuccessors(x, y);
+            for (int s=0;s<scanner.nSuccessors;++s) {
+                int succ = nodeIndex[scanner.successorsY[s]*sizeXPlusOne + scanner.successorsX[s]];
+                if (succ != -1 && closureSeen.add(succ)) found.add(succ);
+            }
+        }
+
+        int[] xPositions = vGraph.xPositions;
+        int[] yPositions = vGraph.yPositions;
+        for (int i=0;i<found.size;++i) {
+            int l = found.get(i);
+            int lx = xPositions[l];
+            int ly = yPositions[l];
+            scanner.computeAllVisibleSuccessors(lx, ly);
+            for (int s=0;s<scanner.nSuccessors;++s) {
+                int ux = scanner.successorsX[s];
+                int uy = scanner.successorsY[s];
+                int succ = nodeIndex[uy*sizeXPlusOne + ux];
+                if (succ == -1 || closureSeen.contains(succ)) continue;
+                if (!rayHitsBox(ux, uy, lx, ly, minX, minY, maxX, maxY)) continue;
+                closureSeen.add(succ);
+                found.add(succ);
+            }
+        }
+
+        for (int i=0;i<found.size;++i) {
+            addCandidate(found.get(i));
+        }
+    }
+
+    // Whether the ray starting at (lx,ly) in the direction from (ux,uy) to (lx,ly) touches the closed box.
+    private static final boolean rayHitsBox(int ux, int uy, int lx, int ly, int minX, int minY, int maxX, int maxY) {
+        double dx = lx - ux;
+        double dy = ly - uy;
+        double tMin = 0;
+        double tMax = Double.POSITIVE_INFINITY;
+        if (dx == 0) {
+            if (lx < minX || lx > maxX) return false;
+        } else {
+            double t1 = (minX - lx) / dx;
+            double t2 = (maxX - lx) / dx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (ly < minY || ly > maxY) return false;
+        } else {
+            double t1 = (minY - ly) / dy;
+            double t2 = (maxY - ly) / dy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax + 1e-9;
+    }
+
+    private final void updateNodes(IntList corners) {
+        int[] nodeIndex = vGraph.nodeIndex;
+        for (int i=0;i<corners.size;i+=2) {
+            int x = corners.get(i);
+            int y = corners.get(i+1);
+            int p = y*sizeXPlusOne + x;
+            boolean isNode = graph.isOuterCorner(x, y);
+            if (nodeIndex[p] != -1 && !isNode) {
+                int index = nodeIndex[p];
+                nodeIndex[p] = -1;
+                deadNodes.add(index);
+                deadList.add(index);
+            } else if (nodeIndex[p] == -1 && isNode) {
+                int index = addNode(x, y);
+                nodeIndex[p] = index;
+                newNodeList.add(index);
+            }
+        }
+
+        // The node sets were sized before new nodes were added.
+        int nodeCapacity = vGraph.maxSize();
+        candidates.ensureCapacity(nodeCapacity);
+        deadNodes.ensureCapacity(nodeCapacity);
+        touchedNodes.ensureCapacity(nodeCapacity);
+        wNodes.ensureCapacity(nodeCapacity);
+        affectedSkipVertices.ensureCapacity(nodeCapacity);
+        for (int i=0;i<newNodeList.size;++i) {
+            addCandidate(newNodeList.get(i));
+            touch(newNodeList.get(i));
+        }
+        for (int i=0;i<corners.size;i+=2) {
+            // Tautness around a changed corner may have changed.
+            int index = nodeIndex[corners.get(i+1)*sizeXPlusOne + corners.get(i)];
+            if (index != -1) touch(index);
+        }
+    }
+
+    // Reuses a node index freed by an earlier update, or appends a new one.
+    private final int addNode(int x, int y) {
+        int index;
+        if (freeNodes.size > 0) {
+            index = freeNodes.pop();
+        } else {
+            index = vGraph.nNodes++;
+            vGraph.maxSize = vGraph.nNodes + 2;
+            if (vGraph.maxSize > vGraph.xPositions.length) {
+                int newLength = Math.max(vGraph.maxSize, vGraph.xPositions.length*2);
+                vGraph.xPositions = Arrays.copyOf(vGraph.xPositions, newLength);
+                vGraph.yPositions = Arrays.copyOf(vGraph.yPositions, newLength);
+            }
+        }
+        vGraph.xPositions[index] = x;
+        vGraph.yPositions[index] = y;
+        return index;
+    }
+
+    private final void touch(int v) {
+        if (touchedNodes.add(v)) touchedList.add(v);
+    }
+
+    /**
+     * Rescans every live candidate and compares with its old neighbours.
+     */
+    private final void updateEdges() {
+        scanned.clear(vGraph.maxSize());
+        oldNeighbours.clear(vGraph.maxSize());
+        int[] nodeIndex = vGraph.nodeIndex;
+        int[] xPositions = vGraph.xPositions;
+        int[] yPositions = vGraph.yPositions;
+
+        for (int i=0;i<deadList.size;++i) {
+            int v = deadList.get(i);
+            for (int j=oldStart(v);j<oldEnd(v);++j) {
+                removeEdge(oldOutgoingEdgeIndexes[j], v, oldOutgoingEdges[j]);
+            }
+        }
+
+        for (int i=0;i<candidateList.size;++i) {
+            int u = candidateList.get(i);
+            if (deadNodes.contains(u)) continue;
+            int ux = xPositions[u];
+            int uy = yPositions[u];
+
+            scanned.clear(scanned.capacity());
+            scanner.computeAllVisibleTwoWayTautSuccessors(ux, uy);
+            for (int s=0;s<scanner.nSuccessors;++s) {
+                scanned.add(nodeIndex[scanner.successorsY[s]*sizeXPlusOne + scanner.successorsX[s]]);
+            }
+
+            oldNeighbours.clear(oldNeighbours.capacity());
+            for (int j=oldStart(u);j<oldEnd(u);++j) {
+                int w = oldOutgoingEdges[j];
+                oldNeighbours.add(w);
+                if (!scanned.contains(w)) removeEdge(oldOutgoingEdgeIndexes[j], u, w);
+            }
+
+            for (int s=0;s<scanner.nSuccessors;++s) {
+                int w = nodeIndex[scanner.successorsY[s]*sizeXPlusOne + scanner.successorsX[s]];
+                if (oldNeighbours.contains(w)) continue;
+                // Both ends rescan when both are candidates, so only the smaller index adds the edge.
+                if (candidates.contains(w) && w < u) continue;
+                addEdge(u, w, graph.distance(ux, uy, xPositions[w], yPositions[w]));
+            }
+        }
+    }
+
+    // Nodes added by this update have empty rows in the old arrays.
+    private final int oldStart(int v) {
+        return oldOutgoingEdgeStarts[Math.min(v, oldMaxSize)];
+    }
+
+    private final int oldEnd(int v) {
+        return oldOutgoingEdgeStarts[Math.min(v+1, oldMaxSize)];
+    }
+
+    private final void removeEdge(int edgeIndex, int u, int v) {
+        if (!removedEdges.add(edgeIndex)) return;
+        removedList.add3(edgeIndex, u, v);
+        touch(u);
+        touch(v);
+    }
+
+    // New edges start at level W. Edge indexes freed by earlier updates are reused first.
+    private final void addEdge(int u, int v, float weight) {
+        int edgeIndex;
+        if (freeEdges.size > 0) {
+            edgeIndex = freeEdges.pop();
+        } else {
+            edgeIndex = vGraph.nEdges++;
+            if (edgeIndex >= vGraph.edgeLevels.length) {
+                int newLength = Math.max(11, vGraph.edgeLevels.length*2);
+                vGraph.edgeLevels = Arrays.copyOf(vGraph.edgeLevels, newLength);
+                vGraph.edgeWeights = Arrays.copyOf(vGraph.edgeWeights, newLength);
+                removedEdges.ensureCapacity(newLength);
+                addedEdges.ensureCapacity(newLength);
+                mayIncrease.ensureCapacity(newLength);
+                savedEdges.ensureCapacity(newLength);
+            }
+        }
+        vGraph.edgeLevels[edgeIndex] = LEVEL_W;
+        vGraph.edgeWeights[edgeIndex] = weight;
+        addedEdges.add(edgeIndex);
+        addedList.add3(edgeIndex, u, v);
+        touch(u);
+        touch(v);
+    }
+
+    /**
+     * Repacks outgoingEdgeStarts, outgoingEdges and outgoingEdgeIndexes.
+     * Rows of untouched nodes are copied in runs, touched rows are rebuilt.
+     */
+    private final void rebuildOutgoingEdges() {
+        int maxSize = vGraph.maxSize();
+        int nTouched = touchedList.size;
+        int[] touched = Arrays.copyOf(touchedList.array, nTouched);
+        Arrays.sort(touched);
+
+        // Added edges, as directed entries grouped by source.
+        int nAdded = addedList.size/3;
+        long[] addedKeys = new long[nAdded*2];
+        for (int i=0;i<nAdded;++i) {
+            addedKeys[i*2] = ((long)addedList.get(i*3+1) << 32) | (i*2);
+            addedKeys[i*2+1] = ((long)addedList.get(i*3+2) << 32) | (i*2+1);
+        }
+        Arrays.sort(addedKeys);
+
+        int total = oldOutgoingEdgeStarts[oldMaxSize] + addedKeys.length;
+        // Every edge appears in the rows of both of its ends.
+        total -= (removedList.size/3)*2;
+
+        int[] starts = new int[maxSize+1];
+        int[] edges = new int[total];
+        int[] edgeIndexes = new int[total];
+        int pos = 0;
+        int next = 0; // first node not yet placed
+        int a = 0;
+        for (int t=0;t<=nTouched;++t) {
+            int until = t < nTouched ? touched[t] : maxSize;
+            // Untouched rows [next, until) are one run in the old arrays.
+            int from = oldStart(next);
+            int to = oldStart(until);
+            System.arraycopy(oldOutgoingEdges, from, edges, pos, to-from);
+            System.arraycopy(oldOutgoingEdgeIndexes, from, edgeIndexes, pos, to-from);
+            for (int v=next;v<until;++v) {
+                starts[v] = pos + oldStart(v) - from;
+            }
+            pos += to-from;
+            if (t == nTouched) break;
+
+            int v = until;
+            starts[v] = pos;
+            for (int j=oldStart(v);j<oldEnd(v);++j) {
+                if (removedEdges.contains(oldOutgoingEdgeIndexes[j])) continue;
+                edges[pos] = oldOutgoingEdges[j];
+                edgeIndexes[pos] = oldOutgoingEdgeIndexes[j];
+                ++pos;
+            }
+            while (a < addedKeys.length && (int)(addedKeys[a] >>> 32) == v) {
+                int entry = (int)addedKeys[a];
+                int edge = entry >> 1;
+                edges[pos] = addedList.get(edge*3 + ((entry & 1) == 0 ? 2 : 1));
+                edgeIndexes[pos] = addedList.get(edge*3);
+                ++pos;
+                ++a;
+            }
+            next = v+1;
+        }
+        starts[maxSize] = pos;
+
+        vGraph.outgoingEdgeStarts = starts;
+        vGraph.outgoingEdges = edges;
+        vGraph.outgoingEdgeIndexes = edgeIndexes;
+    }
+
+
+    /// \\\ /// \\\ /// \\\ /// \\\ ///
+    ///         EDGE LEVELS         ///
+    /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+    private final void updateEdgeLevels() {
+        int[] starts = vGraph.outgoingEdgeStarts;
+        int[] edges = vGraph.outgoingEdges;
+        int[] edgeIndexes = vGraph.outgoingEdgeIndexes;
+        int[] edgeLevels = vGraph.edgeLevels;
+
+        // Phase 1: find the edges whose level may rise, and reset them to LEVEL_W.
+        // New edges start at LEVEL_W. Other edges can only change if an exit changed, i.e. they touch a touched node.
+        mayIncreaseList.clear();
+        queue.clear();
+        for (int i=0;i<addedList.size;i+=3) {
+            int edgeIndex = addedList.get(i);
+            int u = addedList.get(i+1);
+            int v = addedList.get(i+2);
+            mayIncrease.add(edgeIndex);
+            mayIncreaseList.add3(u, v, edgeIndex);
+            pushExits(u, v);
+        }
+        for (int i=0;i<touchedList.size;++i) {
+            int u = touchedList.get(i);
+            for (int j=starts[u];j<starts[u+1];++j) {
+                queue.add3(u, edges[j], edgeIndexes[j]);
+            }
+        }
+        int nSeeds = queue.size;
+        for (int q=0;q<queue.size;q+=3) {
+            int u = queue.get(q);
+            int v = queue.get(q+1);
+            int edgeIndex = queue.get(q+2);
+            if (mayIncrease.contains(edgeIndex)) continue;
+            if (computeLevel(u, v) > edgeLevels[edgeIndex]) {
+                saveLevel(edgeIndex, u, v);
+                edgeLevels[edgeIndex] = LEVEL_W;
+                mayIncrease.add(edgeIndex);
+                mayIncreaseList.add3(u, v, edgeIndex);
+                pushExits(u, v);
+            }
+        }
+
+        // Phase 2: every edge is now at or above its new level. Lower levels until nothing changes.
+        int[] seeds = Arrays.copyOf(queue.array, nSeeds);
+        queue.clear();
+        for (int i=0;i<mayIncreaseList.size;++i) queue.add(mayIncreaseList.get(i));
+        for (int i=0;i<nSeeds;++i) queue.add(seeds[i]);
+        for (int q=0;q<queue.size;q+=3) {
+            int u = queue.get(q);
+            int v = queue.get(q+1);
+            int edgeIndex = queue.get(q+2);
+            int level = computeLevel(u, v);
+            if (level < edgeLevels[edgeIndex]) {
+                saveLevel(edgeIndex, u, v);
+                edgeLevels[edgeIndex] = level;
+                pushExits(u, v);
+            }
+        }
+    }
+
+    // Remembers the level of an existing edge before its first change. New edges have no old level.
+    private final void saveLevel(int edgeIndex, int u, int v) {
+        if (addedEdges.contains(edgeIndex) || !savedEdges.add(edgeIndex)) return;
+        oldLevels[edgeIndex] = vGraph.edgeLevels[edgeIndex];
+        savedList.add3(edgeIndex, u, v);
+    }
+
+    // Level of edge (u,v) given the current levels of its exits. Matches computeAllEdgeLevelsFast.
+    private final int computeLevel(int u, int v) {
+        int level = Math.min(endLevel(v, u), endLevel(u, v));
+        if (level != LEVEL_W && level >= vGraph.levelLimit) return LEVEL_W;
+        return level;
+    }
+
+    // 1 + max level of the taut exits at "at" of the edge coming from "from".
+    private final int endLevel(int from, int at) {
+        int[] starts = vGraph.outgoingEdgeStarts;
+        int[] edges = vGraph.outgoingEdges;
+        int[] edgeIndexes = vGraph.outgoingEdgeIndexes;
+        int[] edgeLevels = vGraph.edgeLevels;
+        int[] xPositions = vGraph.xPositions;
+        int[] yPositions = vGraph.yPositions;
+        int x1 = xPositions[from], y1 = yPositions[from];
+        int x2 = xPositions[at], y2 = yPositions[at];
+
+        int maxLevel = 0;
+        for (int j=starts[at];j<starts[at+1];++j) {
+            int next = edges[j];
+            if (!graph.isTaut(x1, y1, x2, y2, xPositions[next], yPositions[next])) continue;
+            int level = edgeLevels[edgeIndexes[j]];
+            if (level == LEVEL_W) return LEVEL_W;
+            if (level > maxLevel) maxLevel = level;
+        }
+        return maxLevel + 1;
+    }
+
+    // Queues the edges that have (u,v) as a taut exit. Tautness is symmetric, so these are the exits of (u,v).
+    private final void pushExits(int u, int v) {
+        pushExitsAt(v, u);
+        pushExitsAt(u, v);
+    }
+
+    private final void pushExitsAt(int from, int at) {
+        int[] starts = vGraph.outgoingEdgeStarts;
+        int[] edges = vGraph.outgoingEdges;
+        int[] edgeIndexes = vGraph.outgoingEdgeIndexes;
+        int[] xPositions = vGraph.xPositions;
+        int[] yPositions = vGraph.yPositions;
+        int x1 = xPositions[from], y1 = yPositions[from];
+        int x2 = xPositions[at], y2 = yPositions[at];
+
+        for (int j=starts[at];j<starts[at+1];++j) {
+            int next = edges[j];
+            if (!graph.isTaut(x1, y1, x2, y2, xPositions[next], yPositions[next])) continue;
+            queue.add3(at, next, edgeIndexes[j]);
+        }
+    }
+
+
+    /// \\\ /// \\\ /// \\\ /// \\\ ///
+    ///         SKIP EDGES          ///
+    /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+    private final void updateSkipEdges() {
+        int[] edgeLevels = vGraph.edgeLevels;
+
+        // Nodes where the set of level-W edges changed.
+        for (int i=0;i<removedList.size;i+=3) {
+            if (oldLevel(removedList.get(i)) == LEVEL_W) {
+                addWNode(removedList.get(i+1));
+                addWNode(removedList.get(i+2));
+            }
+        }
+        for (int i=0;i<addedList.size;i+=3) {
+            if (edgeLevels[addedList.get(i)] == LEVEL_W) {
+                addWNode(addedList.get(i+1));
+                addWNode(addedList.get(i+2));
+            }
+        }
+        for (int i=0;i<savedList.size;i+=3) {
+            int edgeIndex = savedList.get(i);
+            if ((oldLevels[edgeIndex] == LEVEL_W) != (edgeLevels[edgeIndex] == LEVEL_W)) {
+                addWNode(savedList.get(i+1));
+                addWNode(savedList.get(i+2));
+            }
+        }
+
+        // Every skip vertex with a chain through a changed node, before or after the change.
+        for (int i=0;i<wNodeList.size;++i) {
+            int t = wNodeList.get(i);
+            addAffected(t);
+            walkChains(t, true);
+            walkChains(t, false);
+        }
+
+        // Rebuild the skip edges of the affected vertices, then repack.
+        int nAffected = affectedList.size;
+        int[] affected = Arrays.copyOf(affectedList.array, nAffected);
+        Arrays.sort(affected);
+        int[][] rowDests = new int[nAffected][];
+        int[][] rowNextNodes = new int[nAffected][];
+        float[][] rowWeights = new float[nAffected][];
+        int[] rowSizes = new int[nAffected];
+        for (int k=0;k<nAffected;++k) {
+            computeSkipEdges(affected[k], k, rowDests, rowNextNodes, rowWeights, rowSizes);
+        }
+
+        int maxSize = vGraph.maxSize();
+        int[] oldStarts = vGraph.skipEdgeStarts;
+        int oldSkipMaxSize = oldStarts.length-1;
+        int total = oldStarts[oldSkipMaxSize];
+        for (int k=0;k<nAffected;++k) {
+            int v = affected[k];
+            total += rowSizes[k] - (v < oldSkipMaxSize ? oldStarts[v+1] - oldStarts[v] : 0);
+        }
+
+        int[] starts = new int[maxSize+1];
+        int[] dests = new int[total];
+        int[] nextNodes = new int[total];
+        float[] weights = new float[total];
+        int pos = 0;
+        int next = 0;
+        for (int k=0;k<=nAffected;++k) {
+            int until = k < nAffected ? affected[k] : maxSize;
+            int from = next < oldSkipMaxSize ? oldStarts[next] : oldStarts[oldSkipMaxSize];
+            int to = until < oldSkipMaxSize ? oldStarts[until] : oldStarts[oldSkipMaxSize];
+            System.arraycopy(vGraph.outgoingSkipEdges, from, dests, pos, to-from);
+            System.arraycopy(vGraph.outgoingSkipEdgeNextNodes, from, nextNodes, pos, to-from);
+            System.arraycopy(vGraph.outgoingSkipEdgeWeights, from, weights, pos, to-from);
+            for (int v=next;v<until;++v) {
+                starts[v] = pos + (v < oldSkipMaxSize ? oldStarts[v] : oldStarts[oldSkipMaxSize]) - from;
+            }
+            pos += to-from;
+            if (k == nAffected) break;
+
+            int v = until;
+            starts[v] = pos;
+            int size = rowSizes[k];
+            if (size > 0) {
+                System.arraycopy(rowDests[k], 0, dests, pos, size);
+                System.arraycopy(rowNextNodes[k], 0, nextNodes, pos, size);
+                System.arraycopy(rowWeights[k], 0, weights, pos, size);
+            }
+            pos += size;
+            next = v+1;
+        }
+        starts[maxSize] = pos;
+
+        vGraph.skipEdgeStarts = starts;
+        vGraph.outgoingSkipEdges = dests;
+        vGraph.outgoingSkipEdgeNextNodes = nextNodes;
+        vGraph.outgoingSkipEdgeWeights = weights;
+    }
+
+    private final void addWNode(int v) {
+        if (wNodes.add(v)) wNodeList.add(v);
+    }
+
+    private final void addAffected(int v) {
+        if (affectedSkipVertices.add(v)) affectedList.add(v);
+    }
+
+    private final int oldLevel(int edgeIndex) {
+        return savedEdges.contains(edgeIndex) ? oldLevels[edgeIndex] : vGraph.edgeLevels[edgeIndex];
+    }
+
+    // Level-W adjacency before (old) or after the update.
+    private final int wStart(int v, boolean old) {
+        if (old) return oldStart(v);
+        return vGraph.outgoingEdgeStarts[v];
+    }
+
+    private final int wEnd(int v, boolean old) {
+        if (old) return oldEnd(v);
+        return vGraph.outgoingEdgeStarts[v+1];
+    }
+
+    private final boolean isLevelW(int j, boolean old) {
+        if (old) return oldLevel(oldOutgoingEdgeIndexes[j]) == LEVEL_W;
+        return vGraph.edgeLevels[vGraph.outgoingEdgeIndexes[j]] == LEVEL_W;
+    }
+
+    private final int dest(int j, boolean old) {
+        return old ? oldOutgoingEdges[j] : vGraph.outgoingEdges[j];
+    }
+
+    private final int nLevelWNeighbours(int v, boolean old) {
+        int count = 0;
+        for (int j=wStart(v, old);j<wEnd(v, old);++j) {
+            if (isLevelW(j, old)) ++count;
+        }
+        return count;
+    }
+
+    private final boolean isSkipVertex(int v, boolean old) {
+        int n = nLevelWNeighbours(v, old);
+        return n != 0 && n != 2;
+    }
+
+    // Follows each level-W edge of t through degree-2 vertices, and marks the skip vertex at the end.
+    private final void walkChains(int t, boolean old) {
+        for (int j=wStart(t, old);j<wEnd(t, old);++j) {
+            if (!isLevelW(j, old)) continue;
+            int previous = t;
+            int current = dest(j, old);
+            while (current != t && !isSkipVertex(current, old)) {
+                int nextNode = -1;
+                for (int k=wStart(current, old);k<wEnd(current, old);++k) {
+                    if (!isLevelW(k, old) || dest(k, old) == previous) continue;
+                    nextNode = dest(k, old);
+                    break;
+                }
+                if (nextNode == -1) break;
+                previous = current;
+                current = nextNode;
+            }
+            addAffected(current);
+        }
+    }
+
+    // Same as markSkipVertices, connectSkipEdgesAndGroupLevelWEdges and pruneParallelSkipEdges for one vertex.
+    private final void computeSkipEdges(int v, int k, int[][] rowDests, int[][] rowNextNodes, float[][] rowWeights, int[] rowSizes) {
+        if (deadNodes.contains(v) || !isSkipVertex(v, false)) {
+            rowSizes[k] = 0;
+            return;
+        }
+        int[] starts = vGraph.outgoingEdgeStarts;
+        int[] edges = vGraph.outgoingEdges;
+        int[] edgeIndexes = vGraph.outgoingEdgeIndexes;
+        float[] edgeWeights = vGraph.edgeWeights;
+
+        int degree = nLevelWNeighbours(v, false);
+        int[] dests = new int[degree];
+        int[] nextNodes = new int[degree];
+        float[] weights = new float[degree];
+        int d = 0;
+        for (int j=starts[v];j<starts[v+1];++j) {
+            if (!isLevelW(j, false)) continue;
+            int previous = v;
+            int current = edges[j];
+            float weight = edgeWeights[edgeIndexes[j]];
+            nextNodes[d] = current;
+            while (!isSkipVertex(current, false)) {
+                for (int m=starts[current];m<starts[current+1];++m) {
+                    if (!isLevelW(m, false) || edges[m] == previous) continue;
+                    previous = current;
+                    current = edges[m];
+                    weight += edgeWeights[edgeIndexes[m]];
+                    break;
+                }
+            }
+            dests[d] = current;
+            weights[d] = weight;
+            ++d;
+        }
+
+        // Prune parallel skip edges, keeping the shortest. Same swaps as pruneParallelSkipEdges.
+        if (destSlotTickets.length < vGraph.maxSize()) {
+            destSlotTickets = new int[vGraph.maxSize()];
+            destSlots = new int[vGraph.maxSize()];
+            destSlotTicket = 0;
+        }
+        ++destSlotTicket;
+        int[] lowestCostEdgeIndex = new int[degree];
+        float[] lowestCost = new float[degree];
+        int nUsed = 0;
+        for (int j=0;j<degree;++j) {
+            int dest = dests[j];
+            float weight = weights[j];
+            if (destSlotTickets[dest] != destSlotTicket) {
+                destSlotTickets[dest] = destSlotTicket;
+                destSlots[dest] = nUsed;
+                lowestCostEdgeIndex[nUsed] = j;
+                lowestCost[nUsed] = weight;
+                ++nUsed;
+            } else {
+                int index = destSlots[dest];
+                if (weight < lowestCost[index]) {
+                    swap(dests, nextNodes, weights, lowestCostEdgeIndex[index], j);
+                    swap(dests, nextNodes, weights, j, degree-1);
+                    lowestCost[index] = weight;
+                } else {
+                    swap(dests, nextNodes, weights, j, degree-1);
+                }
+                --j; --degree;
+            }
+        }
+
+        rowDests[k] = dests;
+        rowNextNodes[k] = nextNodes;
+        rowWeights[k] = weights;
+        rowSizes[k] = degree;
+    }
+
+    private static final void swap(int[] dests, int[] nextNodes, float[] weights, int i1, int i2) {
+        int temp = dests[i1]; dests[i1] = dests[i2]; dests[i2] = temp;
+        temp = nextNodes[i1]; nextNodes[i1] = nextNodes[i2]; nextNodes[i2] = temp;
+        float tempf = weights[i1]; weights[i1] = weights[i2]; weights[i2] = tempf;
+    }
+
+
+    /// \\\ /// \\\ /// \\\ /// \\\ ///
+    ///          HELPERS            ///
+    /// \\\ /// \\\ /// \\\ /// \\\ ///
+
+    /**
+     * A set of indexes that is cleared in O(1) by moving to the next ticket.
+     */
+    private static final class TicketedSet {
+        private int[] tickets = new int[0];
+        private int ticket = 1;
+
+        final void clear(int capacity) {
+            if (tickets.length < capacity || ticket == Integer.MAX_VALUE) {
+                tickets = new int[Math.max(capacity, tickets.length)];
+                ticket = 0;
+            }
+            ++ticket;
+        }
+
+        final void ensureCapacity(int capacity) {
+            if (tickets.length < capacity) {
+                tickets = Arrays.copyOf(tickets, Math.max(capacity, tickets.length*2));
+            }
+        }
+
+        final int capacity() {
+            return tickets.length;
+        }
+
+        final boolean contains(int i) {
+            return tickets[i] == ticket;
+        }
+
+        // Returns true if i was not already in the set.
+        final boolean add(int i) {
+            if (tickets[i] == ticket) return false;
+            tickets[i] = ticket;
+            return true;
+        }
+    }
+
+    private static final class IntList {
+        int[] array = new int[16];
+        int size = 0;
+
+        final void clear() {
+            size = 0;
+        }
+
+        final int get(int i) {
+            return array[i];
+        }
+
+        final void add(int value) {
+            if (size >= array.length) array = Arrays.copyOf(array, array.length*2);
+            array[size++] = value;
+        }
+
+        final void add2(int a, int b) {
+            add(a); add(b);
+        }
+
+        final void add3(int a, int b, int c) {
+            add(a); add(b); add(c);
+        }
+
+        final int pop() {
+            return array[--size];
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package algorithms.sparsevgs;
+
+import grid.GridGraph;
+
+/**
+ * Per-map blocked-run extents used by LineOfSightScanner and LineOfSightScannerDouble.
+ * Read-only once computed, so one instance can be shared by any number of scanners on any thread.
+ * Must be recomputed (or updated row by row) if the grid changes.
+ */
+public final class LineOfSightExtents {
+    final int[][] rightDownExtents;
+    final int[][] leftDownExtents;
+    private final GridGraph graph;
+
+    public LineOfSightExtents(GridGraph graph) {
+        this.graph = graph;
+        int sizeX = graph.sizeX;
+        int sizeY = graph.sizeY;
+
+        rightDownExtents = new int[sizeY+2][];
+        leftDownExtents = new int[sizeY+2][];
+        for (int y=0;y<sizeY+2;++y) {
+            rightDownExtents[y] = new int[sizeX+1];
+            leftDownExtents[y] = new int[sizeX+1];
+            computeRow(y);
+        }
+    }
+
+    /**
+     * Recomputes the extents affected by changes to the tiles in row tileY.
+     * Scanners sharing these extents must not be in use while this runs.
+     */
+    final void updateTileRow(int tileY) {
+        computeRow(tileY+1);
+    }
+
+    private final void computeRow(int y) {
+        int sizeX = graph.sizeX;
+        int[] rightDownExtentsRow = rightDownExtents[y];
+        int[] leftDownExtentsRow = leftDownExtents[y];
+
+        // graph.isBlocked(x,y) is the same as graph.bottomLeftOfBlockedTile(x,y)
+        boolean lastIsBlocked = true;
+        int lastX = -1;
+        for (int x=0;x<=sizeX;++x) {
+            leftDownExtentsRow[x] = lastX;
+            if (graph.isBlocked(x, y-1) != lastIsBlocked) {
+                lastX = x;
+                lastIsBlocked = !lastIsBlocked;
+            }
+        }
+        lastIsBlocked = true;
+        lastX = sizeX+1;
+        for (int x=sizeX;x>=0;--x) {
+            rightDownExtentsRow[x] = lastX;
+            if (graph.isBlocked(x-1, y-1) != lastIsBlocked) {
+                lastX = x;
+                lastIsBlocked = !lastIsBlocked;
+            }
+        }
+    }
+
+    public final boolean isFor(GridGraph graph) {
+        return this.graph == graph;
+    }
+
+    /**
+     * @return an estimate of the memory used by the extents, in bytes.
+     */
+    final long memoryUsage() {
+        long bytes = 0;
+        for (int y=0;y<rightDownExtents.length;++y) {
+            bytes += 16 + rightDownExtents[y].length*4L;
+            bytes += 16 + leftDownExtents[y].length*4L;
+        }
+        return bytes;
+    }
+}
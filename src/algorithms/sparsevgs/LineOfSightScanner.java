@@ -11,57 +11,46 @@ import algorithms.anya.Fraction;
 import algorithms.datatypes.SnapshotItem;
 
 /**
- * Singleton. Do not make multiple simultaneous copies of this class or use in parallel code.
+ * Not thread-safe: each thread that scans needs its own instance.
+ * Instances on the same map can share one read-only LineOfSightExtents.
  */
 public final class LineOfSightScanner {
-    public static ArrayList<List<SnapshotItem>> snapshotList = new ArrayList<>();
-    private static ArrayList<SnapshotItem> snapshots = new ArrayList<>();
-    private static int snapshot_sx;
-    private static int snapshot_sy;
+    public final ArrayList<List<SnapshotItem>> snapshotList = new ArrayList<>();
+    private final ArrayList<SnapshotItem> snapshots = new ArrayList<>();
+    private int snapshot_sx;
+    private int snapshot_sy;
     
     private final GridGraph graph;
     private final int sizeX;
     private final int sizeY;
     
-    private static int[][] rightDownExtents;
-    private static int[][] leftDownExtents;
-    private static LOSInterval[] intervalStack;
-    private static int intervalStackSize;
+    private final int[][] rightDownExtents;
+    private final int[][] leftDownExtents;
+    private LOSInterval[] intervalStack;
+    private int intervalStackSize;
     
-    public static int[] successorsX;
-    public static int[] successorsY;
-    public static int nSuccessors;
-
-    private static void initialiseExtents(GridGraph graph) {
-        // Don't reinitialise if graph is the same size as the last time.
-        if (rightDownExtents != null && graph.sizeY+2 == rightDownExtents.length && graph.sizeX+1 == rightDownExtents[0].length) return;
-
-        rightDownExtents = new int[graph.sizeY+2][];
-        leftDownExtents = new int[graph.sizeY+2][];
-        for (int y=0;y<graph.sizeY+2;++y) {
-            rightDownExtents[y] = new int[graph.sizeX+1];
-            leftDownExtents[y] = new int[graph.sizeX+1];
-        }
-    }
-    
-    private static void initialiseStack() {
+    public int[] successorsX;
+    public int[] successorsY;
+    public int nSuccessors;
+
+    private void initialiseStack() {
         if (intervalStack != null) return;
         intervalStack = new LOSInterval[11];
         intervalStackSize = 0;
     }
     
-    private static void initialiseSuccessorList() {
+    private void initialiseSuccessorList() {
         if (successorsX != null) return;
         successorsX = new int[11];
         successorsY = new int[11];
         nSuccessors = 0;
     }
     
-    private static final void clearSuccessors() {
+    private final void clearSuccessors() {
         nSuccessors = 0;
     }
     
-    private static final void stackPush(LOSInterval interval) {
+    private final void stackPush(LOSInterval interval) {
         if (intervalStackSize >= intervalStack.length) {
             intervalStack = Arrays.copyOf(intervalStack, intervalStack.length*2);
         }
@@ -71,28 +60,28 @@ public final class LineOfSightScanner {
         //addToSnapshot(interval); // Uncomment for debugging.
     }
     
-    private static final void addToSnapshot(LOSInterval interval) {
+    private final void addToSnapshot(LOSInterval interval) {
         snapshots.add(SnapshotItem.generate(new Integer[]{interval.y, interval.xL.n, interval.xL.d, interval.xR.n, interval.xR.d, snapshot_sx, snapshot_sy}, Color.GREEN));
         snapshotList.add(new ArrayList<SnapshotItem>(snapshots));
     }
     
-    public static final void clearSnapshots() {
+    public final void clearSnapshots() {
         snapshotList.clear();
         snapshots.clear();
     }
     
-    private static final LOSInterval stackPop() {
+    private final LOSInterval stackPop() {
         LOSInterval temp = intervalStack[intervalStackSize-1];
         --intervalStackSize;
         intervalStack[intervalStackSize] = null;
         return temp;
     }
     
-    private static final void clearStack() {
+    private final void clearStack() {
         intervalStackSize = 0;
     }
     
-    private static final void addSuccessor(int x, int y) {
+    private final void addSuccessor(int x, int y) {
         if (nSuccessors >= successorsX.length) {
             successorsX = Arrays.copyOf(successorsX, successorsX.length*2);
             successorsY = Arrays.copyOf(successorsY, successorsY.length*2);
@@ -103,40 +92,19 @@ public final class LineOfSightScanner {
     }
     
     public LineOfSightScanner(GridGraph gridGraph) {
-        initialiseExtents(gridGraph);
-        initialiseSuccessorList();
-        initialiseStack();
-        
+        this(gridGraph, new LineOfSightExtents(gridGraph));
+    }
+    
+    public LineOfSightScanner(GridGraph gridGraph, LineOfSightExtents extents) {
+        if (!extents.isFor(gridGraph)) throw new UnsupportedOperationException("Extents were computed for a different graph!");
         graph = gridGraph;
         sizeX = graph.sizeX;
         sizeY = graph.sizeY;
-        computeExtents();
-    }
-    
-    private void computeExtents() {
-        // graph.isBlocked(x,y) is the same as graph.bottomLeftOfBlockedTile(x,y)
-        LineOfSightScanner.initialiseExtents(graph);
+        rightDownExtents = extents.rightDownExtents;
+        leftDownExtents = extents.leftDownExtents;
         
-        for (int y=0;y<sizeY+2;++y) {
-            boolean lastIsBlocked = true;
-            int lastX = -1;
-            for (int x=0;x<=sizeX;++x) {
-                leftDownExtents[y][x] = lastX; 
-                if (graph.isBlocked(x, y-1) != lastIsBlocked) {
-                    lastX = x;
-                    lastIsBlocked = !lastIsBlocked;
-                }
-            }
-            lastIsBlocked = true;
-            lastX = sizeX+1;
-            for (int x=sizeX;x>=0;--x) {
-                rightDownExtents[y][x] = lastX; 
-                if (graph.isBlocked(x-1, y-1) != lastIsBlocked) {
-                    lastX = x;
-                    lastIsBlocked = !lastIsBlocked;
-                }
-            }
-        }
+        initialiseSuccessorList();
+        initialiseStack();
     }
     
     /**
@@ -1121,17 +1089,6 @@ public final class LineOfSightScanner {
         }
     }
 
-    public static void clearMemory() {
-        snapshotList.clear();
-        snapshots.clear();
-        rightDownExtents = null;
-        leftDownExtents = null;
-        intervalStack = null;
-        successorsX = null;
-        successorsY = null;
-        System.gc();
-    }
-    
 }
 
 
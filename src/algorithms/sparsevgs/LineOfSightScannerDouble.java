@@ -10,28 +10,29 @@ import java.util.List;
 import algorithms.datatypes.SnapshotItem;
 
 /**
- * Singleton. Do not make multiple simultaneous copies of this class or use in parallel code.
+ * Not thread-safe: each thread that scans needs its own instance.
+ * Instances on the same map can share one read-only LineOfSightExtents.
  */
 public final class LineOfSightScannerDouble {
     private static double EPSILON = 0.0000001;
 
-    public static ArrayList<List<SnapshotItem>> snapshotList = new ArrayList<>();
-    private static ArrayList<SnapshotItem> snapshots = new ArrayList<>();
-    private static int snapshot_sx;
-    private static int snapshot_sy;
+    public final ArrayList<List<SnapshotItem>> snapshotList = new ArrayList<>();
+    private final ArrayList<SnapshotItem> snapshots = new ArrayList<>();
+    private int snapshot_sx;
+    private int snapshot_sy;
     
     private final GridGraph graph;
     private final int sizeX;
     private final int sizeY;
     
-    private static int[][] rightDownExtents;
-    private static int[][] leftDownExtents;
-    private static LOSIntervalDouble[] intervalStack;
-    private static int intervalStackSize;
+    private final int[][] rightDownExtents;
+    private final int[][] leftDownExtents;
+    private LOSIntervalDouble[] intervalStack;
+    private int intervalStackSize;
     
-    public static int[] successorsX;
-    public static int[] successorsY;
-    public static int nSuccessors;
+    public int[] successorsX;
+    public int[] successorsY;
+    public int nSuccessors;
 
     // Double API    
     private final double toDouble(int n) {return (double)n;}
@@ -58,36 +59,24 @@ public final class LineOfSightScannerDouble {
         return (int)(n + 0.5);
     }
 
-    private static void initialiseExtents(GridGraph graph) {
-        // Don't reinitialise if graph is the same size as the last time.
-        if (rightDownExtents != null && graph.sizeY+2 == rightDownExtents.length && graph.sizeX+1 == rightDownExtents[0].length) return;
-
-        rightDownExtents = new int[graph.sizeY+2][];
-        leftDownExtents = new int[graph.sizeY+2][];
-        for (int y=0;y<graph.sizeY+2;++y) {
-            rightDownExtents[y] = new int[graph.sizeX+1];
-            leftDownExtents[y] = new int[graph.sizeX+1];
-        }
-    }
-    
-    private static void initialiseStack() {
+    private void initialiseStack() {
         if (intervalStack != null) return;
         intervalStack = new LOSIntervalDouble[11];
         intervalStackSize = 0;
     }
     
-    private static void initialiseSuccessorList() {
+    private void initialiseSuccessorList() {
         if (successorsX != null) return;
         successorsX = new int[11];
         successorsY = new int[11];
         nSuccessors = 0;
     }
     
-    private static final void clearSuccessors() {
+    private final void clearSuccessors() {
         nSuccessors = 0;
     }
     
-    private static final void stackPush(LOSIntervalDouble interval) {
+    private final void stackPush(LOSIntervalDouble interval) {
         if (intervalStackSize >= intervalStack.length) {
             intervalStack = Arrays.copyOf(intervalStack, intervalStack.length*2);
         }
@@ -97,7 +86,7 @@ public final class LineOfSightScannerDouble {
         //addToSnapshot(interval); // Uncomment for debugging.
     }
     
-    private static final void addToSnapshot(LOSIntervalDouble interval) {
+    private final void addToSnapshot(LOSIntervalDouble interval) {
         final int RES = 100000;
         int xLn = (int)(interval.xL*RES);
         int xRn = (int)(interval.xR*RES);
@@ -106,23 +95,23 @@ public final class LineOfSightScannerDouble {
         snapshotList.add(new ArrayList<SnapshotItem>(snapshots));
     }
     
-    public static final void clearSnapshots() {
+    public final void clearSnapshots() {
         snapshotList.clear();
         snapshots.clear();
     }
     
-    private static final LOSIntervalDouble stackPop() {
+    private final LOSIntervalDouble stackPop() {
         LOSIntervalDouble temp = intervalStack[intervalStackSize-1];
         --intervalStackSize;
         intervalStack[intervalStackSize] = null;
         return temp;
     }
     
-    private static final void clearStack() {
+    private final void clearStack() {
         intervalStackSize = 0;
     }
     
-    private static final void addSuccessor(int x, int y) {
+    private final void addSuccessor(int x, int y) {
         if (nSuccessors >= successorsX.length) {
             successorsX = Arrays.copyOf(successorsX, successorsX.length*2);
             successorsY = Arrays.copyOf(successorsY, successorsY.length*2);
@@ -133,40 +122,19 @@ public final class LineOfSightScannerDouble {
     }
     
     public LineOfSightScannerDouble(GridGraph gridGraph) {
-        initialiseExtents(gridGraph);
-        initialiseSuccessorList();
-        initialiseStack();
-        
+        this(gridGraph, new LineOfSightExtents(gridGraph));
+    }
+    
+    public LineOfSightScannerDouble(GridGraph gridGraph, LineOfSightExtents extents) {
+        if (!extents.isFor(gridGraph)) throw new UnsupportedOperationException("Extents were computed for a different graph!");
         graph = gridGraph;
         sizeX = graph.sizeX;
         sizeY = graph.sizeY;
-        computeExtents();
-    }
-    
-    private void computeExtents() {
-        // graph.isBlocked(x,y) is the same as graph.bottomLeftOfBlockedTile(x,y)
-        LineOfSightScannerDouble.initialiseExtents(graph);
+        rightDownExtents = extents.rightDownExtents;
+        leftDownExtents = extents.leftDownExtents;
         
-        for (int y=0;y<sizeY+2;++y) {
-            boolean lastIsBlocked = true;
-            int lastX = -1;
-            for (int x=0;x<=sizeX;++x) {
-                leftDownExtents[y][x] = lastX; 
-                if (graph.isBlocked(x, y-1) != lastIsBlocked) {
-                    lastX = x;
-                    lastIsBlocked = !lastIsBlocked;
-                }
-            }
-            lastIsBlocked = true;
-            lastX = sizeX+1;
-            for (int x=sizeX;x>=0;--x) {
-                rightDownExtents[y][x] = lastX; 
-                if (graph.isBlocked(x-1, y-1) != lastIsBlocked) {
-                    lastX = x;
-                    lastIsBlocked = !lastIsBlocked;
-                }
-            }
-        }
+        initialiseSuccessorList();
+        initialiseStack();
     }
     
     /**
@@ -1151,17 +1119,6 @@ public final class LineOfSightScannerDouble {
         }
     }
 
-    public static void clearMemory() {
-        snapshotList.clear();
-        snapshots.clear();
-        rightDownExtents = null;
-        leftDownExtents = null;
-        intervalStack = null;
-        successorsX = null;
-        successorsY = null;
-        System.gc();
-    }
-    
 }
 
 
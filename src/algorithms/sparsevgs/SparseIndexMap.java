@@ -0,0 +1,117 @@
+package algorithms.sparsevgs;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed map from int keys (node or edge indexes) to the indexes 0, 1, 2, ... in the order they were added.
+ * Slots are ticketed, so clear() is O(1), and the memory used grows with the number of keys added per query,
+ * not with the range of the keys.
+ */
+final class SparseIndexMap {
+
+    private int[] keys;
+    private int[] indexes;
+    private int[] tickets;  // The current ticket iff the slot is in use.
+    private int ticketNumber = 1;
+    private int mask;
+    private int size;
+
+    /**
+     * @param capacity initial number of slots. Must be a power of two.
+     */
+    SparseIndexMap(int capacity) {
+        keys = new int[capacity];
+        indexes = new int[capacity];
+        tickets = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    final void clear() {
+        if (ticketNumber == Integer.MAX_VALUE) {
+            Arrays.fill(tickets, 0);
+            ticketNumber = 0;
+        }
+        ++ticketNumber;
+        size = 0;
+    }
+
+    final int size() {
+        return size;
+    }
+
+    /**
+     * @return the index of key, or -1 if key has not been added since the last clear.
+     */
+    final int indexOf(int key) {
+        int slot = hash(key) & mask;
+        while (tickets[slot] == ticketNumber) {
+            if (keys[slot] == key) return indexes[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    final boolean contains(int key) {
+        return indexOf(key) != -1;
+    }
+
+    /**
+     * @return the index of key, adding key with index size() if it is not in the map.
+     */
+    final int put(int key) {
+        int slot = hash(key) & mask;
+        while (tickets[slot] == ticketNumber) {
+            if (keys[slot] == key) return indexes[slot];
+            slot = (slot + 1) & mask;
+        }
+        if (2*(size+1) > keys.length) {
+            grow();
+            return put(key);
+        }
+        tickets[slot] = ticketNumber;
+        keys[slot] = key;
+        indexes[slot] = size;
+        return size++;
+    }
+
+    /**
+     * @return true iff key was not in the map, and has been added.
+     */
+    final boolean add(int key) {
+        int oldSize = size;
+        put(key);
+        return size != oldSize;
+    }
+
+    final long memoryUsage() {
+        return 12L*keys.length;
+    }
+
+    private final void grow() {
+        int[] oldKeys = keys;
+        int[] oldIndexes = indexes;
+        int[] oldTickets = tickets;
+        int oldTicketNumber = ticketNumber;
+
+        int capacity = oldKeys.length*2;
+        keys = new int[capacity];
+        indexes = new int[capacity];
+        tickets = new int[capacity];
+        ticketNumber = 1;
+        mask = capacity - 1;
+
+        for (int i=0;i<oldKeys.length;++i) {
+            if (oldTickets[i] != oldTicketNumber) continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (tickets[slot] == ticketNumber) slot = (slot + 1) & mask;
+            tickets[slot] = ticketNumber;
+            keys[slot] = oldKeys[i];
+            indexes[slot] = oldIndexes[i];
+        }
+    }
+
+    private static final int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,14 +1,12 @@
 package algorithms.sparsevgs;
 
 import grid.GridGraph;
+import algorithms.datatypes.PreprocessingCache;
 
 import java.util.Arrays;
 
 public class SparseVisibilityGraph {
 
-    private static SparseVisibilityGraph storedVisibilityGraph;
-    private static GridGraph storedGridGraph;
-    
     private final GridGraph graph;
     private LineOfSightScannerDouble losScanner;
     private final int sizeXPlusOne;
@@ -61,6 +59,7 @@ public class SparseVisibilityGraph {
             
             long _ed = System.nanoTime();
             System.out.println("Construction Time: " + (_ed-_st)/1000000.);
+            PreprocessingCache.updateSize(graph, SparseVisibilityGraph.class, this, memoryUsage());
         }
 
         restoreOriginalGraph();
@@ -92,9 +91,10 @@ public class SparseVisibilityGraph {
         // Safeguard against multiple restores.
         if (startIndex == -1) return;
         
-        // Reset hasEdgeToGoal array.
+        // Reset hasEdgeToGoal and hasEdgeToStart arrays.
         markHasEdgeToGoal(false);
-        // PostCondition: hasEdgeToGoal has all values == false.
+        markHasEdgeToStart(false);
+        // PostCondition: hasEdgeToGoal and hasEdgeToStart have all values == false.
         if (endIndex >= originalSize) {
             SVGNode e = nodes[endIndex];
             nodeIndex[e.y*sizeXPlusOne + e.x] = -1;
@@ -167,8 +167,9 @@ public class SparseVisibilityGraph {
         }
         addEdgesToVisibleNeighbours(endIndex, ex, ey);
         
-        // Mark all hasEdgeToGoal vertices.
+        // Mark all hasEdgeToGoal and hasEdgeToStart vertices.
         markHasEdgeToGoal(true);
+        markHasEdgeToStart(true);
     }
 
     private final int addEdgesToVisibleNeighbours(int index, int x, int y) {
@@ -194,6 +195,14 @@ public class SparseVisibilityGraph {
         }
     }
     
+    private final void markHasEdgeToStart(boolean value) {
+        int[] startNeighbours = nodes[startIndex].outgoingEdges;
+        int n = nodes[startIndex].nEdges;
+        for (int i=0;i<n;++i) {
+            nodes[startNeighbours[i]].hasEdgeToStart = value;
+        }
+    }
+    
     private final void addAllEdges() {
         int fromX, fromY, toX, toY;
         for (int i=0;i<nNodes;++i) {
@@ -280,16 +289,16 @@ public class SparseVisibilityGraph {
     }
     
     public static final SparseVisibilityGraph getStoredGraph(GridGraph graph) {
-        SparseVisibilityGraph visibilityGraph = null;
-        if (storedGridGraph != graph || storedVisibilityGraph == null) {
+        SparseVisibilityGraph visibilityGraph = PreprocessingCache.get(graph, SparseVisibilityGraph.class);
+        if (visibilityGraph == null) {
             //("Get new graph");
             visibilityGraph = new SparseVisibilityGraph(graph);
-            storedVisibilityGraph = visibilityGraph;
-            storedGridGraph = graph;
+            // Not built yet. initialise records the real size.
+            PreprocessingCache.put(graph, SparseVisibilityGraph.class, visibilityGraph, 0);
         } else {
             //("Reuse graph");
-            visibilityGraph = repurpose(storedVisibilityGraph);
-            storedVisibilityGraph = visibilityGraph;
+            visibilityGraph = repurpose(visibilityGraph);
+            PreprocessingCache.replace(graph, SparseVisibilityGraph.class, visibilityGraph);
         }
         return visibilityGraph;
     }
@@ -304,9 +313,24 @@ public class SparseVisibilityGraph {
         }
     }
 
+    /**
+     * @return an estimate of the memory used by the graph, in bytes. 0 if it has not been built yet.
+     */
+    public final long memoryUsage() {
+        if (nodes == null) return 0;
+        long bytes = 16 + nodeIndex.length*4L + 16 + nodes.length*8L;
+        for (int i=0;i<nNodes;++i) {
+            SVGNode node = nodes[i];
+            bytes += 40 + 16 + node.outgoingEdges.length*4L + 16 + node.edgeWeights.length*4L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops the cached graphs of all grids.
+     */
     public static void clearMemory() {
-        storedVisibilityGraph = null;
-        storedGridGraph = null;
+        PreprocessingCache.clear(SparseVisibilityGraph.class);
         System.gc();
     }
     
@@ -334,6 +358,8 @@ final class SVGNode {
     int nEdges = 0;
     
     boolean hasEdgeToGoal = false;
+    // Used by backward searches, which reach the start through the start's edges in reverse.
+    boolean hasEdgeToStart = false;
     
     public SVGNode(int x, int y) {
         this.x = x;
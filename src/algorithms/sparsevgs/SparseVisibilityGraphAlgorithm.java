@@ -8,14 +8,14 @@ import java.util.List;
 
 import algorithms.AStarStaticMemory;
 import algorithms.datatypes.SnapshotItem;
-import algorithms.priorityqueue.ReusableIndirectHeap;
 
 
 public class SparseVisibilityGraphAlgorithm extends AStarStaticMemory {
     protected SparseVisibilityGraph visibilityGraph;
     protected boolean reuseGraph = false;
+    protected int nExpanded;
     
-    private SparseVisibilityGraphAlgorithm(GridGraph graph, int sx, int sy, int ex, int ey) {
+    protected SparseVisibilityGraphAlgorithm(GridGraph graph, int sx, int sy, int ex, int ey) {
         super(graph, sx, sy, ex, ey);
     }
     
@@ -30,59 +30,72 @@ public class SparseVisibilityGraphAlgorithm extends AStarStaticMemory {
     }
     
     @Override
-    public void computePath() {
+    protected boolean beginSearch() {
         setupVisibilityGraph();
 
-        int size = visibilityGraph.size();
         int memorySize = visibilityGraph.maxSize();
-        pq = new ReusableIndirectHeap(size, memorySize);
+        pq = initialiseQueue(queueType, memorySize);
         this.initialiseMemory(memorySize, Float.POSITIVE_INFINITY, -1, false);
         
         initialise(visibilityGraph.startNode());
-        int finish = visibilityGraph.endNode();
+        finish = visibilityGraph.endNode();
+        nExpanded = 0;
 
         if (graph.lineOfSight(sx, sy, ex, ey)) {
             // There is a direct path from (sx, sy) to (ex, ey).
             if (sx != ex || sy != ey) {
                 setParent(finish, visibilityGraph.startNode());
+                setDistance(finish, graph.distance(sx, sy, ex, ey));
             }
-            return;
+            return false;
         }
+        return true;
+    }
 
-        while (!pq.isEmpty()) {
-            int current = pq.popMinIndex();
-            setVisited(current, true);
-            
-            if (current == finish) {
-                break;
-            }
-            
-            SVGNode node = visibilityGraph.getOutgoingEdges(current);
-            int[] outgoingEdges = node.outgoingEdges;
-            float[] outgoingWeights = node.edgeWeights;
-            int nEdges = node.nEdges;
+    @Override
+    protected boolean expandNext() {
+        if (pq.isEmpty()) return false;
+        int current = pq.popMinIndex();
+        setVisited(current, true);
+        ++nExpanded;
+        
+        if (current == finish) {
+            return false;
+        }
+        
+        SVGNode node = visibilityGraph.getOutgoingEdges(current);
+        int[] outgoingEdges = node.outgoingEdges;
+        float[] outgoingWeights = node.edgeWeights;
+        int nEdges = node.nEdges;
+        
+        for (int i=0;i<nEdges;++i) {
+            int dest = outgoingEdges[i];
+            float weight = outgoingWeights[i];
             
-            for (int i=0;i<nEdges;++i) {
-                int dest = outgoingEdges[i];
-                float weight = outgoingWeights[i];
+            if (!visited(dest) && relax(current, dest, weight)) {
+                // If relaxation is done.
+                int destX = visibilityGraph.xCoordinateOf(dest);
+                int destY = visibilityGraph.yCoordinateOf(dest);
                 
-                if (!visited(dest) && relax(current, dest, weight)) {
-                    // If relaxation is done.
-                    int destX = visibilityGraph.xCoordinateOf(dest);
-                    int destY = visibilityGraph.yCoordinateOf(dest);
-                    
-                    pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
-                }
+                pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
             }
-            if (node.hasEdgeToGoal) {
-                float weight = graph.distance(node.x, node.y, ex, ey);
-                if (relax(current, finish, weight)) {
-                    pq.decreaseKey(finish, distance(finish));
-                }
+        }
+        if (node.hasEdgeToGoal) {
+            float weight = graph.distance(node.x, node.y, ex, ey);
+            if (relax(current, finish, weight)) {
+                pq.decreaseKey(finish, distance(finish));
             }
-            
-            maybeSaveSearchSnapshot();
         }
+        
+        maybeSaveSearchSnapshot();
+        return true;
+    }
+
+    /**
+     * @return the number of nodes expanded by the last call to computePath.
+     */
+    public int nExpanded() {
+        return nExpanded;
     }
 
     protected void setupVisibilityGraph() {
@@ -134,8 +147,19 @@ public class SparseVisibilityGraphAlgorithm extends AStarStaticMemory {
         return length;
     }
 
+    @Override
+    protected int nodeX(int index) {
+        return visibilityGraph.xCoordinateOf(index);
+    }
+
+    @Override
+    protected int nodeY(int index) {
+        return visibilityGraph.yCoordinateOf(index);
+    }
+
     @Override
     public int[][] getPath() {
+        if (searchCancelled()) return new int[0][];
         int length = pathLength();
         int[][] path = new int[length][];
         int current = visibilityGraph.endNode();
@@ -0,0 +1,218 @@
+package algorithms.sparsevgs;
+
+import algorithms.datatypes.Memory;
+import algorithms.datatypes.SearchContext;
+import algorithms.priorityqueue.PriorityQueueType;
+import algorithms.priorityqueue.ReusableIndirectHeap;
+import grid.GridGraph;
+
+/**
+ * Sparse Visibility Graph search from both ends at once. Still optimal.
+ *
+ * Both searches use the average of the two straight line heuristics as potential:
+ * the forward key of v is g(v) + (|v,goal| - |v,start|)/2, and the backward key uses the negated potential.
+ * The potential is consistent in both directions, and the two keys of any edge's reduced cost agree, so this is
+ * bidirectional Dijkstra on the reduced costs. Each step expands the side with the smaller open list.
+ * Whenever a node is relaxed by one side and has been reached by the other, the path through it is recorded
+ * if it is the shortest so far. The search stops once the shortest recorded path is no longer than the sum
+ * of the smallest keys of the two open lists, as no unexplored path can then be shorter.
+ *
+ * Compared to using the distance to the other end as heuristic on each side, which needs the stopping condition
+ * max(smallest forward key, smallest backward key), this stops far sooner, as the two searches do not each
+ * have to cover the whole ellipse around the start and goal.
+ *
+ * The backward search uses the second context of the search context (SearchContext.reverse()).
+ * At the end, the backward half of the path is copied into the forward parents, so getPath is unchanged.
+ */
+public class SparseVisibilityGraphAlgorithmBidirectional extends SparseVisibilityGraphAlgorithm {
+    private Memory backward;
+    private ReusableIndirectHeap backwardPq;
+    private float bestLength;
+    private int meetingNode;
+
+    private SparseVisibilityGraphAlgorithmBidirectional(GridGraph graph, int sx, int sy, int ex, int ey) {
+        super(graph, sx, sy, ex, ey);
+    }
+
+    public static SparseVisibilityGraphAlgorithmBidirectional graphReuse(GridGraph graph, int sx, int sy, int ex, int ey) {
+        SparseVisibilityGraphAlgorithmBidirectional algo = new SparseVisibilityGraphAlgorithmBidirectional(graph, sx, sy, ex, ey);
+        algo.reuseGraph = true;
+        return algo;
+    }
+
+    /**
+     * Both searches use the binary heap: their keys (distance plus or minus the potential) are not monotone.
+     */
+    @Override
+    public void setPriorityQueue(PriorityQueueType type) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support choosing its priority queue.");
+    }
+
+    @Override
+    protected boolean beginSearch() {
+        setupVisibilityGraph();
+
+        int memorySize = visibilityGraph.maxSize();
+        pq = initialiseHeap(memorySize);
+        this.initialiseMemory(memorySize, Float.POSITIVE_INFINITY, -1, false);
+        SearchContext reverseContext = searchContext().reverse();
+        backward = reverseContext.memory;
+        backward.initialise(memorySize, Float.POSITIVE_INFINITY, -1, false);
+        backwardPq = reverseContext.heap;
+        backwardPq.reset(memorySize);
+
+        int start = visibilityGraph.startNode();
+        finish = visibilityGraph.endNode();
+        pq.decreaseKey(start, potential(sx, sy));
+        memory.setDistance(start, 0f);
+        backward.setDistance(finish, 0f);
+        backwardPq.decreaseKey(finish, -potential(ex, ey));
+        nExpanded = 0;
+        bestLength = Float.POSITIVE_INFINITY;
+        meetingNode = -1;
+
+        if (graph.lineOfSight(sx, sy, ex, ey)) {
+            // There is a direct path from (sx, sy) to (ex, ey).
+            if (sx != ex || sy != ey) {
+                setParent(finish, start);
+                bestLength = graph.distance(sx, sy, ex, ey);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean expandNext() {
+        if (pq.isEmpty() || backwardPq.isEmpty()) return false;
+        if (bestLength <= pq.getMinValue() + backwardPq.getMinValue()) return false;
+
+        if (pq.size() <= backwardPq.size()) {
+            expandForward();
+        } else {
+            expandBackward();
+        }
+        ++nExpanded;
+        maybeSaveSearchSnapshot();
+        return true;
+    }
+
+    @Override
+    protected void endSearch() {
+        if (!costOnly) joinAtMeetingNode();
+    }
+
+    @Override
+    protected float pathCost() {
+        return bestLength;
+    }
+
+    private final void expandForward() {
+        int current = pq.popMinIndex();
+        setVisited(current, true);
+
+        SVGNode node = visibilityGraph.getOutgoingEdges(current);
+        int[] outgoingEdges = node.outgoingEdges;
+        float[] outgoingWeights = node.edgeWeights;
+        int nEdges = node.nEdges;
+
+        for (int i=0;i<nEdges;++i) {
+            int dest = outgoingEdges[i];
+            if (!visited(dest) && relax(current, dest, outgoingWeights[i])) {
+                int destX = visibilityGraph.xCoordinateOf(dest);
+                int destY = visibilityGraph.yCoordinateOf(dest);
+                pq.decreaseKey(dest, distance(dest) + potential(destX, destY));
+                tryMeetingNode(dest);
+            }
+        }
+        if (node.hasEdgeToGoal) {
+            float weight = graph.distance(node.x, node.y, ex, ey);
+            if (relax(current, finish, weight)) {
+                pq.decreaseKey(finish, distance(finish) + potential(ex, ey));
+                tryMeetingNode(finish);
+            }
+        }
+    }
+
+    private final void expandBackward() {
+        int start = visibilityGraph.startNode();
+        int current = backwardPq.popMinIndex();
+        backward.setVisited(current, true);
+
+        SVGNode node = visibilityGraph.getOutgoingEdges(current);
+        int[] outgoingEdges = node.outgoingEdges;
+        float[] outgoingWeights = node.edgeWeights;
+        int nEdges = node.nEdges;
+
+        for (int i=0;i<nEdges;++i) {
+            int dest = outgoingEdges[i];
+            if (!backward.visited(dest) && relaxBackward(current, dest, outgoingWeights[i])) {
+                int destX = visibilityGraph.xCoordinateOf(dest);
+                int destY = visibilityGraph.yCoordinateOf(dest);
+                backwardPq.decreaseKey(dest, backward.distance(dest) - potential(destX, destY));
+                tryMeetingNode(dest);
+            }
+        }
+        if (node.hasEdgeToStart) {
+            float weight = graph.distance(node.x, node.y, sx, sy);
+            if (relaxBackward(current, start, weight)) {
+                backwardPq.decreaseKey(start, backward.distance(start) - potential(sx, sy));
+                tryMeetingNode(start);
+            }
+        }
+    }
+
+    /**
+     * Forward potential. The backward potential is its negation.
+     */
+    private final float potential(int x, int y) {
+        return (graph.distance(x, y, ex, ey) - graph.distance(x, y, sx, sy)) * 0.5f;
+    }
+
+    /**
+     * Same as relax, on the backward search's memory.
+     */
+    private final boolean relaxBackward(int u, int v, float weightUV) {
+        float newWeight = backward.distance(u) + weightUV;
+        if (newWeight < backward.distance(v)) {
+            int p = backward.parent(u);
+            if (p != -1) {
+                int x1 = visibilityGraph.xCoordinateOf(p);
+                int y1 = visibilityGraph.yCoordinateOf(p);
+                int x2 = visibilityGraph.xCoordinateOf(u);
+                int y2 = visibilityGraph.yCoordinateOf(u);
+                int x3 = visibilityGraph.xCoordinateOf(v);
+                int y3 = visibilityGraph.yCoordinateOf(v);
+
+                if (!graph.isTaut(x1,y1,x2,y2,x3,y3)) return false;
+            }
+            backward.setDistance(v, newWeight);
+            backward.setParent(v, u);
+            return true;
+        }
+        return false;
+    }
+
+    private final void tryMeetingNode(int v) {
+        float length = distance(v) + backward.distance(v);
+        if (length < bestLength) {
+            bestLength = length;
+            meetingNode = v;
+        }
+    }
+
+    /**
+     * Points the forward parents of the backward half of the path (meeting node to goal) towards the start.
+     */
+    private final void joinAtMeetingNode() {
+        if (meetingNode == -1) return;
+        int previous = meetingNode;
+        int current = backward.parent(meetingNode);
+        while (current != -1) {
+            int next = backward.parent(current);
+            setParent(current, previous);
+            previous = current;
+            current = next;
+        }
+    }
+}
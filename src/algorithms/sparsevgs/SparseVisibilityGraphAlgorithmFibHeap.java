@@ -7,19 +7,21 @@ import java.util.ArrayList;
 import java.util.List;
 
 import algorithms.PathFindingAlgorithm;
-import algorithms.datatypes.Memory;
+import algorithms.datatypes.SearchContext;
 import algorithms.datatypes.SnapshotItem;
+import main.AlgoFunction;
 
-import algorithms.jgrapht.FibonacciHeap;
-import algorithms.jgrapht.FibonacciHeapNode;
+import algorithms.priorityqueue.IndirectPriorityQueue;
+import algorithms.priorityqueue.PriorityQueueType;
 
 
 public class SparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm {
     protected SparseVisibilityGraph visibilityGraph;
     protected boolean reuseGraph = false;
 
-    private static FibonacciHeapNode<Integer>[] nodeRefs;
-    private FibonacciHeap<Integer> pq = new FibonacciHeap<>();
+    // Fibonacci heap unless chosen otherwise with withQueue.
+    private PriorityQueueType queueType = PriorityQueueType.FIBONACCI;
+    private IndirectPriorityQueue pq;
     
     private SparseVisibilityGraphAlgorithmFibHeap(GridGraph graph, int sx, int sy, int ex, int ey) {
         super(graph, graph.sizeX, graph.sizeY, sx, sy, ex, ey);
@@ -31,12 +33,28 @@ public class SparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm
         return algo;
     }
 
+    /**
+     * Like graphReuse, with another priority queue instead of the Fibonacci heap.
+     */
+    public static AlgoFunction withQueue(PriorityQueueType queueType) {
+        return (GridGraph graph, int sx, int sy, int ex, int ey) -> {
+            SparseVisibilityGraphAlgorithmFibHeap algo = graphReuse(graph, sx, sy, ex, ey);
+            algo.queueType = queueType;
+            return algo;
+        };
+    }
+
+    @Override
+    public void setPriorityQueue(PriorityQueueType type) {
+        queueType = type;
+    }
+
     public SparseVisibilityGraph getVisibilityGraph() {
         return visibilityGraph;
     }
 
     private final void initialise(int s) {
-        decreaseKey(s, 0f, true);
+        pq.decreaseKey(s, 0f);
         setDistance(s, 0f);
     }
     
@@ -46,7 +64,7 @@ public class SparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm
 
         int size = visibilityGraph.size();
         int memorySize = visibilityGraph.maxSize();
-        pq.clear();
+        pq = initialiseQueue(queueType, memorySize);
         this.initialiseMemory(memorySize, Float.POSITIVE_INFINITY, -1, false);
         
         initialise(visibilityGraph.startNode());
@@ -61,9 +79,7 @@ public class SparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm
         }
 
         while (!pq.isEmpty()) {
-            //int current = pq.popMinIndex();
-            FibonacciHeapNode<Integer> currNode = pq.removeMin();
-            int current = currNode.getData();
+            int current = pq.popMinIndex();
 
             setVisited(current, true);
             
@@ -79,22 +95,18 @@ public class SparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm
             for (int i=0;i<nEdges;++i) {
                 int dest = outgoingEdges[i];
                 float weight = outgoingWeights[i];
-                boolean isNewItem = distance(dest) == Float.POSITIVE_INFINITY;
-                
                 if (!visited(dest) && relax(current, dest, weight)) {
                     // If relaxation is done.
                     int destX = visibilityGraph.xCoordinateOf(dest);
                     int destY = visibilityGraph.yCoordinateOf(dest);
                     
-                    decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey), isNewItem);
+                    pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
                 }
             }
             if (node.hasEdgeToGoal) {
-                boolean isNewItem = distance(finish) == Float.POSITIVE_INFINITY;
-
                 float weight = graph.distance(node.x, node.y, ex, ey);
                 if (relax(current, finish, weight)) {
-                    decreaseKey(finish, distance(finish), isNewItem);
+                    pq.decreaseKey(finish, distance(finish));
                 }
             }
             
@@ -102,15 +114,6 @@ public class SparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm
         }
     }
 
-    private final void decreaseKey(int index, float newCost, boolean isNewItem) {
-        if (isNewItem) {
-            nodeRefs[index] = new FibonacciHeapNode<>(index);
-            pq.insert(nodeRefs[index], newCost);
-        } else {
-            pq.decreaseKey(nodeRefs[index], newCost);
-        }
-    }
-
     protected void setupVisibilityGraph() {
         if (reuseGraph) {
             visibilityGraph = SparseVisibilityGraph.getStoredGraph(graph);
@@ -125,10 +128,6 @@ public class SparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm
         } else {
             visibilityGraph.initialise(sx, sy, ex, ey);
         }
-
-        if (nodeRefs == null || visibilityGraph.maxSize() != nodeRefs.length) {
-            nodeRefs = (FibonacciHeapNode<Integer>[])new FibonacciHeapNode[visibilityGraph.maxSize()];
-        }
     }
 
     protected final boolean relax(int u, int v, float weightUV) {
@@ -259,31 +258,31 @@ public class SparseVisibilityGraphAlgorithmFibHeap extends PathFindingAlgorithm
 
 
     private final int parent(int index) {
-        return Memory.parent(index);
+        return memory.parent(index);
     }
     
     private final void setParent(int index, int value) {
-        Memory.setParent(index, value);
+        memory.setParent(index, value);
     }
     
     private final float distance(int index) {
-        return Memory.distance(index);
+        return memory.distance(index);
     }
     
     private final void setDistance(int index, float value) {
-        Memory.setDistance(index, value);
+        memory.setDistance(index, value);
     }
     
     private final boolean visited(int index) {
-        return Memory.visited(index);
+        return memory.visited(index);
     }
     
     private final void setVisited(int index, boolean value) {
-        Memory.setVisited(index, value);
+        memory.setVisited(index, value);
     }
 
     public static void clearMemory() {
-        nodeRefs = null;
+        SearchContext.clearCurrentThread();
         System.gc();
     }
 }
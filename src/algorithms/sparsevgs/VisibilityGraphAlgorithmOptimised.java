@@ -9,7 +9,6 @@ import java.util.List;
 import main.utility.TimeCounter;
 import algorithms.AStarStaticMemory;
 import algorithms.datatypes.SnapshotItem;
-import algorithms.priorityqueue.ReusableIndirectHeap;
 
 
 public class VisibilityGraphAlgorithmOptimised extends AStarStaticMemory {
@@ -31,59 +30,63 @@ public class VisibilityGraphAlgorithmOptimised extends AStarStaticMemory {
     }
     
     @Override
-    public void computePath() {
+    protected boolean beginSearch() {
         setupVisibilityGraph();
 
-        int size = visibilityGraph.size();
         int memorySize = visibilityGraph.maxSize();
-        pq = new ReusableIndirectHeap(size, memorySize);
+        pq = initialiseQueue(queueType, memorySize);
         this.initialiseMemory(memorySize, Float.POSITIVE_INFINITY, -1, false);
         
         initialise(visibilityGraph.startNode());
-        int finish = visibilityGraph.endNode();
+        finish = visibilityGraph.endNode();
 
         if (graph.lineOfSight(sx, sy, ex, ey)) {
             // There is a direct path from (sx, sy) to (ex, ey).
             if (sx != ex || sy != ey) {
                 setParent(finish, visibilityGraph.startNode());
+                setDistance(finish, graph.distance(sx, sy, ex, ey));
             }
-            return;
+            return false;
         }
+        return true;
+    }
 
-        while (!pq.isEmpty()) {
-            int current = pq.popMinIndex();
-            setVisited(current, true);
+    @Override
+    protected boolean expandNext() {
+        if (pq.isEmpty()) return false;
+        int current = pq.popMinIndex();
+        setVisited(current, true);
 TimeCounter.counterA++;
-            if (current == finish) {
-                break;
-            }
-            
-            VGNode node = visibilityGraph.getOutgoingEdges(current);
-            int[] outgoingEdges = node.outgoingEdges;
-            float[] outgoingWeights = node.edgeWeights;
-            int nEdges = node.nEdges;
+        if (current == finish) {
+            return false;
+        }
+        
+        VGNode node = visibilityGraph.getOutgoingEdges(current);
+        int[] outgoingEdges = node.outgoingEdges;
+        float[] outgoingWeights = node.edgeWeights;
+        int nEdges = node.nEdges;
+        
+        for (int i=0;i<nEdges;++i) {
+            int dest = outgoingEdges[i];
+            float weight = outgoingWeights[i];
             
-            for (int i=0;i<nEdges;++i) {
-                int dest = outgoingEdges[i];
-                float weight = outgoingWeights[i];
+            if (!visited(dest) && relax(current, dest, weight)) {
+                // If relaxation is done.
+                int destX = visibilityGraph.xCoordinateOf(dest);
+                int destY = visibilityGraph.yCoordinateOf(dest);
                 
-                if (!visited(dest) && relax(current, dest, weight)) {
-                    // If relaxation is done.
-                    int destX = visibilityGraph.xCoordinateOf(dest);
-                    int destY = visibilityGraph.yCoordinateOf(dest);
-                    
-                    pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
-                }
+                pq.decreaseKey(dest, distance(dest) + graph.distance(destX, destY, ex, ey));
             }
-            if (node.hasEdgeToGoal) {
-                float weight = graph.distance(node.x, node.y, ex, ey);
-                if (relax(current, finish, weight)) {
-                    pq.decreaseKey(finish, distance(finish));
-                }
+        }
+        if (node.hasEdgeToGoal) {
+            float weight = graph.distance(node.x, node.y, ex, ey);
+            if (relax(current, finish, weight)) {
+                pq.decreaseKey(finish, distance(finish));
             }
-            
-            maybeSaveSearchSnapshot();
         }
+        
+        maybeSaveSearchSnapshot();
+        return true;
     }
 
     protected void setupVisibilityGraph() {
@@ -135,8 +138,19 @@ TimeCounter.counterA++;
         return length;
     }
 
+    @Override
+    protected int nodeX(int index) {
+        return visibilityGraph.xCoordinateOf(index);
+    }
+
+    @Override
+    protected int nodeY(int index) {
+        return visibilityGraph.yCoordinateOf(index);
+    }
+
     @Override
     public int[][] getPath() {
+        if (searchCancelled()) return new int[0][];
         int length = pathLength();
         int[][] path = new int[length][];
         int current = visibilityGraph.endNode();
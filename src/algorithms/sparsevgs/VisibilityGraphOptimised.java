@@ -1,14 +1,12 @@
 package algorithms.sparsevgs;
 
 import grid.GridGraph;
+import algorithms.datatypes.PreprocessingCache;
 
 import java.util.Arrays;
 
 public class VisibilityGraphOptimised {
 
-    private static VisibilityGraphOptimised storedVisibilityGraph;
-    private static GridGraph storedGridGraph;
-    
     private final GridGraph graph;
     private LineOfSightScanner losScanner;
     private int[][] nodeIndex;
@@ -56,6 +54,7 @@ public class VisibilityGraphOptimised {
             
             long _ed = System.nanoTime();
             System.out.println("Construction Time: " + (_ed-_st)/1000000.);
+            PreprocessingCache.updateSize(graph, VisibilityGraphOptimised.class, this, memoryUsage());
         }
 
         restoreOriginalGraph();
@@ -276,16 +275,16 @@ public class VisibilityGraphOptimised {
     }
     
     public static final VisibilityGraphOptimised getStoredGraph(GridGraph graph) {
-        VisibilityGraphOptimised visibilityGraph = null;
-        if (storedGridGraph != graph || storedVisibilityGraph == null) {
+        VisibilityGraphOptimised visibilityGraph = PreprocessingCache.get(graph, VisibilityGraphOptimised.class);
+        if (visibilityGraph == null) {
             //("Get new graph");
             visibilityGraph = new VisibilityGraphOptimised(graph);
-            storedVisibilityGraph = visibilityGraph;
-            storedGridGraph = graph;
+            // Not built yet. initialise records the real size.
+            PreprocessingCache.put(graph, VisibilityGraphOptimised.class, visibilityGraph, 0);
         } else {
             //("Reuse graph");
-            visibilityGraph = repurpose(storedVisibilityGraph);
-            storedVisibilityGraph = visibilityGraph;
+            visibilityGraph = repurpose(visibilityGraph);
+            PreprocessingCache.replace(graph, VisibilityGraphOptimised.class, visibilityGraph);
         }
         return visibilityGraph;
     }
@@ -300,9 +299,24 @@ public class VisibilityGraphOptimised {
         }
     }
 
+    /**
+     * @return an estimate of the memory used by the graph, in bytes. 0 if it has not been built yet.
+     */
+    public final long memoryUsage() {
+        if (nodes == null) return 0;
+        long bytes = (16 + 16 + nodeIndex[0].length*4L)*nodeIndex.length + 16 + nodes.length*8L;
+        for (int i=0;i<nNodes;++i) {
+            VGNode node = nodes[i];
+            bytes += 40 + 16 + node.outgoingEdges.length*4L + 16 + node.edgeWeights.length*4L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops the cached graphs of all grids.
+     */
     public static void clearMemory() {
-        storedVisibilityGraph = null;
-        storedGridGraph = null;
+        PreprocessingCache.clear(VisibilityGraphOptimised.class);
         System.gc();
     }
     
@@ -2,7 +2,6 @@ package algorithms.strictthetastar;
 
 import grid.GridGraph;
 import algorithms.BasicThetaStar;
-import algorithms.priorityqueue.ReusableIndirectHeap;
 
 /**
  * An modification of Theta* that I am experimenting with. -Oh
@@ -62,46 +61,34 @@ public class RecursiveStrictThetaStar extends BasicThetaStar {
     }
 
     @Override
-    public void computePath() {
-        int totalSize = (graph.sizeX+1) * (graph.sizeY+1);
+    protected boolean expandNext() {
+        if (pq.isEmpty()) return false;
+        int current = pq.popMinIndex();
+        tryFixBufferValue(current);
+        
+        if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
+            maybeSaveSearchSnapshot();
+            return false;
+        }
+        setVisited(current, true);
 
-        int start = toOneDimIndex(sx, sy);
-        finish = toOneDimIndex(ex, ey);
+        int x = toTwoDimX(current);
+        int y = toTwoDimY(current);
+        
 
-        pq = new ReusableIndirectHeap(totalSize);
-        this.initialiseMemory(totalSize, Float.POSITIVE_INFINITY, -1, false);
+        tryRelaxNeighbour(current, x, y, x-1, y-1);
+        tryRelaxNeighbour(current, x, y, x, y-1);
+        tryRelaxNeighbour(current, x, y, x+1, y-1);
         
-        initialise(start);
+        tryRelaxNeighbour(current, x, y, x-1, y);
+        tryRelaxNeighbour(current, x, y, x+1, y);
         
-        while (!pq.isEmpty()) {
-            int current = pq.popMinIndex();
-            tryFixBufferValue(current);
-            
-            if (current == finish || distance(current) == Float.POSITIVE_INFINITY) {
-                maybeSaveSearchSnapshot();
-                break;
-            }
-            setVisited(current, true);
+        tryRelaxNeighbour(current, x, y, x-1, y+1);
+        tryRelaxNeighbour(current, x, y, x, y+1);
+        tryRelaxNeighbour(current, x, y, x+1, y+1);
 
-            int x = toTwoDimX(current);
-            int y = toTwoDimY(current);
-            
-
-            tryRelaxNeighbour(current, x, y, x-1, y-1);
-            tryRelaxNeighbour(current, x, y, x, y-1);
-            tryRelaxNeighbour(current, x, y, x+1, y-1);
-            
-            tryRelaxNeighbour(current, x, y, x-1, y);
-            tryRelaxNeighbour(current, x, y, x+1, y);
-            
-            tryRelaxNeighbour(current, x, y, x-1, y+1);
-            tryRelaxNeighbour(current, x, y, x, y+1);
-            tryRelaxNeighbour(current, x, y, x+1, y+1);
-
-            maybeSaveSearchSnapshot();
-        }
-        
-        maybePostSmooth();
+        maybeSaveSearchSnapshot();
+        return true;
     }
     
     protected float heuristic(int x, int y) {
@@ -6,11 +6,9 @@ import java.util.ArrayList;
 import java.util.Iterator;
 
 import algorithms.datatypes.Point;
+import algorithms.datatypes.PreprocessingCache;
 
 public class VisibilityGraph {
-    private static VisibilityGraph storedVisibilityGraph;
-    private static GridGraph storedGridGraph;
-    
     protected final GridGraph graph;
     protected int[][] nodeIndex;
     protected int startIndex;
@@ -47,6 +45,7 @@ public class VisibilityGraph {
         
         addNodes();
         addAllEdges();
+        PreprocessingCache.updateSize(graph, VisibilityGraph.class, this, memoryUsage());
         addStartAndEnd(sx, sy, ex, ey);
     }
 
@@ -268,23 +267,39 @@ public class VisibilityGraph {
     }
     
     public static VisibilityGraph getStoredGraph(GridGraph graph, int sx, int sy, int ex, int ey) {
-        VisibilityGraph visibilityGraph = null;
-        if (storedGridGraph != graph || storedVisibilityGraph == null) {
+        VisibilityGraph visibilityGraph = PreprocessingCache.get(graph, VisibilityGraph.class);
+        if (visibilityGraph == null) {
             //("Get new graph");
             visibilityGraph = new VisibilityGraph(graph, sx, sy ,ex, ey);
-            storedVisibilityGraph = visibilityGraph;
-            storedGridGraph = graph;
+            // Not built yet. initialise records the real size.
+            PreprocessingCache.put(graph, VisibilityGraph.class, visibilityGraph, 0);
         } else {
             //("Reuse graph");
-            visibilityGraph = repurpose(storedVisibilityGraph, sx, sy, ex, ey);
-            storedVisibilityGraph = visibilityGraph;
+            visibilityGraph = repurpose(visibilityGraph, sx, sy, ex, ey);
+            PreprocessingCache.replace(graph, VisibilityGraph.class, visibilityGraph);
         }
         return visibilityGraph;
     }
 
+    /**
+     * @return an estimate of the memory used by the graph, in bytes. 0 if it has not been built yet.
+     */
+    public long memoryUsage() {
+        if (nodeList == null) return 0;
+        long bytes = (16 + 16 + (graph.sizeX+1)*4L)*(graph.sizeY+1);
+        bytes += 40 + nodeList.size()*(8 + 24L);
+        bytes += 40;
+        for (ArrayList<Edge> edges : outgoingEdgeList) {
+            bytes += 8 + 40 + edges.size()*(8 + 24L);
+        }
+        return bytes;
+    }
+
+    /**
+     * Drops the cached graphs of all grids.
+     */
     public static void clearMemory() {
-        storedVisibilityGraph = null;
-        storedGridGraph = null;
+        PreprocessingCache.clear(VisibilityGraph.class);
         System.gc();
     }
     
@@ -7,10 +7,24 @@ import algorithms.datatypes.Point;
  */
 public class GridGraph {
 
-    private boolean[] tiles; // Flattened 2D Array
+    /**
+     * Tiles are bit-packed, 64 tiles to a long, with a one-tile border of blocked tiles on every side.
+     * Tile (x,y) is stored at padded position (x+1,y+1), so any tile from (-1,-1) to (sizeX,sizeY)
+     * can be read without a bounds check.
+     * rows is row-major (consecutive x in the same word), columns is the same grid transposed
+     * (consecutive y in the same word). Both are kept in sync by setBlocked.
+     */
+    private final long[] rows;
+    private final long[] columns;
+    private final int wordsPerRow;
+    private final int wordsPerColumn;
     public final int sizeX;
     public final int sizeY;
     public final int sizeXplusOne;
+    /**
+     * Incremented whenever a tile changes. Caches of results computed on this grid compare it to detect stale entries.
+     */
+    private int version = 0;
 
     private static final float SQRT_TWO = (float)Math.sqrt(2);
     private static final double SQRT_TWO_DOUBLE = Math.sqrt(2);
@@ -21,26 +35,117 @@ public class GridGraph {
         this.sizeY = sizeY;
         this.sizeXplusOne = sizeX+1;
         
-        tiles = new boolean[sizeY*sizeX];
+        wordsPerRow = (sizeX+2+63) >>> 6;
+        wordsPerColumn = (sizeY+2+63) >>> 6;
+        rows = new long[(sizeY+2)*wordsPerRow];
+        columns = new long[(sizeX+2)*wordsPerColumn];
+        
+        // Block the border.
+        for (int x=-1; x<=sizeX; ++x) {
+            setPadded(x+1, 0, true);
+            setPadded(x+1, sizeY+1, true);
+        }
+        for (int y=0; y<sizeY; ++y) {
+            setPadded(0, y+1, true);
+            setPadded(sizeX+1, y+1, true);
+        }
     }
     
     public final void setBlocked(int x, int y, boolean value) {
-        tiles[sizeX*y + x] = value;
+        if (isBlockedPadded(x+1, y+1) == value) return;
+        setPadded(x+1, y+1, value);
+        ++version;
     }
     
     public final void trySetBlocked(int x, int y, boolean value) {
         if (isValidBlock(x,y))
-            tiles[sizeX*y + x] = value;
+            setBlocked(x, y, value);
+    }
+
+    /**
+     * @return a number that changes every time a tile of this grid is set to a different value.
+     */
+    public final int version() {
+        return version;
     }
     
     public final boolean isBlocked(int x, int y) {
         if (x >= sizeX || y >= sizeY) return true;
         if (x < 0 || y < 0) return true;
-        return tiles[sizeX*y + x];
+        return isBlockedPadded(x+1, y+1);
     }
     
+    /**
+     * No bounds checks. Works for any tile from (-1,-1) to (sizeX,sizeY) inclusive.
+     */
     public final boolean isBlockedRaw(int x, int y) {
-        return tiles[sizeX*y + x];
+        return isBlockedPadded(x+1, y+1);
+    }
+    
+    private final boolean isBlockedPadded(int px, int py) {
+        return (rows[py*wordsPerRow + (px >>> 6)] & (1L << px)) != 0;
+    }
+    
+    private final void setPadded(int px, int py, boolean value) {
+        int rowWord = py*wordsPerRow + (px >>> 6);
+        int colWord = px*wordsPerColumn + (py >>> 6);
+        if (value) {
+            rows[rowWord] |= 1L << px;
+            columns[colWord] |= 1L << py;
+        } else {
+            rows[rowWord] &= ~(1L << px);
+            columns[colWord] &= ~(1L << py);
+        }
+    }
+    
+    /**
+     * @return true iff any tile in row y from x = fromX to x = toX (inclusive, any order) is blocked.
+     */
+    private final boolean anyBlockedInRow(int y, int fromX, int toX) {
+        if (fromX > toX) {int temp = fromX; fromX = toX; toX = temp;}
+        return anyBitSet(rows, (y+1)*wordsPerRow, fromX+1, toX+1);
+    }
+    
+    /**
+     * @return true iff any tile in column x from y = fromY to y = toY (inclusive, any order) is blocked.
+     */
+    private final boolean anyBlockedInColumn(int x, int fromY, int toY) {
+        if (fromY > toY) {int temp = fromY; fromY = toY; toY = temp;}
+        return anyBitSet(columns, (x+1)*wordsPerColumn, fromY+1, toY+1);
+    }
+    
+    /**
+     * Tests bits from..to (inclusive) of the bit string starting at word index base, 64 bits at a time.
+     */
+    private static final boolean anyBitSet(long[] bits, int base, int from, int to) {
+        int wFrom = base + (from >>> 6);
+        int wTo = base + (to >>> 6);
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (wFrom == wTo) return (bits[wFrom] & firstMask & lastMask) != 0;
+        
+        if ((bits[wFrom] & firstMask) != 0) return true;
+        for (int w=wFrom+1; w<wTo; ++w) {
+            if (bits[w] != 0) return true;
+        }
+        return (bits[wTo] & lastMask) != 0;
+    }
+    
+    /**
+     * Same as anyBitSet, but tests for a position where the bit is set in both bit strings.
+     */
+    private static final boolean anyBitSetInBoth(long[] bits, int baseA, int baseB, int from, int to) {
+        int wFrom = from >>> 6;
+        int wTo = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (wFrom == wTo) return (bits[baseA+wFrom] & bits[baseB+wFrom] & firstMask & lastMask) != 0;
+        
+        if ((bits[baseA+wFrom] & bits[baseB+wFrom] & firstMask) != 0) return true;
+        for (int w=wFrom+1; w<wTo; ++w) {
+            if ((bits[baseA+w] & bits[baseB+w]) != 0) return true;
+        }
+        return (bits[baseA+wTo] & bits[baseB+wTo] & lastMask) != 0;
     }
     
     public final boolean isValidCoordinate(int x, int y) {
@@ -188,8 +293,103 @@ public class GridGraph {
 
     /**
      * @return true iff there is line-of-sight from (x1,y1) to (x2,y2).
+     * 
+     * Checks the same tiles as a cell-by-cell Bresenham walk would, but the tiles crossed by the line
+     * within the same row (or column, for steep lines) are tested as one contiguous run, 64 at a time.
      */
     public final boolean lineOfSight(int x1, int y1, int x2, int y2) {
+        if (!isValidCoordinate(x1, y1) || !isValidCoordinate(x2, y2)) {
+            return lineOfSightOutsideGrid(x1, y1, x2, y2);
+        }
+        
+        int dy = y2 - y1;
+        int dx = x2 - x1;
+
+        int signY = 1;
+        int signX = 1;
+        int offsetX = 0;
+        int offsetY = 0;
+        
+        if (dy < 0) {
+            dy *= -1;
+            signY = -1;
+            offsetY = -1;
+        }
+        if (dx < 0) {
+            dx *= -1;
+            signX = -1;
+            offsetX = -1;
+        }
+        
+        if (dx >= dy) {
+            if (dx == 0) return true;
+            int tileX = x1 + offsetX;
+            if (dy == 0) {
+                // Blocked only if both the tiles above and below the line are blocked.
+                int lastX = x2 - signX + offsetX;
+                int from = Math.min(tileX, lastX) + 1;
+                int to = Math.max(tileX, lastX) + 1;
+                return !anyBitSetInBoth(rows, y1*wordsPerRow, (y1+1)*wordsPerRow, from, to);
+            }
+            
+            int tileY = y1 + offsetY;
+            int runStartX = tileX;
+            int f = 0;
+            int remaining = dx;
+            while (remaining > 0) {
+                // Number of steps in x until the line reaches the next row.
+                int k = (dx - f + dy - 1) / dy;
+                if (k > remaining) k = remaining;
+                int crossingX = tileX + signX*(k-1);
+                if (anyBlockedInRow(tileY, runStartX, crossingX))
+                    return false;
+                
+                f += k*dy - dx;
+                remaining -= k;
+                tileX += signX*k;
+                tileY += signY;
+                // The run in the next row starts at the crossing tile, unless the line passes exactly through a corner.
+                runStartX = (f == 0) ? tileX : crossingX;
+            }
+        }
+        else {
+            int tileY = y1 + offsetY;
+            if (dx == 0) {
+                // Blocked only if both the tiles left and right of the line are blocked.
+                int lastY = y2 - signY + offsetY;
+                int from = Math.min(tileY, lastY) + 1;
+                int to = Math.max(tileY, lastY) + 1;
+                return !anyBitSetInBoth(columns, x1*wordsPerColumn, (x1+1)*wordsPerColumn, from, to);
+            }
+            
+            int tileX = x1 + offsetX;
+            int runStartY = tileY;
+            int f = 0;
+            int remaining = dy;
+            while (remaining > 0) {
+                // Number of steps in y until the line reaches the next column.
+                int k = (dy - f + dx - 1) / dx;
+                if (k > remaining) k = remaining;
+                int crossingY = tileY + signY*(k-1);
+                if (anyBlockedInColumn(tileX, runStartY, crossingY))
+                    return false;
+                
+                f += k*dx - dy;
+                remaining -= k;
+                tileY += signY*k;
+                tileX += signX;
+                // The run in the next column starts at the crossing tile, unless the line passes exactly through a corner.
+                runStartY = (f == 0) ? tileY : crossingY;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cell-by-cell line-of-sight check with bounds-checked tile lookups.
+     * Only used when an endpoint lies outside the grid, where the line may leave the padded border.
+     */
+    private final boolean lineOfSightOutsideGrid(int x1, int y1, int x2, int y2) {
         int dy = y2 - y1;
         int dx = x2 - x1;
 
@@ -397,14 +597,26 @@ public class GridGraph {
      */
     public final int getNumBlocked() {
         int nBlocked = 0;
-        for (int y=0; y<sizeY; y++) {
-            for (int x=0; x<sizeX; x++) {
-                if (isBlocked(x, y)) {
-                    nBlocked++;
-                }
-            }
+        for (int i=wordsPerRow; i<(sizeY+1)*wordsPerRow; ++i) {
+            nBlocked += Long.bitCount(rows[i]);
+        }
+        // Exclude the left and right borders.
+        return nBlocked - 2*sizeY;
+    }
+
+    /**
+     * @return a 64-bit checksum of the grid's size and blocked tiles.
+     * Used to check that preprocessed data saved to disk belongs to this grid.
+     */
+    public final long checksum() {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ sizeX) * 0x100000001b3L;
+        hash = (hash ^ sizeY) * 0x100000001b3L;
+        for (int i=0; i<rows.length; ++i) {
+            hash = (hash ^ rows[i]) * 0x100000001b3L;
+            hash ^= hash >>> 29;
         }
-        return nBlocked;
+        return hash;
     }
 
     public final boolean isOuterCorner(int x, int y) {
@@ -3,6 +3,9 @@ package grid.unittest;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import grid.GridGraph;
+
+import java.util.Random;
+
 import main.graphgeneration.DefaultGenerator;
 
 import org.junit.Test;
@@ -45,6 +48,82 @@ public class GridGraphTest {
         }
     }
 
+    @Test
+    public void testLongLineOfSight() {
+        int sizeX = 157;
+        int sizeY = 131;
+        GridGraph graph = DefaultGenerator.generateSeededTrueRandomGraphOnly(77123,sizeX,sizeY,9);
+        Random rand = new Random(3);
+
+        for (int i=0; i<200000; ++i) {
+            int x1 = rand.nextInt(sizeX+1);
+            int y1 = rand.nextInt(sizeY+1);
+            int x2 = rand.nextInt(sizeX+1);
+            int y2 = rand.nextInt(sizeY+1);
+            if (i%4 == 1) y2 = y1;
+            if (i%4 == 2) x2 = x1;
+
+            assertEquals(cellByCellLineOfSight(graph,x1,y1,x2,y2), graph.lineOfSight(x1,y1,x2,y2));
+        }
+    }
+
+    private static boolean cellByCellLineOfSight(GridGraph graph, int x1, int y1, int x2, int y2) {
+        int dy = y2 - y1;
+        int dx = x2 - x1;
+        int f = 0;
+        int signY = dy < 0 ? -1 : 1;
+        int signX = dx < 0 ? -1 : 1;
+        int offsetY = dy < 0 ? -1 : 0;
+        int offsetX = dx < 0 ? -1 : 0;
+        dy = Math.abs(dy);
+        dx = Math.abs(dx);
+
+        if (dx >= dy) {
+            while (x1 != x2) {
+                f += dy;
+                if (f >= dx) {
+                    if (graph.isBlocked(x1 + offsetX, y1 + offsetY)) return false;
+                    y1 += signY;
+                    f -= dx;
+                }
+                if (f != 0 && graph.isBlocked(x1 + offsetX, y1 + offsetY)) return false;
+                if (dy == 0 && graph.isBlocked(x1 + offsetX, y1) && graph.isBlocked(x1 + offsetX, y1 - 1)) return false;
+                x1 += signX;
+            }
+        } else {
+            while (y1 != y2) {
+                f += dx;
+                if (f >= dy) {
+                    if (graph.isBlocked(x1 + offsetX, y1 + offsetY)) return false;
+                    x1 += signX;
+                    f -= dy;
+                }
+                if (f != 0 && graph.isBlocked(x1 + offsetX, y1 + offsetY)) return false;
+                if (dx == 0 && graph.isBlocked(x1, y1 + offsetY) && graph.isBlocked(x1 - 1, y1 + offsetY)) return false;
+                y1 += signY;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testVersionChangesOnlyWithTiles() {
+        GridGraph graph = new GridGraph(10, 10);
+        int version = graph.version();
+
+        graph.setBlocked(3, 4, false);
+        assertEquals(version, graph.version());
+        graph.setBlocked(3, 4, true);
+        assertTrue(graph.version() != version);
+
+        version = graph.version();
+        graph.trySetBlocked(3, 4, true);
+        graph.trySetBlocked(20, 4, false);
+        assertEquals(version, graph.version());
+        graph.trySetBlocked(3, 4, false);
+        assertTrue(graph.version() != version);
+    }
+
     @Test
     public void speedTest() {
         int sizeX = 3000;
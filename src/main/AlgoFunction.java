@@ -2,7 +2,26 @@ package main;
 
 import grid.GridGraph;
 import algorithms.PathFindingAlgorithm;
+import algorithms.priorityqueue.PriorityQueueType;
 
 public interface AlgoFunction {
     public abstract PathFindingAlgorithm getAlgo(GridGraph gridGraph, int sx, int sy, int ex, int ey);
-}
\ No newline at end of file
+
+    /**
+     * @return an engine that reuses one algorithm object for many queries on gridGraph.
+     */
+    public default QueryEngine engine(GridGraph gridGraph) {
+        return new QueryEngine(gridGraph, this);
+    }
+
+    /**
+     * @return algoFunction's algorithm with another priority queue. See PathFindingAlgorithm.setPriorityQueue.
+     */
+    public static AlgoFunction withQueue(AlgoFunction algoFunction, PriorityQueueType type) {
+        return (GridGraph gridGraph, int sx, int sy, int ex, int ey) -> {
+            PathFindingAlgorithm algo = algoFunction.getAlgo(gridGraph, sx, sy, ex, ey);
+            algo.setPriorityQueue(type);
+            return algo;
+        };
+    }
+}
@@ -6,6 +6,7 @@ import algorithms.AStar;
 import algorithms.AStarOctileHeuristic;
 import algorithms.AStarStaticMemory;
 import algorithms.AcceleratedAStar;
+import algorithms.AcceleratedAStarStaticMemory;
 import algorithms.Anya;
 import algorithms.anya16.Anya16;
 import algorithms.BasicThetaStar;
@@ -16,9 +17,14 @@ import algorithms.PathFindingAlgorithm;
 import algorithms.RecursiveThetaStar;
 import algorithms.VisibilityGraphAlgorithm;
 import algorithms.datatypes.Point;
+import algorithms.datatypes.PreprocessingCache;
+import algorithms.hierarchical.HierarchicalAlgorithm;
+import algorithms.priorityqueue.PriorityQueueType;
 import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphAlgorithm;
+import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphAlgorithmBidirectional;
 import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap;
 import algorithms.sparsevgs.SparseVisibilityGraphAlgorithm;
+import algorithms.sparsevgs.SparseVisibilityGraphAlgorithmBidirectional;
 import algorithms.sparsevgs.SparseVisibilityGraphAlgorithmFibHeap;
 import algorithms.sparsevgs.VisibilityGraphAlgorithmOptimised;
 import algorithms.strictthetastar.RecursiveStrictThetaStar;
@@ -103,20 +109,35 @@ public class AlgoTest {
 
         switch (algoName) {
             case "AStar": return AStar::new;
+            case "AStar StaticMemory": return AStarStaticMemory::new;
             case "AStarSLD": return AStarStaticMemory::new;
             case "AStarPS": return AStar::postSmooth;
+            case "AStarPS StaticMemory": return AStarStaticMemory::repeatedPostSmooth;
             case "AStar Octile": return AStarOctileHeuristic::new;
             case "AStarOctile PostSmooth": return AStarOctileHeuristic::postSmooth;
             case "BreadthFirstSearch": return BreadthFirstSearch::new;
             case "JumpPointSearch": return JumpPointSearch::new;
             case "JPS PostSmooth": return JumpPointSearch::postSmooth;
+            case "JPS Anytime": return JumpPointSearch::anytime;
+            case "JPS+": return JumpPointSearch::plus;
+            case "JPS+ PostSmooth": return JumpPointSearch::plusPostSmooth;
+            case "JPS RadixHeap": return AlgoFunction.withQueue(JumpPointSearch::new, PriorityQueueType.RADIX);
             case "LazyThetaStar": return LazyThetaStar::new;
+            case "LazyThetaStar Anytime": return LazyThetaStar::anytime;
             case "BasicThetaStar": return BasicThetaStar::new;
+            case "BasicThetaStar Anytime": return BasicThetaStar::anytime;
             case "BasicThetaStar_PS": return BasicThetaStar::postSmooth;
+            case "BasicThetaStar RadixHeap": return AlgoFunction.withQueue(BasicThetaStar::new, PriorityQueueType.RADIX);
             case "Dijkstra": return AStar::dijkstra;
+            case "Dijkstra StaticMemory": return AStarStaticMemory::dijkstra;
             case "AcceleratedAStar": return AcceleratedAStar::new;
+            case "AcceleratedAStar StaticMemory": return AcceleratedAStarStaticMemory::new;
             case "Anya": return Anya::new;
             case "Anya16": return Anya16::new;
+            case "Anya16 BinaryHeap": return Anya16.withQueue(PriorityQueueType.BINARY);
+            case "Anya16 QuaternaryHeap": return Anya16.withQueue(PriorityQueueType.QUATERNARY);
+            case "Anya16 PairingHeap": return Anya16.withQueue(PriorityQueueType.PAIRING);
+            case "Anya16 RadixHeap": return Anya16.withQueue(PriorityQueueType.RADIX);
 
             case "VisibilityGraphs": return VisibilityGraphAlgorithm::new;
             case "VisibilityGraphReuse": return VisibilityGraphAlgorithm::graphReuse;
@@ -131,13 +152,23 @@ public class AlgoTest {
 
             case "SparseVisibilityGraphs": return SparseVisibilityGraphAlgorithm::graphReuse;
             case "SparseVisibilityGraphsFibHeap": return SparseVisibilityGraphAlgorithmFibHeap::graphReuse;
+            case "SparseVisibilityGraphsQuaternaryHeap": return SparseVisibilityGraphAlgorithmFibHeap.withQueue(PriorityQueueType.QUATERNARY);
+            case "SparseVisibilityGraphsPairingHeap": return SparseVisibilityGraphAlgorithmFibHeap.withQueue(PriorityQueueType.PAIRING);
+            case "SparseVisibilityGraphsBidirectional": return SparseVisibilityGraphAlgorithmBidirectional::graphReuse;
             case "EdgeNLevelSparseVisibilityGraphs": return EdgeNLevelSparseVisibilityGraphAlgorithm::graphReuse;
             case "EdgeNLevelSparseVisibilityGraphsFibHeap": return EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap::graphReuse;
+            case "EdgeNLevelSparseVisibilityGraphsQuaternaryHeap": return EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap.withQueue(PriorityQueueType.QUATERNARY);
+            case "EdgeNLevelSparseVisibilityGraphsPairingHeap": return EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap.withQueue(PriorityQueueType.PAIRING);
+            case "EdgeNLevelSparseVisibilityGraphsRadixHeap": return AlgoFunction.withQueue(EdgeNLevelSparseVisibilityGraphAlgorithm::graphReuse, PriorityQueueType.RADIX);
+            case "EdgeNLevelSparseVisibilityGraphsBidirectional": return EdgeNLevelSparseVisibilityGraphAlgorithmBidirectional::graphReuse;
             case "Edge1LevelSparseVisibilityGraphs": return EdgeNLevelSparseVisibilityGraphAlgorithm.withLevelLimit(1);
             case "Edge2LevelSparseVisibilityGraphs": return EdgeNLevelSparseVisibilityGraphAlgorithm.withLevelLimit(2);
             case "Edge3LevelSparseVisibilityGraphs": return EdgeNLevelSparseVisibilityGraphAlgorithm.withLevelLimit(3);
 
             case "SG16A": return SG16Algorithm::new;
+
+            case "Hierarchical": return HierarchicalAlgorithm::new;
+            case "Hierarchical32": return (a, b, c, d, e) -> HierarchicalAlgorithm.withClusterSize(a, b, c, d, e, 32);
         }
 
         throw new UnsupportedOperationException("Invalid Algorithm! " + algoName);
@@ -415,9 +446,7 @@ public class AlgoTest {
     public static void testOnBenchmarkMapSet(String setName, AlgoFunction algo, TestFunctionData testFunction) {
         String[] mapNames = BenchmarkGraphSets.getBenchmarkSet(setName);
         for (int i=0; i<mapNames.length;++i) {
-            Utility.cleanUpPreallocatedMemory();
             testOnBenchmarkMaze(mapNames[i], algo, testFunction);
-            Utility.cleanUpPreallocatedMemory();
             System.gc();
             try {Thread.sleep(2000);}
             catch (Exception e) {throw new UnsupportedOperationException(e.getMessage());}
@@ -498,44 +527,36 @@ public class AlgoTest {
     }
 
     public static void testOnBenchmarkMaze(String mazeName, AlgoFunction algoFunction, TestFunctionData test) {
-        Utility.cleanUpPreallocatedMemory();
-        {
-            ArrayList<StartEndPointData> problems = BenchmarkGraphImporter.loadBenchmarkMazeProblems(mazeName);
-            GridGraph gridGraph = BenchmarkGraphImporter.loadBenchmarkMaze(mazeName);
+        ArrayList<StartEndPointData> problems = BenchmarkGraphImporter.loadBenchmarkMazeProblems(mazeName);
+        GridGraph gridGraph = BenchmarkGraphImporter.loadBenchmarkMaze(mazeName);
 
-            printMazeDetails(mazeName, gridGraph);
-            
-            test.test(mazeName, gridGraph, problems, algoFunction);
-        }
-        Utility.cleanUpPreallocatedMemory();
+        printMazeDetails(mazeName, gridGraph);
+        
+        test.test(mazeName, gridGraph, problems, algoFunction);
+        PreprocessingCache.remove(gridGraph);
     }
 
     public static void testOnStoredMaze(MazeAndTestCases mazeAndTestCases, AlgoFunction algoFunction, TestFunctionData test) {
-        Utility.cleanUpPreallocatedMemory();
-        {
-            ArrayList<StartEndPointData> problems = mazeAndTestCases.problems;
-            GridGraph gridGraph = mazeAndTestCases.gridGraph;
-            String mazeName = mazeAndTestCases.mazeName;
+        ArrayList<StartEndPointData> problems = mazeAndTestCases.problems;
+        GridGraph gridGraph = mazeAndTestCases.gridGraph;
+        String mazeName = mazeAndTestCases.mazeName;
 
-            printMazeDetails(mazeName, gridGraph);
-            
-            test.test(mazeName, gridGraph, problems, algoFunction);
-            mazeAndTestCases = null;
-        }
-        Utility.cleanUpPreallocatedMemory();
+        printMazeDetails(mazeName, gridGraph);
+        
+        test.test(mazeName, gridGraph, problems, algoFunction);
+        PreprocessingCache.remove(gridGraph);
     }
 
     public static void testOnMazeData(String mazeName, AlgoFunction algoFunction, TestFunctionData test) {
         ArrayList<StartEndPointData> problems = GraphImporter.loadStoredMazeProblemData(mazeName);
         testOnMazeData(mazeName, problems, algoFunction, test);
-
-        Utility.cleanUpPreallocatedMemory();
     }
 
     public static void testOnMazeData(String mazeName, ArrayList<StartEndPointData> problems, AlgoFunction algoFunction, TestFunctionData test) {
         GridGraph gridGraph = GraphImporter.loadStoredMaze(mazeName);
         printMazeDetails(mazeName, gridGraph);
         test.test(mazeName, gridGraph, problems, algoFunction);
+        PreprocessingCache.remove(gridGraph);
     }
 
     public static void testOnGraphData(GridGraph gridGraph, ArrayList<StartEndPointData> problems, AlgoFunction algoFunction, TestFunctionData test) {
@@ -0,0 +1,167 @@
+package main;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import algorithms.PathFindingAlgorithm;
+import grid.GridGraph;
+import main.analysis.TwoPoint;
+import main.testgen.StartEndPointData;
+import main.utility.Utility;
+
+/**
+ * Runs many start/goal queries on one grid in parallel, on a work-stealing ForkJoinPool.
+ *
+ * Search state is per worker thread:
+ *   AStarStaticMemory and its subclasses (BasicThetaStar, LazyThetaStar, JumpPointSearch, ...) use SearchContext.forCurrentThread(),
+ *   EdgeNLevelSparseVisibilityGraphAlgorithm uses a per-thread overlay on the shared graph,
+ *   Anya16 uses a per-thread search on the shared bitpacked grid.
+ * The preprocessed structures are shared through the PreprocessingCache. They are built by running the first query
+ * on the calling thread before the remaining queries are forked.
+ *
+ * The algorithm must be safe to run on several threads at once. Algorithms that repurpose a single stored
+ * graph for each query (VisibilityGraphReuse, SparseVisibilityGraphs) are not.
+ */
+public final class BatchQuery {
+
+    public static final class Result {
+        public final double[] pathLengths; // For cost-only batches, Float.POSITIVE_INFINITY where there is no path.
+        public final int[][][] paths;      // Null for cost-only batches.
+        public final long[] runningTimes;  // Nanoseconds per query, for getAlgo, computePath and getPath (or computeCost).
+        public long totalTime;            // Nanoseconds for the whole batch.
+
+        Result(int nProblems, boolean costOnly) {
+            pathLengths = new double[nProblems];
+            paths = costOnly ? null : new int[nProblems][][];
+            runningTimes = new long[nProblems];
+        }
+    }
+
+    public static Result run(GridGraph gridGraph, AlgoFunction algo, List<TwoPoint> problems) {
+        return run(ForkJoinPool.commonPool(), gridGraph, algo, problems);
+    }
+
+    public static Result run(ForkJoinPool pool, GridGraph gridGraph, AlgoFunction algo, List<TwoPoint> problems) {
+        return run(pool, gridGraph, algo, toCoordinates(problems), false);
+    }
+
+    /**
+     * Same as run, but only computes path lengths (PathFindingAlgorithm.computeCost). Result.paths is null.
+     */
+    public static Result runCostOnly(GridGraph gridGraph, AlgoFunction algo, List<TwoPoint> problems) {
+        return runCostOnly(ForkJoinPool.commonPool(), gridGraph, algo, problems);
+    }
+
+    public static Result runCostOnly(ForkJoinPool pool, GridGraph gridGraph, AlgoFunction algo, List<TwoPoint> problems) {
+        return run(pool, gridGraph, algo, toCoordinates(problems), true);
+    }
+
+    private static int[] toCoordinates(List<TwoPoint> problems) {
+        int[] coordinates = new int[problems.size()*4];
+        for (int i=0;i<problems.size();++i) {
+            TwoPoint tp = problems.get(i);
+            coordinates[i*4] = tp.p1.x;
+            coordinates[i*4+1] = tp.p1.y;
+            coordinates[i*4+2] = tp.p2.x;
+            coordinates[i*4+3] = tp.p2.y;
+        }
+        return coordinates;
+    }
+
+    public static Result runOnData(GridGraph gridGraph, AlgoFunction algo, List<StartEndPointData> problems) {
+        return runOnData(ForkJoinPool.commonPool(), gridGraph, algo, problems);
+    }
+
+    public static Result runOnData(ForkJoinPool pool, GridGraph gridGraph, AlgoFunction algo, List<StartEndPointData> problems) {
+        int[] coordinates = new int[problems.size()*4];
+        for (int i=0;i<problems.size();++i) {
+            StartEndPointData problem = problems.get(i);
+            coordinates[i*4] = problem.start.x;
+            coordinates[i*4+1] = problem.start.y;
+            coordinates[i*4+2] = problem.end.x;
+            coordinates[i*4+3] = problem.end.y;
+        }
+        return run(pool, gridGraph, algo, coordinates, false);
+    }
+
+    /**
+     * @param coordinates sx, sy, ex, ey of each query, in order.
+     */
+    public static Result run(ForkJoinPool pool, GridGraph gridGraph, AlgoFunction algo, int[] coordinates) {
+        return run(pool, gridGraph, algo, coordinates, false);
+    }
+
+    /**
+     * @param coordinates sx, sy, ex, ey of each query, in order.
+     * @param costOnly if true, only the path lengths are computed, with PathFindingAlgorithm.computeCost.
+     */
+    public static Result run(ForkJoinPool pool, GridGraph gridGraph, AlgoFunction algo, int[] coordinates, boolean costOnly) {
+        int nProblems = coordinates.length/4;
+        Result result = new Result(nProblems, costOnly);
+        if (nProblems == 0) return result;
+
+        long start = System.nanoTime();
+        runQuery(gridGraph, algo, coordinates, result, 0);
+        if (nProblems > 1) {
+            // Small enough leaves to balance the load, large enough to keep the forking overhead low.
+            int leafSize = Math.max(1, (nProblems-1) / (pool.getParallelism()*8));
+            pool.invoke(new QueryRangeTask(gridGraph, algo, coordinates, result, 1, nProblems, leafSize));
+        }
+        result.totalTime = System.nanoTime() - start;
+        return result;
+    }
+
+    private static void runQuery(GridGraph gridGraph, AlgoFunction algo, int[] coordinates, Result result, int i) {
+        long start = System.nanoTime();
+        PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, coordinates[i*4], coordinates[i*4+1], coordinates[i*4+2], coordinates[i*4+3]);
+        if (result.paths == null) {
+            result.pathLengths[i] = algorithm.computeCost();
+            result.runningTimes[i] = System.nanoTime() - start;
+            return;
+        }
+        algorithm.computePath();
+        int[][] path = algorithm.getPath();
+        result.runningTimes[i] = System.nanoTime() - start;
+
+        result.paths[i] = path;
+        result.pathLengths[i] = Utility.computePathLength(gridGraph, path);
+    }
+
+    /**
+     * Splits [from, to) in halves until at most leafSize queries remain. Idle workers steal the other halves.
+     */
+    private static final class QueryRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final GridGraph gridGraph;
+        private final AlgoFunction algo;
+        private final int[] coordinates;
+        private final Result result;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        QueryRangeTask(GridGraph gridGraph, AlgoFunction algo, int[] coordinates, Result result, int from, int to, int leafSize) {
+            this.gridGraph = gridGraph;
+            this.algo = algo;
+            this.coordinates = coordinates;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                for (int i=from;i<to;++i) {
+                    runQuery(gridGraph, algo, coordinates, result, i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new QueryRangeTask(gridGraph, algo, coordinates, result, from, mid, leafSize),
+                    new QueryRangeTask(gridGraph, algo, coordinates, result, mid, to, leafSize));
+        }
+    }
+}
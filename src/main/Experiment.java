@@ -1,19 +1,36 @@
 package main;
 
 import java.awt.Color;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import algorithms.AStar;
+import algorithms.AStarStaticMemory;
 import algorithms.BasicThetaStar;
+import algorithms.JumpDistances;
 import algorithms.JumpPointSearch;
+import algorithms.PathFindingAlgorithm;
+import algorithms.anya16.Anya16;
 import algorithms.datatypes.Point;
+import algorithms.datatypes.PreprocessingCache;
 import algorithms.datatypes.SnapshotItem;
+import algorithms.hierarchical.ClusterGraph;
+import algorithms.priorityqueue.PriorityQueueType;
+import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraph;
+import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphAlgorithm;
+import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap;
+import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphDistanceMatrix;
+import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphOneToMany;
 import algorithms.sparsevgs.LineOfSightScanner;
 import algorithms.sparsevgs.LineOfSightScannerDouble;
 import algorithms.sparsevgs.SparseVisibilityGraph;
+import algorithms.sparsevgs.SparseVisibilityGraphAlgorithm;
+import algorithms.sparsevgs.SparseVisibilityGraphAlgorithmFibHeap;
 import algorithms.sparsevgs.VisibilityGraphAlgorithmOptimised;
 import algorithms.sparsevgs.VisibilityGraphOptimised;
 import algorithms.strictthetastar.RecursiveStrictThetaStar;
@@ -27,9 +44,16 @@ import grid.GridAndGoals;
 import grid.GridGraph;
 import grid.ReachableNodes;
 import grid.StartGoalPoints;
+import main.analysis.TwoPoint;
 import main.graphgeneration.AutomataGenerator;
 import main.graphgeneration.DefaultGenerator;
+import main.graphgeneration.MazeMapGenerator;
+import main.mazes.MazeAndTestCases;
+import main.mazes.StoredTestMazes;
+import main.testgen.StartEndPointData;
+import main.utility.PathCache;
 import main.utility.Utility;
+import uiandio.BenchmarkGraphImporter;
 import uiandio.BenchmarkGraphSets;
 import uiandio.FileIO;
 import uiandio.GraphImporter;
@@ -51,6 +75,24 @@ public class Experiment {
 //        other();
 //        testLOSScan();
         //testRPSScan();
+//        testParallelENLSVGConstruction();
+//        testIncrementalENLSVGUpdate();
+//        testBatchQueries();
+//        testOneToManyENLSVG();
+//        testDistanceMatrix();
+//        testPathCache();
+//        testBidirectionalSearch();
+//        testTimeSlicedSearch();
+//        testAnytimeSearch();
+//        testCostOnlyQueries();
+//        testPathOutput();
+//        testQueryEngine();
+//        testHierarchical();
+//        testAnya16Allocations();
+//        testPriorityQueues();
+//        testRadixHeap();
+//        testPrimitiveAStar();
+//        testJumpPointSearchPlus();
     }
     
     /**
@@ -173,7 +215,7 @@ public class Experiment {
             //gridLineSet = generateRandomTestLines(gridGraph, 10);
             gridPointSet.addPoint(sx, sy, Color.BLUE);
             gridObjectsList.add(new GridObjects(gridLineSet, gridPointSet));
-            for (List<SnapshotItem> l : LineOfSightScanner.snapshotList) {
+            for (List<SnapshotItem> l : losScanner.snapshotList) {
                 gridObjectsList.add(GridObjects.create(l));
             }
         }
@@ -399,6 +441,862 @@ public class Experiment {
         fileIO.close();
     }
 
+    /**
+     * Compares serial and parallel ENLSVG construction times. Both builds must produce the same graph.
+     */
+    private static void testParallelENLSVGConstruction() {
+        ForkJoinPool pool = new ForkJoinPool();
+        int[] sizes = new int[] {500, 1000, 2000};
+        for (int size : sizes) {
+            GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(size, size, size, 15);
+            
+            EdgeNLevelSparseVisibilityGraph.setConstructionPool(null);
+            EdgeNLevelSparseVisibilityGraph.clearMemory();
+            long start = System.nanoTime();
+            EdgeNLevelSparseVisibilityGraph serialGraph = EdgeNLevelSparseVisibilityGraph.initialiseNew(gridGraph, Integer.MAX_VALUE);
+            long serialTime = System.nanoTime() - start;
+            
+            EdgeNLevelSparseVisibilityGraph.setConstructionPool(pool);
+            EdgeNLevelSparseVisibilityGraph.clearMemory();
+            start = System.nanoTime();
+            EdgeNLevelSparseVisibilityGraph parallelGraph = EdgeNLevelSparseVisibilityGraph.initialiseNew(gridGraph, Integer.MAX_VALUE);
+            long parallelTime = System.nanoTime() - start;
+            
+            boolean same = serialGraph.nEdges == parallelGraph.nEdges &&
+                    Arrays.equals(serialGraph.edgeLevels, parallelGraph.edgeLevels) &&
+                    Arrays.equals(serialGraph.edgeWeights, parallelGraph.edgeWeights) &&
+                    Arrays.equals(serialGraph.outgoingEdges, parallelGraph.outgoingEdges) &&
+                    Arrays.equals(serialGraph.outgoingSkipEdges, parallelGraph.outgoingSkipEdges);
+            System.out.println(size + "x" + size + " | Serial: " + serialTime/1000000. + "ms | Parallel (" +
+                    pool.getParallelism() + " threads): " + parallelTime/1000000. + "ms | Identical: " + same);
+        }
+        EdgeNLevelSparseVisibilityGraph.setConstructionPool(null);
+        EdgeNLevelSparseVisibilityGraph.clearMemory();
+        pool.shutdown();
+    }
+
+    /**
+     * Compares updateTiles on small blocks of tiles against rebuilding the graph from scratch.
+     */
+    private static void testIncrementalENLSVGUpdate() {
+        int size = 1000;
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(size, size, size, 15);
+        EdgeNLevelSparseVisibilityGraph.clearMemory();
+        long start = System.nanoTime();
+        EdgeNLevelSparseVisibilityGraph vGraph = EdgeNLevelSparseVisibilityGraph.initialiseNew(gridGraph, Integer.MAX_VALUE);
+        long buildTime = System.nanoTime() - start;
+
+        Random random = new Random(3);
+        int nUpdates = 50;
+        for (int blockSize : new int[] {1, 4, 16}) {
+            long updateTime = 0;
+            for (int i=0;i<nUpdates;++i) {
+                int x = random.nextInt(size-blockSize);
+                int y = random.nextInt(size-blockSize);
+                boolean blocked = random.nextBoolean();
+                int[][] tiles = new int[blockSize*blockSize][];
+                boolean[] values = new boolean[blockSize*blockSize];
+                for (int j=0;j<tiles.length;++j) {
+                    tiles[j] = new int[] {x + j%blockSize, y + j/blockSize};
+                    values[j] = blocked;
+                }
+                start = System.nanoTime();
+                vGraph.updateTiles(tiles, values);
+                updateTime += System.nanoTime() - start;
+            }
+            System.out.println(blockSize + "x" + blockSize + " tiles | Update: " + updateTime/1000000./nUpdates +
+                    "ms | Rebuild: " + buildTime/1000000. + "ms");
+        }
+        EdgeNLevelSparseVisibilityGraph.clearMemory();
+    }
+
+    /**
+     * Compares running queries one by one on this thread against BatchQuery on the common pool.
+     */
+    private static void testBatchQueries() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(1000, 1000, 1000, 15);
+        Random random = new Random(7);
+        List<TwoPoint> problems = new ArrayList<>();
+        while (problems.size() < 2000) {
+            int sx = random.nextInt(gridGraph.sizeX+1);
+            int sy = random.nextInt(gridGraph.sizeY+1);
+            int ex = random.nextInt(gridGraph.sizeX+1);
+            int ey = random.nextInt(gridGraph.sizeY+1);
+            if (!gridGraph.isUnblockedCoordinate(sx, sy) || !gridGraph.isUnblockedCoordinate(ex, ey)) continue;
+            problems.add(new TwoPoint(sx, sy, ex, ey));
+        }
+
+        String[] algoNames = new String[] {"BasicThetaStar", "LazyThetaStar", "JumpPointSearch", "Anya16", "EdgeNLevelSparseVisibilityGraphs"};
+        for (String algoName : algoNames) {
+            AlgoFunction algo = AlgoTest.getAlgo(algoName);
+            // Build the preprocessing first, so neither run pays for it.
+            Utility.generatePath(algo, gridGraph, problems.get(0).p1.x, problems.get(0).p1.y, problems.get(0).p2.x, problems.get(0).p2.y);
+
+            double[] serialLengths = new double[problems.size()];
+            long start = System.nanoTime();
+            for (int i=0;i<problems.size();++i) {
+                TwoPoint tp = problems.get(i);
+                serialLengths[i] = Utility.computePathLength(gridGraph, Utility.generatePath(algo, gridGraph, tp.p1.x, tp.p1.y, tp.p2.x, tp.p2.y));
+            }
+            long serialTime = System.nanoTime() - start;
+
+            BatchQuery.Result result = BatchQuery.run(gridGraph, algo, problems);
+            int nMismatches = 0;
+            for (int i=0;i<problems.size();++i) {
+                if (Math.abs(serialLengths[i] - result.pathLengths[i]) > 0.0001) nMismatches++;
+            }
+            System.out.println(algoName + " | Serial: " + serialTime/1000000. + "ms | Batch (" +
+                    ForkJoinPool.commonPool().getParallelism() + " threads): " + result.totalTime/1000000. +
+                    "ms | Speedup: " + (double)serialTime/result.totalTime + " | Mismatches: " + nMismatches);
+        }
+        Utility.cleanUpPreallocatedMemory();
+    }
+
+    /**
+     * Compares one EdgeNLevelSparseVisibilityGraphOneToMany query against one ENLSVG query per target,
+     * for targets scattered at different distances around the start.
+     */
+    private static void testOneToManyENLSVG() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(1000, 1000, 1000, 15);
+        AlgoFunction algo = AlgoTest.getAlgo("EdgeNLevelSparseVisibilityGraphs");
+        EdgeNLevelSparseVisibilityGraphOneToMany oneToMany = new EdgeNLevelSparseVisibilityGraphOneToMany(gridGraph);
+        Random random = new Random(5);
+        int nQueries = 30;
+
+        for (int nTargets : new int[] {10, 50}) {
+            for (int radius : new int[] {50, 200, 1000}) {
+                long oneToManyTime = 0;
+                long separateTime = 0;
+                int nMismatches = 0;
+                for (int q=0;q<nQueries;++q) {
+                    int sx, sy;
+                    do {
+                        sx = random.nextInt(gridGraph.sizeX+1);
+                        sy = random.nextInt(gridGraph.sizeY+1);
+                    } while (!gridGraph.isUnblockedCoordinate(sx, sy));
+
+                    // Unreachable targets make both searches explore the whole component, so only reachable ones are used.
+                    int[] targetXs = new int[nTargets];
+                    int[] targetYs = new int[nTargets];
+                    for (int k=0;k<nTargets;++k) {
+                        int tx, ty;
+                        do {
+                            tx = Math.max(0, Math.min(gridGraph.sizeX, sx + random.nextInt(2*radius+1) - radius));
+                            ty = Math.max(0, Math.min(gridGraph.sizeY, sy + random.nextInt(2*radius+1) - radius));
+                        } while (!gridGraph.isUnblockedCoordinate(tx, ty) ||
+                                ((tx != sx || ty != sy) && Utility.generatePath(algo, gridGraph, sx, sy, tx, ty).length <= 1));
+                        targetXs[k] = tx;
+                        targetYs[k] = ty;
+                    }
+
+                    long start = System.nanoTime();
+                    float[] distances = oneToMany.computeDistances(sx, sy, targetXs, targetYs);
+                    oneToManyTime += System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    for (int k=0;k<nTargets;++k) {
+                        int[][] path = Utility.generatePath(algo, gridGraph, sx, sy, targetXs[k], targetYs[k]);
+                        float length = (float)Utility.computePathLength(gridGraph, path);
+                        if (Math.abs(length - distances[k]) > 0.001f) nMismatches++;
+                    }
+                    separateTime += System.nanoTime() - start;
+                }
+                System.out.println(nTargets + " targets within " + radius + " | One-to-many: " + oneToManyTime/1000000./nQueries +
+                        "ms | Separate: " + separateTime/1000000./nQueries + "ms | Mismatches: " + nMismatches);
+            }
+        }
+        EdgeNLevelSparseVisibilityGraph.clearMemory();
+    }
+
+    /**
+     * Compares EdgeNLevelSparseVisibilityGraphDistanceMatrix, on one thread and on the common pool,
+     * against one ENLSVG computePath call per (source, target) pair.
+     */
+    private static void testDistanceMatrix() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(1000, 1000, 1000, 15);
+        AlgoFunction algo = AlgoTest.getAlgo("EdgeNLevelSparseVisibilityGraphs");
+        Random random = new Random(9);
+
+        // All points are picked from the component of the first one, so every pair is reachable.
+        int nSources = 20;
+        int nTargets = 50;
+        int[] xs = new int[nSources + nTargets];
+        int[] ys = new int[nSources + nTargets];
+        for (int i=0;i<xs.length;++i) {
+            do {
+                xs[i] = random.nextInt(gridGraph.sizeX+1);
+                ys[i] = random.nextInt(gridGraph.sizeY+1);
+            } while (!gridGraph.isUnblockedCoordinate(xs[i], ys[i]) ||
+                    (i > 0 && Utility.generatePath(algo, gridGraph, xs[0], ys[0], xs[i], ys[i]).length <= 1));
+        }
+        int[] sourceXs = Arrays.copyOfRange(xs, 0, nSources);
+        int[] sourceYs = Arrays.copyOfRange(ys, 0, nSources);
+        int[] targetXs = Arrays.copyOfRange(xs, nSources, xs.length);
+        int[] targetYs = Arrays.copyOfRange(ys, nSources, ys.length);
+
+        long start = System.nanoTime();
+        float[][] expected = new float[nSources][nTargets];
+        for (int i=0;i<nSources;++i) {
+            for (int k=0;k<nTargets;++k) {
+                int[][] path = Utility.generatePath(algo, gridGraph, sourceXs[i], sourceYs[i], targetXs[k], targetYs[k]);
+                expected[i][k] = (float)Utility.computePathLength(gridGraph, path);
+            }
+        }
+        long separateTime = System.nanoTime() - start;
+
+        EdgeNLevelSparseVisibilityGraphDistanceMatrix matrixEngine = new EdgeNLevelSparseVisibilityGraphDistanceMatrix(gridGraph);
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        for (ForkJoinPool pool : new ForkJoinPool[] {singleThread, ForkJoinPool.commonPool()}) {
+            float[][] matrix = new float[nSources][];
+            start = System.nanoTime();
+            matrixEngine.compute(pool, sourceXs, sourceYs, targetXs, targetYs, Float.POSITIVE_INFINITY, (source, row) -> matrix[source] = row);
+            long matrixTime = System.nanoTime() - start;
+
+            int nMismatches = 0;
+            for (int i=0;i<nSources;++i) {
+                for (int k=0;k<nTargets;++k) {
+                    if (Math.abs(expected[i][k] - matrix[i][k]) > 0.001f) nMismatches++;
+                }
+            }
+            System.out.println(nSources + "x" + nTargets + " | Separate: " + separateTime/1000000. + "ms | Matrix (" +
+                    pool.getParallelism() + " threads): " + matrixTime/1000000. + "ms | Mismatches: " + nMismatches);
+        }
+        singleThread.shutdown();
+        EdgeNLevelSparseVisibilityGraph.clearMemory();
+    }
+
+    private static void testPathCache() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(1000, 1000, 1000, 15);
+        AlgoFunction algo = AlgoTest.getAlgo("EdgeNLevelSparseVisibilityGraphs");
+        Random random = new Random(13);
+
+        // A small set of endpoints queried repeatedly, in both directions.
+        int nPoints = 40;
+        int nQueries = 2000;
+        int[] xs = new int[nPoints];
+        int[] ys = new int[nPoints];
+        for (int i=0;i<nPoints;++i) {
+            do {
+                xs[i] = random.nextInt(gridGraph.sizeX+1);
+                ys[i] = random.nextInt(gridGraph.sizeY+1);
+            } while (!gridGraph.isUnblockedCoordinate(xs[i], ys[i]));
+        }
+        int[] starts = new int[nQueries];
+        int[] ends = new int[nQueries];
+        for (int i=0;i<nQueries;++i) {
+            starts[i] = random.nextInt(nPoints);
+            ends[i] = random.nextInt(nPoints);
+        }
+        Utility.generatePath(algo, gridGraph, xs[0], ys[0], xs[1], ys[1]);
+
+        long start = System.nanoTime();
+        double[] expected = new double[nQueries];
+        for (int i=0;i<nQueries;++i) {
+            int[][] path = Utility.generatePath(algo, gridGraph, xs[starts[i]], ys[starts[i]], xs[ends[i]], ys[ends[i]]);
+            expected[i] = Utility.computePathLength(gridGraph, path);
+        }
+        long uncachedTime = System.nanoTime() - start;
+
+        PathCache cache = new PathCache(nPoints*nPoints);
+        start = System.nanoTime();
+        int nMismatches = 0;
+        for (int i=0;i<nQueries;++i) {
+            int[][] path = cache.generatePath(algo, gridGraph, xs[starts[i]], ys[starts[i]], xs[ends[i]], ys[ends[i]]);
+            if (Math.abs(Utility.computePathLength(gridGraph, path) - expected[i]) > 0.0001) nMismatches++;
+        }
+        long cachedTime = System.nanoTime() - start;
+
+        System.out.println(nQueries + " queries | Uncached: " + uncachedTime/1000000. + "ms | Cached: " + cachedTime/1000000. +
+                "ms | Hits: " + cache.hits() + " | Misses: " + cache.misses() + " | Mismatches: " + nMismatches);
+
+        // Changing a tile makes every cached path stale.
+        gridGraph.setBlocked(0, 0, !gridGraph.isBlocked(0, 0));
+        EdgeNLevelSparseVisibilityGraph.clearMemory();
+        cache.resetCounters();
+        cache.generatePath(algo, gridGraph, xs[starts[0]], ys[starts[0]], xs[ends[0]], ys[ends[0]]);
+        System.out.println("After grid change | Hits: " + cache.hits() + " | Misses: " + cache.misses() + " | Size: " + cache.size());
+        EdgeNLevelSparseVisibilityGraph.clearMemory();
+    }
+
+    private static void testBidirectionalSearch() {
+        GridGraph[] gridGraphs = new GridGraph[] {
+            DefaultGenerator.generateSeededGraphOnly(15, 1000, 1000, 15),
+            MazeMapGenerator.generateSeededGraphOnly(5, 801, 801, 3, 0.2f),
+        };
+        String[][] algoPairs = new String[][] {
+            {"SparseVisibilityGraphs", "SparseVisibilityGraphsBidirectional"},
+            {"EdgeNLevelSparseVisibilityGraphs", "EdgeNLevelSparseVisibilityGraphsBidirectional"},
+        };
+        int nQueries = 300;
+
+        for (GridGraph gridGraph : gridGraphs) {
+            Random random = new Random(7);
+            int[][] queries = new int[nQueries][];
+            for (int i=0;i<nQueries;++i) {
+                int sx, sy, ex, ey;
+                do {
+                    sx = random.nextInt(gridGraph.sizeX+1);
+                    sy = random.nextInt(gridGraph.sizeY+1);
+                } while (!gridGraph.isUnblockedCoordinate(sx, sy));
+                do {
+                    ex = random.nextInt(gridGraph.sizeX+1);
+                    ey = random.nextInt(gridGraph.sizeY+1);
+                } while (!gridGraph.isUnblockedCoordinate(ex, ey));
+                queries[i] = new int[] {sx, sy, ex, ey};
+            }
+
+            for (String[] algoPair : algoPairs) {
+                double[] pathLengths = new double[nQueries];
+                for (int k=0;k<2;++k) {
+                    AlgoFunction algo = AlgoTest.getAlgo(algoPair[k]);
+                    // Build the graph before timing.
+                    Utility.generatePath(algo, gridGraph, queries[0][0], queries[0][1], queries[0][0], queries[0][1]);
+
+                    long nExpanded = 0;
+                    int nMismatches = 0;
+                    long start = System.nanoTime();
+                    for (int i=0;i<nQueries;++i) {
+                        int[] q = queries[i];
+                        PathFindingAlgorithm search = algo.getAlgo(gridGraph, q[0], q[1], q[2], q[3]);
+                        search.computePath();
+                        double pathLength = Utility.computePathLength(gridGraph, search.getPath());
+                        if (k == 0) pathLengths[i] = pathLength;
+                        else if (Math.abs(pathLength - pathLengths[i]) > 0.001) nMismatches++;
+
+                        nExpanded += (search instanceof SparseVisibilityGraphAlgorithm) ?
+                                ((SparseVisibilityGraphAlgorithm)search).nExpanded() :
+                                ((EdgeNLevelSparseVisibilityGraphAlgorithm)search).nExpanded();
+                    }
+                    long time = System.nanoTime() - start;
+                    System.out.println(algoPair[k] + " | " + gridGraph.sizeX + "x" + gridGraph.sizeY + " | Expanded: " + nExpanded +
+                            " | Time: " + time/1000000. + "ms" + (k == 0 ? "" : " | Mismatches: " + nMismatches));
+                }
+            }
+            SparseVisibilityGraph.clearMemory();
+            EdgeNLevelSparseVisibilityGraph.clearMemory();
+        }
+    }
+
+    /**
+     * Runs each query in slices of at most sliceNanos (runUntil), and compares the paths with computePath.
+     * Reports the number of slices and the longest slice, which shows how far a slice overruns its deadline.
+     */
+    private static void testTimeSlicedSearch() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(15, 1000, 1000, 15);
+        String[] algoNames = new String[] {"AStarSLD", "LazyThetaStar", "JumpPointSearch", "EdgeNLevelSparseVisibilityGraphs", "Anya16"};
+        int nQueries = 100;
+        long sliceNanos = 1000000;
+
+        Random random = new Random(7);
+        int[][] queries = new int[nQueries][];
+        for (int i=0;i<nQueries;++i) {
+            int sx, sy, ex, ey;
+            do {
+                sx = random.nextInt(gridGraph.sizeX+1);
+                sy = random.nextInt(gridGraph.sizeY+1);
+            } while (!gridGraph.isUnblockedCoordinate(sx, sy));
+            do {
+                ex = random.nextInt(gridGraph.sizeX+1);
+                ey = random.nextInt(gridGraph.sizeY+1);
+            } while (!gridGraph.isUnblockedCoordinate(ex, ey));
+            queries[i] = new int[] {sx, sy, ex, ey};
+        }
+
+        for (String algoName : algoNames) {
+            AlgoFunction algo = AlgoTest.getAlgo(algoName);
+            // Build any preprocessed data before timing.
+            Utility.generatePath(algo, gridGraph, queries[0][0], queries[0][1], queries[0][0], queries[0][1]);
+
+            long nSlices = 0;
+            long maxSlice = 0;
+            int nMismatches = 0;
+            long start = System.nanoTime();
+            for (int i=0;i<nQueries;++i) {
+                int[] q = queries[i];
+                PathFindingAlgorithm search = algo.getAlgo(gridGraph, q[0], q[1], q[2], q[3]);
+                boolean finished;
+                do {
+                    long sliceStart = System.nanoTime();
+                    finished = search.runUntil(sliceStart + sliceNanos);
+                    maxSlice = Math.max(maxSlice, System.nanoTime() - sliceStart);
+                    nSlices++;
+                } while (!finished);
+                double pathLength = Utility.computePathLength(gridGraph, search.getPath());
+
+                double expectedLength = Utility.computePathLength(gridGraph, Utility.generatePath(algo, gridGraph, q[0], q[1], q[2], q[3]));
+                if (Math.abs(pathLength - expectedLength) > 0.001) nMismatches++;
+            }
+            long time = System.nanoTime() - start;
+            System.out.println(algoName + " | Slices: " + nSlices + " | Longest slice: " + maxSlice/1000000. + "ms" +
+                    " | Time (both runs): " + time/1000000. + "ms | Mismatches: " + nMismatches);
+        }
+        EdgeNLevelSparseVisibilityGraph.clearMemory();
+    }
+
+    /**
+     * Gives each query of an anytime search a time budget, then reports the best path found within it
+     * (total length over all queries, against the complete search) and the average suboptimality bound.
+     */
+    private static void testAnytimeSearch() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(15, 1000, 1000, 15);
+        String[] algoNames = new String[] {"BasicThetaStar Anytime", "LazyThetaStar Anytime", "JPS Anytime"};
+        long[] budgetsNanos = new long[] {1000000, 5000000, 20000000, 100000000};
+        int nQueries = 40;
+
+        Random random = new Random(7);
+        int[][] queries = new int[nQueries][];
+        for (int i=0;i<nQueries;++i) {
+            int sx, sy, ex, ey;
+            do {
+                sx = random.nextInt(gridGraph.sizeX+1);
+                sy = random.nextInt(gridGraph.sizeY+1);
+            } while (!gridGraph.isUnblockedCoordinate(sx, sy));
+            do {
+                ex = random.nextInt(gridGraph.sizeX+1);
+                ey = random.nextInt(gridGraph.sizeY+1);
+            } while (!gridGraph.isUnblockedCoordinate(ex, ey));
+            queries[i] = new int[] {sx, sy, ex, ey};
+        }
+
+        for (String algoName : algoNames) {
+            AlgoFunction algo = AlgoTest.getAlgo(algoName);
+            double completeLength = 0;
+            for (int[] q : queries) {
+                completeLength += Utility.computePathLength(gridGraph, Utility.generatePath(algo, gridGraph, q[0], q[1], q[2], q[3]));
+            }
+
+            for (long budget : budgetsNanos) {
+                double totalLength = 0;
+                double totalBound = 0;
+                int nWithPath = 0;
+                for (int[] q : queries) {
+                    AStarStaticMemory search = (AStarStaticMemory)algo.getAlgo(gridGraph, q[0], q[1], q[2], q[3]);
+                    search.runUntil(System.nanoTime() + budget);
+                    int[][] path = search.getPath();
+                    if (path.length <= 1) continue;
+                    nWithPath++;
+                    totalLength += Utility.computePathLength(gridGraph, path);
+                    totalBound += search.suboptimalityBound();
+                }
+                System.out.println(algoName + " | Budget: " + budget/1000000. + "ms | Paths: " + nWithPath + "/" + nQueries +
+                        " | Length: " + totalLength + " (complete: " + completeLength + ")" +
+                        " | Average bound: " + (nWithPath == 0 ? Float.POSITIVE_INFINITY : totalBound/nWithPath));
+            }
+        }
+    }
+
+    /**
+     * Compares BatchQuery.run (paths) against BatchQuery.runCostOnly (path lengths only), on the common pool.
+     */
+    private static void testCostOnlyQueries() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(1000, 1000, 1000, 15);
+        Random random = new Random(7);
+        List<TwoPoint> problems = new ArrayList<>();
+        while (problems.size() < 500) {
+            int sx = random.nextInt(gridGraph.sizeX+1);
+            int sy = random.nextInt(gridGraph.sizeY+1);
+            int ex = random.nextInt(gridGraph.sizeX+1);
+            int ey = random.nextInt(gridGraph.sizeY+1);
+            if (!gridGraph.isUnblockedCoordinate(sx, sy) || !gridGraph.isUnblockedCoordinate(ex, ey)) continue;
+            problems.add(new TwoPoint(sx, sy, ex, ey));
+        }
+
+        String[] algoNames = new String[] {"BasicThetaStar", "BasicThetaStar_PS", "JumpPointSearch", "Anya16", "EdgeNLevelSparseVisibilityGraphs"};
+        for (String algoName : algoNames) {
+            AlgoFunction algo = AlgoTest.getAlgo(algoName);
+            // Build the preprocessing first, so neither run pays for it.
+            Utility.generatePath(algo, gridGraph, problems.get(0).p1.x, problems.get(0).p1.y, problems.get(0).p2.x, problems.get(0).p2.y);
+
+            BatchQuery.Result paths = BatchQuery.run(gridGraph, algo, problems);
+            BatchQuery.Result costs = BatchQuery.runCostOnly(gridGraph, algo, problems);
+            int nMismatches = 0;
+            for (int i=0;i<problems.size();++i) {
+                double pathLength = paths.paths[i].length <= 1 ? Float.POSITIVE_INFINITY : paths.pathLengths[i];
+                if (pathLength == costs.pathLengths[i]) continue;
+                if (!(Math.abs(pathLength - costs.pathLengths[i]) <= 0.0001*pathLength)) nMismatches++;
+            }
+            System.out.println(algoName + " | Paths: " + paths.totalTime/1000000. + "ms | Cost only: " + costs.totalTime/1000000. +
+                    "ms | Mismatches: " + nMismatches);
+        }
+        Utility.cleanUpPreallocatedMemory();
+    }
+
+    private static void testPathOutput() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(1000, 1000, 1000, 15);
+        Random random = new Random(7);
+        int nProblems = 200;
+        int nOutputs = 1000;
+        int[] buffer = new int[1 << 16];
+
+        String[] algoNames = new String[] {"BasicThetaStar", "JumpPointSearch", "Anya16", "EdgeNLevelSparseVisibilityGraphs"};
+        for (String algoName : algoNames) {
+            AlgoFunction algo = AlgoTest.getAlgo(algoName);
+            long getPathTime = 0;
+            long writePathTime = 0;
+            int nMismatches = 0;
+            for (int i=0;i<nProblems;) {
+                int sx = random.nextInt(gridGraph.sizeX+1);
+                int sy = random.nextInt(gridGraph.sizeY+1);
+                int ex = random.nextInt(gridGraph.sizeX+1);
+                int ey = random.nextInt(gridGraph.sizeY+1);
+                if (!gridGraph.isUnblockedCoordinate(sx, sy) || !gridGraph.isUnblockedCoordinate(ex, ey)) continue;
+                ++i;
+                PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, sx, sy, ex, ey);
+                algorithm.computePath();
+
+                long start = System.nanoTime();
+                int[][] path = null;
+                for (int j=0;j<nOutputs;++j) path = algorithm.getPath();
+                getPathTime += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int nWaypoints = 0;
+                for (int j=0;j<nOutputs;++j) nWaypoints = algorithm.writePath(buffer, 0);
+                writePathTime += System.nanoTime() - start;
+
+                path = Utility.removeDuplicatesInPath(path);
+                if (nWaypoints > path.length || nWaypoints >= 2 && (buffer[0] != path[0][0] || buffer[1] != path[0][1] ||
+                        buffer[2*nWaypoints-2] != path[path.length-1][0] || buffer[2*nWaypoints-1] != path[path.length-1][1])) {
+                    nMismatches++;
+                }
+            }
+            System.out.println(algoName + " | getPath: " + getPathTime/1000000. + "ms | writePath: " + writePathTime/1000000. +
+                    "ms | Mismatches: " + nMismatches);
+        }
+        Utility.cleanUpPreallocatedMemory();
+    }
+
+    private static void testQueryEngine() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(1000, 1000, 1000, 15);
+        Random random = new Random(7);
+        int nProblems = 500;
+        int[] coordinates = new int[4*nProblems];
+        for (int i=0;i<nProblems;) {
+            int sx = random.nextInt(gridGraph.sizeX+1);
+            int sy = random.nextInt(gridGraph.sizeY+1);
+            int ex = random.nextInt(gridGraph.sizeX+1);
+            int ey = random.nextInt(gridGraph.sizeY+1);
+            if (!gridGraph.isUnblockedCoordinate(sx, sy) || !gridGraph.isUnblockedCoordinate(ex, ey)) continue;
+            coordinates[4*i] = sx;
+            coordinates[4*i+1] = sy;
+            coordinates[4*i+2] = ex;
+            coordinates[4*i+3] = ey;
+            ++i;
+        }
+        int[] buffer = new int[1 << 16];
+
+        String[] algoNames = new String[] {"BasicThetaStar", "JumpPointSearch", "Anya16", "EdgeNLevelSparseVisibilityGraphs"};
+        for (String algoName : algoNames) {
+            AlgoFunction algo = AlgoTest.getAlgo(algoName);
+            // Build the preprocessing first, so neither run pays for it.
+            algo.getAlgo(gridGraph, coordinates[0], coordinates[1], coordinates[2], coordinates[3]).computePath();
+
+            long start = System.nanoTime();
+            double freshLength = 0;
+            for (int i=0;i<nProblems;++i) {
+                PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, coordinates[4*i], coordinates[4*i+1], coordinates[4*i+2], coordinates[4*i+3]);
+                algorithm.computePath();
+                freshLength += waypointPathLength(gridGraph, buffer, algorithm.writePath(buffer, 0));
+            }
+            long freshTime = System.nanoTime() - start;
+
+            QueryEngine engine = algo.engine(gridGraph);
+            start = System.nanoTime();
+            double engineLength = 0;
+            for (int i=0;i<nProblems;++i) {
+                PathFindingAlgorithm algorithm = engine.query(coordinates[4*i], coordinates[4*i+1], coordinates[4*i+2], coordinates[4*i+3]);
+                engineLength += waypointPathLength(gridGraph, buffer, algorithm.writePath(buffer, 0));
+            }
+            long engineTime = System.nanoTime() - start;
+
+            System.out.println(algoName + " | New object per query: " + freshTime/1000000. + "ms | QueryEngine: " + engineTime/1000000. +
+                    "ms | Total lengths: " + freshLength + " / " + engineLength);
+        }
+        Utility.cleanUpPreallocatedMemory();
+    }
+
+    private static void testHierarchical() {
+        // sizeIndex 6 is the 8000x8000 map.
+        MazeAndTestCases maze = StoredTestMazes.loadAutomataMaze(0, 4);
+        GridGraph gridGraph = maze.gridGraph;
+
+        // Both graphs stay cached, so the queries below do not pay for preprocessing.
+        ClusterGraph.clearMemory();
+        for (int clusterSize : new int[] {32, ClusterGraph.DEFAULT_CLUSTER_SIZE}) {
+            long start = System.nanoTime();
+            ClusterGraph clusterGraph = ClusterGraph.getStoredGraph(gridGraph, clusterSize);
+            long preprocessingTime = System.nanoTime() - start;
+            System.out.println("Cluster size " + clusterSize + " | Preprocessing: " + preprocessingTime/1000000. + "ms | Entrances: " +
+                    clusterGraph.nEntrances() + " | Memory: " + clusterGraph.memoryUsage()/1024 + "KB");
+        }
+
+        int[] buffer = new int[1 << 16];
+        String[] algoNames = new String[] {"Anya16", "Hierarchical32", "Hierarchical"};
+        for (String algoName : algoNames) {
+            AlgoFunction algo = AlgoTest.getAlgo(algoName);
+            long start = System.nanoTime();
+            double totalLength = 0;
+            double totalShortest = 0;
+            for (StartEndPointData problem : maze.problems) {
+                PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, problem.start.x, problem.start.y, problem.end.x, problem.end.y);
+                algorithm.computePath();
+                totalLength += waypointPathLength(gridGraph, buffer, algorithm.writePath(buffer, 0));
+                totalShortest += problem.shortestPath;
+            }
+            long time = System.nanoTime() - start;
+            System.out.println(algoName + " | Queries: " + time/1000000. + "ms | Total length / shortest: " + totalLength/totalShortest);
+        }
+        ClusterGraph.clearMemory();
+    }
+
+    private static void testPriorityQueues() {
+        GridGraph gridGraph = DefaultGenerator.generateSeededGraphOnly(1000, 1000, 1000, 15);
+        Random random = new Random(11);
+        int nProblems = 300;
+        int[] coordinates = new int[4*nProblems];
+        for (int i=0;i<nProblems;) {
+            int sx = random.nextInt(gridGraph.sizeX+1);
+            int sy = random.nextInt(gridGraph.sizeY+1);
+            int ex = random.nextInt(gridGraph.sizeX+1);
+            int ey = random.nextInt(gridGraph.sizeY+1);
+            if (!gridGraph.isUnblockedCoordinate(sx, sy) || !gridGraph.isUnblockedCoordinate(ex, ey)) continue;
+            coordinates[4*i] = sx;
+            coordinates[4*i+1] = sy;
+            coordinates[4*i+2] = ex;
+            coordinates[4*i+3] = ey;
+            ++i;
+        }
+        int[] buffer = new int[1 << 16];
+
+        for (String algoName : new String[] {"Anya16", "SparseVisibilityGraphs", "EdgeNLevelSparseVisibilityGraphs"}) {
+            for (PriorityQueueType queueType : PriorityQueueType.values()) {
+                AlgoFunction algo;
+                switch (algoName) {
+                    case "Anya16": algo = Anya16.withQueue(queueType); break;
+                    case "SparseVisibilityGraphs": algo = SparseVisibilityGraphAlgorithmFibHeap.withQueue(queueType); break;
+                    default: algo = EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap.withQueue(queueType); break;
+                }
+                // Warm up: builds the preprocessing, and sizes the queue.
+                for (int i=0;i<nProblems;i+=10) {
+                    algo.getAlgo(gridGraph, coordinates[4*i], coordinates[4*i+1], coordinates[4*i+2], coordinates[4*i+3]).computePath();
+                }
+
+                long start = System.nanoTime();
+                double totalLength = 0;
+                for (int i=0;i<nProblems;++i) {
+                    PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, coordinates[4*i], coordinates[4*i+1], coordinates[4*i+2], coordinates[4*i+3]);
+                    algorithm.computePath();
+                    totalLength += waypointPathLength(gridGraph, buffer, algorithm.writePath(buffer, 0));
+                }
+                long time = System.nanoTime() - start;
+                System.out.println(algoName + " " + queueType + " | " + time/1000000. + "ms | Total length: " + totalLength);
+            }
+        }
+        Utility.cleanUpPreallocatedMemory();
+    }
+
+    /**
+     * Binary heap against the radix heap, on the generatedmaps mazes and the benchmarks map sets.
+     * The radix heap is exact for the optimal searches. Theta* pops some keys below the last popped key, so its paths may differ slightly.
+     */
+    private static void testRadixHeap() {
+        String[] algoNames = {"JumpPointSearch", "BasicThetaStar", "LazyThetaStar", "EdgeNLevelSparseVisibilityGraphs"};
+        PriorityQueueType[] queueTypes = {PriorityQueueType.BINARY, PriorityQueueType.QUATERNARY, PriorityQueueType.RADIX};
+
+        String[] generatedMazes = {"def_iCUZANYD_iSB_iSB_iSB", "def_i10VA3PD_iSB_iSB_iP", "def_i3ML5FBD_iSB_iSB_iH",
+                "def_iHHLNUOB_iMJ_iMJ_iSB", "def_iZLPIX5B_iMJ_iMJ_iP", "def_iVVJKDR_iMJ_iMJ_iH",
+                "def_iIRXXUKC_iUP_iUP_iSB", "def_iOMJ14Z_iUP_iUP_iP",
+                "def_iMJWB0QC_iMJ_iMJ_iSB", "def_iBCA5SS_iMJ_iMJ_iP", "def_i11AHREB_iMJ_iMJ_iH"};
+        long[][] times = new long[algoNames.length][queueTypes.length];
+        double[][] lengths = new double[algoNames.length][queueTypes.length];
+        for (String mazeName : generatedMazes) {
+            GridGraph gridGraph = GraphImporter.loadStoredMaze(mazeName);
+            ArrayList<StartEndPointData> problems = GraphImporter.loadStoredMazeProblemData(mazeName);
+            timeQueues(gridGraph, problems, algoNames, queueTypes, times, lengths);
+        }
+        printQueueTimes("generatedmaps", algoNames, queueTypes, times, lengths);
+
+        for (String setName : new String[] {"bg512", "sc1", "wc3maps512"}) {
+            times = new long[algoNames.length][queueTypes.length];
+            lengths = new double[algoNames.length][queueTypes.length];
+            for (String mazeName : BenchmarkGraphSets.getBenchmarkSet(setName)) {
+                GridGraph gridGraph = BenchmarkGraphImporter.loadBenchmarkMaze(mazeName);
+                ArrayList<StartEndPointData> problems = BenchmarkGraphImporter.loadBenchmarkMazeProblems(mazeName);
+                timeQueues(gridGraph, problems, algoNames, queueTypes, times, lengths);
+            }
+            printQueueTimes("benchmarks " + setName, algoNames, queueTypes, times, lengths);
+        }
+        Utility.cleanUpPreallocatedMemory();
+    }
+
+    private static void timeQueues(GridGraph gridGraph, ArrayList<StartEndPointData> problems, String[] algoNames,
+            PriorityQueueType[] queueTypes, long[][] times, double[][] lengths) {
+        int[] buffer = new int[1 << 16];
+        for (int i=0;i<algoNames.length;++i) {
+            for (int j=0;j<queueTypes.length;++j) {
+                AlgoFunction algo = AlgoFunction.withQueue(AlgoTest.getAlgo(algoNames[i]), queueTypes[j]);
+                // Warm up: builds the preprocessing, and sizes the queue.
+                StartEndPointData first = problems.get(0);
+                algo.getAlgo(gridGraph, first.start.x, first.start.y, first.end.x, first.end.y).computePath();
+
+                long start = System.nanoTime();
+                for (StartEndPointData problem : problems) {
+                    PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, problem.start.x, problem.start.y, problem.end.x, problem.end.y);
+                    algorithm.computePath();
+                    lengths[i][j] += waypointPathLength(gridGraph, buffer, algorithm.writePath(buffer, 0));
+                }
+                times[i][j] += System.nanoTime() - start;
+            }
+        }
+        PreprocessingCache.remove(gridGraph);
+    }
+
+    private static void printQueueTimes(String setName, String[] algoNames, PriorityQueueType[] queueTypes, long[][] times, double[][] lengths) {
+        for (int i=0;i<algoNames.length;++i) {
+            for (int j=0;j<queueTypes.length;++j) {
+                System.out.println(setName + " | " + algoNames[i] + " " + queueTypes[j] + " | " + times[i][j]/1000000. + "ms | Total length: " + lengths[i][j]);
+            }
+        }
+    }
+
+    /**
+     * The boxed AStar and AcceleratedAStar against their static memory versions, on the benchmarks map sets.
+     */
+    private static void testPrimitiveAStar() {
+        String[] algoNames = {"AStar", "AStarPS", "Dijkstra", "AcceleratedAStar"};
+        for (String setName : new String[] {"bg512", "sc1", "wc3maps512"}) {
+            for (String algoName : algoNames) {
+                for (String variant : new String[] {algoName, algoName + " StaticMemory"}) {
+                    AlgoFunction algo = AlgoTest.getAlgo(variant);
+                    int nProblems = 0;
+                    long time = 0, bytes = 0;
+                    double totalLength = 0;
+                    for (String mazeName : BenchmarkGraphSets.getBenchmarkSet(setName)) {
+                        GridGraph gridGraph = BenchmarkGraphImporter.loadBenchmarkMaze(mazeName);
+                        ArrayList<StartEndPointData> problems = BenchmarkGraphImporter.loadBenchmarkMazeProblems(mazeName);
+                        StartEndPointData first = problems.get(0);
+                        algo.getAlgo(gridGraph, first.start.x, first.start.y, first.end.x, first.end.y).computePath();
+
+                        long allocated = allocatedBytes();
+                        long start = System.nanoTime();
+                        for (StartEndPointData problem : problems) {
+                            PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, problem.start.x, problem.start.y, problem.end.x, problem.end.y);
+                            algorithm.computePath();
+                            totalLength += algorithm.getPathLength();
+                        }
+                        time += System.nanoTime() - start;
+                        bytes += allocatedBytes() - allocated;
+                        nProblems += problems.size();
+                        PreprocessingCache.remove(gridGraph);
+                    }
+                    System.out.println(setName + " | " + variant + " | " + time/1000./nProblems + "us, " + bytes/nProblems +
+                            " bytes per query | Total length: " + totalLength);
+                }
+            }
+        }
+        Utility.cleanUpPreallocatedMemory();
+    }
+
+    /**
+     * JPS against JPS+ (jump distances looked up in precomputed tables), with and without post-smoothing.
+     * Reports the memory and construction time of the tables against the query time saved.
+     */
+    private static void testJumpPointSearchPlus() {
+        String[] algoNames = {"JumpPointSearch", "JPS+", "JPS PostSmooth", "JPS+ PostSmooth"};
+        for (String setName : new String[] {"random10", "random25", "bg512", "sc1", "wc3maps512"}) {
+            int nProblems = 0;
+            long tableTime = 0, tableBytes = 0;
+            long[] times = new long[algoNames.length];
+            double[] lengths = new double[algoNames.length];
+            for (String mazeName : BenchmarkGraphSets.getBenchmarkSet(setName)) {
+                GridGraph gridGraph = BenchmarkGraphImporter.loadBenchmarkMaze(mazeName);
+                ArrayList<StartEndPointData> problems = BenchmarkGraphImporter.loadBenchmarkMazeProblems(mazeName);
+
+                long start = System.nanoTime();
+                JumpDistances jumpDistances = JumpDistances.getStored(gridGraph);
+                tableTime += System.nanoTime() - start;
+                tableBytes += jumpDistances.memoryUsage();
+
+                for (int i=0;i<algoNames.length;++i) {
+                    AlgoFunction algo = AlgoTest.getAlgo(algoNames[i]);
+                    start = System.nanoTime();
+                    for (StartEndPointData problem : problems) {
+                        PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, problem.start.x, problem.start.y, problem.end.x, problem.end.y);
+                        algorithm.computePath();
+                        lengths[i] += algorithm.getPathLength();
+                    }
+                    times[i] += System.nanoTime() - start;
+                }
+                nProblems += problems.size();
+                PreprocessingCache.remove(gridGraph);
+            }
+            System.out.println(setName + " | " + nProblems + " problems | Tables: " + tableTime/1000000. + "ms, " + tableBytes/(1024*1024) + "MB");
+            for (int i=0;i<algoNames.length;++i) {
+                System.out.println(setName + " | " + algoNames[i] + " | " + times[i]/1000./nProblems + "us per query | Total length: " + lengths[i]);
+            }
+        }
+        Utility.cleanUpPreallocatedMemory();
+    }
+
+    private static void testAnya16Allocations() {
+        AlgoFunction algo = AlgoTest.getAlgo("Anya16");
+        int[] buffer = new int[1 << 16];
+        for (String setName : new String[] {"bg512", "sc1", "wc3maps512"}) {
+            int nProblems = 0;
+            long freshTime = 0, freshBytes = 0, engineTime = 0, engineBytes = 0;
+            for (String mazeName : BenchmarkGraphSets.getBenchmarkSet(setName)) {
+                GridGraph gridGraph = BenchmarkGraphImporter.loadBenchmarkMaze(mazeName);
+                ArrayList<StartEndPointData> problems = BenchmarkGraphImporter.loadBenchmarkMazeProblems(mazeName);
+                // Warm up: builds the bitpacked grid, and fills the search's node pools.
+                for (StartEndPointData problem : problems) {
+                    algo.getAlgo(gridGraph, problem.start.x, problem.start.y, problem.end.x, problem.end.y).computePath();
+                }
+
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                for (StartEndPointData problem : problems) {
+                    PathFindingAlgorithm algorithm = algo.getAlgo(gridGraph, problem.start.x, problem.start.y, problem.end.x, problem.end.y);
+                    algorithm.computePath();
+                    algorithm.writePath(buffer, 0);
+                }
+                freshTime += System.nanoTime() - start;
+                freshBytes += allocatedBytes() - bytes;
+
+                QueryEngine engine = algo.engine(gridGraph);
+                bytes = allocatedBytes();
+                start = System.nanoTime();
+                for (StartEndPointData problem : problems) {
+                    engine.query(problem.start.x, problem.start.y, problem.end.x, problem.end.y, buffer, 0);
+                }
+                engineTime += System.nanoTime() - start;
+                engineBytes += allocatedBytes() - bytes;
+
+                nProblems += problems.size();
+                PreprocessingCache.remove(gridGraph);
+            }
+            System.out.println(setName + " | " + nProblems + " problems | New object per query: " + freshTime/1000./nProblems +
+                    "us, " + freshBytes/nProblems + " bytes | QueryEngine: " + engineTime/1000./nProblems + "us, " + engineBytes/nProblems + " bytes");
+        }
+        Anya16.clearMemory();
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread, on JVMs that count them (0 otherwise).
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return 0;
+        return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static double waypointPathLength(GridGraph gridGraph, int[] waypoints, int nWaypoints) {
+        double length = 0;
+        for (int i=1;i<nWaypoints;++i) {
+            length += gridGraph.distance(waypoints[2*i-2], waypoints[2*i-1], waypoints[2*i], waypoints[2*i+1]);
+        }
+        return length;
+    }
+
     private static void findUpperBound() {
         System.out.println("Strict Theta Star");
         AlgoFunction testAlgo = (gridGraph, sx, sy, ex, ey) -> new RecursiveStrictThetaStar(gridGraph, sx, sy, ex, ey);
@@ -0,0 +1,56 @@
+package main;
+
+import algorithms.PathFindingAlgorithm;
+import grid.GridGraph;
+
+/**
+ * Answers many start/goal queries on one grid with one algorithm object, instead of one per query.
+ * The algorithm is made by the AlgoFunction for the first query, then reused through PathFindingAlgorithm.reuseFor,
+ * which keeps its scratch state (search memory, open list, neighbour arrays, Anya16's search nodes).
+ * Algorithms that do not support reuse get a new object per query, as with AlgoFunction.
+ *
+ * An engine must be used by one thread, the one it was first used on: the algorithm keeps that thread's search context.
+ */
+public final class QueryEngine {
+
+    private final GridGraph graph;
+    private final AlgoFunction algo;
+    private PathFindingAlgorithm algorithm;
+
+    public QueryEngine(GridGraph graph, AlgoFunction algo) {
+        this.graph = graph;
+        this.algo = algo;
+    }
+
+    /**
+     * Computes a path.
+     * @return the algorithm, which holds the path (getPath, writePath, getPathLength) until the next query.
+     */
+    public PathFindingAlgorithm query(int sx, int sy, int ex, int ey) {
+        PathFindingAlgorithm algorithm = algorithmFor(sx, sy, ex, ey);
+        algorithm.computePath();
+        return algorithm;
+    }
+
+    /**
+     * Computes a path and writes it into buffer from offset (see PathFindingAlgorithm.writePath).
+     * @return the number of waypoints written. Fewer than 2 if there is no path.
+     */
+    public int query(int sx, int sy, int ex, int ey, int[] buffer, int offset) {
+        return query(sx, sy, ex, ey).writePath(buffer, offset);
+    }
+
+    /**
+     * @return the length of the path (see PathFindingAlgorithm.computeCost).
+     */
+    public float queryCost(int sx, int sy, int ex, int ey) {
+        return algorithmFor(sx, sy, ex, ey).computeCost();
+    }
+
+    private PathFindingAlgorithm algorithmFor(int sx, int sy, int ex, int ey) {
+        if (algorithm == null || !algorithm.reuseFor(sx, sy, ex, ey)) {
+            algorithm = algo.getAlgo(graph, sx, sy, ex, ey);
+        }
+        return algorithm;
+    }
+}
@@ -0,0 +1,191 @@
+package main.utility;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import algorithms.PathFindingAlgorithm;
+import grid.GridGraph;
+import main.AlgoFunction;
+
+/**
+ * Bounded cache of computed paths, placed in front of Utility.generatePath.
+ * An entry is keyed by the identity of its GridGraph and the grid's version, the identity of the AlgoFunction,
+ * and the two endpoints. Reuse the same AlgoFunction object across calls for its paths to be found again.
+ *
+ * Paths are undirected, so a query from (ex,ey) to (sx,sy) is served by flipping the path cached for (sx,sy) to (ex,ey).
+ * For algorithms that are not optimal, this returns the path found in the other direction, which may differ in length
+ * from what a fresh search would return. Pass serveReversed = false to keep the two directions apart.
+ *
+ * When a grid is changed (GridGraph.setBlocked), its version changes and its entries are no longer found.
+ * They are dropped the next time the grid is looked up. When more than maxEntries paths are held,
+ * the least recently used are evicted.
+ *
+ * All methods are thread-safe. Searches run outside the lock, so two threads missing on the same key both search.
+ * Returned paths are copies and may be modified by the caller.
+ */
+public final class PathCache {
+
+    private static final class Key {
+        final GridGraph graph;
+        final int version;
+        final AlgoFunction algo;
+        final int sx, sy, ex, ey;
+
+        Key(GridGraph graph, int version, AlgoFunction algo, int sx, int sy, int ex, int ey) {
+            this.graph = graph;
+            this.version = version;
+            this.algo = algo;
+            this.sx = sx;
+            this.sy = sy;
+            this.ex = ex;
+            this.ey = ey;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(graph)*31 + version;
+            hash = hash*31 + System.identityHashCode(algo);
+            hash = hash*31 + sx;
+            hash = hash*31 + sy;
+            hash = hash*31 + ex;
+            return hash*31 + ey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key)obj;
+            return graph == other.graph && version == other.version && algo == other.algo &&
+                    sx == other.sx && sy == other.sy && ex == other.ex && ey == other.ey;
+        }
+    }
+
+    private final int maxEntries;
+    private final boolean serveReversed;
+
+    // Access-ordered, so iteration starts from the least recently used entry.
+    private final LinkedHashMap<Key, int[][]> entries;
+    // The version last seen of each grid in the cache. A different version means its entries are stale.
+    private final Map<GridGraph, Integer> graphVersions = new IdentityHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PathCache(int maxEntries) {
+        this(maxEntries, true);
+    }
+
+    public PathCache(int maxEntries, boolean serveReversed) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        this.maxEntries = maxEntries;
+        this.serveReversed = serveReversed;
+        this.entries = new LinkedHashMap<Key, int[][]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[][]> eldest) {
+                return size() > PathCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Same as Utility.generatePath(algoFunction, gridGraph, sx, sy, ex, ey), but returns a cached path if there is one.
+     */
+    public int[][] generatePath(AlgoFunction algoFunction, GridGraph gridGraph, int sx, int sy, int ex, int ey) {
+        boolean reversed = serveReversed && (ey < sy || (ey == sy && ex < sx));
+        Key key = reversed ? new Key(gridGraph, gridGraph.version(), algoFunction, ex, ey, sx, sy)
+                           : new Key(gridGraph, gridGraph.version(), algoFunction, sx, sy, ex, ey);
+
+        int[][] path = lookup(key);
+        if (path != null) {
+            hits.incrementAndGet();
+            return copy(path, reversed);
+        }
+        misses.incrementAndGet();
+
+        PathFindingAlgorithm algo = reversed ? algoFunction.getAlgo(gridGraph, ex, ey, sx, sy)
+                                             : algoFunction.getAlgo(gridGraph, sx, sy, ex, ey);
+        algo.computePath();
+        path = algo.getPath();
+        store(key, copy(path, false));
+        return copy(path, reversed);
+    }
+
+    private synchronized int[][] lookup(Key key) {
+        Integer lastVersion = graphVersions.get(key.graph);
+        if (lastVersion != null && lastVersion != key.version) {
+            removeEntriesOf(key.graph);
+            return null;
+        }
+        return entries.get(key);
+    }
+
+    private synchronized void store(Key key, int[][] path) {
+        // The grid may have changed during the search. Then the path belongs to an old version and is not kept.
+        if (key.graph.version() != key.version) return;
+        Integer lastVersion = graphVersions.get(key.graph);
+        if (lastVersion != null && lastVersion != key.version) removeEntriesOf(key.graph);
+        entries.put(key, path);
+        graphVersions.put(key.graph, key.version);
+        if (entries.size() < graphVersions.size()) retainGraphsInUse();
+    }
+
+    /**
+     * Removes every path computed on gridGraph.
+     */
+    public synchronized void remove(GridGraph gridGraph) {
+        removeEntriesOf(gridGraph);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        graphVersions.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private void removeEntriesOf(GridGraph gridGraph) {
+        Iterator<Key> itr = entries.keySet().iterator();
+        while (itr.hasNext()) {
+            if (itr.next().graph == gridGraph) itr.remove();
+        }
+        graphVersions.remove(gridGraph);
+    }
+
+    /**
+     * Forgets the versions of grids whose entries have all been evicted.
+     * Called when there are more grids than entries, so at most maxEntries+1 grids are kept alive by the cache.
+     */
+    private void retainGraphsInUse() {
+        Map<GridGraph, Integer> inUse = new IdentityHashMap<>();
+        for (Key key : entries.keySet()) {
+            inUse.put(key.graph, key.version);
+        }
+        graphVersions.keySet().retainAll(inUse.keySet());
+    }
+
+    private static int[][] copy(int[][] path, boolean reversed) {
+        int[][] result = new int[path.length][];
+        for (int i=0; i<path.length; ++i) {
+            result[reversed ? path.length-1-i : i] = path[i].clone();
+        }
+        return result;
+    }
+}
@@ -6,18 +6,13 @@ import java.util.Arrays;
 import algorithms.Anya;
 import algorithms.anya16.Anya16;
 import algorithms.PathFindingAlgorithm;
-import algorithms.datatypes.Memory;
 import algorithms.datatypes.Point;
+import algorithms.datatypes.PreprocessingCache;
+import algorithms.datatypes.SearchContext;
 import algorithms.datatypes.SnapshotItem;
-import algorithms.priorityqueue.ReusableIndirectHeap;
-import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraph;
 import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphAlgorithm;
 import algorithms.sparsevgs.EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap;
-import algorithms.sparsevgs.LineOfSightScanner;
-import algorithms.sparsevgs.SparseVisibilityGraph;
 import algorithms.sparsevgs.SparseVisibilityGraphAlgorithmFibHeap;
-import algorithms.sparsevgs.VisibilityGraphOptimised;
-import algorithms.visibilitygraph.VisibilityGraph;
 import grid.GridGraph;
 import main.AlgoFunction;
 import main.analysis.MazeAnalysis;
@@ -147,18 +142,16 @@ public class Utility {
         return mazeAnalysis.largestRatioToRemaining >= cutoffLargestRatioToRemaining;
     }
     
+    /**
+     * Releases the preprocessed structures of all grids, and the calling thread's search memory.
+     * To release a single grid that is no longer used, PreprocessingCache.remove(gridGraph) is enough.
+     */
     public static void cleanUpPreallocatedMemory() {
+        PreprocessingCache.clear();
         Anya.clearMemory();
-        Anya16.clearMemory();
-        VisibilityGraph.clearMemory();
-        SparseVisibilityGraph.clearMemory();
         SparseVisibilityGraphAlgorithmFibHeap.clearMemory();
-        Memory.clearMemory();
-        ReusableIndirectHeap.clearMemory();
-        LineOfSightScanner.clearMemory();
-        EdgeNLevelSparseVisibilityGraph.clearMemory();
+        SearchContext.clearCurrentThread();
         EdgeNLevelSparseVisibilityGraphAlgorithmFibHeap.clearMemory();
-        VisibilityGraphOptimised.clearMemory();
         SnapshotItem.clearCached();
         //IVGAlgorithm.clearCached();
         